@@ -0,0 +1,39 @@
+package scr;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Codifica dell'azione da inviare al server: Action.toString() (il percorso
+ * originale) contro ActionEncoder in un buffer riusato.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class ActionBenchmark {
+
+    private final ActionEncoder encoder = new ActionEncoder();
+    private final byte[] out = new byte[ActionEncoder.MAX_MESSAGE_LENGTH];
+
+    @Benchmark
+    public String actionToString(TickMessages m) {
+        return m.actions[m.next()].toString();
+    }
+
+    @Benchmark
+    public int actionEncoder(TickMessages m) {
+        return encoder.encode(m.actions[m.next()], out, 0);
+    }
+}
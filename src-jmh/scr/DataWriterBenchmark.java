@@ -0,0 +1,71 @@
+package scr;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * DataWriter.writeLine() nel thread di controllo (sincrono) e con la scrittura
+ * su un thread separato (asincrono, buffer di 4096 righe che scarta se pieno).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class DataWriterBenchmark {
+
+    private Path dir;
+    private DataWriter sync;
+    private DataWriter async;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("scr-jmh");
+        sync = new DataWriter(dir.resolve("sync").toString(), false, DataWriter.OverflowPolicy.DROP, 4096);
+        async = new DataWriter(dir.resolve("async").toString(), true, DataWriter.OverflowPolicy.DROP, 4096);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        sync.close();
+        async.close();
+        delete(dir);
+    }
+
+    @Benchmark
+    public void writeLineSync(TickMessages m) {
+        int i = m.next();
+        sync.writeLine(m.models[i], m.actions[i]);
+    }
+
+    @Benchmark
+    public void writeLineAsync(TickMessages m) {
+        int i = m.next();
+        async.writeLine(m.models[i], m.actions[i]);
+    }
+
+    static void delete(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator)
+                Files.delete(file);
+        }
+        Files.delete(dir);
+    }
+}
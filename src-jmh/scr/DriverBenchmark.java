@@ -0,0 +1,80 @@
+package scr;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * control() di SimpleDriver e HumanDriver, con la registrazione dei dati spenta
+ * e accesa (DataWriter con le impostazioni di default). HumanDriver è creato
+ * senza finestra: guida con i tasti rilasciati. I file registrati vanno in una
+ * directory temporanea cancellata alla fine.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class DriverBenchmark {
+
+    private Path dir;
+    private DataWriter simpleRecorder;
+    private DataWriter humanRecorder;
+    private SimpleDriver simple;
+    private SimpleDriver simpleRecording;
+    private HumanDriver human;
+    private HumanDriver humanRecording;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("scr-jmh");
+        simpleRecorder = new DataWriter(dir.resolve("simple").toString());
+        humanRecorder = new DataWriter(dir.resolve("human").toString());
+        simple = new SimpleDriver(null);
+        simpleRecording = new SimpleDriver(simpleRecorder);
+        human = new HumanDriver(null, false);
+        humanRecording = new HumanDriver(humanRecorder, false);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        simpleRecorder.close();
+        humanRecorder.close();
+        DataWriterBenchmark.delete(dir);
+    }
+
+    @Benchmark
+    public Action simpleDriver(TickMessages m) {
+        return simple.control(m.models[m.next()]);
+    }
+
+    @Benchmark
+    public Action simpleDriverRecording(TickMessages m) {
+        return simpleRecording.control(m.models[m.next()]);
+    }
+
+    @Benchmark
+    public Action humanDriver(TickMessages m) {
+        return human.control(m.models[m.next()]);
+    }
+
+    @Benchmark
+    public Action humanDriverRecording(TickMessages m) {
+        return humanRecording.control(m.models[m.next()]);
+    }
+}
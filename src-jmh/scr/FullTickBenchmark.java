@@ -0,0 +1,48 @@
+package scr;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Un tick completo di SimpleDriver senza rete: dal messaggio ricevuto ai byte
+ * dell'azione da inviare, con il percorso originale (String,
+ * MessageBasedSensorModel, Action.toString) e con quello del Client attuale
+ * (byte[], SensorFrame riusato, ActionEncoder).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class FullTickBenchmark {
+
+    private final SimpleDriver legacyDriver = new SimpleDriver(null);
+    private final SimpleDriver frameDriver = new SimpleDriver(null);
+    private final SensorFrame frame = new SensorFrame();
+    private final ActionEncoder encoder = new ActionEncoder();
+    private final byte[] out = new byte[ActionEncoder.MAX_MESSAGE_LENGTH];
+
+    @Benchmark
+    public byte[] legacyTick(TickMessages m) {
+        Action action = legacyDriver.control(new MessageBasedSensorModel(m.strings[m.next()]));
+        return action.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    @Benchmark
+    public int frameTick(TickMessages m) {
+        byte[] msg = m.bytes[m.next()];
+        Action action = frameDriver.control(frame.parse(msg, 0, msg.length));
+        return encoder.encode(action, out, 0);
+    }
+}
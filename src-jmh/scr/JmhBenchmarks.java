@@ -0,0 +1,37 @@
+package scr;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Avvio dei benchmark JMH di src-jmh (Main-Class di target/benchmarks.jar):
+ * gli argomenti sono quelli di org.openjdk.jmh.Main, con il profiler gc sempre
+ * attivo, così ogni benchmark riporta anche il tasso di allocazione
+ * (gc.alloc.rate, MB/s) e i byte allocati per operazione (gc.alloc.rate.norm).
+ *
+ * Uso (dalla radice del repository):
+ *   mvn -Pjmh package
+ *   java -jar target/benchmarks.jar                      tutti i benchmark
+ *   java -jar target/benchmarks.jar DriverBenchmark      solo quelli che corrispondono
+ *   java -jar target/benchmarks.jar -p messages=gara.cap sui messaggi di una registrazione
+ */
+public class JmhBenchmarks {
+
+    public static void main(String[] args) throws Exception {
+        List<String> options = new ArrayList<>(Arrays.asList(args));
+        if (!hasGcProfiler(options)) {
+            options.add(0, "-prof");
+            options.add(1, "gc");
+        }
+        org.openjdk.jmh.Main.main(options.toArray(new String[0]));
+    }
+
+    private static boolean hasGcProfiler(List<String> options) {
+        for (int i = 0; i + 1 < options.size(); i++) {
+            if (options.get(i).equals("-prof") && options.get(i + 1).startsWith("gc"))
+                return true;
+        }
+        return false;
+    }
+}
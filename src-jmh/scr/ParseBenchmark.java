@@ -0,0 +1,44 @@
+package scr;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing di un messaggio dei sensori: MessageParser (Hashtable di Double per
+ * messaggio, il percorso originale) contro SensorFrame riusato.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class ParseBenchmark {
+
+    private final SensorFrame frame = new SensorFrame();
+
+    @Benchmark
+    public MessageParser messageParser(TickMessages m) {
+        return new MessageParser(m.strings[m.next()]);
+    }
+
+    @Benchmark
+    public MessageBasedSensorModel messageBasedSensorModel(TickMessages m) {
+        return new MessageBasedSensorModel(m.strings[m.next()]);
+    }
+
+    @Benchmark
+    public SensorFrame sensorFrameParse(TickMessages m) {
+        byte[] msg = m.bytes[m.next()];
+        return frame.parse(msg, 0, msg.length);
+    }
+}
@@ -0,0 +1,119 @@
+package scr;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Ogni getter di SensorModel su MessageBasedSensorModel già costruiti: il
+ * costo (e le allocazioni) della lettura dei sensori che SimpleDriver e
+ * HumanDriver pagano ad ogni tick, separato da quello del parsing.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class SensorGetterBenchmark {
+
+    @Benchmark
+    public double getAngleToTrackAxis(TickMessages m) {
+        return m.models[m.next()].getAngleToTrackAxis();
+    }
+
+    @Benchmark
+    public double getCurrentLapTime(TickMessages m) {
+        return m.models[m.next()].getCurrentLapTime();
+    }
+
+    @Benchmark
+    public double getDamage(TickMessages m) {
+        return m.models[m.next()].getDamage();
+    }
+
+    @Benchmark
+    public double getDistanceFromStartLine(TickMessages m) {
+        return m.models[m.next()].getDistanceFromStartLine();
+    }
+
+    @Benchmark
+    public double getDistanceRaced(TickMessages m) {
+        return m.models[m.next()].getDistanceRaced();
+    }
+
+    @Benchmark
+    public double[] getFocusSensors(TickMessages m) {
+        return m.models[m.next()].getFocusSensors();
+    }
+
+    @Benchmark
+    public double getFuelLevel(TickMessages m) {
+        return m.models[m.next()].getFuelLevel();
+    }
+
+    @Benchmark
+    public int getGear(TickMessages m) {
+        return m.models[m.next()].getGear();
+    }
+
+    @Benchmark
+    public double getLastLapTime(TickMessages m) {
+        return m.models[m.next()].getLastLapTime();
+    }
+
+    @Benchmark
+    public double getLateralSpeed(TickMessages m) {
+        return m.models[m.next()].getLateralSpeed();
+    }
+
+    @Benchmark
+    public double[] getOpponentSensors(TickMessages m) {
+        return m.models[m.next()].getOpponentSensors();
+    }
+
+    @Benchmark
+    public double getRPM(TickMessages m) {
+        return m.models[m.next()].getRPM();
+    }
+
+    @Benchmark
+    public int getRacePosition(TickMessages m) {
+        return m.models[m.next()].getRacePosition();
+    }
+
+    @Benchmark
+    public double getSpeed(TickMessages m) {
+        return m.models[m.next()].getSpeed();
+    }
+
+    @Benchmark
+    public double[] getTrackEdgeSensors(TickMessages m) {
+        return m.models[m.next()].getTrackEdgeSensors();
+    }
+
+    @Benchmark
+    public double getTrackPosition(TickMessages m) {
+        return m.models[m.next()].getTrackPosition();
+    }
+
+    @Benchmark
+    public double[] getWheelSpinVelocity(TickMessages m) {
+        return m.models[m.next()].getWheelSpinVelocity();
+    }
+
+    @Benchmark
+    public double getZ(TickMessages m) {
+        return m.models[m.next()].getZ();
+    }
+
+    @Benchmark
+    public double getZSpeed(TickMessages m) {
+        return m.models[m.next()].getZSpeed();
+    }
+}
@@ -0,0 +1,56 @@
+package scr;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Messaggi dei sensori per i benchmark JMH, nelle forme usate dal Client:
+ * String (percorso originale), byte[] (SensorFrame), MessageBasedSensorModel
+ * già costruiti (getter e driver) e le azioni di SimpleDriver su ognuno.
+ *
+ * Ogni invocazione usa il messaggio successivo, a giro sul log, così i
+ * benchmark non misurano sempre lo stesso messaggio. Con -p messages=FILE si
+ * usa un altro log o una registrazione .cap (vedi SensorMessageLog.load).
+ */
+@State(Scope.Thread)
+public class TickMessages {
+
+    @Param(SensorMessageLog.BUNDLED)
+    public String messages;
+
+    String[] strings;
+    byte[][] bytes;
+    MessageBasedSensorModel[] models;
+    Action[] actions;
+    private int mask;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void load() throws IOException {
+        List<String> log = SensorMessageLog.load(messages);
+        int n = Integer.highestOneBit(log.size());
+        strings = log.subList(0, n).toArray(new String[0]);
+        bytes = new byte[n][];
+        models = new MessageBasedSensorModel[n];
+        actions = new Action[n];
+        SimpleDriver reference = new SimpleDriver(null);
+        for (int i = 0; i < n; i++) {
+            bytes[i] = strings[i].getBytes(StandardCharsets.US_ASCII);
+            models[i] = new MessageBasedSensorModel(strings[i]);
+            actions[i] = reference.control(models[i]);
+        }
+        mask = n - 1;
+    }
+
+    /** Indice del messaggio dell'invocazione corrente */
+    int next() {
+        return next++ & mask;
+    }
+}
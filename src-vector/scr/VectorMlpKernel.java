@@ -0,0 +1,35 @@
+package scr;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Layer denso con la Vector API (jdk.incubator.vector): ogni riga di W viene
+ * moltiplicata per l'input a blocchi della larghezza SIMD preferita della CPU,
+ * con fma, e ridotta alla fine; la coda della riga è scalare.
+ *
+ * Sta in una directory separata perché richiede il modulo incubator:
+ *   javac --add-modules jdk.incubator.vector -d out src/scr/*.java src-vector/scr/*.java
+ *   java --add-modules jdk.incubator.vector -cp out scr.Client scr.NeuralDriver
+ * MlpKernel.create() lo carica per riflessione solo se è disponibile.
+ */
+public class VectorMlpKernel implements MlpKernel {
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    public void dense(float[] w, float[] b, float[] in, int inLen, float[] out, int outLen) {
+        int upper = SPECIES.loopBound(inLen);
+        for (int o = 0; o < outLen; o++) {
+            int row = o * inLen;
+            FloatVector acc = FloatVector.zero(SPECIES);
+            int i = 0;
+            for (; i < upper; i += SPECIES.length())
+                acc = FloatVector.fromArray(SPECIES, w, row + i).fma(FloatVector.fromArray(SPECIES, in, i), acc);
+            float sum = acc.reduceLanes(VectorOperators.ADD);
+            for (; i < inLen; i++)
+                sum += w[row + i] * in[i];
+            out[o] = sum + b[o];
+        }
+    }
+}
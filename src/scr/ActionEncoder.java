@@ -0,0 +1,140 @@
+package scr;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Codifica un'Action nel messaggio di testo per il server SCR scrivendo i byte
+ * ASCII direttamente in un buffer riutilizzabile.
+ *
+ * Il formato è lo stesso di Action.toString():
+ * "(accel a) (brake b) (clutch c) (gear g) (steer s) (meta m) (focus f)"
+ * ma i valori reali hanno un numero fisso di decimali e vengono limitati agli
+ * intervalli ammessi senza modificare i campi dell'Action.
+ */
+public class ActionEncoder {
+
+	/** Lunghezza massima di un messaggio codificato (con margine) */
+	public static final int MAX_MESSAGE_LENGTH = 160;
+
+	public static final int DEFAULT_DECIMALS = 6;
+
+	private static final byte[] ACCEL = ascii("(accel ");
+	private static final byte[] BRAKE = ascii(") (brake ");
+	private static final byte[] CLUTCH = ascii(") (clutch ");
+	private static final byte[] GEAR = ascii(") (gear ");
+	private static final byte[] STEER = ascii(") (steer ");
+	private static final byte[] META = ascii(") (meta ");
+	private static final byte[] FOCUS = ascii(") (focus ");
+
+	private final int decimals;
+
+	public ActionEncoder() {
+		this(DEFAULT_DECIMALS);
+	}
+
+	public ActionEncoder(int decimals) {
+		if (decimals < 0 || decimals > 9)
+			throw new IllegalArgumentException("decimals deve essere tra 0 e 9: " + decimals);
+		this.decimals = decimals;
+	}
+
+	/**
+	 * Scrive il messaggio per action in dst a partire da off.
+	 * dst deve avere almeno MAX_MESSAGE_LENGTH byte liberi.
+	 *
+	 * @return il numero di byte scritti
+	 */
+	public int encode(Action action, byte[] dst, int off) {
+		int p = off;
+		p = put(dst, p, ACCEL);
+		p = AsciiNumbers.putFixed(dst, p, clamp(action.accelerate, 0, 1), decimals);
+		p = put(dst, p, BRAKE);
+		p = AsciiNumbers.putFixed(dst, p, clamp(action.brake, 0, 1), decimals);
+		p = put(dst, p, CLUTCH);
+		p = AsciiNumbers.putFixed(dst, p, clamp(action.clutch, 0, 1), decimals);
+		p = put(dst, p, GEAR);
+		p = AsciiNumbers.putLong(dst, p, Math.max(-1, Math.min(6, action.gear)));
+		p = put(dst, p, STEER);
+		p = AsciiNumbers.putFixed(dst, p, clamp(action.steering, -1, 1), decimals);
+		p = put(dst, p, META);
+		dst[p++] = (byte) (action.restartRace ? '1' : '0');
+		p = put(dst, p, FOCUS);
+		p = AsciiNumbers.putLong(dst, p, action.focus);
+		dst[p++] = ')';
+		return p - off;
+	}
+
+	/**
+	 * Operazione inversa di encode: legge un messaggio di azione
+	 * "(accel a) (brake b) ..." dai byte [off, off + len) in dst.
+	 * I campi assenti o non numerici restano invariati; non alloca.
+	 *
+	 * @return dst
+	 */
+	public static Action decode(byte[] buf, int off, int len, Action dst) {
+		int end = off + len;
+		int i = off;
+		while (i < end) {
+			while (i < end && buf[i] != '(')
+				i++;
+			int nameStart = ++i;
+			while (i < end && buf[i] != ' ' && buf[i] != ')')
+				i++;
+			int nameEnd = i;
+			while (i < end && buf[i] == ' ')
+				i++;
+			int valueStart = i;
+			while (i < end && buf[i] != ')' && buf[i] != ' ')
+				i++;
+			if (valueStart == i)
+				continue;
+			double v;
+			try {
+				v = AsciiNumbers.parseDouble(buf, valueStart, i);
+			} catch (NumberFormatException e) {
+				continue;
+			}
+			if (is(buf, nameStart, nameEnd, ACCEL, 1))
+				dst.accelerate = v;
+			else if (is(buf, nameStart, nameEnd, BRAKE, 3))
+				dst.brake = v;
+			else if (is(buf, nameStart, nameEnd, CLUTCH, 3))
+				dst.clutch = v;
+			else if (is(buf, nameStart, nameEnd, GEAR, 3))
+				dst.gear = (int) v;
+			else if (is(buf, nameStart, nameEnd, STEER, 3))
+				dst.steering = v;
+			else if (is(buf, nameStart, nameEnd, META, 3))
+				dst.restartRace = v != 0;
+			else if (is(buf, nameStart, nameEnd, FOCUS, 3))
+				dst.focus = (int) v;
+		}
+		return dst;
+	}
+
+	// true se buf[from, to) è il nome contenuto in marker da skip fino allo spazio finale
+	private static boolean is(byte[] buf, int from, int to, byte[] marker, int skip) {
+		int len = marker.length - skip - 1;
+		if (to - from != len)
+			return false;
+		for (int k = 0; k < len; k++) {
+			if (buf[from + k] != marker[skip + k])
+				return false;
+		}
+		return true;
+	}
+
+	// stessi limiti di Action.limitValues()
+	private static double clamp(double v, double min, double max) {
+		return Math.max(min, Math.min(max, v));
+	}
+
+	private static int put(byte[] dst, int off, byte[] text) {
+		System.arraycopy(text, 0, dst, off, text.length);
+		return off + text.length;
+	}
+
+	private static byte[] ascii(String s) {
+		return s.getBytes(StandardCharsets.US_ASCII);
+	}
+}
@@ -0,0 +1,47 @@
+package scr;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Confronta Action.toString() + getBytes() (percorso originale del Client)
+ * con ActionEncoder.encode() su un buffer riutilizzato.
+ *
+ * Uso: java scr.ActionEncoderBenchmark [iterazioni]
+ */
+public class ActionEncoderBenchmark {
+
+    public static void main(String[] args) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+
+        // azioni tipiche: valori con molte cifre come quelle prodotte da SimpleDriver
+        Action[] actions = new Action[64];
+        java.util.Random random = new java.util.Random(42);
+        for (int i = 0; i < actions.length; i++) {
+            Action a = new Action();
+            a.accelerate = random.nextDouble();
+            a.brake = random.nextDouble() < 0.2 ? random.nextDouble() : 0;
+            a.clutch = random.nextDouble() * 0.5;
+            a.gear = 1 + random.nextInt(6);
+            a.steering = random.nextDouble() * 2 - 1;
+            actions[i] = a;
+        }
+
+        ActionEncoder encoder = new ActionEncoder();
+        byte[] buffer = new byte[ActionEncoder.MAX_MESSAGE_LENGTH];
+        int[] index = new int[1];
+
+        System.out.println("Esempio toString(): " + actions[0]);
+        int len = encoder.encode(actions[0], buffer, 0);
+        System.out.println("Esempio encoder:    " + new String(buffer, 0, len, StandardCharsets.US_ASCII));
+
+        MicroBenchmark bench = new MicroBenchmark(iterations, iterations, 5);
+        bench.run("Action.toString().getBytes()", () -> {
+            Action a = actions[index[0]++ & 63];
+            return a.toString().getBytes().length;
+        });
+        bench.run("ActionEncoder.encode()", () -> {
+            Action a = actions[index[0]++ & 63];
+            return encoder.encode(a, buffer, 0);
+        });
+    }
+}
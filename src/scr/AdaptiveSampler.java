@@ -0,0 +1,149 @@
+package scr;
+
+/**
+ * Campionamento adattivo delle righe registrate da DataWriter: invece di un
+ * tick su uno, tiene i tick in cui qualcosa cambia e sui tratti costanti
+ * (rettilineo a gas fisso) scende a una frequenza minima.
+ *
+ * Un tick viene tenuto se, rispetto all'ultimo tenuto,
+ *   - accel, brake o steering sono cambiati più della soglia degli input,
+ *     oppure è cambiata la marcia;
+ *   - almeno un sensore di bordo pista è cambiato più della soglia in metri
+ *     più il 5% della distanza (i sensori lontani, come quello in avanti su un
+ *     rettilineo, cambiano di continuo senza che la scena cambi);
+ *   - sono passati abbastanza tick per la frequenza minima.
+ * Ogni riga tenuta ha una colonna in più, weight (DataWriter.WEIGHT_COLUMN):
+ * quanti tick rappresenta, cioè se stessa più quelli scartati dopo di lei.
+ * Per questo una riga viene consegnata solo quando arriva la successiva
+ * (o a fine sessione con flush()): il peso non si conosce prima.
+ * La somma dei pesi è il numero di tick, quindi l'addestramento può pesare le
+ * righe e ritrovare la distribuzione originale (DemonstrationSet.weight()).
+ * Con RecordingFilter attivo i tick che il filtro scarta arrivano con skip() e
+ * contano anch'essi nel peso della riga in attesa; solo quelli prima della
+ * prima riga tenuta non sono rappresentati.
+ *
+ * Configurazione con proprietà di sistema:
+ *   -Dscr.recording.adaptive=true            attiva il campionamento (default spento)
+ *   -Dscr.recording.adaptive.input=0.05      soglia su accel, brake, steering
+ *   -Dscr.recording.adaptive.track=1.0       soglia sui sensori di bordo pista in m
+ *   -Dscr.recording.adaptive.floor=5         frequenza minima in righe al secondo
+ */
+public class AdaptiveSampler {
+
+    public static final String ADAPTIVE_PROPERTY = "scr.recording.adaptive";
+    public static final String INPUT_PROPERTY = "scr.recording.adaptive.input";
+    public static final String TRACK_PROPERTY = "scr.recording.adaptive.track";
+    public static final String FLOOR_PROPERTY = "scr.recording.adaptive.floor";
+
+    private static final double TICKS_PER_SECOND = 50; // tick da 20 ms del server SCR
+    private static final int TRACK_FIRST = 5;           // track0 nella riga
+    private static final int ACCEL_COLUMN = DataWriter.GEAR_COLUMN - 3;
+    private static final double TRACK_RELATIVE = 0.05;
+
+    private final double inputThreshold;
+    private final double trackThreshold;
+    private final int maxGap;
+
+    // riga in attesa (ultima tenuta) e riga consegnata, con la colonna del peso
+    private double[] pending = new double[DataWriter.COLUMNS + 1];
+    private double[] out = new double[DataWriter.COLUMNS + 1];
+    private boolean hasPending = false;
+    private int weight = 0;
+
+    private long ticks = 0;
+    private long kept = 0;
+
+    /**
+     * @param inputThreshold variazione minima di accel, brake o steering
+     * @param trackThreshold variazione minima di un sensore di bordo pista (m)
+     * @param floorHz righe al secondo tenute comunque
+     */
+    public AdaptiveSampler(double inputThreshold, double trackThreshold, double floorHz) {
+        this.inputThreshold = inputThreshold;
+        this.trackThreshold = trackThreshold;
+        this.maxGap = Math.max(1, (int) Math.round(TICKS_PER_SECOND / floorHz));
+    }
+
+    /** Campionatore configurato dalle proprietà di sistema, null se non attivo */
+    public static AdaptiveSampler fromProperties() {
+        if (!Boolean.getBoolean(ADAPTIVE_PROPERTY))
+            return null;
+        double input = Double.parseDouble(System.getProperty(INPUT_PROPERTY, "0.05"));
+        double track = Double.parseDouble(System.getProperty(TRACK_PROPERTY, "1.0"));
+        double floor = Double.parseDouble(System.getProperty(FLOOR_PROPERTY, "5"));
+        System.out.println("AdaptiveSampler: soglia input " + input + ", sensori " + track + " m, almeno " + floor
+                + " righe/s");
+        return new AdaptiveSampler(input, track, floor);
+    }
+
+    /**
+     * Esamina la riga row[off .. off + DataWriter.COLUMNS). Non alloca.
+     *
+     * @return la riga tenuta in precedenza, completa di peso, da scrivere
+     *         (valida fino alla chiamata successiva), oppure null
+     */
+    public double[] offer(double[] row, int off) {
+        ticks++;
+        if (hasPending && weight < maxGap && !changed(row, off)) {
+            weight++;
+            return null;
+        }
+        double[] result = null;
+        if (hasPending) {
+            double[] t = out;
+            out = pending;
+            pending = t;
+            out[DataWriter.COLUMNS] = weight;
+            result = out;
+        }
+        System.arraycopy(row, off, pending, 0, DataWriter.COLUMNS);
+        hasPending = true;
+        weight = 1;
+        kept++;
+        return result;
+    }
+
+    /** Un tick scartato prima del campionamento (RecordingFilter): va nel peso della riga in attesa */
+    public void skip() {
+        ticks++;
+        if (hasPending)
+            weight++;
+    }
+
+    /** L'ultima riga tenuta con il suo peso, a fine sessione; null se non c'è */
+    public double[] flush() {
+        if (!hasPending)
+            return null;
+        hasPending = false;
+        pending[DataWriter.COLUMNS] = weight;
+        return pending;
+    }
+
+    private boolean changed(double[] row, int off) {
+        for (int i = ACCEL_COLUMN; i < DataWriter.GEAR_COLUMN; i++) {
+            if (Math.abs(row[off + i] - pending[i]) > inputThreshold)
+                return true;
+        }
+        if (row[off + DataWriter.GEAR_COLUMN] != pending[DataWriter.GEAR_COLUMN])
+            return true;
+        for (int i = TRACK_FIRST; i < TRACK_FIRST + DataWriter.TRACK_SENSORS; i++) {
+            if (Math.abs(row[off + i] - pending[i]) > trackThreshold + TRACK_RELATIVE * Math.abs(pending[i]))
+                return true;
+        }
+        return false;
+    }
+
+    public long kept() {
+        return kept;
+    }
+
+    public long ticks() {
+        return ticks;
+    }
+
+    /** Riepilogo della sessione, stampato da DataWriter.close() */
+    public String report() {
+        return String.format("AdaptiveSampler: righe tenute %d su %d tick (%.1f%%, %.1fx in meno)", kept, ticks,
+                ticks == 0 ? 0.0 : 100.0 * kept / ticks, kept == 0 ? 0.0 : (double) ticks / kept);
+    }
+}
@@ -0,0 +1,156 @@
+package scr;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Conversione di numeri da/verso testo ASCII direttamente su array di byte,
+ * senza passare per String (quindi senza allocazioni nel caso normale).
+ */
+public final class AsciiNumbers {
+
+    // Potenze di 10 rappresentabili esattamente come double (fino a 10^22)
+    private static final double[] POW10 = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+    // Oltre 2^53 la mantissa non è più esatta in un double
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    private AsciiNumbers() {
+    }
+
+    /**
+     * Converte i byte [from, to) in un double.
+     * Per i numeri che il server invia (poche cifre significative) il risultato
+     * viene calcolato con una sola moltiplicazione/divisione esatta e coincide
+     * bit per bit con Double.parseDouble. Nei casi rari (troppe cifre, esponenti
+     * grandi, "nan", ...) si ricade su Double.parseDouble.
+     *
+     * @throws NumberFormatException se il testo non è un numero valido
+     */
+    public static double parseDouble(byte[] buf, int from, int to) {
+        int i = from;
+        if (i >= to)
+            throw new NumberFormatException("empty number");
+
+        boolean negative = false;
+        if (buf[i] == '-' || buf[i] == '+') {
+            negative = buf[i] == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean exact = true;
+        boolean seenDigit = false;
+
+        // parte intera
+        while (i < to && buf[i] >= '0' && buf[i] <= '9') {
+            seenDigit = true;
+            if (mantissa != 0 || buf[i] != '0')
+                digits++;
+            if (digits <= 18)
+                mantissa = mantissa * 10 + (buf[i] - '0');
+            else {
+                exact = false;
+            }
+            i++;
+        }
+        // parte decimale
+        if (i < to && buf[i] == '.') {
+            i++;
+            while (i < to && buf[i] >= '0' && buf[i] <= '9') {
+                seenDigit = true;
+                if (mantissa != 0 || buf[i] != '0')
+                    digits++;
+                if (digits <= 18) {
+                    mantissa = mantissa * 10 + (buf[i] - '0');
+                    exponent--;
+                } else {
+                    exact = false;
+                }
+                i++;
+            }
+        }
+        // esponente
+        if (seenDigit && i < to && (buf[i] == 'e' || buf[i] == 'E')) {
+            i++;
+            boolean negativeExp = false;
+            if (i < to && (buf[i] == '-' || buf[i] == '+')) {
+                negativeExp = buf[i] == '-';
+                i++;
+            }
+            if (i >= to)
+                exact = false;
+            int exp = 0;
+            while (i < to && buf[i] >= '0' && buf[i] <= '9') {
+                if (exp < 10000)
+                    exp = exp * 10 + (buf[i] - '0');
+                i++;
+            }
+            exponent += negativeExp ? -exp : exp;
+        }
+
+        if (!seenDigit || i != to || !exact || mantissa > MAX_EXACT_MANTISSA || exponent < -22 || exponent > 22)
+            return slowParse(buf, from, to);
+
+        double value = exponent < 0 ? mantissa / POW10[-exponent] : mantissa * POW10[exponent];
+        return negative ? -value : value;
+    }
+
+    /**
+     * Scrive v in dst a partire da off con esattamente decimals cifre decimali
+     * (es. 0.123400 con decimals = 6), arrotondando al più vicino.
+     * I NaN vengono scritti come 0.
+     *
+     * @return la posizione successiva all'ultimo byte scritto
+     */
+    public static int putFixed(byte[] dst, int off, double v, int decimals) {
+        if (v != v)
+            v = 0;
+        long scale = 1;
+        for (int i = 0; i < decimals; i++)
+            scale *= 10;
+        long scaled = Math.round(Math.abs(v) * scale);
+        if (v < 0 && scaled != 0)
+            dst[off++] = '-';
+        off = putLong(dst, off, scaled / scale);
+        if (decimals > 0) {
+            dst[off++] = '.';
+            long fraction = scaled % scale;
+            // cifre decimali con gli zeri iniziali
+            for (int i = decimals - 1; i >= 0; i--) {
+                dst[off + i] = (byte) ('0' + fraction % 10);
+                fraction /= 10;
+            }
+            off += decimals;
+        }
+        return off;
+    }
+
+    /**
+     * Scrive l'intero v in decimale.
+     *
+     * @return la posizione successiva all'ultimo byte scritto
+     */
+    public static int putLong(byte[] dst, int off, long v) {
+        if (v < 0) {
+            dst[off++] = '-';
+            v = -v;
+        }
+        int digits = 1;
+        for (long t = v; t >= 10; t /= 10)
+            digits++;
+        for (int i = digits - 1; i >= 0; i--) {
+            dst[off + i] = (byte) ('0' + v % 10);
+            v /= 10;
+        }
+        return off + digits;
+    }
+
+    // Percorso lento (alloca una String), usato solo per input insoliti
+    private static double slowParse(byte[] buf, int from, int to) {
+        return Double.parseDouble(new String(buf, from, to - from, StandardCharsets.US_ASCII));
+    }
+}
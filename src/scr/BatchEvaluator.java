@@ -0,0 +1,493 @@
+package scr;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.StringTokenizer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+/**
+ * Valutazione offline di un driver sulle sessioni registrate: il driver guida
+ * sui sensori registrati e le sue azioni vengono confrontate con quelle
+ * registrate (di SimpleDriver, di un umano, di un altro modello).
+ *
+ * Le sessioni (CSV o .scrbin di DataWriter, registrazioni .cap di
+ * SessionCapture) sono divise in segmenti indipendenti di segment:N tick; ogni
+ * segmento usa una nuova istanza del driver e i segmenti girano in parallelo
+ * su un ForkJoinPool. Per ogni segmento si misurano, nel thread che lo esegue,
+ * il tempo e i byte allocati da control().
+ *
+ * Le righe di DataWriter hanno solo 24 letture: gli altri sensori valgono 0
+ * (focus -1, avversari 200) e la marcia attuale è quella registrata al tick
+ * precedente. Le registrazioni .cap hanno il messaggio completo del server.
+ *
+ * Metriche: errore assoluto medio su steering, accel e brake; accordo su
+ * acceleratore e freno premuti (sopra 0.5) o no; matrice di confusione delle
+ * marce; tick al secondo e byte allocati per tick.
+ *
+ * Uso: java scr.BatchEvaluator driver file_o_cartella [...] [segment:N] [threads:N]
+ */
+public class BatchEvaluator {
+
+    private static final double PRESSED = 0.5;
+    private static final int GEARS = 8; // da -1 a 6
+
+    private static final com.sun.management.ThreadMXBean THREADS = threadBean();
+
+    /** Un pezzo di sessione: righe [first, first + ticks) di un set, o ticks tick di una registrazione */
+    private static final class Segment {
+        final Path file;
+        final DemonstrationSet rows; // null per le registrazioni .cap
+        final long first;            // riga, o posizione nel file .cap
+        final int ticks;
+
+        Segment(Path file, DemonstrationSet rows, long first, int ticks) {
+            this.file = file;
+            this.rows = rows;
+            this.first = first;
+            this.ticks = ticks;
+        }
+    }
+
+    /** Metriche accumulate, sommabili fra segmenti */
+    public static final class Metrics {
+        long ticks;
+        double steerError, accelError, brakeError;
+        long accelAgree, brakeAgree;
+        final long[][] gears = new long[GEARS][GEARS]; // [registrata][driver]
+        long controlNanos;
+        long allocatedBytes;
+        int segments;
+
+        void add(Action recorded, Action driven) {
+            ticks++;
+            steerError += Math.abs(clamp(driven.steering, -1, 1) - clamp(recorded.steering, -1, 1));
+            accelError += Math.abs(clamp(driven.accelerate, 0, 1) - clamp(recorded.accelerate, 0, 1));
+            brakeError += Math.abs(clamp(driven.brake, 0, 1) - clamp(recorded.brake, 0, 1));
+            if ((driven.accelerate > PRESSED) == (recorded.accelerate > PRESSED))
+                accelAgree++;
+            if ((driven.brake > PRESSED) == (recorded.brake > PRESSED))
+                brakeAgree++;
+            gears[gearIndex(recorded.gear)][gearIndex(driven.gear)]++;
+        }
+
+        Metrics merge(Metrics o) {
+            ticks += o.ticks;
+            steerError += o.steerError;
+            accelError += o.accelError;
+            brakeError += o.brakeError;
+            accelAgree += o.accelAgree;
+            brakeAgree += o.brakeAgree;
+            for (int r = 0; r < GEARS; r++)
+                for (int d = 0; d < GEARS; d++)
+                    gears[r][d] += o.gears[r][d];
+            controlNanos += o.controlNanos;
+            allocatedBytes += o.allocatedBytes;
+            segments += o.segments;
+            return this;
+        }
+
+        public long ticks() {
+            return ticks;
+        }
+
+        public double steeringMae() {
+            return ticks == 0 ? 0 : steerError / ticks;
+        }
+
+        public double accelMae() {
+            return ticks == 0 ? 0 : accelError / ticks;
+        }
+
+        public double brakeMae() {
+            return ticks == 0 ? 0 : brakeError / ticks;
+        }
+
+        public double accelAgreement() {
+            return ticks == 0 ? 0 : (double) accelAgree / ticks;
+        }
+
+        public double brakeAgreement() {
+            return ticks == 0 ? 0 : (double) brakeAgree / ticks;
+        }
+
+        /** Tick con la stessa marcia registrata */
+        public double gearAccuracy() {
+            long same = 0;
+            for (int g = 0; g < GEARS; g++)
+                same += gears[g][g];
+            return ticks == 0 ? 0 : (double) same / ticks;
+        }
+
+        /** Byte allocati in media da una chiamata a control(); -1 se la JVM non lo misura */
+        public double allocationPerTick() {
+            return THREADS == null ? -1 : ticks == 0 ? 0 : (double) allocatedBytes / ticks;
+        }
+
+        public double controlMicros() {
+            return ticks == 0 ? 0 : controlNanos / 1000.0 / ticks;
+        }
+    }
+
+    private final Supplier<Controller> driverFactory;
+    private final int segmentTicks;
+    private final List<Segment> segments = new ArrayList<>();
+
+    /**
+     * @param driverFactory crea un'istanza nuova del driver per ogni segmento
+     * @param segmentTicks tick per segmento
+     */
+    public BatchEvaluator(Supplier<Controller> driverFactory, int segmentTicks) {
+        this.driverFactory = driverFactory;
+        this.segmentTicks = segmentTicks;
+    }
+
+    /** Aggiunge una sessione (CSV, .scrbin o .cap) divisa in segmenti */
+    public void add(Path file) throws IOException {
+        if (file.getFileName().toString().endsWith(SessionCapture.EXTENSION)) {
+            // prima passata: posizione del primo tick di ogni segmento
+            try (SessionCaptureReader reader = new SessionCaptureReader(file)) {
+                long start = reader.position();
+                int n = 0;
+                while (true) {
+                    long before = reader.position();
+                    if (!reader.nextTick())
+                        break;
+                    if (n == 0)
+                        start = before;
+                    if (++n == segmentTicks) {
+                        segments.add(new Segment(file, null, start, n));
+                        n = 0;
+                    }
+                }
+                if (n > 0)
+                    segments.add(new Segment(file, null, start, n));
+            }
+            return;
+        }
+        DemonstrationSet rows = DemonstrationSet.load(Collections.singletonList(file));
+        for (int first = 0; first < rows.rows(); first += segmentTicks)
+            segments.add(new Segment(file, rows, first, Math.min(segmentTicks, rows.rows() - first)));
+    }
+
+    public int segments() {
+        return segments.size();
+    }
+
+    /** Valuta tutti i segmenti su threads core */
+    public Metrics run(int threads) throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            return pool.submit(() -> segments.parallelStream().map(this::evaluate).reduce(new Metrics(),
+                    (a, b) -> new Metrics().merge(a).merge(b))).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("valutazione interrotta", e);
+        } catch (java.util.concurrent.ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException)
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            throw new IOException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private Metrics evaluate(Segment segment) {
+        Controller driver = driverFactory.get();
+        Metrics m = new Metrics();
+        m.segments = 1;
+        try {
+            if (segment.rows != null)
+                evaluateRows(segment, driver, m);
+            else
+                evaluateCapture(segment, driver, m);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return m;
+    }
+
+    private void evaluateRows(Segment segment, Controller driver, Metrics m) {
+        DemonstrationSet set = segment.rows;
+        RowSensors sensors = new RowSensors();
+        Action recorded = new Action();
+        int first = (int) segment.first;
+        for (int i = first; i < first + segment.ticks; i++) {
+            sensors.set(set, i, set.gear()[i > first ? i - 1 : i]);
+            recorded.accelerate = set.accel()[i];
+            recorded.brake = set.brake()[i];
+            recorded.steering = set.steering()[i];
+            recorded.gear = set.gear()[i];
+            control(driver, sensors, recorded, m);
+        }
+    }
+
+    private void evaluateCapture(Segment segment, Controller driver, Metrics m) throws IOException {
+        try (SessionCaptureReader reader = new SessionCaptureReader(segment.file)) {
+            reader.seek(segment.first);
+            for (int t = 0; t < segment.ticks && reader.nextTick(); t++) {
+                if (reader.restarted() && t > 0)
+                    driver.reset();
+                if (!reader.hasAction()) {
+                    driver.control(reader.sensors()); // il driver registrato non ha risposto: nulla da confrontare
+                    continue;
+                }
+                control(driver, reader.sensors(), reader.action(), m);
+            }
+        }
+    }
+
+    // Un tick: control() misurato (tempo e allocazioni del thread) e confronto con l'azione registrata
+    private static void control(Controller driver, SensorModel sensors, Action recorded, Metrics m) {
+        long bytes = allocatedBytes();
+        long start = System.nanoTime();
+        Action driven = driver.control(sensors);
+        m.controlNanos += System.nanoTime() - start;
+        m.allocatedBytes += allocatedBytes() - bytes;
+        m.add(recorded, driven);
+    }
+
+    /**
+     * Sensori da una riga di DataWriter: le 24 letture registrate, gli altri
+     * sensori ai valori di un'auto sola in pista.
+     */
+    private static final class RowSensors implements SensorModel {
+        private final float[] row = new float[DemonstrationSet.FEATURES];
+        private final double[] track = new double[DataWriter.TRACK_SENSORS];
+        private final double[] focus = { -1, -1, -1, -1, -1 };
+        private final double[] opponents = new double[SensorFrame.OPPONENT_SENSORS];
+        private final double[] wheelSpin = new double[SensorFrame.WHEELS];
+        private int gear;
+
+        RowSensors() {
+            java.util.Arrays.fill(opponents, 200);
+        }
+
+        void set(DemonstrationSet set, int i, int currentGear) {
+            System.arraycopy(set.features(), i * DemonstrationSet.FEATURES, row, 0, DemonstrationSet.FEATURES);
+            for (int k = 0; k < track.length; k++)
+                track[k] = row[5 + k];
+            gear = currentGear;
+        }
+
+        public double getAngleToTrackAxis() {
+            return row[0];
+        }
+
+        public double getTrackPosition() {
+            return row[1];
+        }
+
+        public double getSpeed() {
+            return row[2];
+        }
+
+        public double getLateralSpeed() {
+            return row[3];
+        }
+
+        public double getRPM() {
+            return row[4];
+        }
+
+        public double[] getTrackEdgeSensors() {
+            return track;
+        }
+
+        public int getGear() {
+            return gear;
+        }
+
+        public double[] getFocusSensors() {
+            return focus;
+        }
+
+        public double[] getOpponentSensors() {
+            return opponents;
+        }
+
+        public double[] getWheelSpinVelocity() {
+            return wheelSpin;
+        }
+
+        public int getRacePosition() {
+            return 1;
+        }
+
+        public double getCurrentLapTime() {
+            return 0;
+        }
+
+        public double getDamage() {
+            return 0;
+        }
+
+        public double getDistanceFromStartLine() {
+            return 0;
+        }
+
+        public double getDistanceRaced() {
+            return 0;
+        }
+
+        public double getFuelLevel() {
+            return 0;
+        }
+
+        public double getLastLapTime() {
+            return 0;
+        }
+
+        public double getZSpeed() {
+            return 0;
+        }
+
+        public double getZ() {
+            return 0;
+        }
+
+        /** Messaggio nel formato del server con le letture disponibili (alloca: solo per chi lo chiede) */
+        public String getMessage() {
+            StringBuilder sb = new StringBuilder(512);
+            sb.append("(angle ").append(row[0]).append(")(gear ").append(gear).append(")(rpm ").append(row[4])
+                    .append(")(speedX ").append(row[2]).append(")(speedY ").append(row[3]).append(")(track");
+            for (double t : track)
+                sb.append(' ').append(t);
+            sb.append(")(trackPos ").append(row[1]).append(')');
+            return sb.toString();
+        }
+    }
+
+    private static int gearIndex(int gear) {
+        return Math.max(-1, Math.min(6, gear)) + 1;
+    }
+
+    private static double clamp(double v, double min, double max) {
+        return Math.max(min, Math.min(max, v));
+    }
+
+    private static long allocatedBytes() {
+        return THREADS != null ? THREADS.getCurrentThreadAllocatedBytes() : 0;
+    }
+
+    private static com.sun.management.ThreadMXBean threadBean() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+            if (threads.isThreadAllocatedMemorySupported()) {
+                threads.setThreadAllocatedMemoryEnabled(true);
+                return threads;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Un driver nuovo per segmento. SimpleDriver (parametri da -Dscr.simple.params)
+     * e HumanDriver sono creati senza registrazione, HumanDriver anche senza
+     * finestra; KnnDriver e NeuralDriver caricano indice e pesi una volta sola e
+     * ogni segmento riceve un driver che li condivide. Le altre classi sono create
+     * con il costruttore vuoto.
+     */
+    static Supplier<Controller> factory(String driverClass) throws ReflectiveOperationException {
+        if (driverClass.equals(SimpleDriver.class.getName())) {
+            SimpleDriverParams params = SimpleDriverParams.fromProperties();
+            return () -> new SimpleDriver(null, params);
+        }
+        if (driverClass.equals(HumanDriver.class.getName()))
+            return () -> new HumanDriver(null, false);
+        if (driverClass.equals(KnnDriver.class.getName())) {
+            KnnDriver prototype = new KnnDriver();
+            return prototype::sharingIndex;
+        }
+        if (driverClass.equals(NeuralDriver.class.getName())) {
+            NeuralDriver prototype = new NeuralDriver();
+            return prototype::sharingModel;
+        }
+        java.lang.reflect.Constructor<?> constructor = Class.forName(driverClass).getConstructor();
+        return () -> {
+            try {
+                return (Controller) constructor.newInstance();
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Impossibile creare " + driverClass, e);
+            }
+        };
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("Uso: java scr.BatchEvaluator driver file_o_cartella [...] [segment:N] [threads:N]");
+            return;
+        }
+        List<Path> files = new ArrayList<>();
+        int segmentTicks = 1000;
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].indexOf(':') < 0) {
+                Path path = Paths.get(args[i]);
+                if (Files.isDirectory(path)) {
+                    try (DirectoryStream<Path> dir = Files.newDirectoryStream(path, "*.{csv,scrbin,cap}")) {
+                        for (Path file : dir)
+                            files.add(file);
+                    }
+                } else {
+                    files.add(path);
+                }
+                continue;
+            }
+            StringTokenizer st = new StringTokenizer(args[i], ":");
+            String entity = st.nextToken();
+            String value = st.hasMoreTokens() ? st.nextToken() : "";
+            if (entity.equals("segment")) {
+                segmentTicks = Integer.parseInt(value);
+            } else if (entity.equals("threads")) {
+                threads = Integer.parseInt(value);
+            } else {
+                System.out.println("Opzione sconosciuta: " + args[i]);
+                System.exit(0);
+            }
+        }
+        files.sort(null);
+
+        BatchEvaluator evaluator = new BatchEvaluator(factory(args[0]), segmentTicks);
+        long start = System.nanoTime();
+        for (Path file : files)
+            evaluator.add(file);
+        long loaded = System.nanoTime();
+        Metrics m = evaluator.run(threads);
+        long elapsed = System.nanoTime() - loaded;
+
+        System.out.println(String.format("%s su %d file: %d segmenti da al più %d tick, caricamento %d ms",
+                args[0], files.size(), evaluator.segments(), segmentTicks, (loaded - start) / 1000000));
+        System.out.println(String.format("%d tick in %.2f s su %d core: %.0f tick/s, control() %.1f us/tick,"
+                + " allocazione %s", m.ticks, elapsed / 1e9, threads, m.ticks / (elapsed / 1e9), m.controlMicros(),
+                m.allocationPerTick() < 0 ? "non misurabile" : String.format("%.1f byte/tick", m.allocationPerTick())));
+        System.out.println(String.format("steering  MAE %.4f", m.steeringMae()));
+        System.out.println(String.format("accel     MAE %.4f  accordo %.1f%%", m.accelMae(), 100 * m.accelAgreement()));
+        System.out.println(String.format("brake     MAE %.4f  accordo %.1f%%", m.brakeMae(), 100 * m.brakeAgreement()));
+        System.out.println(String.format("gear      accuratezza %.1f%% (righe: registrata, colonne: driver)",
+                100 * m.gearAccuracy()));
+        StringBuilder header = new StringBuilder("      ");
+        for (int d = 0; d < GEARS; d++)
+            header.append(String.format("%8s", gearName(d)));
+        System.out.println(header);
+        for (int r = 0; r < GEARS; r++) {
+            StringBuilder line = new StringBuilder(String.format("%6s", gearName(r)));
+            for (int d = 0; d < GEARS; d++)
+                line.append(String.format("%8d", m.gears[r][d]));
+            System.out.println(line);
+        }
+    }
+
+    private static String gearName(int index) {
+        return index == 0 ? "R" : index == 1 ? "N" : Integer.toString(index - 1);
+    }
+}
@@ -0,0 +1,212 @@
+package scr;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Legge un file .scrbin scritto da BinaryRecordingWriter mappandolo in memoria.
+ *
+ * Ogni blocco è mappato separatamente, quindi anche file più grandi di 2 GB
+ * sono leggibili. Le colonne di un blocco vengono restituite come FloatBuffer
+ * o DoubleBuffer che puntano direttamente alla mappa, senza copie.
+ * Un blocco finale troncato (sessione interrotta) viene ignorato.
+ */
+public class BinaryRecordingReader implements AutoCloseable {
+
+    private final FileChannel channel;
+    private final String[] names;
+    private final byte[] types;
+    private final long[] blockPositions;
+    private final int[] blockRows;
+    private final long[] firstRow; // indice globale della prima riga di ogni blocco
+    private final MappedByteBuffer[] blocks;
+    private final long rowCount;
+
+    public BinaryRecordingReader(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        long size = channel.size();
+
+        ByteBuffer fixed = read(0, 12);
+        byte[] magic = new byte[4];
+        fixed.get(magic);
+        if (!Arrays.equals(magic, BinaryRecordingWriter.MAGIC))
+            throw new IOException(file + " non è un file .scrbin");
+        short version = fixed.getShort();
+        if (version != BinaryRecordingWriter.VERSION)
+            throw new IOException(file + ": versione " + version + " non supportata");
+        int columns = fixed.getShort();
+        int headerLength = fixed.getInt();
+
+        ByteBuffer header = read(12, headerLength - 12);
+        names = new String[columns];
+        types = new byte[columns];
+        int rowBytes = 0;
+        for (int c = 0; c < columns; c++) {
+            types[c] = header.get();
+            byte[] name = new byte[header.get() & 0xff];
+            header.get(name);
+            names[c] = new String(name, StandardCharsets.US_ASCII);
+            rowBytes += BinaryRecordingWriter.width(types[c]);
+        }
+
+        // Indice dei blocchi: basta leggere l'intestazione di ciascuno
+        long[] positions = new long[16];
+        int[] rows = new int[16];
+        int count = 0;
+        long position = headerLength;
+        while (position + BinaryRecordingWriter.BLOCK_HEADER_BYTES <= size) {
+            int n = read(position, 4).getInt();
+            long end = position + BinaryRecordingWriter.BLOCK_HEADER_BYTES + (long) n * rowBytes;
+            if (n <= 0 || end > size)
+                break;
+            if (count == positions.length) {
+                positions = Arrays.copyOf(positions, count * 2);
+                rows = Arrays.copyOf(rows, count * 2);
+            }
+            positions[count] = position;
+            rows[count] = n;
+            count++;
+            position = end;
+        }
+        blockPositions = Arrays.copyOf(positions, count);
+        blockRows = Arrays.copyOf(rows, count);
+        firstRow = new long[count];
+        long total = 0;
+        for (int b = 0; b < count; b++) {
+            firstRow[b] = total;
+            total += blockRows[b];
+        }
+        rowCount = total;
+        blocks = new MappedByteBuffer[count];
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0)
+                throw new IOException("file troncato");
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    public int columnCount() {
+        return names.length;
+    }
+
+    public String columnName(int column) {
+        return names[column];
+    }
+
+    /** @return l'indice della colonna con quel nome, oppure -1 */
+    public int columnIndex(String name) {
+        for (int c = 0; c < names.length; c++) {
+            if (names[c].equals(name))
+                return c;
+        }
+        return -1;
+    }
+
+    public byte columnType(int column) {
+        return types[column];
+    }
+
+    public long rowCount() {
+        return rowCount;
+    }
+
+    public int blockCount() {
+        return blockRows.length;
+    }
+
+    public int blockRows(int block) {
+        return blockRows[block];
+    }
+
+    /** Colonna float32 di un blocco, senza copie */
+    public FloatBuffer floatColumn(int column, int block) throws IOException {
+        if (types[column] != BinaryRecordingWriter.FLOAT32)
+            throw new IllegalArgumentException(names[column] + " non è float32");
+        return slice(column, block).asFloatBuffer();
+    }
+
+    /** Colonna float64 di un blocco, senza copie */
+    public DoubleBuffer doubleColumn(int column, int block) throws IOException {
+        if (types[column] != BinaryRecordingWriter.FLOAT64)
+            throw new IllegalArgumentException(names[column] + " non è float64");
+        return slice(column, block).asDoubleBuffer();
+    }
+
+    private ByteBuffer slice(int column, int block) throws IOException {
+        ByteBuffer map = map(block);
+        int n = blockRows[block];
+        int offset = BinaryRecordingWriter.BLOCK_HEADER_BYTES;
+        for (int c = 0; c < column; c++)
+            offset += n * BinaryRecordingWriter.width(types[c]);
+        ByteBuffer slice = map.duplicate();
+        slice.position(offset).limit(offset + n * BinaryRecordingWriter.width(types[column]));
+        return slice.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private MappedByteBuffer map(int block) throws IOException {
+        MappedByteBuffer map = blocks[block];
+        if (map == null) {
+            int rowBytes = 0;
+            for (byte type : types)
+                rowBytes += BinaryRecordingWriter.width(type);
+            long length = BinaryRecordingWriter.BLOCK_HEADER_BYTES + (long) blockRows[block] * rowBytes;
+            map = channel.map(FileChannel.MapMode.READ_ONLY, blockPositions[block], length);
+            map.order(ByteOrder.LITTLE_ENDIAN);
+            blocks[block] = map;
+        }
+        return map;
+    }
+
+    /** Valore di una singola cella (comodo ma più lento dell'accesso per blocchi) */
+    public double get(int column, long row) throws IOException {
+        if (column < 0 || column >= types.length)
+            throw new IndexOutOfBoundsException("colonna " + column + " su " + types.length);
+        if (row < 0 || row >= rowCount)
+            throw new IndexOutOfBoundsException("riga " + row + " su " + rowCount);
+        int block = Arrays.binarySearch(firstRow, row);
+        if (block < 0)
+            block = -block - 2;
+        int i = (int) (row - firstRow[block]);
+        ByteBuffer map = map(block);
+        int offset = BinaryRecordingWriter.BLOCK_HEADER_BYTES;
+        int n = blockRows[block];
+        for (int c = 0; c < column; c++)
+            offset += n * BinaryRecordingWriter.width(types[c]);
+        if (types[column] == BinaryRecordingWriter.FLOAT32)
+            return map.getFloat(offset + i * 4);
+        return map.getDouble(offset + i * 8);
+    }
+
+    /** Copia un'intera colonna in un array (dst deve avere almeno rowCount() elementi) */
+    public void copyColumn(int column, float[] dst) throws IOException {
+        int pos = 0;
+        for (int b = 0; b < blockRows.length; b++) {
+            if (types[column] == BinaryRecordingWriter.FLOAT32) {
+                floatColumn(column, b).get(dst, pos, blockRows[b]);
+            } else {
+                DoubleBuffer values = doubleColumn(column, b);
+                for (int i = 0; i < blockRows[b]; i++)
+                    dst[pos + i] = (float) values.get(i);
+            }
+            pos += blockRows[b];
+        }
+    }
+
+    public void close() throws IOException {
+        channel.close();
+    }
+}
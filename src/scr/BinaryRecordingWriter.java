@@ -0,0 +1,156 @@
+package scr;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Scrive una registrazione nel formato binario a colonne (.scrbin).
+ *
+ * Formato (tutto little-endian):
+ * <pre>
+ * header:  "SCRB" | int16 versione | int16 numero colonne | int32 lunghezza header
+ *          per ogni colonna: byte tipo (1 = float32, 2 = float64) | byte lunghezza nome | nome ASCII
+ *          padding fino a un multiplo di 8 byte
+ * blocchi: int32 righe | int32 riservato
+ *          per ogni colonna: righe * (4 o 8) byte, contigui
+ * </pre>
+ * Le righe vengono accumulate in un blocco in memoria organizzato per colonne e
+ * il blocco completo viene accodato al file con un FileChannel. Dentro un blocco
+ * ogni colonna è un array contiguo, quindi BinaryRecordingReader può esporla
+ * come buffer senza copie.
+ *
+ * flush() accoda le righe in sospeso come blocco corto (il formato lo
+ * prevede già per l'ultimo blocco), ma al più una volta ogni
+ * FLUSH_INTERVAL_NANOS: la scrittura asincrona di DataWriter chiama flush dopo
+ * ogni gruppo di righe e blocchi da una riga renderebbero la lettura lenta.
+ * Se il processo viene ucciso si perdono al più le righe dell'ultimo secondo.
+ */
+public class BinaryRecordingWriter implements RecordingSink {
+
+    public static final byte[] MAGIC = { 'S', 'C', 'R', 'B' };
+    public static final short VERSION = 1;
+    public static final byte FLOAT32 = 1;
+    public static final byte FLOAT64 = 2;
+    public static final int BLOCK_HEADER_BYTES = 8;
+    public static final int DEFAULT_BLOCK_ROWS = 1024;
+    public static final long FLUSH_INTERVAL_NANOS = 1000000000L;
+
+    private final FileChannel channel;
+    private final byte[] types;
+    private final int[] columnOffsets; // offset di ogni colonna dentro il blocco
+    private final int blockRows;
+    private final ByteBuffer block;
+    private int rows = 0;
+    private long rowsWritten = 0;
+    private long lastBlockNanos = System.nanoTime();
+
+    /** Tutte le colonne float32 */
+    public BinaryRecordingWriter(Path file, String[] columns) throws IOException {
+        this(file, columns, uniformTypes(columns.length, FLOAT32), DEFAULT_BLOCK_ROWS);
+    }
+
+    public BinaryRecordingWriter(Path file, String[] columns, byte[] types, int blockRows) throws IOException {
+        if (columns.length != types.length)
+            throw new IllegalArgumentException("colonne e tipi di lunghezza diversa");
+        this.types = types.clone();
+        this.blockRows = blockRows;
+
+        columnOffsets = new int[columns.length];
+        int size = BLOCK_HEADER_BYTES;
+        for (int c = 0; c < columns.length; c++) {
+            columnOffsets[c] = size;
+            size += blockRows * width(types[c]);
+        }
+        block = ByteBuffer.allocateDirect(size).order(ByteOrder.LITTLE_ENDIAN);
+
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        writeHeader(columns);
+    }
+
+    private void writeHeader(String[] columns) throws IOException {
+        int length = 12;
+        for (String name : columns)
+            length += 2 + name.length();
+        length = (length + 7) & ~7;
+
+        ByteBuffer header = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(MAGIC).putShort(VERSION).putShort((short) columns.length).putInt(length);
+        for (int c = 0; c < columns.length; c++) {
+            byte[] name = columns[c].getBytes(StandardCharsets.US_ASCII);
+            header.put(types[c]).put((byte) name.length).put(name);
+        }
+        header.position(length);
+        header.flip();
+        while (header.hasRemaining())
+            channel.write(header);
+    }
+
+    public void writeRow(double[] values, int off) throws IOException {
+        for (int c = 0; c < types.length; c++) {
+            if (types[c] == FLOAT32)
+                block.putFloat(columnOffsets[c] + rows * 4, (float) values[off + c]);
+            else
+                block.putDouble(columnOffsets[c] + rows * 8, values[off + c]);
+        }
+        if (++rows == blockRows)
+            writeBlock();
+    }
+
+    // Accoda il blocco corrente al file, compattando le colonne se il blocco non è pieno
+    private void writeBlock() throws IOException {
+        if (rows == 0)
+            return;
+        block.putInt(0, rows);
+        block.putInt(4, 0);
+        if (rows < blockRows) {
+            int dst = BLOCK_HEADER_BYTES;
+            for (int c = 0; c < types.length; c++) {
+                int bytes = rows * width(types[c]);
+                for (int i = 0; i < bytes; i++)
+                    block.put(dst + i, block.get(columnOffsets[c] + i));
+                dst += bytes;
+            }
+            block.limit(dst);
+        } else {
+            block.limit(block.capacity());
+        }
+        block.position(0);
+        while (block.hasRemaining())
+            channel.write(block);
+        block.clear();
+        rowsWritten += rows;
+        rows = 0;
+        lastBlockNanos = System.nanoTime();
+    }
+
+    public long rowsWritten() {
+        return rowsWritten + rows;
+    }
+
+    /** Scrive le righe in sospeso come blocco corto, se l'ultimo blocco è più vecchio di FLUSH_INTERVAL_NANOS */
+    public void flush() throws IOException {
+        if (rows > 0 && System.nanoTime() - lastBlockNanos >= FLUSH_INTERVAL_NANOS)
+            writeBlock();
+    }
+
+    public void close() throws IOException {
+        writeBlock();
+        channel.close();
+    }
+
+    static int width(byte type) {
+        return type == FLOAT64 ? 8 : 4;
+    }
+
+    static byte[] uniformTypes(int n, byte type) {
+        byte[] types = new byte[n];
+        java.util.Arrays.fill(types, type);
+        return types;
+    }
+}
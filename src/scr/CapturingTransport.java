@@ -0,0 +1,78 @@
+package scr;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Transport che registra in una SessionCapture tutto quello che passa: ogni
+ * datagramma ricevuto e ogni messaggio inviato, con l'istante di ricezione o
+ * di invio. Avvolge SocketHandler o NioSocketHandler (opzione capture:file di
+ * Client); nel loop di guida costa una copia di byte per messaggio.
+ *
+ * Un errore di scrittura disattiva la registrazione ma non ferma la guida.
+ */
+public class CapturingTransport implements Transport {
+
+	private final Transport transport;
+	private SessionCapture capture;
+
+	public CapturingTransport(Transport transport, SessionCapture capture) {
+		this.transport = transport;
+		this.capture = capture;
+	}
+
+	public void send(String msg) {
+		byte[] bytes = msg.getBytes(StandardCharsets.US_ASCII);
+		record(SessionCapture.SENT, bytes, 0, bytes.length);
+		transport.send(msg);
+	}
+
+	public void send(byte[] buf, int off, int len) {
+		record(SessionCapture.SENT, buf, off, len);
+		transport.send(buf, off, len);
+	}
+
+	public String receive(int timeout) {
+		String msg = transport.receive(timeout);
+		if (msg != null) {
+			byte[] bytes = msg.getBytes(StandardCharsets.US_ASCII);
+			record(SessionCapture.RECEIVED, bytes, 0, bytes.length);
+		}
+		return msg;
+	}
+
+	public int receive(byte[] dst, int timeout) {
+		int len = transport.receive(dst, timeout);
+		if (len >= 0)
+			record(SessionCapture.RECEIVED, dst, 0, len);
+		return len;
+	}
+
+	private void record(byte direction, byte[] buf, int off, int len) {
+		if (capture == null)
+			return;
+		try {
+			capture.record(direction, buf, off, len, System.nanoTime());
+		} catch (IOException e) {
+			System.err.println("Registrazione della sessione interrotta: " + e.getMessage());
+			closeCapture();
+		}
+	}
+
+	public void close() {
+		transport.close();
+		closeCapture();
+	}
+
+	private void closeCapture() {
+		if (capture == null)
+			return;
+		try {
+			System.out.println("Sessione registrata: " + capture.records() + " messaggi, " + capture.size() + " byte");
+			capture.close();
+		} catch (IOException e) {
+			System.err.println("Errore durante la chiusura della registrazione: " + e.getMessage());
+		}
+		capture = null;
+	}
+}
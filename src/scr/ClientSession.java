@@ -0,0 +1,543 @@
+package scr;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.CompilationMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.StringTokenizer;
+import scr.Controller.Stage;
+
+/**
+ * Una sessione di guida: una connessione al server, un'istanza del driver e
+ * le sue statistiche. Contiene quello che prima era lo stato statico di Client,
+ * così più sessioni possono girare nella stessa JVM (vedi MultiClient).
+ *
+ * @author Daniele Loiacono (modificato per supportare HumanDriver e altri driver)
+ *
+ */
+public class ClientSession implements Runnable {
+
+    private static final int UDP_TIMEOUT = 10000;
+
+    // Nome della classe del driver (es. scr.HumanDriver)
+    private final String driverClass;
+
+    // Opzioni della sessione, con i valori predefiniti
+    private int port = 3001;
+    private String host = "localhost";
+    private String clientId = "SCR";
+    private boolean verbose = false;
+    private int maxEpisodes = 1;
+    private int maxSteps = 0;
+    private Stage stage = Stage.UNKNOWN;
+    private String trackName = "unknown";
+    private boolean nioTransport = false;
+    private boolean busyPoll = false;
+    // Scadenza di un tick (ricezione -> invio), come il timeout del server SCR
+    private int deadlineMillis = 10;
+    // File CSV con i tempi delle fasi, scritto allo shutdown (null = solo stampa)
+    private String statsFile = null;
+    // Scadenza di driver.control() in ms (0 = senza DeadlineGuardedController) e riserva
+    private double guardMillis = 0;
+    private String fallback = "simple";
+    // Tick di warm-up del JIT prima dell'identificazione (0 = nessuno) e driver usato (null = lo stesso)
+    private int warmupTicks = 0;
+    private String warmupDriver = null;
+    // File in cui registrare tutti i messaggi scambiati con il server (null = nessuna registrazione)
+    private String captureFile = null;
+
+    // Marcatori di controllo del server, cercati direttamente nei byte ricevuti
+    private static final byte[] SHUTDOWN_MARKER = "***shutdown***".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] RESTART_MARKER = "***restart***".getBytes(StandardCharsets.US_ASCII);
+
+    // Flag per indicare se il driver è in modalità di guida autonoma o raccolta dati
+    private boolean guidaAutonoma = false; // Default: modalità manuale/raccolta dati per HumanDriver
+
+    // Statistiche della sessione
+    private long totalSteps = 0;
+    private long episodesRun = 0;
+    private long timeouts = 0;
+
+    public ClientSession(String driverClass) {
+        this.driverClass = driverClass;
+    }
+
+    /**
+     * Crea una sessione dagli argomenti di Client: args[0] è la classe del driver,
+     * gli altri sono opzioni nel formato nome:valore.
+     */
+    public static ClientSession fromArgs(String[] args) {
+        ClientSession session = new ClientSession(args[0]);
+        for (int i = 1; i < args.length; i++) {
+            session.setOption(args[i]);
+        }
+        return session;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public void setPort(int port) {
+        this.port = port;
+    }
+
+    public String getStatsFile() {
+        return statsFile;
+    }
+
+    public void setStatsFile(String statsFile) {
+        this.statsFile = statsFile;
+    }
+
+    public String getCaptureFile() {
+        return captureFile;
+    }
+
+    public void setCaptureFile(String captureFile) {
+        this.captureFile = captureFile;
+    }
+
+    /**
+     * Esegue la sessione: identificazione, episodi di guida e shutdown del driver.
+     * @throws IllegalArgumentException se il driver (o la riserva di guard:MS) non si può caricare.
+     * @throws UncheckedIOException per un errore di rete o dei file della sessione.
+     */
+    public void run() {
+        // Dichiarazione della variabile per i messaggi in ingresso
+        String inMsg; 
+
+        try {
+            // Inizializzazione del gestore della socket per comunicare con TORCS
+            Transport mySocket = nioTransport ? new NioSocketHandler(host, port, verbose, busyPoll)
+                    : new SocketHandler(host, port, verbose);
+            // Con capture:file ogni datagramma ricevuto e inviato finisce in una SessionCapture
+            if (captureFile != null) {
+                mySocket = new CapturingTransport(mySocket,
+                        new SessionCapture(Paths.get(captureFile), SessionCapture.DEFAULT_SEGMENT_MB));
+                System.out.println("Registrazione della sessione in " + captureFile);
+            }
+            
+            // Caricamento dinamico del driver specificato come primo argomento (es. scr.HumanDriver);
+            // se non si può caricare load lancia IllegalArgumentException e la sessione termina qui
+            Controller driver = load(driverClass); 
+
+            // Con warmup:N il percorso caldo viene compilato prima di parlare con il server.
+            // È solo un'ottimizzazione: se non si può fare la sessione parte lo stesso
+            int warmedUp = 0;
+            if (warmupTicks > 0) {
+                try {
+                    if (warmUp(driver))
+                        warmedUp = warmupTicks;
+                } catch (Exception e) {
+                    System.err.println("Warm-up saltato: " + e);
+                }
+            }
+
+            // Con guard:MS il driver gira sotto scadenza, con un'azione di riserva
+            if (guardMillis > 0) {
+                driver = new DeadlineGuardedController(driver, loadFallback(), (long) (guardMillis * 1000000L));
+            }
+
+            // Imposta lo stadio e il nome della pista per il driver
+            driver.setStage(stage);
+            driver.setTrackName(trackName);
+
+            /* Costruzione della stringa di inizializzazione per TORCS */
+            // Gli angoli iniziali dei sensori del driver
+            float[] angles = driver.initAngles(); 
+            String initStr = clientId + "(init";
+            for (int i = 0; i < angles.length; i++) {
+                initStr = initStr + " " + angles[i];
+            }
+            initStr = initStr + ")";
+
+            long curEpisode = 0;
+            boolean shutdownOccurred = false;
+
+            // Frame dei sensori riutilizzato ad ogni tick (niente Hashtable/Double per messaggio)
+            SensorFrame sensors = new SensorFrame();
+            // Buffer di ricezione riutilizzato: i byte vanno direttamente al parser
+            byte[] inBuf = new byte[4096];
+            // Codifica delle azioni in un buffer riutilizzato (niente String per tick)
+            ActionEncoder encoder = new ActionEncoder();
+            byte[] outBuf = new byte[ActionEncoder.MAX_MESSAGE_LENGTH];
+            // Tempi delle fasi del tick (istogrammi a memoria fissa)
+            TickStats stats = new TickStats(deadlineMillis * 1000000L);
+            // Durata dei tick del primo giro (ricezione -> invio), per confrontare con e senza warm-up
+            LatencyHistogram firstLap = new LatencyHistogram();
+            boolean firstLapDone = false;
+            
+            // Loop principale per gli episodi di guida
+            do {
+                /*
+                 * Fase di identificazione del client con il server TORCS
+                 */
+                do {
+                    mySocket.send(initStr); // Invia la stringa di inizializzazione
+                    inMsg = mySocket.receive(UDP_TIMEOUT); // Attende la risposta con timeout
+                } while (inMsg == null || inMsg.indexOf("***identified***") < 0); // Ripete finché non è identificato
+
+                /*
+                 * Inizia la guida
+                 */
+                long currStep = 0;
+                while (true) { // Loop per i passi di simulazione all'interno di un episodio
+                    /*
+                     * Riceve dal server TORCS lo stato del gioco (sensori)
+                     */
+                    long waitStart = System.nanoTime();
+                    int inLen = mySocket.receive(inBuf, UDP_TIMEOUT); // Riceve i dati dei sensori con timeout
+                    long received = System.nanoTime();
+
+                    if (inLen >= 0) {
+                        /*
+                         * Controlla se la gara è terminata (shutdown)
+                         */
+                        if (contains(inBuf, inLen, SHUTDOWN_MARKER)) {
+                            shutdownOccurred = true;
+                            System.out.println("Server shutdown!");
+                            break; // Esce dal loop interno
+                        }
+
+                        /*
+                         * Controlla se la gara è stata riavviata
+                         */
+                        if (contains(inBuf, inLen, RESTART_MARKER)) {
+                            driver.reset(); // Resetta lo stato del driver
+                            if (verbose) {
+                                System.out.println("Server restarting!");
+                            }
+                            break; // Esce dal loop interno per ricominciare l'identificazione
+                        }
+
+                        // Il driver calcola l'azione da intraprendere basandosi sui dati dei sensori
+                        Action action;
+                        long parsed, controlled;
+                        if (currStep < maxSteps || maxSteps == 0) {
+                            sensors.parse(inBuf, 0, inLen);
+                            parsed = System.nanoTime();
+                            action = driver.control(sensors);
+                            controlled = System.nanoTime();
+                        } else {
+                            parsed = controlled = received;
+                            action = new Action();
+                            action.restartRace = true; // Se si supera maxSteps, richiede il riavvio
+                        }
+
+                        currStep++;
+                        totalSteps++;
+                        int outLen = encoder.encode(action, outBuf, 0);
+                        long encoded = System.nanoTime();
+                        mySocket.send(outBuf, 0, outLen); // Invia l'azione calcolata al server
+                        long sent = System.nanoTime();
+                        stats.record(waitStart, received, parsed, controlled, encoded, sent);
+                        if (!firstLapDone) {
+                            firstLapDone = sensors.getLastLapTime() > 0;
+                            if (!firstLapDone && parsed != received)
+                                firstLap.record(sent - received);
+                        }
+                    } else {
+                        System.out.println("Il server non ha risposto entro il timeout.");
+                        timeouts++;
+                        break; // Esce dal loop interno in caso di timeout prolungato
+                    }
+                }
+
+                episodesRun++;
+                stats.endEpisode();
+                firstLapDone = true; // il primo giro conta solo nel primo episodio
+            } while (++curEpisode < maxEpisodes && !shutdownOccurred); // Continua per il numero di episodi o finché non c'è shutdown
+
+            /*
+             * Shutdown del controller e chiusura della socket
+             */
+            driver.shutdown();
+            mySocket.close(); 
+            System.out.println("Sessione porta " + port + ": episodi " + episodesRun + ", passi " + totalSteps
+                    + ", timeout " + timeouts + ", scadenze mancate " + stats.getDeadlineMisses());
+            stats.print("Sessione porta " + port);
+            if (firstLap.count() > 0) {
+                System.out.println(String.format(
+                        "Primo giro (warm-up %s): %d tick, us p50 %.1f  p99 %.1f  max %.1f",
+                        warmedUp > 0 ? warmedUp + " tick" : "no", firstLap.count(),
+                        firstLap.percentile(0.50) / 1000.0, firstLap.percentile(0.99) / 1000.0,
+                        firstLap.max() / 1000.0));
+            }
+            if (statsFile != null) {
+                stats.write(statsFile);
+                System.out.println("Tempi delle fasi salvati in " + statsFile);
+            }
+            System.out.println("Client spento.");
+            System.out.println("Arrivederci!");
+            
+        } catch (IOException e) { 
+            // Errori di rete o dei file della sessione: li riporta chi ha avviato la sessione
+            // (Client.main ne fa un codice di uscita, MultiClient li segnala per auto)
+            throw new UncheckedIOException("Sessione porta " + port + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Imposta un'opzione della sessione nel formato nome:valore (vedi Client.main).
+     * @param arg L'opzione da riga di comando.
+     * @throws IllegalArgumentException se l'opzione è sconosciuta o il valore non è valido:
+     *         decide il chiamante se uscire (con MultiClient le altre auto non vanno fermate da qui)
+     */
+    public void setOption(String arg) {
+        StringTokenizer st = new StringTokenizer(arg, ":");
+        String entity = st.nextToken();
+        String value = st.hasMoreTokens() ? st.nextToken() : null; // Assicura che ci sia un valore
+
+        try {
+            applyOption(entity, value);
+        } catch (NumberFormatException e) {
+            throw invalid(entity, value);
+        }
+    }
+
+    private void applyOption(String entity, String value) {
+        if (entity.equals("port")) {
+            port = Integer.parseInt(value);
+        } else if (entity.equals("host")) {
+            host = value;
+        } else if (entity.equals("id")) {
+            clientId = value;
+        } else if (entity.equals("verbose")) {
+            if (value != null && value.equals("on")) {
+                verbose = true;
+            } else if (value != null && value.equals("off")) {
+                verbose = false;
+            } else {
+                throw invalid(entity, value);
+            }
+        } else if (entity.equals("stage")) {
+            stage = Stage.fromInt(Integer.parseInt(value));
+        } else if (entity.equals("trackName")) {
+            trackName = value;
+        } else if (entity.equals("maxEpisodes")) {
+            maxEpisodes = Integer.parseInt(value);
+            if (maxEpisodes <= 0) {
+                throw invalid(entity, value);
+            }
+        } else if (entity.equals("maxSteps")) {
+            maxSteps = Integer.parseInt(value);
+            if (maxSteps < 0) {
+                throw invalid(entity, value);
+            }
+        } else if (entity.equals("transport")) {
+            if (value != null && value.equals("nio")) {
+                nioTransport = true;
+            } else if (value != null && value.equals("udp")) {
+                nioTransport = false;
+            } else {
+                throw invalid(entity, value);
+            }
+        } else if (entity.equals("busyPoll")) {
+            if (value != null && value.equals("on")) {
+                busyPoll = true;
+            } else if (value != null && value.equals("off")) {
+                busyPoll = false;
+            } else {
+                throw invalid(entity, value);
+            }
+        } else if (entity.equals("deadline")) {
+            deadlineMillis = Integer.parseInt(value);
+            if (deadlineMillis <= 0) {
+                throw invalid(entity, value);
+            }
+        } else if (entity.equals("stats")) {
+            statsFile = value;
+        } else if (entity.equals("guard")) {
+            guardMillis = Double.parseDouble(value);
+            if (guardMillis < 0) {
+                throw invalid(entity, value);
+            }
+        } else if (entity.equals("fallback")) {
+            if (value == null) {
+                throw invalid(entity, value);
+            }
+            fallback = value;
+        } else if (entity.equals("warmup")) {
+            warmupTicks = Integer.parseInt(value);
+            if (warmupTicks < 0) {
+                throw invalid(entity, value);
+            }
+        } else if (entity.equals("warmupDriver")) {
+            if (value == null) {
+                throw invalid(entity, value);
+            }
+            warmupDriver = value;
+        } else if (entity.equals("capture")) {
+            if (value == null) {
+                throw invalid(entity, value);
+            }
+            captureFile = value;
+        } else if (entity.equals("guidaAutonoma")) { 
+            // Parsa il valore booleano per il flag guidaAutonoma
+            guidaAutonoma = Boolean.parseBoolean(value);
+        } else {
+            throw new IllegalArgumentException("Opzione sconosciuta: " + entity + ":" + value);
+        }
+    }
+
+    private static IllegalArgumentException invalid(String entity, String value) {
+        return new IllegalArgumentException(entity + ":" + value + " non è un'opzione valida.");
+    }
+
+    /**
+     * Cerca la sequenza pattern nei primi len byte di buf.
+     */
+    private static boolean contains(byte[] buf, int len, byte[] pattern) {
+        outer: for (int i = 0; i + pattern.length <= len; i++) {
+            for (int k = 0; k < pattern.length; k++) {
+                if (buf[i + k] != pattern[k])
+                    continue outer;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Esegue warmupTicks tick finti (parsing -> control() -> codifica) sui messaggi
+     * di SensorMessageLog, con un driver usa e getta, così i metodi caldi sono già
+     * compilati da C2 quando arrivano i primi tick veri (la partenza, con la frizione).
+     * Il driver della sessione non viene toccato.
+     * @return false se non c'è un driver usa e getta adatto (warm-up saltato)
+     */
+    private boolean warmUp(Controller sessionDriver) throws IOException, ReflectiveOperationException {
+        Controller warm = loadWarmupDriver(sessionDriver);
+        if (warm == null)
+            return false;
+        List<String> log = SensorMessageLog.load(null);
+        byte[][] messages = new byte[log.size()][];
+        for (int i = 0; i < messages.length; i++)
+            messages[i] = log.get(i).getBytes(StandardCharsets.US_ASCII);
+
+        warm.setStage(stage);
+        warm.setTrackName(trackName);
+        SensorFrame sensors = new SensorFrame();
+        ActionEncoder encoder = new ActionEncoder();
+        byte[] outBuf = new byte[ActionEncoder.MAX_MESSAGE_LENGTH];
+
+        // costo per tick all'inizio (interprete/C1) e alla fine (C2) del warm-up
+        int window = Math.max(1, Math.min(1000, warmupTicks / 4));
+        LatencyHistogram cold = new LatencyHistogram();
+        LatencyHistogram hot = new LatencyHistogram();
+        CompilationMXBean jit = ManagementFactory.getCompilationMXBean();
+        boolean jitTime = jit != null && jit.isCompilationTimeMonitoringSupported();
+        long jitStart = jitTime ? jit.getTotalCompilationTime() : 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < warmupTicks; i++) {
+            byte[] msg = messages[i % messages.length];
+            long t0 = System.nanoTime();
+            sensors.parse(msg, 0, msg.length);
+            encoder.encode(warm.control(sensors), outBuf, 0);
+            long dt = System.nanoTime() - t0;
+            if (i < window)
+                cold.record(dt);
+            else if (i >= warmupTicks - window)
+                hot.record(dt);
+        }
+        long elapsed = System.nanoTime() - start;
+        // i driver usa e getta dei driver noti non registrano nulla; quello indicato con warmupDriver va chiuso
+        if (warmupDriver != null && !builtIn(warmupDriver))
+            warm.shutdown();
+
+        System.out.println(String.format(
+                "Warm-up: %d tick con %s in %.1f ms%s; tick us primi %d: p50 %.1f p99 %.1f, ultimi %d: p50 %.1f p99 %.1f",
+                warmupTicks, warm.getClass().getSimpleName(), elapsed / 1e6,
+                jitTime ? String.format(" (JIT %d ms)", jit.getTotalCompilationTime() - jitStart) : "",
+                cold.count(), cold.percentile(0.50) / 1000.0, cold.percentile(0.99) / 1000.0,
+                hot.count(), hot.percentile(0.50) / 1000.0, hot.percentile(0.99) / 1000.0));
+        return true;
+    }
+
+    /**
+     * Driver per il warm-up: warmupDriver o la classe della sessione. SimpleDriver e
+     * HumanDriver vengono creati senza registrazione (e senza finestra), KnnDriver e
+     * NeuralDriver condividono indice e pesi del driver della sessione. Un'altra classe
+     * viene creata solo se indicata esplicitamente con warmupDriver (e chiusa alla
+     * fine): il suo costruttore potrebbe registrare, aprire finestre o caricare modelli.
+     * @return null se il warm-up non si può fare con un driver usa e getta
+     */
+    private Controller loadWarmupDriver(Controller sessionDriver) throws ReflectiveOperationException {
+        String name = warmupDriver != null ? warmupDriver : driverClass;
+        if (name.equals(SimpleDriver.class.getName()))
+            return sessionDriver instanceof SimpleDriver
+                    ? new SimpleDriver(null, ((SimpleDriver) sessionDriver).getParams()) : new SimpleDriver(null);
+        if (name.equals(HumanDriver.class.getName()))
+            return new HumanDriver(null, false);
+        if (name.equals(KnnDriver.class.getName()) && sessionDriver instanceof KnnDriver)
+            return ((KnnDriver) sessionDriver).sharingIndex();
+        if (name.equals(NeuralDriver.class.getName()) && sessionDriver instanceof NeuralDriver)
+            return ((NeuralDriver) sessionDriver).sharingModel();
+        if (warmupDriver != null && !builtIn(name))
+            return (Controller) Class.forName(name).getConstructor().newInstance();
+        System.err.println("Warm-up saltato: " + name + " non si può creare come driver usa e getta"
+                + " (indicare warmupDriver:scr.SimpleDriver o un'altra classe)");
+        return null;
+    }
+
+    // driver del repository che loadWarmupDriver sa creare senza effetti collaterali
+    private static boolean builtIn(String name) {
+        return name.equals(SimpleDriver.class.getName()) || name.equals(HumanDriver.class.getName())
+                || name.equals(KnnDriver.class.getName()) || name.equals(NeuralDriver.class.getName());
+    }
+
+    /**
+     * Controller di riserva per guard:MS: "last" ripete l'ultima azione valida,
+     * "simple" usa un SimpleDriver senza registrazione, altrimenti il nome di una classe.
+     */
+    private Controller loadFallback() {
+        if (fallback.equals("last"))
+            return null;
+        if (fallback.equals("simple"))
+            return new SimpleDriver(null);
+        return load(fallback);
+    }
+
+    /**
+     * Carica dinamicamente un'istanza del driver specificato dal nome della classe.
+     * Tenta prima un costruttore con un parametro boolean, poi uno senza parametri.
+     * @param name Il nome completo della classe del driver (es. "scr.HumanDriver").
+     * @return Un'istanza del Controller (il driver).
+     * @throws IllegalArgumentException se la classe non esiste, non ha uno dei due costruttori
+     *         o il costruttore fallisce (la causa è l'eccezione originale).
+     */
+    private Controller load(String name) {
+        try {
+            Class<?> driverClass = Class.forName(name);
+            
+            // 1. Tenta di trovare e usare il costruttore con un parametro boolean
+            try {
+                Constructor<?> constructor = driverClass.getConstructor(boolean.class);
+                Controller controller = (Controller) constructor.newInstance(guidaAutonoma);
+                if (verbose) System.out.println("Driver " + name + " caricato con costruttore (boolean), guidaAutonoma=" + guidaAutonoma);
+                return controller;
+            } catch (NoSuchMethodException e) {
+                // 2. Se non esiste un costruttore con boolean, tenta il costruttore senza parametri
+                Controller controller = (Controller) driverClass.getConstructor().newInstance();
+                if (verbose) System.out.println("Driver " + name + " caricato con costruttore senza parametri.");
+                return controller;
+            }
+        } catch (ClassNotFoundException e) {
+            throw new IllegalArgumentException("La classe '" + name
+                    + "' non è stata trovata. Assicurati che il nome sia corretto e il file nel classpath.", e);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException("Il driver " + name
+                    + " non ha un costruttore (boolean) né un costruttore senza parametri.", e);
+        } catch (InvocationTargetException e) {
+            throw new IllegalArgumentException("Errore durante l'istanza del driver " + name + ": "
+                    + e.getCause(), e.getCause());
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            throw new IllegalArgumentException("Errore durante l'istanza del driver " + name + ": " + e, e);
+        }
+    }
+}
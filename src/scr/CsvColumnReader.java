@@ -0,0 +1,600 @@
+package scr;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.StringTokenizer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Carica una registrazione CSV (formato DataWriter) in array di colonne
+ * float[] o double[], leggendola in parallelo.
+ *
+ * Il file viene mappato in memoria e diviso in pezzi allineati agli a capo;
+ * ogni pezzo è letto da un thread di un ForkJoinPool in due passate:
+ *   1. conta le righe, così ogni pezzo sa da quale riga scrivere;
+ *   2. converte i numeri con AsciiNumbers (nessuna String, nessuna
+ *      allocazione per valore) direttamente nelle colonne, leggendo il
+ *      pezzo a finestre di 64 KB invece di copiarlo tutto sullo heap.
+ * Alla fine le righe scartate vengono compattate.
+ *
+ * Le colonne sono associate per nome all'intestazione; se il file non ha
+ * intestazione e ha DataWriter.COLUMNS campi si assume l'ordine di DataWriter,
+ * altrimenti le colonne si chiamano c0, c1, ... Un file vuoto dà zero righe e
+ * zero colonne. Sono scartate le righe vuote, quelle con un numero di campi
+ * diverso dall'intestazione, quelle non numeriche e l'ultima riga senza a capo
+ * (sessione interrotta a metà scrittura).
+ *
+ * Per file che non devono stare interi in memoria blocks() li legge in
+ * sequenza, un blocco di righe alla volta, con lo stesso parser.
+ *
+ * Uso: java scr.CsvColumnReader file1.csv [file2.csv ...] [threads:N] [precision:float|double]
+ */
+public final class CsvColumnReader {
+
+    // dimensione dei pezzi: abbastanza per ammortizzare i task, abbastanza pochi byte per thread
+    private static final long MIN_CHUNK = 1 << 20;
+    private static final long MAX_CHUNK = 16 << 20;
+    private static final int SCAN_BYTES = 64 * 1024;
+
+    private final String[] names;
+    private final float[][] floats;   // una delle due è null
+    private final double[][] doubles;
+    private final int rows;
+    private final long skipped;
+
+    private CsvColumnReader(String[] names, float[][] floats, double[][] doubles, int rows, long skipped) {
+        this.names = names;
+        this.floats = floats;
+        this.doubles = doubles;
+        this.rows = rows;
+        this.skipped = skipped;
+    }
+
+    /** Tutte le colonne in float, su tutti i core */
+    public static CsvColumnReader read(Path file) throws IOException {
+        return read(file, null, false, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Legge il file.
+     *
+     * @param columns colonne da caricare (null = tutte); quelle assenti dal file restano null
+     * @param doublePrecision true per colonne double[], false per float[]
+     * @param threads thread del ForkJoinPool
+     */
+    public static CsvColumnReader read(Path file, String[] columns, boolean doublePrecision, int threads)
+            throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            return read(file, columns, doublePrecision, pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    public static CsvColumnReader read(Path file, String[] columns, boolean doublePrecision, ForkJoinPool pool)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size == 0)
+                return new CsvColumnReader(new String[0], new float[0][], new double[0][], 0, 0);
+
+            // prima riga: intestazione o dati
+            Header header = new Header(channel, size, file);
+            long dataStart = header.dataStart;
+            String[] names = columns != null ? columns : header.names;
+            int[] target = targets(header.names, names);
+
+            // pezzi allineati all'inizio di una riga
+            long length = size - dataStart;
+            int threads = pool.getParallelism();
+            long chunk = Math.max(MIN_CHUNK, Math.min(MAX_CHUNK, length / (threads * 4L) + 1));
+            List<Long> bounds = new ArrayList<>();
+            bounds.add(dataStart);
+            for (long p = dataStart + chunk; p < size; p += chunk) {
+                long b = indexOf(channel, p, size) + 1;
+                if (b >= size)
+                    break;
+                bounds.add(b);
+                p = b;
+            }
+            bounds.add(size);
+            int chunks = bounds.size() - 1;
+            long[] start = new long[chunks + 1];
+            for (int k = 0; k <= chunks; k++)
+                start[k] = bounds.get(k);
+
+            MappedByteBuffer[] maps = new MappedByteBuffer[chunks];
+            for (int k = 0; k < chunks; k++)
+                maps[k] = channel.map(FileChannel.MapMode.READ_ONLY, start[k], start[k + 1] - start[k]);
+
+            // passata 1: righe complete per pezzo
+            int[] lines = new int[chunks];
+            submit(pool, chunks, k -> lines[k] = countLines(maps[k]));
+            int[] base = new int[chunks + 1];
+            for (int k = 0; k < chunks; k++) {
+                long next = (long) base[k] + lines[k];
+                if (next > Integer.MAX_VALUE - 8)
+                    throw new IOException(file + ": troppe righe");
+                base[k + 1] = (int) next;
+            }
+
+            int capacity = base[chunks];
+            float[][] floats = doublePrecision ? null : new float[names.length][];
+            double[][] doubles = doublePrecision ? new double[names.length][] : null;
+            for (int f = 0; f < target.length; f++) {
+                int c = target[f];
+                if (c < 0)
+                    continue;
+                if (doublePrecision)
+                    doubles[c] = new double[capacity];
+                else
+                    floats[c] = new float[capacity];
+            }
+
+            // passata 2: conversione
+            int[] valid = new int[chunks];
+            long[] bad = new long[chunks];
+            boolean terminated = lastByte(channel, size) == '\n';
+            submit(pool, chunks, k -> {
+                ChunkParser parser = new ChunkParser(target, floats, doubles);
+                parser.parse(maps[k], base[k], k == chunks - 1 && !terminated);
+                valid[k] = parser.rows;
+                bad[k] = parser.skipped;
+            });
+
+            // compattazione: le righe scartate lasciano un buco in fondo a ogni pezzo
+            int rows = 0;
+            long skipped = 0;
+            for (int k = 0; k < chunks; k++) {
+                if (rows != base[k]) {
+                    for (int c = 0; c < names.length; c++) {
+                        if (floats != null && floats[c] != null)
+                            System.arraycopy(floats[c], base[k], floats[c], rows, valid[k]);
+                        if (doubles != null && doubles[c] != null)
+                            System.arraycopy(doubles[c], base[k], doubles[c], rows, valid[k]);
+                    }
+                }
+                rows += valid[k];
+                skipped += bad[k];
+            }
+            return new CsvColumnReader(names.clone(), floats, doubles, rows, skipped);
+        }
+    }
+
+    /** Prima riga del file: nomi dei campi e inizio dei dati */
+    private static final class Header {
+        final String[] names;
+        final long dataStart;
+
+        // intestazione se la riga comincia con una lettera; altrimenti sono già dati e i campi prendono
+        // i nomi di DataWriter (se sono tanti quanti le sue colonne) o c0, c1, ...
+        Header(FileChannel channel, long size, Path file) throws IOException {
+            long firstEnd = indexOf(channel, 0, size);
+            if (firstEnd > Integer.MAX_VALUE)
+                throw new IOException(file + ": prima riga troppo lunga");
+            ByteBuffer first = ByteBuffer.allocate((int) firstEnd);
+            while (first.hasRemaining()) {
+                if (channel.read(first, first.position()) < 0)
+                    throw new IOException(file + ": file troncato durante la lettura");
+            }
+            String line = new String(first.array(), StandardCharsets.US_ASCII).trim();
+            String[] fields = line.split(",", -1);
+            boolean header = !line.isEmpty() && Character.isLetter(line.charAt(0));
+            names = new String[fields.length];
+            for (int f = 0; f < fields.length; f++) {
+                if (header)
+                    names[f] = fields[f].trim();
+                else
+                    names[f] = fields.length == DataWriter.COLUMNS ? DataWriter.COLUMN_NAMES[f] : "c" + f;
+            }
+            dataStart = header ? Math.min(firstEnd + 1, size) : 0;
+        }
+    }
+
+    // colonna di destinazione di ogni campo del file (-1 = non caricato)
+    private static int[] targets(String[] fileNames, String[] names) {
+        int[] target = new int[fileNames.length];
+        for (int f = 0; f < fileNames.length; f++) {
+            target[f] = -1;
+            for (int c = 0; c < names.length; c++) {
+                if (names[c].equals(fileNames[f]) && target[f] < 0)
+                    target[f] = c;
+            }
+        }
+        return target;
+    }
+
+    private interface ChunkTask {
+        void run(int chunk) throws IOException;
+    }
+
+    private static void submit(ForkJoinPool pool, int chunks, ChunkTask task) throws IOException {
+        try {
+            pool.submit(() -> IntStream.range(0, chunks).parallel().forEach(k -> {
+                try {
+                    task.run(k);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            })).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("lettura interrotta", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException)
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            throw new IOException(e.getCause());
+        }
+    }
+
+    // posizione del primo '\n' da from in poi, oppure size
+    private static long indexOf(FileChannel channel, long from, long size) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(4096);
+        long pos = from;
+        while (pos < size) {
+            buf.clear();
+            int n = channel.read(buf, pos);
+            if (n <= 0)
+                break;
+            for (int i = 0; i < n; i++) {
+                if (buf.get(i) == '\n')
+                    return pos + i;
+            }
+            pos += n;
+        }
+        return size;
+    }
+
+    private static byte lastByte(FileChannel channel, long size) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(1);
+        channel.read(buf, size - 1);
+        return buf.get(0);
+    }
+
+    private static int countLines(MappedByteBuffer map) {
+        ByteBuffer src = map.duplicate();
+        byte[] buf = new byte[SCAN_BYTES];
+        int count = 0;
+        while (src.hasRemaining()) {
+            int n = Math.min(buf.length, src.remaining());
+            src.get(buf, 0, n);
+            for (int i = 0; i < n; i++) {
+                if (buf[i] == '\n')
+                    count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Converte le righe di un pezzo nelle colonne, a partire dalla riga base.
+     * Il pezzo mappato è letto a finestre di SCAN_BYTES in un buffer riusato:
+     * la riga a cavallo di due finestre viene spostata in testa e completata
+     * dalla finestra successiva, quindi la memoria per task non dipende dalla
+     * dimensione del pezzo. Con un limite di righe (Blocks) la conversione si
+     * ferma a limit e le righe rimaste in buf aspettano il blocco successivo.
+     */
+    private static final class ChunkParser {
+        private final int[] target;
+        private final float[][] floats;
+        private final double[][] doubles;
+        private byte[] buf = new byte[SCAN_BYTES];
+        private int length;           // byte in attesa in buf
+        private int row;
+        private int limit = Integer.MAX_VALUE;
+        int rows;
+        long skipped;
+
+        ChunkParser(int[] target, float[][] floats, double[][] doubles) {
+            this.target = target;
+            this.floats = floats;
+            this.doubles = doubles;
+        }
+
+        void parse(MappedByteBuffer map, int base, boolean truncatedTail) {
+            ByteBuffer src = map.duplicate();
+            row = base;
+            while (src.hasRemaining()) {
+                grow();
+                int n = Math.min(buf.length - length, src.remaining());
+                src.get(buf, length, n);
+                length += n;
+                convert();
+            }
+            // l'ultima riga non è terminata: scritta a metà da una sessione interrotta
+            if (truncatedTail)
+                skipped++;
+        }
+
+        // Legge dal canale in coda a buf; -1 a fine file
+        int read(FileChannel channel, long position) throws IOException {
+            grow();
+            int n = channel.read(ByteBuffer.wrap(buf, length, buf.length - length), position);
+            if (n > 0)
+                length += n;
+            return n;
+        }
+
+        // una riga più lunga della finestra: il buffer raddoppia
+        private void grow() {
+            if (length == buf.length)
+                buf = Arrays.copyOf(buf, buf.length * 2);
+        }
+
+        // Converte le righe complete in attesa e sposta in testa il resto
+        void convert() {
+            int consumed = lines(length);
+            System.arraycopy(buf, consumed, buf, 0, length - consumed);
+            length -= consumed;
+        }
+
+        // Converte le righe complete in buf[0, end), al più fino alla riga limit;
+        // restituisce l'inizio della prima riga non convertita
+        private int lines(int end) {
+            int fieldCount = target.length;
+            int lineStart = 0;
+            while (row < limit) {
+                int lineEnd = lineStart;
+                while (lineEnd < end && buf[lineEnd] != '\n')
+                    lineEnd++;
+                if (lineEnd == end)
+                    return lineStart;
+                int next = lineEnd + 1;
+                if (lineEnd > lineStart && buf[lineEnd - 1] == '\r')
+                    lineEnd--;
+                if (lineEnd == lineStart) {
+                    lineStart = next;
+                    continue;
+                }
+                // i valori vengono scritti subito: se la riga è scartata la successiva li sovrascrive
+                int field = 0;
+                int from = lineStart;
+                boolean ok = true;
+                try {
+                    while (true) {
+                        int to = from;
+                        while (to < lineEnd && buf[to] != ',')
+                            to++;
+                        if (field >= fieldCount) {
+                            ok = false;
+                            break;
+                        }
+                        int c = target[field];
+                        if (c >= 0) {
+                            int a = from, b = to;
+                            while (a < b && buf[a] == ' ')
+                                a++;
+                            while (b > a && buf[b - 1] == ' ')
+                                b--;
+                            double v = AsciiNumbers.parseDouble(buf, a, b);
+                            if (floats != null)
+                                floats[c][row] = (float) v;
+                            else
+                                doubles[c][row] = v;
+                        }
+                        field++;
+                        if (to == lineEnd)
+                            break;
+                        from = to + 1;
+                    }
+                } catch (NumberFormatException e) {
+                    ok = false;
+                }
+                if (ok && field == fieldCount) {
+                    row++;
+                    rows++;
+                } else {
+                    skipped++;
+                }
+                lineStart = next;
+            }
+            return lineStart;
+        }
+    }
+
+    /**
+     * Legge il file in sequenza, a blocchi di al più blockRows righe in float,
+     * su un solo thread: la memoria è quella di un blocco qualunque sia la
+     * dimensione del file (vedi DatasetBuilder). Le regole sono quelle di read.
+     *
+     * @param columns colonne da caricare (null = tutte); quelle assenti dal file restano null
+     */
+    public static Blocks blocks(Path file, String[] columns, int blockRows) throws IOException {
+        return new Blocks(file, columns, blockRows);
+    }
+
+    /** Lettore a blocchi restituito da blocks(): next() legge il blocco successivo nelle stesse colonne */
+    public static final class Blocks implements AutoCloseable {
+        private final FileChannel channel;
+        private final String[] names;
+        private final float[][] floats;
+        private final ChunkParser parser;
+        private long position;
+        private long rows;
+        private boolean eof;
+
+        private Blocks(Path file, String[] columns, int blockRows) throws IOException {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            try {
+                long size = channel.size();
+                int[] target;
+                if (size == 0) {
+                    names = new String[0];
+                    target = new int[0];
+                    eof = true;
+                } else {
+                    Header header = new Header(channel, size, file);
+                    names = columns != null ? columns.clone() : header.names;
+                    target = targets(header.names, names);
+                    position = header.dataStart;
+                }
+                floats = new float[names.length][];
+                for (int c : target) {
+                    if (c >= 0)
+                        floats[c] = new float[blockRows];
+                }
+                parser = new ChunkParser(target, floats, null);
+                parser.limit = blockRows;
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        /** @return le righe valide del blocco successivo, 0 a fine file */
+        public int next() throws IOException {
+            parser.row = 0;
+            parser.convert(); // righe rimaste dal blocco precedente
+            while (parser.row < parser.limit && !eof) {
+                int n = parser.read(channel, position);
+                if (n < 0) {
+                    eof = true;
+                    // l'ultima riga non è terminata: scritta a metà da una sessione interrotta
+                    if (parser.length > 0)
+                        parser.skipped++;
+                    parser.length = 0;
+                } else {
+                    position += n;
+                    parser.convert();
+                }
+            }
+            rows += parser.row;
+            return parser.row;
+        }
+
+        public int columnCount() {
+            return names.length;
+        }
+
+        /**
+         * Colonna del blocco letto dall'ultimo next(), oppure null se il file non
+         * la contiene. Sono valide le prime posizioni indicate da next(); l'array
+         * è lo stesso a ogni blocco.
+         */
+        public float[] floatColumn(int column) {
+            return floats[column];
+        }
+
+        /** Righe lette finora */
+        public long rows() {
+            return rows;
+        }
+
+        /** Righe scartate finora (campi mancanti, non numeriche, ultima riga troncata) */
+        public long skippedRows() {
+            return parser.skipped;
+        }
+
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    public int rows() {
+        return rows;
+    }
+
+    /** Righe scartate (campi mancanti, non numeriche, ultima riga troncata) */
+    public long skippedRows() {
+        return skipped;
+    }
+
+    public int columnCount() {
+        return names.length;
+    }
+
+    public String columnName(int column) {
+        return names[column];
+    }
+
+    /** @return l'indice della colonna con quel nome, oppure -1 */
+    public int columnIndex(String name) {
+        for (int c = 0; c < names.length; c++) {
+            if (names[c].equals(name))
+                return c;
+        }
+        return -1;
+    }
+
+    /**
+     * Colonna in float (lettura con doublePrecision = false), oppure null se il
+     * file non la contiene. Sono valide le prime rows() posizioni.
+     */
+    public float[] floatColumn(int column) {
+        if (floats == null)
+            throw new IllegalStateException("colonne lette in double");
+        return floats[column];
+    }
+
+    /** Come floatColumn, per la lettura con doublePrecision = true */
+    public double[] doubleColumn(int column) {
+        if (doubles == null)
+            throw new IllegalStateException("colonne lette in float");
+        return doubles[column];
+    }
+
+    public float[] floatColumn(String name) {
+        int c = columnIndex(name);
+        return c < 0 ? null : floatColumn(c);
+    }
+
+    public double[] doubleColumn(String name) {
+        int c = columnIndex(name);
+        return c < 0 ? null : doubleColumn(c);
+    }
+
+    public static void main(String[] args) throws IOException {
+        List<Path> files = new ArrayList<>();
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean doublePrecision = false;
+        for (String arg : args) {
+            if (arg.indexOf(':') < 0) {
+                files.add(Paths.get(arg));
+                continue;
+            }
+            StringTokenizer st = new StringTokenizer(arg, ":");
+            String entity = st.nextToken();
+            String value = st.hasMoreTokens() ? st.nextToken() : "";
+            if (entity.equals("threads")) {
+                threads = Integer.parseInt(value);
+            } else if (entity.equals("precision")) {
+                doublePrecision = value.equals("double");
+            } else {
+                System.out.println("Opzione sconosciuta: " + arg);
+                System.exit(0);
+            }
+        }
+        if (files.isEmpty()) {
+            System.out.println("Uso: java scr.CsvColumnReader file1.csv [file2.csv ...] [threads:N]"
+                    + " [precision:float|double]");
+            return;
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            for (Path file : files) {
+                long start = System.nanoTime();
+                CsvColumnReader reader = read(file, null, doublePrecision, pool);
+                long elapsed = System.nanoTime() - start;
+                double bytes = file.toFile().length();
+                System.out.println(String.format("%s: %d righe, %d colonne, %d scartate, %.1f ms, %.0f MB/s (%d thread)",
+                        file, reader.rows(), reader.columnCount(), reader.skippedRows(), elapsed / 1e6,
+                        bytes / 1e6 / (elapsed / 1e9), threads));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
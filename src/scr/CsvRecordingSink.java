@@ -0,0 +1,65 @@
+package scr;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * Scrive le righe in formato CSV, come ha sempre fatto DataWriter:
+ * intestazione con i nomi delle colonne e valori con Double.toString
+ * (l'ultima colonna, gear, come intero).
+ */
+public class CsvRecordingSink implements RecordingSink {
+
+    private final PrintWriter writer;
+    private final String[] columns;
+    private final StringBuilder line = new StringBuilder(256);
+    private boolean headerWritten = false;
+
+    public CsvRecordingSink(String filename, String[] columns) throws IOException {
+        this.writer = new PrintWriter(new FileWriter(filename));
+        this.columns = columns;
+    }
+
+    public void writeRow(double[] values, int off) {
+        if (!headerWritten) {
+            writeHeader();
+            headerWritten = true;
+        }
+
+        StringBuilder sb = line;
+        sb.setLength(0);
+        int last = columns.length - 1;
+        for (int i = 0; i < last; i++) {
+            if (i == DataWriter.GEAR_COLUMN)
+                sb.append((int) values[off + i]).append(",");
+            else
+                sb.append(values[off + i]).append(",");
+        }
+        if (last == DataWriter.GEAR_COLUMN)
+            sb.append((int) values[off + last]);
+        else
+            sb.append(values[off + last]);
+
+        writer.println(sb);
+    }
+
+    private void writeHeader() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0)
+                sb.append(",");
+            sb.append(columns[i]);
+        }
+        writer.println(sb.toString());
+        System.out.println("DataWriter: Intestazione CSV scritta.");
+    }
+
+    public void flush() {
+        writer.flush();
+    }
+
+    public void close() {
+        writer.close();
+    }
+}
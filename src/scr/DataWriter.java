@@ -2,89 +2,318 @@
 
 package scr; // Stesso package degli altri tuoi driver
 
-import java.io.FileWriter;
+import java.io.File;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.text.SimpleDateFormat;
+import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.concurrent.locks.LockSupport;
 
 public class DataWriter {
 
-    private PrintWriter writer; // per scrivere sul file CSV
-    private boolean headerWritten = false; // per assicurarsi di scrivere l'intestazione solo una volta
+    // Cosa fare in modalità asincrona quando il buffer è pieno
+    public enum OverflowPolicy {
+        DROP,  // scarta la riga e la conta (il tick di controllo non aspetta mai)
+        BLOCK  // aspetta che il thread di scrittura liberi spazio
+    }
+
+    // Formato del file registrato
+    public enum Format {
+        CSV,    // testo, una riga per tick
+        BINARY  // colonne float32 little-endian (.scrbin), vedi BinaryRecordingWriter
+    }
+
+    // Layout di una riga: 24 features + 4 target (stesse colonne dell'header)
+    public static final int TRACK_SENSORS = 19;
+    public static final int COLUMNS = 5 + TRACK_SENSORS + 4;
+    public static final int GEAR_COLUMN = COLUMNS - 1;
+    public static final String[] COLUMN_NAMES = columnNames();
+    // Colonna aggiunta dopo gear quando il campionamento adattivo è attivo (vedi AdaptiveSampler)
+    public static final int WEIGHT_COLUMN = COLUMNS;
+    public static final String WEIGHT_NAME = "weight";
+
+    // Opzioni di default, impostabili da riga di comando con -D
+    public static final String ASYNC_PROPERTY = "scr.recording.async";
+    public static final String OVERFLOW_PROPERTY = "scr.recording.overflow";
+    public static final String BUFFER_PROPERTY = "scr.recording.bufferRows";
+    public static final String FORMAT_PROPERTY = "scr.recording.format";
+
+    private RecordingSink writer; // per scrivere sul file (CSV o binario)
+    private final double[] row = new double[COLUMNS]; // riga di appoggio (modalità sincrona e filtro)
+    private final RecordingFilter filter; // null = si registra ogni riga (vedi RecordingFilter)
+    private final AdaptiveSampler sampler; // null = nessun campionamento, niente colonna weight
+    private final int rowWidth; // COLUMNS, più la colonna weight con il campionamento
+
+    // Modalità asincrona: il tick copia i valori nel buffer, il thread scrive
+    private final RecordingRing ring;
+    private final OverflowPolicy overflowPolicy;
+    private Thread flushThread;
+    private volatile boolean closing = false;
+    private long rowsWritten = 0;
+    private long rowsDropped = 0;
 
     //creo csv
     public DataWriter(String filenamePre)  throws IOException {
+        this(filenamePre, Boolean.getBoolean(ASYNC_PROPERTY),
+                enumProperty(OVERFLOW_PROPERTY, OverflowPolicy.DROP), Integer.getInteger(BUFFER_PROPERTY, 4096),
+                enumProperty(FORMAT_PROPERTY, Format.CSV));
+    }
+
+    // Valore di una proprietà enum; un valore sconosciuto non ferma il driver: si usa il default
+    private static <E extends Enum<E>> E enumProperty(String property, E defaultValue) {
+        String value = System.getProperty(property);
+        if (value == null)
+            return defaultValue;
+        try {
+            return Enum.valueOf(defaultValue.getDeclaringClass(), value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.err.println("DataWriter: valore non valido per " + property + ": " + value + "; uso "
+                    + defaultValue.name().toLowerCase() + " (valori ammessi: "
+                    + Arrays.toString(defaultValue.getDeclaringClass().getEnumConstants()).toLowerCase() + ")");
+            return defaultValue;
+        }
+    }
+
+    public DataWriter(String filenamePre, boolean async, OverflowPolicy overflowPolicy, int bufferRows)
+            throws IOException {
+        this(filenamePre, async, overflowPolicy, bufferRows, Format.CSV);
+    }
+
+    /**
+     * @param async se true le righe vengono formattate e scritte da un thread dedicato
+     * @param overflowPolicy comportamento a buffer pieno (solo in modalità asincrona)
+     * @param bufferRows righe del buffer circolare (solo in modalità asincrona)
+     * @param format formato del file
+     */
+    public DataWriter(String filenamePre, boolean async, OverflowPolicy overflowPolicy, int bufferRows,
+            Format format) throws IOException {
         // Genera un nome di file unico usando la data e l'ora attuali.
         // Il formato "yyyyMMdd_HHmmss" crea una stringa come "20250611_122325".
         String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date());
-        String filename = filenamePre + "_" + timestamp + ".csv";
-        
-        writer = new PrintWriter(new FileWriter(filename));
-        System.out.println("File CSV aperto per scrittura: " + filename);
+        this.filter = RecordingFilter.fromProperties();
+        this.sampler = AdaptiveSampler.fromProperties();
+        String[] names = COLUMN_NAMES;
+        if (sampler != null) {
+            names = Arrays.copyOf(COLUMN_NAMES, COLUMNS + 1);
+            names[WEIGHT_COLUMN] = WEIGHT_NAME;
+        }
+        rowWidth = names.length;
+        if (format == Format.BINARY) {
+            String filename = uniqueFilename(filenamePre + "_" + timestamp, ".scrbin");
+            writer = new BinaryRecordingWriter(Paths.get(filename), names);
+            System.out.println("File binario aperto per scrittura: " + filename);
+        } else {
+            String filename = uniqueFilename(filenamePre + "_" + timestamp, ".csv");
+            writer = new CsvRecordingSink(filename, names);
+            System.out.println("File CSV aperto per scrittura: " + filename);
+        }
+
+        this.overflowPolicy = overflowPolicy;
+        if (async) {
+            ring = new RecordingRing(bufferRows, rowWidth);
+            flushThread = new Thread(this::flushLoop, "DataWriter-" + filenamePre);
+            flushThread.setDaemon(true);
+            flushThread.start();
+            System.out.println("DataWriter: scrittura asincrona (" + ring.capacity() + " righe, " + overflowPolicy
+                    + ")");
+        } else {
+            ring = null;
+        }
     }
 
     // Scrive una singola riga di dati nel file CSV.
     // Include dati e azioni.
     public void writeLine(SensorModel sensors, Action action) {
-        if (!headerWritten) {
-            writeHeader();
-            headerWritten = true; //la metto a true così la prossima volta non viene riscritta l'intestazione
+        if (filter == null && sampler == null) {
+            if (ring == null) {
+                fillRow(sensors, action, row, 0);
+                writeRow(row, 0);
+                return;
+            }
+            // Modalità asincrona: solo copia di valori primitivi, nessuna allocazione
+            int offset = claim();
+            if (offset < 0)
+                return;
+            fillRow(sensors, action, ring.data(), offset);
+            ring.publish();
+            return;
+        }
+
+        fillRow(sensors, action, row, 0);
+        if (filter != null && !filter.accept(row, 0)) {
+            // il tick scartato resta rappresentato dalla riga tenuta prima
+            if (sampler != null)
+                sampler.skip();
+            return;
+        }
+        double[] values = row;
+        if (sampler != null) {
+            // la riga consegnata è quella tenuta in precedenza, ora che se ne conosce il peso
+            values = sampler.offer(row, 0);
+            if (values == null)
+                return;
         }
+        emit(values);
+    }
+
+    // Scrive una riga già completa (rowWidth valori), direttamente o tramite il buffer
+    private void emit(double[] values) {
+        if (ring == null) {
+            writeRow(values, 0);
+            return;
+        }
+        int offset = claim();
+        if (offset < 0)
+            return;
+        System.arraycopy(values, 0, ring.data(), offset, rowWidth);
+        ring.publish();
+    }
+
+    // Posizione libera nel buffer secondo la politica di overflow; -1 se la riga va scartata
+    private int claim() {
+        int offset = ring.claim();
+        if (offset < 0) {
+            if (overflowPolicy == OverflowPolicy.DROP) {
+                rowsDropped++;
+                return -1;
+            }
+            while ((offset = ring.claim()) < 0)
+                LockSupport.parkNanos(10000);
+        }
+        return offset;
+    }
 
-        StringBuilder sb = new StringBuilder();
+    // Più driver nella stessa JVM possono aprire un file nello stesso secondo:
+    // il nome viene riservato creando il file, aggiungendo _1, _2, ... se esiste già.
+    private static String uniqueFilename(String base, String extension) throws IOException {
+        String filename = base + extension;
+        for (int i = 1; !new File(filename).createNewFile(); i++) {
+            filename = base + "_" + i + extension;
+        }
+        return filename;
+    }
 
+    /**
+     * Copia features e target nella riga dst[off .. off + COLUMNS),
+     * nello stesso ordine delle colonne dell'header.
+     */
+    public static void fillRow(SensorModel sensors, Action action, double[] dst, int off) {
         // Aggiungo features
-        sb.append(sensors.getAngleToTrackAxis()).append(",");
-        sb.append(sensors.getTrackPosition()).append(",");
-        sb.append(sensors.getSpeed()).append(",");         // Velocità longitudinale
-        sb.append(sensors.getLateralSpeed()).append(",");   // Velocità laterale
-        sb.append(sensors.getRPM()).append(",");
+        dst[off++] = sensors.getAngleToTrackAxis();
+        dst[off++] = sensors.getTrackPosition();
+        dst[off++] = sensors.getSpeed();         // Velocità longitudinale
+        dst[off++] = sensors.getLateralSpeed();  // Velocità laterale
+        dst[off++] = sensors.getRPM();
 
-        // I 19 sensori del bordo pista
-        for (double sensorValue : sensors.getTrackEdgeSensors()) {
-            sb.append(sensorValue).append(",");
+        // I 19 sensori del bordo pista; prima del primo messaggio completo
+        // (o con uno malformato) possono mancare: quelli assenti valgono -1
+        double[] track = sensors.getTrackEdgeSensors();
+        int n = track != null ? Math.min(track.length, TRACK_SENSORS) : 0;
+        for (int i = 0; i < n; i++) {
+            dst[off++] = track[i];
+        }
+        for (int i = n; i < TRACK_SENSORS; i++) {
+            dst[off++] = -1;
         }
 
         // Aggiungo target (azioni)
-        sb.append(action.accelerate).append(",");
-        sb.append(action.brake).append(",");
-        sb.append(action.steering).append(",");
-        sb.append(action.gear); // L'ultima colonna non ha la virgola finale
+        dst[off++] = action.accelerate;
+        dst[off++] = action.brake;
+        dst[off++] = action.steering;
+        dst[off] = action.gear;
+    }
 
-        // Scrivo la riga completa nel file
-        writer.println(sb.toString());
+    // Scrive una riga nel file (dal thread di controllo o dal thread di scrittura)
+    private void writeRow(double[] values, int off) {
+        try {
+            writer.writeRow(values, off);
+            rowsWritten++;
+        } catch (IOException e) {
+            // come PrintWriter: l'errore non deve fermare la guida
+            System.err.println("Errore di scrittura della registrazione: " + e.getMessage());
+        }
+    }
+
+    // Ciclo del thread di scrittura: svuota il buffer a blocchi e fa flush dopo ogni blocco
+    private void flushLoop() {
+        while (true) {
+            int n = ring.available();
+            if (n == 0) {
+                if (closing && ring.available() == 0)
+                    break;
+                LockSupport.parkNanos(1000000);
+                continue;
+            }
+            double[] data = ring.data();
+            for (int i = 0; i < n; i++) {
+                writeRow(data, ring.offset(i));
+            }
+            ring.release(n);
+            try {
+                writer.flush();
+            } catch (IOException e) {
+                System.err.println("Errore di scrittura della registrazione: " + e.getMessage());
+            }
+        }
     }
 
-    // scrivo l'header
-    private void writeHeader() {
-        StringBuilder sb = new StringBuilder();
+    // nomi delle colonne (l'header del CSV)
+    private static String[] columnNames() {
+        String[] names = new String[COLUMNS];
+        int i = 0;
 
-        // Nomi colonne per le features 
-        sb.append("angle,trackPos,speedX,speedY,rpm,");
+        // Nomi colonne per le features
+        names[i++] = "angle";
+        names[i++] = "trackPos";
+        names[i++] = "speedX";
+        names[i++] = "speedY";
+        names[i++] = "rpm";
 
-        // Nomicolonne per i 19 sensori di bordo pista
-        for (int i = 0; i < 19; i++) {
-            sb.append("track").append(i).append(",");
+        // Nomi colonne per i 19 sensori di bordo pista
+        for (int k = 0; k < TRACK_SENSORS; k++) {
+            names[i++] = "track" + k;
         }
 
         // Nomi colonne per gli output
-        sb.append("accel,brake,steering,gear"); // L'ultima colonna senza virgola finale
-
-        writer.println(sb.toString());
-        System.out.println("DataWriter: Intestazione CSV scritta.");
+        names[i++] = "accel";
+        names[i++] = "brake";
+        names[i++] = "steering";
+        names[i] = "gear";
+        return names;
     }
 
     // Chiude lo stream di scrittura
    public void close() {
+    if (sampler != null) {
+        // l'ultima riga tenuta aspettava il suo peso
+        double[] last = sampler.flush();
+        if (last != null)
+            emit(last);
+        System.out.println(sampler.report());
+    }
+    if (flushThread != null) {
+        // Il thread svuota tutto quello che è rimasto nel buffer prima di terminare
+        closing = true;
+        LockSupport.unpark(flushThread);
+        try {
+            flushThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushThread = null;
+        System.out.println("DataWriter: righe scritte " + rowsWritten + ", scartate per buffer pieno " + rowsDropped);
+    }
+    if (filter != null) {
+        System.out.println(filter.report());
+    }
     if (writer != null) {
         try {
             writer.close();
-            System.out.println("File CSV chiuso.");
+            System.out.println("File di registrazione chiuso.");
         } catch (Exception e) {
-            System.err.println("Errore durante la chiusura del file CSV: " + e.getMessage());
+            System.err.println("Errore durante la chiusura del file di registrazione: " + e.getMessage());
         }
     }
 }
-}
\ No newline at end of file
+}
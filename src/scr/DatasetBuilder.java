@@ -0,0 +1,497 @@
+package scr;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.StringTokenizer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Unisce molte sessioni registrate da DataWriter (CSV o .scrbin) in un unico
+ * dataset mescolato, diviso in train, validation e test, con memoria limitata
+ * qualunque sia la quantità di dati.
+ *
+ * La divisione è per sessione (un file = una sessione): tutte le righe di un
+ * file finiscono nella stessa parte, quindi tick quasi identici della stessa
+ * guida non compaiono sia in train che in validation. La parte di una sessione
+ * dipende solo dal seme e dal nome del file, non dagli altri file: aggiungendo
+ * sessioni nuove quelle vecchie restano dove erano.
+ *
+ * Il mescolamento è un ordinamento esterno su una chiave pseudocasuale per riga
+ * (dal seme, dal nome del file e dall'indice della riga):
+ *   1. le righe vengono accumulate in un buffer di dimensione fissa; quando è
+ *      pieno viene ordinato (Arrays.parallelSort, sui threads:N core) e scritto
+ *      in un file temporaneo per parte (run);
+ *   2. i run di ogni parte vengono fusi (merge a k vie con uno heap) in un
+ *      .scrbin, leggendo ogni run a blocchi.
+ * Con lo stesso seme e gli stessi file il risultato è identico, anche con un
+ * budget di memoria diverso.
+ *
+ * I file di ingresso vengono letti a blocchi di righe (CSV con
+ * CsvColumnReader.blocks, .scrbin un blocco del file alla volta), quindi
+ * il budget vale anche per una singola sessione molto lunga. Le sessioni
+ * senza righe vengono ignorate e non compaiono in sessions.txt.
+ *
+ * Uso: java scr.DatasetBuilder cartella_uscita file_o_cartella [...] [opzioni]
+ *   split:0.8,0.1,0.1   frazioni di sessioni per train, validation, test
+ *   seed:N              seme della divisione e del mescolamento (default 1)
+ *   memory:MB           memoria per il buffer di ordinamento (default 256)
+ *   threads:N           core da usare (default tutti)
+ * In uscita train.scrbin, validation.scrbin, test.scrbin e sessions.txt
+ * (la parte assegnata a ogni sessione). Le righe in uscita hanno sempre la
+ * colonna weight di AdaptiveSampler: 1 per le sessioni registrate senza.
+ */
+public class DatasetBuilder {
+
+    public static final String[] SPLIT_NAMES = { "train", "validation", "test" };
+
+    private static final String[] COLUMNS = columnNames();
+    private static final int WEIGHT = DataWriter.WEIGHT_COLUMN;
+    private static final int MAX_BATCH_BITS = 24; // i bit bassi della chiave di ordinamento sono l'indice nel buffer
+    private static final int RUN_BUFFER_BYTES = 1 << 20;
+    private static final int CSV_BLOCK_ROWS = 1 << 14;
+
+    private final double[] fractions;
+    private final long seed;
+    private final int threads;
+    private final int batchRows;
+    private final int indexBits;
+
+    // buffer delle righe (per righe), chiavi complete e chiavi di ordinamento
+    private final float[] batch;
+    private final long[] keys;
+    private final long[] sortKeys;
+    private final byte[] splitOf;
+    private int size = 0;
+
+    private final List<List<Path>> runs = new ArrayList<>();
+    private final long[] splitRows = new long[SPLIT_NAMES.length];
+    private final int[] splitSessions = new int[SPLIT_NAMES.length];
+    private Path tmp;
+
+    public DatasetBuilder(double[] fractions, long seed, long memoryBytes, int threads) {
+        this.fractions = fractions.clone();
+        this.seed = seed;
+        this.threads = threads;
+        int rowBytes = COLUMNS.length * 4 + 8 + 8 + 1;
+        long rows = Math.max(1024, memoryBytes / rowBytes);
+        this.batchRows = (int) Math.min(rows, 1L << MAX_BATCH_BITS);
+        this.indexBits = 64 - Long.numberOfLeadingZeros(batchRows - 1);
+        this.batch = new float[batchRows * COLUMNS.length];
+        this.keys = new long[batchRows];
+        this.sortKeys = new long[batchRows];
+        this.splitOf = new byte[batchRows];
+        for (int s = 0; s < SPLIT_NAMES.length; s++)
+            runs.add(new ArrayList<>());
+    }
+
+    /** Parte (0 = train, 1 = validation, 2 = test) di una sessione, dal nome del file senza estensione */
+    public int splitOf(String sessionName) {
+        double u = (mix(seed ^ hash(sessionName)) >>> 11) * 0x1.0p-53;
+        double cumulative = 0;
+        for (int s = 0; s < fractions.length - 1; s++) {
+            cumulative += fractions[s];
+            if (u < cumulative)
+                return s;
+        }
+        return fractions.length - 1;
+    }
+
+    /**
+     * Costruisce il dataset in outDir a partire dai file dati.
+     */
+    public void build(List<Path> files, Path outDir) throws IOException, InterruptedException, ExecutionException {
+        Files.createDirectories(outDir);
+        tmp = Files.createTempDirectory(outDir, "spill");
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try (PrintWriter sessions = new PrintWriter(Files.newBufferedWriter(outDir.resolve("sessions.txt")))) {
+            long start = System.nanoTime();
+            for (Path file : files) {
+                // la sessione è il nome senza estensione: x.csv e la sua conversione x.scrbin stanno insieme
+                String name = file.getFileName().toString();
+                int dot = name.lastIndexOf('.');
+                String session = dot > 0 ? name.substring(0, dot) : name;
+                int split = splitOf(session);
+                long n = name.endsWith(".scrbin") ? addBinary(file, session, split, pool)
+                        : addCsv(file, session, split, pool);
+                if (n < 0)
+                    continue;
+                if (n == 0) {
+                    System.err.println(file + ": sessione vuota, ignorata");
+                    continue;
+                }
+                sessions.println(SPLIT_NAMES[split] + " " + n + " " + file);
+                splitRows[split] += n;
+                splitSessions[split]++;
+            }
+            spill(pool);
+            long spilled = System.nanoTime();
+
+            int runCount = 0;
+            for (List<Path> r : runs)
+                runCount += r.size();
+            // le tre parti si fondono in parallelo, ognuna con i propri run
+            List<Future<Long>> merges = new ArrayList<>();
+            for (int s = 0; s < SPLIT_NAMES.length; s++) {
+                final int split = s;
+                merges.add(pool.submit(() -> merge(runs.get(split), outDir.resolve(SPLIT_NAMES[split] + ".scrbin"))));
+            }
+            for (Future<Long> merge : merges)
+                merge.get();
+            long merged = System.nanoTime();
+
+            for (int s = 0; s < SPLIT_NAMES.length; s++)
+                System.out.println(String.format("%-10s %4d sessioni %10d righe", SPLIT_NAMES[s], splitSessions[s],
+                        splitRows[s]));
+            System.out.println(String.format("Ordinamento %d ms (%d run da al più %d righe), fusione %d ms",
+                    (spilled - start) / 1000000, runCount, batchRows, (merged - spilled) / 1000000));
+        } finally {
+            pool.shutdown();
+            for (List<Path> r : runs) {
+                for (Path run : r)
+                    Files.deleteIfExists(run);
+            }
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private long addCsv(Path file, String name, int split, ForkJoinPool pool)
+            throws IOException, InterruptedException, ExecutionException {
+        try (CsvColumnReader.Blocks reader = CsvColumnReader.blocks(file, COLUMNS, CSV_BLOCK_ROWS)) {
+            if (reader.columnCount() == 0)
+                return 0; // file vuoto
+            float[][] columns = new float[COLUMNS.length][];
+            for (int c = 0; c < COLUMNS.length; c++) {
+                columns[c] = reader.floatColumn(c);
+                if (columns[c] == null && c == WEIGHT) {
+                    columns[c] = new float[CSV_BLOCK_ROWS];
+                    Arrays.fill(columns[c], 1f);
+                } else if (columns[c] == null) {
+                    System.err.println(file + ": manca la colonna " + COLUMNS[c] + ", file ignorato");
+                    return -1;
+                }
+            }
+            // un blocco alla volta, come addBinary: la sessione non deve stare tutta in memoria
+            long row = 0;
+            for (int n = reader.next(); n > 0; n = reader.next()) {
+                add(columns, n, name, row, split, pool);
+                row += n;
+            }
+            return row;
+        }
+    }
+
+    private long addBinary(Path file, String name, int split, ForkJoinPool pool)
+            throws IOException, InterruptedException, ExecutionException {
+        try (BinaryRecordingReader reader = new BinaryRecordingReader(file)) {
+            int[] source = new int[COLUMNS.length];
+            for (int c = 0; c < COLUMNS.length; c++) {
+                source[c] = reader.columnIndex(COLUMNS[c]);
+                if (source[c] < 0 && c != WEIGHT) {
+                    System.err.println(file + ": manca la colonna " + COLUMNS[c] + ", file ignorato");
+                    return -1;
+                }
+            }
+            // un blocco alla volta: la sessione non deve stare tutta in memoria
+            float[][] columns = new float[COLUMNS.length][];
+            long row = 0;
+            for (int b = 0; b < reader.blockCount(); b++) {
+                int n = reader.blockRows(b);
+                for (int c = 0; c < COLUMNS.length; c++) {
+                    if (columns[c] == null || columns[c].length < n)
+                        columns[c] = new float[n];
+                    if (source[c] < 0) {
+                        Arrays.fill(columns[c], 0, n, 1f); // senza colonna weight
+                    } else if (reader.columnType(source[c]) == BinaryRecordingWriter.FLOAT32) {
+                        reader.floatColumn(source[c], b).get(columns[c], 0, n);
+                    } else {
+                        java.nio.DoubleBuffer values = reader.doubleColumn(source[c], b);
+                        for (int i = 0; i < n; i++)
+                            columns[c][i] = (float) values.get(i);
+                    }
+                }
+                add(columns, n, name, row, split, pool);
+                row += n;
+            }
+            return row;
+        }
+    }
+
+    // Copia n righe nel buffer, scaricandolo quando è pieno
+    private void add(float[][] columns, int n, String session, long firstRow, int split, ForkJoinPool pool)
+            throws IOException, InterruptedException, ExecutionException {
+        long sessionKey = seed * 0x9E3779B97F4A7C15L ^ hash(session);
+        int C = COLUMNS.length;
+        for (int i = 0; i < n; i++) {
+            if (size == batchRows)
+                spill(pool);
+            for (int c = 0; c < C; c++)
+                batch[size * C + c] = columns[c][i];
+            // mix è biiettiva: righe diverse della stessa sessione hanno chiavi diverse
+            keys[size] = mix(sessionKey ^ (firstRow + i) * 0xBF58476D1CE4E5B9L);
+            splitOf[size] = (byte) split;
+            size++;
+        }
+    }
+
+    /**
+     * Ordina il buffer per chiave e lo scrive in un run per parte. Per usare
+     * parallelSort su long[] i bit bassi della chiave vengono sostituiti
+     * dall'indice della riga; le chiavi che coincidono nei bit alti (rarissime)
+     * vengono poi riordinate per chiave completa, così l'ordine non dipende
+     * dalla dimensione del buffer.
+     */
+    private void spill(ForkJoinPool pool) throws IOException, InterruptedException, ExecutionException {
+        if (size == 0)
+            return;
+        long indexMask = (1L << indexBits) - 1;
+        for (int i = 0; i < size; i++)
+            sortKeys[i] = keys[i] & ~indexMask | i;
+        // dentro il pool: i task dell'ordinamento girano sui suoi thread, non sul pool comune
+        pool.submit(() -> Arrays.parallelSort(sortKeys, 0, size)).get();
+        for (int i = 1; i < size; i++) {
+            long high = sortKeys[i] & ~indexMask;
+            for (int j = i; j > 0 && (sortKeys[j - 1] & ~indexMask) == high
+                    && keys[(int) (sortKeys[j - 1] & indexMask)] > keys[(int) (sortKeys[j] & indexMask)]; j--) {
+                long t = sortKeys[j];
+                sortKeys[j] = sortKeys[j - 1];
+                sortKeys[j - 1] = t;
+            }
+        }
+
+        List<Future<Void>> writes = new ArrayList<>();
+        for (int s = 0; s < SPLIT_NAMES.length; s++) {
+            final int split = s;
+            Path run = tmp.resolve(SPLIT_NAMES[s] + "-" + runs.get(s).size() + ".run");
+            runs.get(s).add(run);
+            writes.add(pool.submit(() -> {
+                writeRun(run, split, indexMask);
+                return null;
+            }));
+        }
+        for (Future<Void> write : writes)
+            write.get();
+        size = 0;
+    }
+
+    // Run: per riga la chiave (long) e le colonne (float), little-endian
+    private void writeRun(Path run, int split, long indexMask) throws IOException {
+        int C = COLUMNS.length;
+        ByteBuffer buffer = ByteBuffer.allocateDirect(RUN_BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        try (FileChannel channel = FileChannel.open(run, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (int i = 0; i < size; i++) {
+                int row = (int) (sortKeys[i] & indexMask);
+                if (splitOf[row] != split)
+                    continue;
+                if (buffer.remaining() < 8 + C * 4)
+                    drain(channel, buffer);
+                buffer.putLong(keys[row]);
+                for (int c = 0; c < C; c++)
+                    buffer.putFloat(batch[row * C + c]);
+            }
+            drain(channel, buffer);
+        }
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+        buffer.clear();
+    }
+
+    /** Lettore sequenziale di un run */
+    private static final class RunReader implements AutoCloseable {
+        final FileChannel channel;
+        final ByteBuffer buffer;
+        final int rowBytes;
+        long key;
+
+        RunReader(Path run, int bufferBytes) throws IOException {
+            channel = FileChannel.open(run, StandardOpenOption.READ);
+            rowBytes = 8 + COLUMNS.length * 4;
+            buffer = ByteBuffer.allocateDirect(Math.max(rowBytes, bufferBytes / rowBytes * rowBytes))
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            buffer.limit(0);
+        }
+
+        /** Passa alla riga successiva; false a fine run */
+        boolean next() throws IOException {
+            if (buffer.remaining() < rowBytes) {
+                buffer.compact();
+                while (buffer.position() < rowBytes) {
+                    if (channel.read(buffer) < 0)
+                        break;
+                }
+                buffer.flip();
+                if (buffer.remaining() < rowBytes)
+                    return false;
+            }
+            key = buffer.getLong();
+            return true;
+        }
+
+        void row(double[] dst) {
+            for (int c = 0; c < dst.length; c++)
+                dst[c] = buffer.getFloat();
+        }
+
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    /** Fonde i run (ognuno ordinato per chiave) in un .scrbin */
+    private long merge(List<Path> parts, Path out) throws IOException {
+        RunReader[] readers = new RunReader[parts.size()];
+        long rows = 0;
+        try (BinaryRecordingWriter writer = new BinaryRecordingWriter(out, COLUMNS)) {
+            // buffer di lettura: la memoria dei run si divide fra i run, da 64 KB a 1 MB ciascuno
+            long memory = (long) batch.length * 4;
+            int bufferBytes = (int) Math.max(64 << 10, Math.min(RUN_BUFFER_BYTES,
+                    memory / SPLIT_NAMES.length / Math.max(1, parts.size())));
+            int[] heap = new int[parts.size()];
+            int n = 0;
+            for (int r = 0; r < parts.size(); r++) {
+                readers[r] = new RunReader(parts.get(r), bufferBytes);
+                if (readers[r].next())
+                    heap[n++] = r;
+            }
+            for (int i = n / 2 - 1; i >= 0; i--)
+                siftDown(heap, n, i, readers);
+            double[] row = new double[COLUMNS.length];
+            while (n > 0) {
+                RunReader top = readers[heap[0]];
+                top.row(row);
+                writer.writeRow(row, 0);
+                rows++;
+                if (!top.next())
+                    heap[0] = heap[--n];
+                siftDown(heap, n, 0, readers);
+            }
+        } finally {
+            for (RunReader reader : readers) {
+                if (reader != null)
+                    reader.close();
+            }
+        }
+        return rows;
+    }
+
+    private static void siftDown(int[] heap, int n, int i, RunReader[] readers) {
+        while (true) {
+            int smallest = i, l = 2 * i + 1, r = l + 1;
+            if (l < n && readers[heap[l]].key < readers[heap[smallest]].key)
+                smallest = l;
+            if (r < n && readers[heap[r]].key < readers[heap[smallest]].key)
+                smallest = r;
+            if (smallest == i)
+                return;
+            int t = heap[i];
+            heap[i] = heap[smallest];
+            heap[smallest] = t;
+            i = smallest;
+        }
+    }
+
+    // Colonne di DataWriter più il peso
+    private static String[] columnNames() {
+        String[] names = Arrays.copyOf(DataWriter.COLUMN_NAMES, DataWriter.COLUMNS + 1);
+        names[WEIGHT] = DataWriter.WEIGHT_NAME;
+        return names;
+    }
+
+    // Finalizzatore di SplitMix64: biiettivo e ben distribuito
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    // FNV-1a a 64 bit del nome della sessione
+    private static long hash(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("Uso: java scr.DatasetBuilder cartella_uscita file_o_cartella [...]"
+                    + " [split:0.8,0.1,0.1] [seed:N] [memory:MB] [threads:N]");
+            return;
+        }
+        Path outDir = Paths.get(args[0]);
+        List<Path> files = new ArrayList<>();
+        double[] fractions = { 0.8, 0.1, 0.1 };
+        long seed = 1;
+        long memory = 256;
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].indexOf(':') < 0) {
+                Path path = Paths.get(args[i]);
+                if (Files.isDirectory(path)) {
+                    try (DirectoryStream<Path> dir = Files.newDirectoryStream(path, "*.{csv,scrbin}")) {
+                        for (Path file : dir)
+                            files.add(file);
+                    }
+                } else {
+                    files.add(path);
+                }
+                continue;
+            }
+            StringTokenizer st = new StringTokenizer(args[i], ":");
+            String entity = st.nextToken();
+            String value = st.hasMoreTokens() ? st.nextToken() : "";
+            if (entity.equals("split")) {
+                String[] parts = value.split(",");
+                if (parts.length != SPLIT_NAMES.length) {
+                    System.out.println("split: servono " + SPLIT_NAMES.length + " frazioni");
+                    return;
+                }
+                double total = 0;
+                for (int s = 0; s < parts.length; s++) {
+                    fractions[s] = Double.parseDouble(parts[s]);
+                    total += fractions[s];
+                }
+                for (int s = 0; s < parts.length; s++)
+                    fractions[s] /= total;
+            } else if (entity.equals("seed")) {
+                seed = Long.parseLong(value);
+            } else if (entity.equals("memory")) {
+                memory = Long.parseLong(value);
+            } else if (entity.equals("threads")) {
+                threads = Integer.parseInt(value);
+            } else {
+                System.out.println("Opzione sconosciuta: " + args[i]);
+                System.exit(0);
+            }
+        }
+        // i file dentro la cartella di uscita (dataset precedenti) non sono sessioni
+        Path absOut = outDir.toAbsolutePath().normalize();
+        files.removeIf(f -> f.toAbsolutePath().normalize().startsWith(absOut));
+        files.sort(null);
+        if (files.isEmpty()) {
+            System.out.println("Nessun file di dati");
+            return;
+        }
+        new DatasetBuilder(fractions, seed, memory << 20, threads).build(files, outDir);
+        System.out.println("Dataset scritto in " + outDir);
+    }
+}
@@ -0,0 +1,249 @@
+package scr;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Esegue il controller principale sotto una scadenza per tick. control() del
+ * controller principale gira su un thread dedicato; se non risponde entro la
+ * scadenza il Client invia subito un'azione di riserva: l'ultima azione valida
+ * oppure quella di un controller di riserva economico (es. SimpleDriver).
+ *
+ * I risultati arrivati in ritardo vengono scartati e contati. Finché il
+ * controller principale è ancora occupato con un tick scaduto, i tick
+ * successivi usano direttamente la riserva (il controller ha stato e non
+ * viene mai chiamato da due thread insieme).
+ *
+ * Il thread di lavoro riceve una copia dei sensori (SensorFrame.copyFrom),
+ * perché il frame del Client viene sovrascritto al tick successivo.
+ *
+ * Un'eccezione del controller principale non ferma il thread di lavoro: il
+ * tick usa la riserva e l'errore viene contato. reset() e shutdown() aspettano
+ * il tick in corso al più IDLE_WAIT_DEADLINES scadenze; se il controller è
+ * ancora bloccato proseguono senza di lui e il reset o lo shutdown del
+ * controller principale vengono fatti dal thread di lavoro quando si libera.
+ */
+public class DeadlineGuardedController extends Controller {
+
+    // attesa attiva prima di parcheggiare il thread del Client
+    private static final long SPIN_NANOS = 50000;
+    // attesa massima del tick in corso in reset() e shutdown(), in scadenze
+    private static final int IDLE_WAIT_DEADLINES = 5;
+
+    private final Controller primary;
+    private final Controller backup; // null = ripete l'ultima azione valida
+    private final long deadlineNanos;
+    private final Thread worker;
+
+    // richiesta e risposta: il Client scrive request, il worker scrive done
+    private final SensorFrame workerFrame = new SensorFrame();
+    private final Action workerAction = new Action();
+    private volatile long request = 0;
+    private volatile long done = 0;
+    private volatile long failed = 0; // ultimo tick in cui primary.control() ha lanciato un'eccezione
+    private volatile boolean running = true;
+    // reset e shutdown rimandati perché il controller principale era occupato
+    private volatile boolean resetPending = false;
+    private volatile boolean shutdownPending = false;
+    private volatile Thread caller;
+
+    // azioni restituite al Client
+    private final Action output = new Action();
+    private final Action lastAction = new Action();
+
+    // statistiche
+    private long ticks = 0;
+    private long onTime = 0;
+    private long late = 0;
+    private long skipped = 0;
+    private volatile long failures = 0; // scritto solo dal thread di lavoro
+
+    /**
+     * @param primary       controller da proteggere
+     * @param backup        controller di riserva, chiamato sul thread del Client; null per
+     *                      ripetere l'ultima azione valida
+     * @param deadlineNanos tempo massimo concesso a primary.control()
+     */
+    public DeadlineGuardedController(Controller primary, Controller backup, long deadlineNanos) {
+        this.primary = primary;
+        this.backup = backup;
+        this.deadlineNanos = deadlineNanos;
+        resetLastAction();
+        this.worker = new Thread(this::workLoop, "DeadlineGuard-" + primary.getClass().getSimpleName());
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    @Override
+    public Action control(SensorModel sensors) {
+        ticks++;
+        if (done != request) {
+            // il controller è ancora occupato con un tick scaduto
+            skipped++;
+            return fallback(sensors);
+        }
+
+        workerFrame.copyFrom(sensors);
+        caller = Thread.currentThread();
+        long seq = request + 1;
+        request = seq;
+        LockSupport.unpark(worker);
+
+        long start = System.nanoTime();
+        long remaining;
+        while (done != seq && (remaining = deadlineNanos - (System.nanoTime() - start)) > 0) {
+            if (deadlineNanos - remaining < SPIN_NANOS)
+                Thread.onSpinWait();
+            else
+                LockSupport.parkNanos(this, remaining);
+        }
+        if (done != seq) {
+            // risultato in ritardo: verrà scartato quando arriva
+            late++;
+            return fallback(sensors);
+        }
+        if (failed == seq)
+            return fallback(sensors);
+
+        onTime++;
+        copy(workerAction, output);
+        copy(workerAction, lastAction);
+        return output;
+    }
+
+    private Action fallback(SensorModel sensors) {
+        if (backup != null) {
+            Action action = backup.control(sensors);
+            copy(action, output);
+        } else {
+            copy(lastAction, output);
+        }
+        return output;
+    }
+
+    private void workLoop() {
+        long handled = 0;
+        while (running) {
+            long seq = request;
+            if (seq == handled) {
+                LockSupport.park(this);
+                continue;
+            }
+            try {
+                if (resetPending) {
+                    // reset rimandato da un restart arrivato mentre il controller era bloccato
+                    resetPending = false;
+                    primary.reset();
+                }
+                Action action = primary.control(workerFrame);
+                copy(action, workerAction);
+            } catch (Throwable t) {
+                if (failures++ == 0) {
+                    System.err.println("DeadlineGuard: eccezione in " + primary.getClass().getSimpleName()
+                            + ".control(), si usa la riserva");
+                    t.printStackTrace();
+                }
+                failed = seq;
+            }
+            handled = seq;
+            done = seq;
+            LockSupport.unpark(caller);
+        }
+        if (shutdownPending)
+            primary.shutdown();
+    }
+
+    // attende che il worker abbia finito il tick in corso (reset e shutdown); false se non ha finito in tempo
+    private boolean awaitIdle() {
+        long start = System.nanoTime();
+        while (done != request) {
+            if (System.nanoTime() - start > IDLE_WAIT_DEADLINES * deadlineNanos)
+                return false;
+            LockSupport.parkNanos(this, 100000);
+        }
+        return true;
+    }
+
+    // prima di un'azione valida si ripete un'azione neutra in prima, come SimpleDriver e HumanDriver
+    private void resetLastAction() {
+        copy(new Action(), lastAction);
+        lastAction.gear = 1;
+    }
+
+    private static void copy(Action from, Action to) {
+        to.accelerate = from.accelerate;
+        to.brake = from.brake;
+        to.clutch = from.clutch;
+        to.gear = from.gear;
+        to.steering = from.steering;
+        to.restartRace = from.restartRace;
+        to.focus = from.focus;
+    }
+
+    public long getLateResults() {
+        return late;
+    }
+
+    public long getSkippedTicks() {
+        return skipped;
+    }
+
+    public long getFailures() {
+        return failures;
+    }
+
+    @Override
+    public float[] initAngles() {
+        return primary.initAngles();
+    }
+
+    @Override
+    public void setStage(Stage stage) {
+        super.setStage(stage);
+        primary.setStage(stage);
+        if (backup != null)
+            backup.setStage(stage);
+    }
+
+    @Override
+    public void setTrackName(String trackName) {
+        super.setTrackName(trackName);
+        primary.setTrackName(trackName);
+        if (backup != null)
+            backup.setTrackName(trackName);
+    }
+
+    @Override
+    public void reset() {
+        if (awaitIdle()) {
+            primary.reset();
+        } else {
+            // lo fa il worker prima del primo tick dopo quello bloccato
+            resetPending = true;
+            System.err.println("DeadlineGuard: " + primary.getClass().getSimpleName()
+                    + " ancora occupato al restart, reset rimandato");
+        }
+        if (backup != null)
+            backup.reset();
+        resetLastAction();
+    }
+
+    @Override
+    public void shutdown() {
+        boolean idle = awaitIdle();
+        if (!idle) {
+            shutdownPending = true;
+            System.err.println("DeadlineGuard: " + primary.getClass().getSimpleName()
+                    + " ancora occupato allo shutdown, lo chiude il thread di lavoro quando finisce");
+        }
+        running = false;
+        LockSupport.unpark(worker);
+        if (idle)
+            primary.shutdown();
+        if (backup != null)
+            backup.shutdown();
+        System.out.println(String.format(
+                "DeadlineGuard: tick %d, in tempo %d, in ritardo %d, saltati %d, errori %d (scadenza %d us,"
+                        + " riserva %s)", ticks, onTime, late, skipped, failures, deadlineNanos / 1000,
+                backup != null ? backup.getClass().getSimpleName() : "ultima azione"));
+    }
+}
@@ -0,0 +1,214 @@
+package scr;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Dimostrazioni di guida registrate da DataWriter (CSV o .scrbin), caricate in
+ * array piatti: le 24 features per riga (angle, trackPos, speedX, speedY, rpm,
+ * track0..18), i target accel, brake, steering, gear e il peso di ogni riga.
+ *
+ * Le colonne sono cercate per nome, quindi l'ordine nei file può cambiare;
+ * i file senza tutte le colonne vengono ignorati e le righe incomplete o non
+ * numeriche vengono saltate. I CSV sono letti in parallelo da CsvColumnReader;
+ * un CSV senza intestazione è letto nell'ordine di DataWriter.
+ *
+ * Il peso è la colonna weight scritta da AdaptiveSampler (quanti tick
+ * rappresenta la riga) ed è facoltativo: i file registrati senza
+ * campionamento valgono 1 per riga.
+ */
+public class DemonstrationSet {
+
+    public static final int FEATURES = DataWriter.GEAR_COLUMN - 3;
+    public static final String[] FEATURE_NAMES = Arrays.copyOf(DataWriter.COLUMN_NAMES, FEATURES);
+    public static final String[] TARGET_NAMES = { "accel", "brake", "steering", "gear" };
+
+    // colonne lette dai file: features, target e il peso facoltativo
+    private static final int WEIGHT = FEATURES + TARGET_NAMES.length;
+    private static final int COLUMNS = WEIGHT + 1;
+
+    private int rows = 0;
+    private float[] features = new float[1024 * FEATURES];
+    private float[] accel = new float[1024];
+    private float[] brake = new float[1024];
+    private float[] steering = new float[1024];
+    private int[] gear = new int[1024];
+    private float[] weight = new float[1024];
+    private ForkJoinPool pool; // solo durante load()
+
+    /**
+     * Carica tutti i file indicati; per le directory, tutti i .csv e .scrbin contenuti.
+     * I percorsi possono essere separati da virgole (come in scr.knn.data).
+     */
+    public static DemonstrationSet load(String paths) throws IOException {
+        return load(files(paths));
+    }
+
+    /** I file che load(paths) leggerebbe, in ordine */
+    public static List<Path> files(String paths) throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (String p : paths.split(",")) {
+            if (p.trim().isEmpty())
+                continue;
+            Path path = Paths.get(p.trim());
+            if (Files.isDirectory(path)) {
+                try (DirectoryStream<Path> dir = Files.newDirectoryStream(path, "*.{csv,scrbin}")) {
+                    for (Path file : dir)
+                        files.add(file);
+                }
+            } else {
+                files.add(path);
+            }
+        }
+        files.sort(null);
+        return files;
+    }
+
+    public static DemonstrationSet load(List<Path> files) throws IOException {
+        DemonstrationSet set = new DemonstrationSet();
+        try {
+            for (Path file : files) {
+                if (file.getFileName().toString().endsWith(".scrbin"))
+                    set.readBinary(file);
+                else
+                    set.readCsv(file);
+            }
+        } finally {
+            if (set.pool != null)
+                set.pool.shutdown();
+            set.pool = null;
+        }
+        return set;
+    }
+
+    public int rows() {
+        return rows;
+    }
+
+    /** Features riga per riga: la riga i occupa [i * FEATURES, (i + 1) * FEATURES) */
+    public float[] features() {
+        return features;
+    }
+
+    public float[] accel() {
+        return accel;
+    }
+
+    public float[] brake() {
+        return brake;
+    }
+
+    public float[] steering() {
+        return steering;
+    }
+
+    public int[] gear() {
+        return gear;
+    }
+
+    /** Quanti tick rappresenta ogni riga (colonna weight), 1 se il file non la registra */
+    public float[] weight() {
+        return weight;
+    }
+
+    /**
+     * Features di un tick nello stesso ordine delle colonne registrate
+     * (vedi DataWriter.fillRow), per interrogare i modelli addestrati su questi dati.
+     */
+    public static void features(SensorModel sensors, float[] dst, int off) {
+        dst[off++] = (float) sensors.getAngleToTrackAxis();
+        dst[off++] = (float) sensors.getTrackPosition();
+        dst[off++] = (float) sensors.getSpeed();
+        dst[off++] = (float) sensors.getLateralSpeed();
+        dst[off++] = (float) sensors.getRPM();
+        double[] track = sensors.getTrackEdgeSensors();
+        for (int i = 0; i < DataWriter.TRACK_SENSORS; i++)
+            dst[off++] = (float) track[i];
+    }
+
+    private void readCsv(Path file) throws IOException {
+        String[] names = new String[COLUMNS];
+        for (int c = 0; c < names.length; c++)
+            names[c] = columnName(c);
+        CsvColumnReader reader = CsvColumnReader.read(file, names, false, pool());
+        if (reader.columnCount() == 0 || reader.rows() == 0)
+            return; // file vuoto o senza righe valide
+        float[][] columns = new float[names.length][];
+        for (int c = 0; c < columns.length; c++) {
+            columns[c] = reader.floatColumn(c);
+            if (columns[c] == null && c != WEIGHT) {
+                System.err.println(file + ": manca la colonna " + columnName(c) + ", file ignorato");
+                return;
+            }
+        }
+        add(columns, reader.rows());
+    }
+
+    private void readBinary(Path file) throws IOException {
+        try (BinaryRecordingReader reader = new BinaryRecordingReader(file)) {
+            int n = (int) reader.rowCount();
+            float[][] columns = new float[COLUMNS][];
+            for (int c = 0; c < columns.length; c++) {
+                int index = reader.columnIndex(columnName(c));
+                if (index < 0 && c == WEIGHT)
+                    continue;
+                if (index < 0) {
+                    System.err.println(file + ": manca la colonna " + columnName(c) + ", file ignorato");
+                    return;
+                }
+                columns[c] = new float[n];
+                reader.copyColumn(index, columns[c]);
+            }
+            add(columns, n);
+        }
+    }
+
+    // Aggiunge n righe date per colonne (nell'ordine di columnName); senza colonna weight il peso è 1
+    private void add(float[][] columns, int n) {
+        if (rows + n > gear.length) {
+            int capacity = Math.max(gear.length * 2, rows + n);
+            features = Arrays.copyOf(features, capacity * FEATURES);
+            accel = Arrays.copyOf(accel, capacity);
+            brake = Arrays.copyOf(brake, capacity);
+            steering = Arrays.copyOf(steering, capacity);
+            gear = Arrays.copyOf(gear, capacity);
+            weight = Arrays.copyOf(weight, capacity);
+        }
+        for (int c = 0; c < FEATURES; c++) {
+            float[] column = columns[c];
+            for (int i = 0, dst = rows * FEATURES + c; i < n; i++, dst += FEATURES)
+                features[dst] = column[i];
+        }
+        System.arraycopy(columns[FEATURES], 0, accel, rows, n);
+        System.arraycopy(columns[FEATURES + 1], 0, brake, rows, n);
+        System.arraycopy(columns[FEATURES + 2], 0, steering, rows, n);
+        float[] gears = columns[FEATURES + 3];
+        for (int i = 0; i < n; i++)
+            gear[rows + i] = Math.round(gears[i]);
+        if (columns[WEIGHT] != null)
+            System.arraycopy(columns[WEIGHT], 0, weight, rows, n);
+        else
+            Arrays.fill(weight, rows, rows + n, 1f);
+        rows += n;
+    }
+
+    // Un solo pool per tutti i file caricati
+    private ForkJoinPool pool() {
+        if (pool == null)
+            pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        return pool;
+    }
+
+    private static String columnName(int c) {
+        if (c == WEIGHT)
+            return DataWriter.WEIGHT_NAME;
+        return c < FEATURES ? FEATURE_NAMES[c] : TARGET_NAMES[c - FEATURES];
+    }
+}
@@ -0,0 +1,614 @@
+package scr;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.StringTokenizer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Addestra un modello di guida direttamente dalle registrazioni di DataWriter
+ * (CSV o .scrbin) e lo salva nel formato di MlpModel, pronto per NeuralDriver.
+ *
+ * Due modelli:
+ *   mlp    rete con layer nascosti ReLU, mini-batch con Adam; il gradiente di
+ *          ogni batch è calcolato in parallelo su shard di righe (ForkJoin),
+ *          uno per core, e poi sommato
+ *   ridge  regressione lineare con regolarizzazione L2, risolta in forma chiusa;
+ *          X'X e X'Y sono accumulati in parallelo sugli shard
+ * Le uscite sono accel, brake, steering (errore quadratico) e, con gear:on, gli
+ * 8 logit delle marce (softmax/cross-entropy per mlp, one-hot per ridge).
+ *
+ * Ogni riga conta per il suo peso (DemonstrationSet.weight(), i tick che
+ * rappresenta con il campionamento adattivo): nella normalizzazione, nella
+ * loss e nell'errore di validazione. Senza colonna weight il peso è 1 e il
+ * risultato è quello di un addestramento non pesato.
+ *
+ * Alla fine di ogni epoca stampa la loss, l'errore sul validation set e il
+ * throughput in righe al secondo, totale e per core.
+ *
+ * Uso: java scr.DriverTrainer dati[,altri...] pesi.bin [opzioni]
+ *   model:mlp|ridge   tipo di modello (default mlp)
+ *   hidden:64,64      layer nascosti della rete (default 64,64)
+ *   epochs:N          epoche (default 10)
+ *   batch:N           righe per mini-batch (default 256)
+ *   lr:X              learning rate di Adam (default 0.001)
+ *   lambda:X          regolarizzazione L2 (default 0.0001 per mlp, 1 per ridge)
+ *   threads:N         core da usare (default tutti)
+ *   val:X             frazione di righe per la validazione (default 0.1)
+ *   gear:on|off       il modello sceglie anche la marcia (default on)
+ *   seed:N            seme per mescolamento e pesi iniziali (default 42)
+ */
+public class DriverTrainer {
+
+    // accel, brake, steering; seguono eventualmente i logit delle marce
+    private static final int REGRESSION_OUTPUTS = 3;
+    private static final float BETA1 = 0.9f, BETA2 = 0.999f, ADAM_EPSILON = 1e-8f;
+
+    private final DemonstrationSet data;
+    private final int features = DemonstrationSet.FEATURES;
+    private final int outputs;
+    private final int threads;
+    private final ForkJoinPool pool;
+    private final float[] mean;
+    private final float[] scale;
+    private final int[] train;
+    private final int[] val;
+    private final double trainWeight;
+
+    public DriverTrainer(DemonstrationSet data, boolean gear, double valFraction, int threads, long seed) {
+        this.data = data;
+        this.outputs = gear ? REGRESSION_OUTPUTS + MlpModel.GEAR_CLASSES : REGRESSION_OUTPUTS;
+        this.threads = threads;
+        this.pool = new ForkJoinPool(threads);
+
+        // divisione train/validation fissata dal seme
+        int n = data.rows();
+        int[] rows = new int[n];
+        for (int i = 0; i < n; i++)
+            rows[i] = i;
+        shuffle(rows, new Random(seed));
+        int valRows = (int) Math.round(n * valFraction);
+        this.val = java.util.Arrays.copyOfRange(rows, 0, valRows);
+        this.train = java.util.Arrays.copyOfRange(rows, valRows, n);
+
+        // normalizzazione z-score pesata, calcolata sulle sole righe di training
+        float[] w = data.weight();
+        double total = 0;
+        for (int r : train)
+            total += w[r];
+        this.trainWeight = total;
+        this.mean = new float[features];
+        this.scale = new float[features];
+        float[] x = data.features();
+        for (int j = 0; j < features; j++) {
+            double sum = 0, sumSq = 0;
+            for (int r : train) {
+                double v = x[r * features + j];
+                sum += w[r] * v;
+                sumSq += w[r] * v * v;
+            }
+            double m = total > 0 ? sum / total : 0;
+            double std = Math.sqrt(Math.max(0, total > 0 ? sumSq / total - m * m : 0));
+            mean[j] = (float) m;
+            scale[j] = std > 1e-9 ? (float) (1.0 / std) : 0f;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Uso: java scr.DriverTrainer dati[,altri...] pesi.bin [model:mlp|ridge] [hidden:64,64]"
+                    + " [epochs:N] [batch:N] [lr:X] [lambda:X] [threads:N] [val:X] [gear:on|off] [seed:N]");
+            return;
+        }
+        String model = "mlp", hidden = "64,64";
+        int epochs = 10, batch = 256, threads = Runtime.getRuntime().availableProcessors();
+        double lr = 0.001, valFraction = 0.1;
+        Double lambda = null;
+        boolean gear = true;
+        long seed = 42;
+        for (int i = 2; i < args.length; i++) {
+            StringTokenizer st = new StringTokenizer(args[i], ":");
+            String entity = st.nextToken();
+            String value = st.hasMoreTokens() ? st.nextToken() : "";
+            if (entity.equals("model")) {
+                model = value;
+            } else if (entity.equals("hidden")) {
+                hidden = value;
+            } else if (entity.equals("epochs")) {
+                epochs = Integer.parseInt(value);
+            } else if (entity.equals("batch")) {
+                batch = Integer.parseInt(value);
+            } else if (entity.equals("lr")) {
+                lr = Double.parseDouble(value);
+            } else if (entity.equals("lambda")) {
+                lambda = Double.parseDouble(value);
+            } else if (entity.equals("threads")) {
+                threads = Integer.parseInt(value);
+            } else if (entity.equals("val")) {
+                valFraction = Double.parseDouble(value);
+            } else if (entity.equals("gear")) {
+                gear = value.equals("on");
+            } else if (entity.equals("seed")) {
+                seed = Long.parseLong(value);
+            } else {
+                System.out.println("Opzione sconosciuta: " + args[i]);
+                System.exit(0);
+            }
+        }
+
+        long start = System.nanoTime();
+        DemonstrationSet data = DemonstrationSet.load(args[0]);
+        System.out.println(String.format("%d righe da %s in %d ms", data.rows(), args[0],
+                (System.nanoTime() - start) / 1000000));
+        if (data.rows() == 0) {
+            System.err.println("Nessuna riga da usare per l'addestramento");
+            return;
+        }
+
+        DriverTrainer trainer = new DriverTrainer(data, gear, valFraction, threads, seed);
+        MlpModel result;
+        if (model.equals("ridge")) {
+            result = trainer.trainRidge(lambda != null ? lambda : 1.0);
+        } else if (model.equals("mlp")) {
+            String[] parts = hidden.split(",");
+            int[] sizes = new int[parts.length + 2];
+            sizes[0] = DemonstrationSet.FEATURES;
+            for (int i = 0; i < parts.length; i++)
+                sizes[i + 1] = Integer.parseInt(parts[i].trim());
+            sizes[sizes.length - 1] = trainer.outputs;
+            result = trainer.trainMlp(sizes, epochs, batch, (float) lr, (float) (lambda != null ? lambda : 1e-4),
+                    seed);
+        } else {
+            System.out.println("Modello sconosciuto: " + model);
+            return;
+        }
+        trainer.pool.shutdown();
+        result.save(Paths.get(args[1]));
+        System.out.println("Pesi salvati in " + args[1]);
+    }
+
+    // ---------------------------------------------------------------- MLP
+
+    /**
+     * Addestra una rete con i layer indicati (sizes[0] = features, ultimo = uscite).
+     */
+    public MlpModel trainMlp(int[] sizes, int epochs, int batch, float lr, float lambda, long seed) {
+        MlpModel model = MlpModel.random(sizes, MlpModel.RELU, seed);
+        System.arraycopy(mean, 0, model.mean(), 0, features);
+        System.arraycopy(scale, 0, model.scale(), 0, features);
+
+        Workspace[] workspaces = new Workspace[threads];
+        for (int s = 0; s < threads; s++)
+            workspaces[s] = new Workspace(model);
+        Adam adam = new Adam(model);
+        Random random = new Random(seed);
+
+        System.out.println(String.format("mlp %s: %d righe di training, %d di validazione, batch %d, %d thread",
+                java.util.Arrays.toString(sizes), train.length, val.length, batch, threads));
+        long totalRows = 0, totalNanos = 0;
+        for (int epoch = 1; epoch <= epochs; epoch++) {
+            shuffle(train, random);
+            double loss = 0;
+            long start = System.nanoTime();
+            for (int from = 0; from < train.length; from += batch) {
+                int to = Math.min(train.length, from + batch);
+                // gradiente del batch: uno shard di righe per thread
+                int chunk = (to - from + threads - 1) / threads;
+                ShardTask[] tasks = new ShardTask[threads];
+                for (int s = 0; s < threads; s++)
+                    tasks[s] = new ShardTask(workspaces[s], from + s * chunk, Math.min(to, from + (s + 1) * chunk));
+                pool.invoke(new RecursiveAction() {
+                    @Override
+                    protected void compute() {
+                        ForkJoinTask.invokeAll(tasks);
+                    }
+                });
+
+                // somma degli shard e aggiornamento dei pesi
+                Workspace sum = workspaces[0];
+                for (int s = 1; s < threads; s++)
+                    sum.add(workspaces[s]);
+                loss += sum.loss;
+                adam.step(model, sum, lr, lambda);
+            }
+            long nanos = System.nanoTime() - start;
+            totalRows += train.length;
+            totalNanos += nanos;
+            double rowsPerSecond = train.length * 1e9 / nanos;
+            System.out.println(String.format("epoca %2d: loss %.5f, %s, %.0f righe/s (%.0f per core)", epoch,
+                    loss / Math.max(trainWeight, 1e-12), evaluate(model), rowsPerSecond, rowsPerSecond / threads));
+        }
+        double rowsPerSecond = totalRows * 1e9 / totalNanos;
+        System.out.println(String.format("Throughput medio: %.0f righe/s, %.0f righe/s per core (%d thread)",
+                rowsPerSecond, rowsPerSecond / threads, threads));
+        return model;
+    }
+
+    // Gradiente su un intervallo di righe di train (già mescolate)
+    @SuppressWarnings("serial")
+    private final class ShardTask extends RecursiveAction {
+        private final Workspace ws;
+        private final int from, to;
+
+        ShardTask(Workspace ws, int from, int to) {
+            this.ws = ws;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            ws.clear();
+            for (int i = from; i < to; i++)
+                ws.accumulate(train[i]);
+        }
+    }
+
+    /** Buffer di un thread: attivazioni, delta e gradienti accumulati */
+    private final class Workspace {
+        private final MlpModel model;
+        private final float[][] activations;
+        private final float[][] deltas;
+        private final float[][] gradW;
+        private final float[][] gradB;
+        private final float[] target = new float[outputs];
+        private double loss;
+        private double weight; // somma dei pesi delle righe accumulate
+
+        Workspace(MlpModel model) {
+            this.model = model;
+            int layers = model.layerCount();
+            activations = new float[layers + 1][];
+            deltas = new float[layers + 1][];
+            gradW = new float[layers][];
+            gradB = new float[layers][];
+            for (int l = 0; l <= layers; l++) {
+                activations[l] = new float[model.size(l)];
+                deltas[l] = new float[model.size(l)];
+            }
+            for (int l = 0; l < layers; l++) {
+                gradW[l] = new float[model.weights(l).length];
+                gradB[l] = new float[model.biases(l).length];
+            }
+        }
+
+        void clear() {
+            for (int l = 0; l < gradW.length; l++) {
+                java.util.Arrays.fill(gradW[l], 0f);
+                java.util.Arrays.fill(gradB[l], 0f);
+            }
+            loss = 0;
+            weight = 0;
+        }
+
+        void add(Workspace other) {
+            for (int l = 0; l < gradW.length; l++) {
+                for (int i = 0; i < gradW[l].length; i++)
+                    gradW[l][i] += other.gradW[l][i];
+                for (int i = 0; i < gradB[l].length; i++)
+                    gradB[l][i] += other.gradB[l][i];
+            }
+            loss += other.loss;
+            weight += other.weight;
+        }
+
+        // forward e backward di una riga, sommando il gradiente
+        void accumulate(int row) {
+            int layers = model.layerCount();
+            normalizedRow(row, activations[0]);
+            for (int l = 0; l < layers; l++) {
+                int in = model.size(l), out = model.size(l + 1);
+                float[] w = model.weights(l), b = model.biases(l), a = activations[l], z = activations[l + 1];
+                for (int o = 0; o < out; o++) {
+                    float s = b[o];
+                    int base = o * in;
+                    for (int i = 0; i < in; i++)
+                        s += w[base + i] * a[i];
+                    z[o] = s;
+                }
+                MlpModel.activate(model.activation(l), z, out);
+            }
+
+            float rowWeight = data.weight()[row];
+            weight += rowWeight;
+            loss += rowWeight * outputDelta(row, activations[layers], deltas[layers]);
+            for (int o = 0; o < outputs; o++)
+                deltas[layers][o] *= rowWeight;
+
+            for (int l = layers - 1; l >= 0; l--) {
+                int in = model.size(l), out = model.size(l + 1);
+                float[] w = model.weights(l), a = activations[l], delta = deltas[l + 1];
+                float[] gw = gradW[l], gb = gradB[l], prev = deltas[l];
+                java.util.Arrays.fill(prev, 0, in, 0f);
+                for (int o = 0; o < out; o++) {
+                    float d = delta[o];
+                    if (d == 0f)
+                        continue;
+                    gb[o] += d;
+                    int base = o * in;
+                    for (int i = 0; i < in; i++) {
+                        gw[base + i] += d * a[i];
+                        prev[i] += d * w[base + i];
+                    }
+                }
+                if (l > 0) {
+                    // derivata dell'attivazione del layer precedente
+                    int act = model.activation(l - 1);
+                    for (int i = 0; i < in; i++) {
+                        if (act == MlpModel.RELU)
+                            prev[i] = a[i] > 0 ? prev[i] : 0f;
+                        else if (act == MlpModel.TANH)
+                            prev[i] *= 1 - a[i] * a[i];
+                    }
+                }
+            }
+        }
+
+        // delta dell'uscita e loss della riga: errore quadratico per i comandi, cross-entropy per la marcia
+        private double outputDelta(int row, float[] y, float[] delta) {
+            double loss = 0;
+            targets(row, target);
+            for (int o = 0; o < REGRESSION_OUTPUTS; o++) {
+                float e = y[o] - target[o];
+                delta[o] = e;
+                loss += 0.5 * e * e;
+            }
+            if (outputs > REGRESSION_OUTPUTS) {
+                int cls = gearClass(data.gear()[row]);
+                float max = y[MlpModel.OUT_GEAR];
+                for (int g = 1; g < MlpModel.GEAR_CLASSES; g++)
+                    max = Math.max(max, y[MlpModel.OUT_GEAR + g]);
+                double sum = 0;
+                for (int g = 0; g < MlpModel.GEAR_CLASSES; g++)
+                    sum += Math.exp(y[MlpModel.OUT_GEAR + g] - max);
+                for (int g = 0; g < MlpModel.GEAR_CLASSES; g++) {
+                    double p = Math.exp(y[MlpModel.OUT_GEAR + g] - max) / sum;
+                    delta[MlpModel.OUT_GEAR + g] = (float) (p - (g == cls ? 1 : 0));
+                    if (g == cls)
+                        loss -= Math.log(Math.max(p, 1e-12));
+                }
+            }
+            return loss;
+        }
+    }
+
+    /** Stato di Adam (medie mobili del gradiente e del suo quadrato) */
+    private static final class Adam {
+        private final float[][] mW, vW, mB, vB;
+        private int t = 0;
+
+        Adam(MlpModel model) {
+            int layers = model.layerCount();
+            mW = new float[layers][];
+            vW = new float[layers][];
+            mB = new float[layers][];
+            vB = new float[layers][];
+            for (int l = 0; l < layers; l++) {
+                mW[l] = new float[model.weights(l).length];
+                vW[l] = new float[model.weights(l).length];
+                mB[l] = new float[model.biases(l).length];
+                vB[l] = new float[model.biases(l).length];
+            }
+        }
+
+        // gradiente medio pesato: la somma degli shard divisa per la somma dei pesi del batch
+        void step(MlpModel model, Workspace grad, float lr, float lambda) {
+            t++;
+            float c1 = (float) (1 - Math.pow(BETA1, t));
+            float c2 = (float) (1 - Math.pow(BETA2, t));
+            float inv = grad.weight > 0 ? (float) (1 / grad.weight) : 0f;
+            for (int l = 0; l < model.layerCount(); l++) {
+                update(model.weights(l), grad.gradW[l], mW[l], vW[l], inv, lambda, lr, c1, c2);
+                update(model.biases(l), grad.gradB[l], mB[l], vB[l], inv, 0f, lr, c1, c2);
+            }
+        }
+
+        private static void update(float[] p, float[] g, float[] m, float[] v, float inv, float lambda, float lr,
+                float c1, float c2) {
+            for (int i = 0; i < p.length; i++) {
+                float gi = g[i] * inv + lambda * p[i];
+                m[i] = BETA1 * m[i] + (1 - BETA1) * gi;
+                v[i] = BETA2 * v[i] + (1 - BETA2) * gi * gi;
+                p[i] -= lr * (m[i] / c1) / ((float) Math.sqrt(v[i] / c2) + ADAM_EPSILON);
+            }
+        }
+    }
+
+    // -------------------------------------------------------------- ridge
+
+    /**
+     * Regressione ridge in forma chiusa: (X'WX + lambda I) B = X'WY, con X
+     * normalizzato più una colonna costante per il bias (non regolarizzata) e
+     * W la diagonale dei pesi delle righe.
+     */
+    public MlpModel trainRidge(double lambda) {
+        final int p = features + 1;
+        long start = System.nanoTime();
+        int chunk = (train.length + threads - 1) / threads;
+        double[][] xtx = new double[p][p];
+        double[][] xty = new double[p][outputs];
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                NormalEquations[] shards = new NormalEquations[threads];
+                for (int s = 0; s < threads; s++)
+                    shards[s] = new NormalEquations(s * chunk, Math.min(train.length, (s + 1) * chunk));
+                ForkJoinTask.invokeAll(shards);
+                for (NormalEquations shard : shards) {
+                    for (int i = 0; i < p; i++) {
+                        for (int j = 0; j < p; j++)
+                            xtx[i][j] += shard.xtx[i * p + j];
+                        for (int o = 0; o < outputs; o++)
+                            xty[i][o] += shard.xty[i * outputs + o];
+                    }
+                }
+            }
+        });
+        long accumulated = System.nanoTime();
+
+        for (int i = 0; i < features; i++)
+            xtx[i][i] += lambda;
+        double[][] w = solveCholesky(xtx, xty);
+
+        float[] weights = new float[outputs * features];
+        float[] biases = new float[outputs];
+        for (int o = 0; o < outputs; o++) {
+            for (int i = 0; i < features; i++)
+                weights[o * features + i] = (float) w[i][o];
+            biases[o] = (float) w[features][o];
+        }
+        MlpModel model = new MlpModel(mean.clone(), scale.clone(), new int[] { features, outputs },
+                new int[] { MlpModel.LINEAR }, new float[][] { weights }, new float[][] { biases });
+        long nanos = accumulated - start;
+        double rowsPerSecond = train.length * 1e9 / nanos;
+        System.out.println(String.format("ridge: %d righe in %d ms, %s, %.0f righe/s (%.0f per core, %d thread)",
+                train.length, (System.nanoTime() - start) / 1000000, evaluate(model), rowsPerSecond,
+                rowsPerSecond / threads, threads));
+        return model;
+    }
+
+    // Somme parziali di X'WX e X'WY su uno shard di righe
+    @SuppressWarnings("serial")
+    private final class NormalEquations extends RecursiveAction {
+        private final int from, to;
+        final double[] xtx;
+        final double[] xty;
+
+        NormalEquations(int from, int to) {
+            this.from = from;
+            this.to = to;
+            int p = features + 1;
+            xtx = new double[p * p];
+            xty = new double[p * outputs];
+        }
+
+        @Override
+        protected void compute() {
+            int p = features + 1;
+            float[] x = new float[p];
+            float[] y = new float[outputs];
+            for (int r = from; r < to; r++) {
+                int row = train[r];
+                normalizedRow(row, x);
+                x[features] = 1f;
+                targets(row, y);
+                double w = data.weight()[row];
+                for (int i = 0; i < p; i++) {
+                    double xi = w * x[i];
+                    int base = i * p;
+                    for (int j = 0; j < p; j++)
+                        xtx[base + j] += xi * x[j];
+                    for (int o = 0; o < outputs; o++)
+                        xty[i * outputs + o] += xi * y[o];
+                }
+            }
+        }
+    }
+
+    // Risolve A X = B con A simmetrica definita positiva (A viene sovrascritta dal fattore di Cholesky)
+    private static double[][] solveCholesky(double[][] a, double[][] b) {
+        int n = a.length, m = b[0].length;
+        for (int j = 0; j < n; j++) {
+            double d = a[j][j];
+            for (int k = 0; k < j; k++)
+                d -= a[j][k] * a[j][k];
+            a[j][j] = Math.sqrt(Math.max(d, 1e-12));
+            for (int i = j + 1; i < n; i++) {
+                double s = a[i][j];
+                for (int k = 0; k < j; k++)
+                    s -= a[i][k] * a[j][k];
+                a[i][j] = s / a[j][j];
+            }
+        }
+        double[][] x = new double[n][m];
+        for (int c = 0; c < m; c++) {
+            double[] y = new double[n];
+            for (int i = 0; i < n; i++) {
+                double s = b[i][c];
+                for (int k = 0; k < i; k++)
+                    s -= a[i][k] * y[k];
+                y[i] = s / a[i][i];
+            }
+            for (int i = n - 1; i >= 0; i--) {
+                double s = y[i];
+                for (int k = i + 1; k < n; k++)
+                    s -= a[k][i] * x[k][c];
+                x[i][c] = s / a[i][i];
+            }
+        }
+        return x;
+    }
+
+    // ------------------------------------------------------------- comuni
+
+    private void normalizedRow(int row, float[] dst) {
+        float[] x = data.features();
+        int base = row * features;
+        for (int j = 0; j < features; j++)
+            dst[j] = (x[base + j] - mean[j]) * scale[j];
+    }
+
+    // target nel formato delle uscite (marcia one-hot)
+    private void targets(int row, float[] y) {
+        y[MlpModel.OUT_ACCEL] = data.accel()[row];
+        y[MlpModel.OUT_BRAKE] = data.brake()[row];
+        y[MlpModel.OUT_STEERING] = data.steering()[row];
+        if (outputs > REGRESSION_OUTPUTS) {
+            int cls = gearClass(data.gear()[row]);
+            for (int g = 0; g < MlpModel.GEAR_CLASSES; g++)
+                y[MlpModel.OUT_GEAR + g] = g == cls ? 1f : 0f;
+        }
+    }
+
+    private static int gearClass(int gear) {
+        return Math.max(0, Math.min(MlpModel.GEAR_CLASSES - 1, gear - MlpModel.MIN_GEAR));
+    }
+
+    // Errori sul validation set, pesati: MAE dei comandi e accuratezza della marcia
+    private String evaluate(MlpModel model) {
+        if (val.length == 0)
+            return "nessuna riga di validazione";
+        float[] raw = new float[features];
+        double accel = 0, brake = 0, steering = 0, gearHits = 0, total = 0;
+        for (int row : val) {
+            System.arraycopy(data.features(), row * features, raw, 0, features);
+            float[] y = model.forward(raw);
+            double w = data.weight()[row];
+            total += w;
+            accel += w * Math.abs(clamp(y[MlpModel.OUT_ACCEL], 0, 1) - data.accel()[row]);
+            brake += w * Math.abs(clamp(y[MlpModel.OUT_BRAKE], 0, 1) - data.brake()[row]);
+            steering += w * Math.abs(clamp(y[MlpModel.OUT_STEERING], -1, 1) - data.steering()[row]);
+            if (model.hasGear()) {
+                int best = 0;
+                for (int g = 1; g < MlpModel.GEAR_CLASSES; g++) {
+                    if (y[MlpModel.OUT_GEAR + g] > y[MlpModel.OUT_GEAR + best])
+                        best = g;
+                }
+                if (best == gearClass(data.gear()[row]))
+                    gearHits += w;
+            }
+        }
+        total = Math.max(total, 1e-12);
+        String result = String.format("val MAE accel %.4f brake %.4f steering %.4f", accel / total,
+                brake / total, steering / total);
+        if (model.hasGear())
+            result += String.format(", marcia %.1f%%", 100.0 * gearHits / total);
+        return result;
+    }
+
+    private static float clamp(float v, float min, float max) {
+        return v < min ? min : (v > max ? max : v);
+    }
+
+    private static void shuffle(int[] a, Random random) {
+        for (int i = a.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int t = a[i];
+            a[i] = a[j];
+            a[j] = t;
+        }
+    }
+}
@@ -1,14 +1,20 @@
 package scr;
 
 import java.io.IOException;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.swing.SwingUtilities; // Necessario per avviare la GUI in modo sicuro
 
 public class HumanDriver extends Controller {
 
-    // Questa è una coda  per i caratteri che premiamo sulla tastiera.
-    // Praticamente io dal CharReader prendo i caratteri che utilizzo per guidare e poi vedo a quale azione corrispondono
-    public static ConcurrentLinkedQueue<Character> keyboardInputQueue = new ConcurrentLinkedQueue<>();
+    // Tasti tenuti premuti, un bit per comando. Lo aggiorna il CharReader (EDT) ad ogni evento,
+    // il tick lo legge con una sola lettura volatile.
+    private static final int KEY_ACCEL = 1, KEY_BRAKE = 2, KEY_REVERSE = 4, KEY_LEFT = 8, KEY_RIGHT = 16;
+    private final AtomicInteger keyState = new AtomicInteger();
+
+    // Eventi della tastiera con il loro istante: servono per il tasto 'p' e per misurare la latenza
+    // tasto -> azione. Ogni driver ha il suo buffer: più HumanDriver nella stessa JVM non si rubano i tasti.
+    private final KeyEventRing keyEvents = new KeyEventRing(256);
+    private final LatencyHistogram inputLatency = new LatencyHistogram();
     
     // Per scrivere i dati su un file CSV.
     private DataWriter dataRecorder;
@@ -41,22 +47,38 @@ public class HumanDriver extends Controller {
 
     //costruttore
     public HumanDriver() {
+        this(createRecorder(), true);
+    }
+
+    // Costruttore usato anche da benchmark e strumenti offline:
+    // recorder può essere null (nessuna registrazione) e la finestra della tastiera è opzionale.
+    HumanDriver(DataWriter recorder, boolean showWindow) {
         carActions.gear = 1; // La macchina inizia sempre in prima marcia.
 
-        // Inizializziamo il nostro DataWriter.
+        dataRecorder = recorder;
+        if (recorder == null) {
+            this.shouldRecordData = false;
+        }
+
+        if (showWindow) {
+            // Avviamo la finestra per la tastiera (CharReader).
+            SwingUtilities.invokeLater(() -> new CharReader(this));
+            System.out.println("Finestra avviata");
+        }
+    }
+
+    // Inizializziamo il nostro DataWriter.
+    private static DataWriter createRecorder() {
         try {
-            dataRecorder = new DataWriter("manual_driving_data");
+            DataWriter recorder = new DataWriter("manual_driving_data");
             System.out.println("File creato correttamente");
+            return recorder;
         } catch (IOException e) {
             // Se c'è un errore a creare il file, lo stampiamo e disabilitiamo la raccolta dati.
             System.err.println("Errore creazione file" + e.getMessage());
             e.printStackTrace();
-            this.shouldRecordData = false; 
+            return null;
         }
-        
-        // Avviamo la finestra per la tastiera (CharReader).
-        SwingUtilities.invokeLater(() -> new CharReader(this));
-        System.out.println("Finestra avviata");
     }
 
     /**
@@ -69,7 +91,7 @@ public class HumanDriver extends Controller {
     @Override
     public Action control(SensorModel sensors) {
         // ascoltiamo e interpretiamo i tasti premuto.
-        handleKeyboardInputs();
+        int keyEventsRead = handleKeyboardInputs();
 
         // Traduciamo i tasti premuti in azioni (accelera ecc).
         updateCarControls();
@@ -84,56 +106,55 @@ public class HumanDriver extends Controller {
     dataRecorder.writeLine(sensors, carActions);
 }
 
+        // Latenza dagli eventi letti in questo tick all'azione che stiamo per restituire
+        long now = System.nanoTime();
+        for (int i = 0; i < keyEventsRead; i++) {
+            inputLatency.record(now - keyEvents.stamp(i));
+        }
+        keyEvents.release(keyEventsRead);
+
         return carActions; // Diamo a TORCS le azioni 
     }
 
-    //Legge i caratteri dalla coda della tastiera e aggiorna i nostri "interruttori" (isAccelerating, isTurningLeft, ecc.).
-     
-    private void handleKeyboardInputs() {
-    while (!keyboardInputQueue.isEmpty()) {
-        char keyChar = keyboardInputQueue.poll(); // Prendo il tasto dalla coda
-
-        // --- Gestione tasti premuti (minuscoli) ---
-        if (keyChar == 'w') {
-            isAccelerating = true;
-            isBraking = false;     // Se accelero, non freno.
-            isReversing = false;   // Se accelero, non vado in retromarcia.
-        } else if (keyChar == 's') { // 's' ora per il freno
-            isBraking = true;
-            isAccelerating = false; // Se freno, non accelero.
-            isReversing = false;    // Se freno, non vado in retromarcia.
-        } else if (keyChar == 'x') { // 'x' ora per la retromarcia
-            isReversing = true;
-            isAccelerating = false; // Se vado in retromarcia, non accelero.
-            isBraking = false;      // Se vado in retromarcia, non freno.
-        } else if (keyChar == 'a') {
-            isTurningLeft = true;
-            isTurningRight = false; // Se giro a sinistra, non giro a destra.
-        } else if (keyChar == 'd') {
-            isTurningRight = true;
-            isTurningLeft = false;  // Se giro a destra, non giro a sinistra.
-        }
-        
-        // --- Gestione tasti rilasciati (maiuscoli) ---
-        // Quando un tasto viene rilasciato, disattiviamo il suo "interruttore"
-        // Questo permette ai valori di accelerazione/freno/sterzo di diminuire gradualmente.
-        else if (keyChar == 'W') {
-            isAccelerating = false;
-        } else if (keyChar == 'S') { // 'S' rilascia il freno
-            isBraking = false;
-        } else if (keyChar == 'X') { // 'X' rilascia la retromarcia
-            isReversing = false;
-        } else if (keyChar == 'A') {
-            isTurningLeft = false;
-        } else if (keyChar == 'D') {
-            isTurningRight = false;
-        }
+    // Legge i tasti premuti e aggiorna i nostri "interruttori" (isAccelerating, isTurningLeft, ecc.).
+    // Restituisce quanti eventi sono stati letti: vengono liberati a fine tick, dopo averne misurato la latenza.
+    private int handleKeyboardInputs() {
+        // Prima gli eventi e poi la maschera: la maschera letta comprende sicuramente questi eventi.
+        int n = keyEvents.available();
+        int keys = keyState.get();
+
+        isAccelerating = (keys & KEY_ACCEL) != 0;
+        isBraking = (keys & KEY_BRAKE) != 0;
+        isReversing = (keys & KEY_REVERSE) != 0;
+        isTurningLeft = (keys & KEY_LEFT) != 0;
+        isTurningRight = (keys & KEY_RIGHT) != 0;
+
         // Tasto 'p' per attivare/disattivare la registrazione dei dati
-        else if (keyChar == 'p') {
-            setRecordingEnabled(!isRecordingEnabled());
+        for (int i = 0; i < n; i++) {
+            if (keyEvents.key(i) == 'p') {
+                setRecordingEnabled(!isRecordingEnabled());
+            }
+        }
+        return n;
+    }
+
+    // Nuova maschera dei tasti dopo un evento.
+    // Minuscolo = tasto premuto, maiuscolo = tasto rilasciato (il valore poi diminuisce gradualmente).
+    private static int applyKey(int keys, char keyChar) {
+        switch (keyChar) {
+            case 'w': return (keys | KEY_ACCEL) & ~(KEY_BRAKE | KEY_REVERSE);   // Se accelero, non freno e non vado in retro.
+            case 's': return (keys | KEY_BRAKE) & ~(KEY_ACCEL | KEY_REVERSE);   // 's' per il freno
+            case 'x': return (keys | KEY_REVERSE) & ~(KEY_ACCEL | KEY_BRAKE);   // 'x' per la retromarcia
+            case 'a': return (keys | KEY_LEFT) & ~KEY_RIGHT;                    // Se giro a sinistra, non giro a destra.
+            case 'd': return (keys | KEY_RIGHT) & ~KEY_LEFT;
+            case 'W': return keys & ~KEY_ACCEL;
+            case 'S': return keys & ~KEY_BRAKE;
+            case 'X': return keys & ~KEY_REVERSE;
+            case 'A': return keys & ~KEY_LEFT;
+            case 'D': return keys & ~KEY_RIGHT;
+            default: return keys;
         }
     }
-}
 
     /**
      * Questa funzione prende lo stato dei nostri "interruttori" (isAccelerating, ecc.)
@@ -258,10 +279,16 @@ public class HumanDriver extends Controller {
         return this.shouldRecordData; //vero se attiva, falso se disattiva
     }
 
-    //Aggiunge un carattere premuto dalla tastiera alla nostra coda di input.
-     
+    // Riceve un carattere dalla tastiera (chiamato dall'EDT del CharReader):
+    // aggiorna la maschera dei tasti e accoda l'evento con il suo istante, senza allocare.
     public void enqueueKeyboardInput(char keyChar) {
-        keyboardInputQueue.offer(keyChar); // "Metti" il carattere nella coda.
+        long now = System.nanoTime();
+        int current, next;
+        do {
+            current = keyState.get();
+            next = applyKey(current, keyChar);
+        } while (current != next && !keyState.compareAndSet(current, next));
+        keyEvents.offer(keyChar, now);
     }
 
     // reset (es. nuova gara)
@@ -269,8 +296,12 @@ public class HumanDriver extends Controller {
     public void reset() {
         carActions = new Action(); // Reset delle azioni a zero.
         carActions.gear = 1; // Metto la prima
-        keyboardInputQueue.clear(); // Svuoto la coda dei tasti.
-        // Resetto i flag dei tasti premuti.
+        keyEvents.release(keyEvents.available()); // Svuoto la coda dei tasti.
+        // Resetto i flag dei tasti premuti (la retromarcia resta com'era).
+        int current;
+        do {
+            current = keyState.get();
+        } while (!keyState.compareAndSet(current, current & KEY_REVERSE));
         isAccelerating = false;
         isBraking = false;
         isTurningLeft = false;
@@ -286,5 +317,11 @@ public class HumanDriver extends Controller {
             dataRecorder.close(); // Chiudo il file CSV in modo sicuro cosi mi salvo i dati.
             System.out.println("HumanDriver: Registratore dati chiuso. Dataset salvato correttamente!");
         }
+        if (inputLatency.count() > 0) {
+            System.out.println(String.format(
+                    "HumanDriver: latenza tasto -> azione us p50 %.1f  p99 %.1f  max %.1f (%d eventi, %d persi)",
+                    inputLatency.percentile(0.50) / 1000.0, inputLatency.percentile(0.99) / 1000.0,
+                    inputLatency.max() / 1000.0, inputLatency.count(), keyEvents.dropped()));
+        }
     }
 }
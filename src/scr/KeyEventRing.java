@@ -0,0 +1,91 @@
+package scr;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Buffer circolare lock-free a produttore singolo / consumatore singolo per
+ * gli eventi della tastiera: il carattere e l'istante (System.nanoTime) in cui
+ * è arrivato. Come RecordingRing, tutta la memoria è allocata nel costruttore:
+ * un tasto premuto non crea oggetti.
+ *
+ * Il produttore è l'EDT di Swing (CharReader), il consumatore il tick di
+ * controllo di HumanDriver.
+ */
+public final class KeyEventRing {
+
+    private final char[] keys;
+    private final long[] stamps;
+    private final int mask;
+
+    // prossimo evento da scrivere (produttore) e prossimo da leggere (consumatore)
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    // copie locali per evitare letture volatile inutili
+    private long cachedTail;
+    private long cachedHead;
+    // scritto solo dal produttore, letto dal tick di controllo: lazySet come gli indici
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * @param capacity numero di eventi, arrotondato alla potenza di 2 successiva
+     */
+    public KeyEventRing(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.mask = size - 1;
+        this.keys = new char[size];
+        this.stamps = new long[size];
+    }
+
+    // ---- lato produttore ----
+
+    /**
+     * Accoda un evento.
+     *
+     * @return false se il buffer è pieno (l'evento viene contato come perso)
+     */
+    public boolean offer(char key, long nanos) {
+        long h = head.get();
+        if (h - cachedTail > mask) {
+            cachedTail = tail.get();
+            if (h - cachedTail > mask) {
+                dropped.lazySet(dropped.get() + 1);
+                return false;
+            }
+        }
+        int i = (int) (h & mask);
+        keys[i] = key;
+        stamps[i] = nanos;
+        head.lazySet(h + 1);
+        return true;
+    }
+
+    public long dropped() {
+        return dropped.get();
+    }
+
+    // ---- lato consumatore ----
+
+    /** @return il numero di eventi pubblicati e non ancora letti */
+    public int available() {
+        long t = tail.get();
+        if (cachedHead - t <= 0)
+            cachedHead = head.get();
+        return (int) (cachedHead - t);
+    }
+
+    /** Carattere dell'i-esimo evento disponibile */
+    public char key(int i) {
+        return keys[(int) ((tail.get() + i) & mask)];
+    }
+
+    /** Istante (System.nanoTime) dell'i-esimo evento disponibile */
+    public long stamp(int i) {
+        return stamps[(int) ((tail.get() + i) & mask)];
+    }
+
+    /** Libera i primi n eventi letti */
+    public void release(int n) {
+        tail.lazySet(tail.get() + n);
+    }
+}
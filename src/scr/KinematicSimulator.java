@@ -0,0 +1,611 @@
+package scr;
+
+import java.util.Locale;
+import java.util.Random;
+import java.util.StringTokenizer;
+
+/**
+ * Simulatore senza grafica e senza TORCS: un'auto a modello cinematico
+ * (bicicletta) su una SimTrack, che implementa SensorModel ed esegue le Action
+ * di un Controller. Serve a valutare e tarare i driver a centinaia di migliaia
+ * di tick al secondo invece che in tempo reale.
+ *
+ * Il modello è volutamente semplice:
+ *   - velocità longitudinale da coppia motore (curva fissa), rapporti del
+ *     cambio, freno, resistenza aerodinamica e di rotolamento;
+ *   - sterzata cinematica con imbardata limitata dall'aderenza laterale
+ *     (oltre il limite l'auto sottosterza e va verso l'esterno);
+ *   - trazione e frenata limitate dall'aderenza, con le ruote che slittano o
+ *     si bloccano (wheelSpinVel), così il filtro ABS ha qualcosa da fare;
+ *   - fuori pista meno aderenza e più resistenza, nessun muro.
+ * I 19 sensori di bordo pista sono calcolati analiticamente (raggio contro
+ * rettilinei e archi) agli angoli di initAngles(); fuori pista valgono -1
+ * come in TORCS. Un tick dura 20 ms come nel server SCR.
+ *
+ * Con lo stesso seme (posizione di partenza e rumore dei sensori) due
+ * esecuzioni danno esattamente gli stessi valori.
+ *
+ * Taratura: il freno supera di poco l'aderenza, quindi a freno pieno le ruote
+ * si bloccano solo del 7% circa. Con un margine più ampio il bloccaggio supera
+ * absSlip e il filtro ABS di SimpleDriver azzera il freno un tick sì e uno no:
+ * la frenata efficace si dimezza e l'auto entra in curva troppo veloce, dove
+ * lo sterzo di SimpleDriver (ridotto oltre steerSensitivityOffset) non basta.
+ * Con questi valori SimpleDriver con i parametri di default completa i giri di
+ * circuit (circa 77 s) e oval (circa 60 s) senza uscire di pista, con
+ * |trackPos| massimo intorno a 0.4, su qualunque seme.
+ *
+ * Uso: java scr.KinematicSimulator [driver] [track:oval|circuit|segmenti] [ticks:N] [seed:N] [noise:X]
+ */
+public class KinematicSimulator implements SensorModel {
+
+    public static final double DT = 0.02;
+
+    // Auto (valori vicini a una vettura TORCS di serie)
+    private static final double MASS = 1150;
+    private static final double WHEEL_RADIUS = 0.33;
+    private static final double WHEELBASE = 2.6;
+    private static final double REAR_AXLE = 1.3;            // distanza baricentro-asse posteriore
+    private static final double STEER_LOCK = 0.366;         // rad alle ruote con sterzo a 1
+    private static final double MAX_TORQUE = 350;           // Nm
+    private static final double IDLE_RPM = 1000;
+    private static final double REV_LIMIT = 9500;
+    // rapporto totale (cambio x differenziale) per marcia da -1 a 6
+    private static final double[] RATIO = { -12, 0, 14.4, 9.9, 7.2, 5.6, 4.5, 3.8 };
+    private static final double BRAKE_MAX = 14;              // m/s^2 con freno a 1
+    private static final double GRIP = 13;                   // m/s^2 in pista (vedi la taratura sopra)
+    private static final double GRIP_OFF_TRACK = 6;
+    private static final double OFF_TRACK_DRAG = 2;          // m/s^2
+    private static final double DRAG = 4.5e-4;               // m/s^2 per (m/s)^2
+    private static final double ROLLING = 0.15;              // m/s^2
+    private static final double MAX_RANGE = 200;
+    private static final double RAY_BEHIND = 60, RAY_AHEAD = 300; // finestra di segmenti per i raggi
+    private static final int MAX_OFF_TRACK_TICKS = 500;      // run(): 10 s fuori pista e l'episodio finisce
+
+    private final SimTrack track;
+    private final double[] rayCos, raySin;
+    private final long seed;
+    private final double noise;
+    private final Random random;
+    private final int[] window;
+
+    // Stato dell'auto (mondo)
+    private double x, y, yaw;
+    private double speed;       // m/s lungo l'asse dell'auto
+    private double slip;        // angolo di deriva (rad)
+    private double rpm;
+    private int gear;
+
+    // Stato rispetto alla pista
+    private int segment;
+    private double distanceFromStart;
+    private double lateral;     // m, positivo a sinistra
+    private double angle;       // direzione della pista - direzione dell'auto
+    private double distanceRaced;
+    private double currentLapTime, lastLapTime, bestLapTime;
+    private int laps;
+    private long ticks;
+
+    private final double[] trackEdge = new double[19];
+    private final double[] focus = { -1, -1, -1, -1, -1 };
+    private final double[] opponents = new double[36];
+    private final double[] wheelSpin = new double[4];
+
+    /**
+     * @param angles angoli dei sensori di bordo pista (Controller.initAngles())
+     * @param seed seme per posizione di partenza e rumore
+     * @param noise deviazione standard del rumore dei sensori di bordo pista in m (0 = nessuno)
+     */
+    public KinematicSimulator(SimTrack track, float[] angles, long seed, double noise) {
+        this.track = track;
+        this.seed = seed;
+        this.noise = noise;
+        this.random = new Random(seed);
+        this.rayCos = new double[angles.length];
+        this.raySin = new double[angles.length];
+        for (int i = 0; i < angles.length; i++) {
+            rayCos[i] = Math.cos(Math.toRadians(angles[i]));
+            raySin[i] = Math.sin(Math.toRadians(angles[i]));
+        }
+        this.window = new int[track.segments()];
+        java.util.Arrays.fill(opponents, 200);
+        reset();
+    }
+
+    public KinematicSimulator(SimTrack track, Controller controller, long seed) {
+        this(track, controller.initAngles(), seed, 0);
+    }
+
+    /** Riporta l'auto sulla linea di partenza, con la stessa perturbazione a parità di seme */
+    public void reset() {
+        random.setSeed(seed);
+        double half = track.width() / 2;
+        double offset = (random.nextDouble() * 2 - 1) * 0.25 * half;
+        double heading = track.heading0[0] + (random.nextDouble() * 2 - 1) * 0.03;
+        double h0 = track.heading0[0];
+        x = track.x0[0] + 0.5 * Math.cos(h0) - offset * Math.sin(h0);
+        y = track.y0[0] + 0.5 * Math.sin(h0) + offset * Math.cos(h0);
+        yaw = heading;
+        speed = 0;
+        slip = 0;
+        gear = 0;
+        rpm = IDLE_RPM;
+        segment = 0;
+        distanceRaced = 0;
+        currentLapTime = 0;
+        lastLapTime = 0;
+        bestLapTime = 0;
+        laps = 0;
+        ticks = 0;
+        project();
+        distanceRaced = 0;
+        updateSensors(0, 0);
+    }
+
+    /** Esegue l'azione per un tick (20 ms) e aggiorna i sensori */
+    public void step(Action action) {
+        double accel = clamp(action.accelerate, 0, 1);
+        double brake = clamp(action.brake, 0, 1);
+        double clutch = clamp(action.clutch, 0, 1);
+        double steer = clamp(action.steering, -1, 1) * STEER_LOCK;
+        gear = Math.max(-1, Math.min(6, action.gear));
+        boolean offTrack = Math.abs(lateral) > track.width() / 2;
+        double grip = offTrack ? GRIP_OFF_TRACK : GRIP;
+
+        // motore: giri dalle ruote (in folle liberi con l'acceleratore), coppia e forza alle ruote
+        double ratio = RATIO[gear + 1];
+        double wheelRpm = Math.abs(speed) / WHEEL_RADIUS * Math.abs(ratio) * 60 / (2 * Math.PI);
+        double freeRpm = IDLE_RPM + accel * (REV_LIMIT - IDLE_RPM);
+        rpm = gear == 0 ? rpm + (freeRpm - rpm) * 0.2 : Math.max(IDLE_RPM, wheelRpm + clutch * (freeRpm - wheelRpm));
+        double drive = 0;
+        if (gear != 0 && rpm < REV_LIMIT)
+            drive = accel * torque(rpm) * ratio / WHEEL_RADIUS / MASS * (1 - clutch);
+        double spin = 0;
+        if (Math.abs(drive) > grip) {
+            spin = Math.abs(drive) - grip;
+            drive = Math.signum(drive) * grip;
+        }
+        double braking = brake * BRAKE_MAX;
+        double lock = 0;
+        if (braking > grip) {
+            lock = (braking - grip) / braking;
+            braking = grip;
+        }
+
+        // velocità: il freno e le resistenze non possono invertire il moto
+        double resist = DRAG * speed * speed + ROLLING + (offTrack ? OFF_TRACK_DRAG : 0);
+        double oldSpeed = speed;
+        double v = speed + drive * DT;
+        double stop = (braking + resist) * DT;
+        if (Math.abs(v) <= stop)
+            v = 0;
+        else
+            v -= Math.signum(v) * stop;
+        speed = v;
+
+        // sterzata cinematica, imbardata limitata dall'aderenza
+        double tanSteer = Math.tan(steer);
+        slip = Math.atan(REAR_AXLE / WHEELBASE * tanSteer);
+        double yawRate = speed * Math.cos(slip) * tanSteer / WHEELBASE;
+        double maxYawRate = grip / Math.max(Math.abs(speed), 1);
+        if (Math.abs(yawRate) > maxYawRate) {
+            yawRate = Math.signum(yawRate) * maxYawRate;
+            slip *= 0.5; // sottosterzo: la deriva non segue lo sterzo
+        }
+        double avgSpeed = (oldSpeed + speed) / 2;
+        yaw += yawRate * DT;
+        x += avgSpeed * Math.cos(yaw + slip) * DT;
+        y += avgSpeed * Math.sin(yaw + slip) * DT;
+
+        double oldDistance = distanceFromStart;
+        project();
+        double ds = distanceFromStart - oldDistance;
+        if (ds < -track.length() / 2) {
+            ds += track.length();
+            // giro completato in avanti
+            laps++;
+            lastLapTime = currentLapTime + DT;
+            if (bestLapTime == 0 || lastLapTime < bestLapTime)
+                bestLapTime = lastLapTime;
+            currentLapTime = -DT;
+        } else if (ds > track.length() / 2) {
+            ds -= track.length();
+        }
+        distanceRaced += ds;
+        currentLapTime += DT;
+        ticks++;
+        updateSensors(spin, lock);
+    }
+
+    // coppia (Nm) ad acceleratore pieno, massima a 6000 giri
+    private static double torque(double rpm) {
+        double d = (rpm - 6000) / 4000;
+        return MAX_TORQUE * Math.max(0.3, 0.6 + 0.4 * (1 - d * d));
+    }
+
+    private static double clamp(double v, double min, double max) {
+        return v < min ? min : (v > max ? max : v);
+    }
+
+    // Proiezione della posizione sulla pista: segmento, distanza dalla partenza, scostamento e angolo
+    private void project() {
+        int n = track.segments();
+        int direction = 0;
+        for (int iter = 0; iter <= n; iter++) {
+            int i = segment;
+            double along, lat, heading;
+            if (track.turn[i] == 0) {
+                double c = Math.cos(track.heading0[i]), s = Math.sin(track.heading0[i]);
+                double dx = x - track.x0[i], dy = y - track.y0[i];
+                along = dx * c + dy * s;
+                lat = -dx * s + dy * c;
+                heading = track.heading0[i];
+            } else {
+                int sign = track.turn[i];
+                double r = track.radius[i];
+                double dx = x - track.cx[i], dy = y - track.cy[i];
+                double sweep = track.length[i] / r;
+                double delta = wrapPi(sign * (Math.atan2(dy, dx) - track.midAngle[i])) + sweep / 2;
+                along = r * delta;
+                lat = sign * (r - Math.sqrt(dx * dx + dy * dy));
+                heading = track.heading0[i] + sign * delta;
+            }
+            // oltre i limiti del segmento si passa al vicino, ma senza rimbalzare tra due segmenti
+            if (along < 0 && direction <= 0 && iter < n) {
+                segment = (i + n - 1) % n;
+                direction = -1;
+                continue;
+            }
+            if (along > track.length[i] && direction >= 0 && iter < n) {
+                segment = (i + 1) % n;
+                direction = 1;
+                continue;
+            }
+            distanceFromStart = track.wrap(track.startS[i] + along);
+            lateral = lat;
+            angle = wrapPi(heading - yaw);
+            return;
+        }
+    }
+
+    private static double wrapPi(double a) {
+        a %= 2 * Math.PI;
+        if (a > Math.PI)
+            a -= 2 * Math.PI;
+        else if (a <= -Math.PI)
+            a += 2 * Math.PI;
+        return a;
+    }
+
+    private void updateSensors(double spin, double lock) {
+        double wheel = speed * Math.cos(slip) / WHEEL_RADIUS;
+        wheelSpin[0] = wheelSpin[1] = wheel * (1 - lock);
+        wheelSpin[2] = wheelSpin[3] = wheel * (1 - lock) + Math.signum(speed) * spin / WHEEL_RADIUS;
+
+        if (Math.abs(lateral) > track.width() / 2) {
+            java.util.Arrays.fill(trackEdge, -1); // fuori pista, come TORCS
+            return;
+        }
+        int count = raySegments();
+        double cy = Math.cos(yaw), sy = Math.sin(yaw);
+        for (int k = 0; k < trackEdge.length; k++) {
+            // direzione del raggio: angoli positivi a destra dell'auto
+            double ux = cy * rayCos[k] + sy * raySin[k];
+            double uy = sy * rayCos[k] - cy * raySin[k];
+            double range = MAX_RANGE;
+            for (int w = 0; w < count; w++) {
+                int i = window[w];
+                range = Math.min(range, cast(i, track.width() / 2, ux, uy, range));
+                range = Math.min(range, cast(i, -track.width() / 2, ux, uy, range));
+            }
+            if (noise > 0 && range < MAX_RANGE)
+                range = Math.max(0, range + random.nextGaussian() * noise);
+            trackEdge[k] = range;
+        }
+    }
+
+    // Segmenti che un raggio può colpire: RAY_BEHIND metri indietro e RAY_AHEAD avanti lungo la pista
+    private int raySegments() {
+        int n = track.segments();
+        int count = 0;
+        window[count++] = segment;
+        double back = distanceFromStart - track.startS[segment];
+        for (int i = (segment + n - 1) % n; back < RAY_BEHIND && count < n; i = (i + n - 1) % n) {
+            window[count++] = i;
+            back += track.length[i];
+        }
+        double ahead = track.startS[segment] + track.length[segment] - distanceFromStart;
+        for (int i = (segment + 1) % n; ahead < RAY_AHEAD && count < n; i = (i + 1) % n) {
+            if (contains(window, count, i))
+                break;
+            window[count++] = i;
+            ahead += track.length[i];
+        }
+        return count;
+    }
+
+    private static boolean contains(int[] values, int count, int value) {
+        for (int i = 0; i < count; i++)
+            if (values[i] == value)
+                return true;
+        return false;
+    }
+
+    // Distanza lungo il raggio (ux, uy) dal bordo a scostamento offset del segmento i, oppure best
+    private double cast(int i, double offset, double ux, double uy, double best) {
+        if (track.turn[i] == 0) {
+            double tx = Math.cos(track.heading0[i]), ty = Math.sin(track.heading0[i]);
+            double px = track.x0[i] - ty * offset - x;
+            double py = track.y0[i] + tx * offset - y;
+            double den = ux * ty - uy * tx;
+            if (Math.abs(den) < 1e-12)
+                return best;
+            double r = (px * ty - py * tx) / den;
+            double q = (px * uy - py * ux) / den;
+            return r > 0 && r < best && q >= 0 && q <= track.length[i] ? r : best;
+        }
+        int sign = track.turn[i];
+        double radius = track.radius[i] - sign * offset;
+        double fx = x - track.cx[i], fy = y - track.cy[i];
+        double b = ux * fx + uy * fy;
+        double disc = b * b - (fx * fx + fy * fy - radius * radius);
+        if (disc < 0)
+            return best;
+        double sq = Math.sqrt(disc);
+        double mx = Math.cos(track.midAngle[i]), my = Math.sin(track.midAngle[i]);
+        double minDot = radius * Math.cos(track.length[i] / track.radius[i] / 2);
+        for (int root = 0; root < 2; root++) {
+            double r = root == 0 ? -b - sq : -b + sq;
+            if (r <= 0 || r >= best)
+                continue;
+            // il punto colpito deve stare nel settore dell'arco
+            double hx = fx + r * ux, hy = fy + r * uy;
+            if (hx * mx + hy * my >= minDot)
+                return r;
+        }
+        return best;
+    }
+
+    /** Risultato di run() */
+    public static final class Result {
+        public final long ticks;
+        public final int laps;
+        public final double bestLap;       // s, 0 se nessun giro completo
+        public final double distance;      // m percorsi
+        public final long offTrackTicks;
+        public final double maxTrackPos;   // |trackPos| massimo
+        public final long elapsedNanos;
+
+        Result(long ticks, int laps, double bestLap, double distance, long offTrackTicks, double maxTrackPos,
+                long elapsedNanos) {
+            this.ticks = ticks;
+            this.laps = laps;
+            this.bestLap = bestLap;
+            this.distance = distance;
+            this.offTrackTicks = offTrackTicks;
+            this.maxTrackPos = maxTrackPos;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public double ticksPerSecond() {
+            return ticks * 1e9 / Math.max(1, elapsedNanos);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d tick, %d giri (migliore %.2f s), %.0f m, %d tick fuori pista, |trackPos| max %.2f,"
+                    + " %.0f tick/s", ticks, laps, bestLap, distance, offTrackTicks, maxTrackPos, ticksPerSecond());
+        }
+    }
+
+    /**
+     * Fa guidare controller da capo per al massimo maxTicks tick. L'episodio
+     * finisce prima se il driver chiede il riavvio o resta fuori pista per 10 s.
+     */
+    public Result run(Controller controller, long maxTicks) {
+        reset();
+        long offTrack = 0;
+        int offTrackRun = 0;
+        double maxTrackPos = 0;
+        long start = System.nanoTime();
+        long t = 0;
+        while (t < maxTicks) {
+            Action action = controller.control(this);
+            if (action.restartRace)
+                break;
+            step(action);
+            t++;
+            double pos = Math.abs(getTrackPosition());
+            maxTrackPos = Math.max(maxTrackPos, pos);
+            if (pos > 1) {
+                offTrack++;
+                if (++offTrackRun >= MAX_OFF_TRACK_TICKS)
+                    break;
+            } else {
+                offTrackRun = 0;
+            }
+        }
+        return new Result(t, laps, bestLapTime, distanceRaced, offTrack, maxTrackPos, System.nanoTime() - start);
+    }
+
+    public SimTrack getTrack() {
+        return track;
+    }
+
+    public int getLaps() {
+        return laps;
+    }
+
+    public long getTicks() {
+        return ticks;
+    }
+
+    // ---- SensorModel ----
+
+    public double getSpeed() {
+        return speed * Math.cos(slip) * 3.6;
+    }
+
+    public double getAngleToTrackAxis() {
+        return angle;
+    }
+
+    public double[] getTrackEdgeSensors() {
+        return trackEdge;
+    }
+
+    public double[] getFocusSensors() {
+        return focus;
+    }
+
+    public double getTrackPosition() {
+        return lateral / (track.width() / 2);
+    }
+
+    public int getGear() {
+        return gear;
+    }
+
+    public double[] getOpponentSensors() {
+        return opponents;
+    }
+
+    public int getRacePosition() {
+        return 1;
+    }
+
+    public double getLateralSpeed() {
+        return speed * Math.sin(slip) * 3.6;
+    }
+
+    public double getCurrentLapTime() {
+        return currentLapTime;
+    }
+
+    public double getDamage() {
+        return 0;
+    }
+
+    public double getDistanceFromStartLine() {
+        return distanceFromStart;
+    }
+
+    public double getDistanceRaced() {
+        return distanceRaced;
+    }
+
+    public double getFuelLevel() {
+        return 94;
+    }
+
+    public double getLastLapTime() {
+        return lastLapTime;
+    }
+
+    public double getRPM() {
+        return rpm;
+    }
+
+    public double[] getWheelSpinVelocity() {
+        return wheelSpin;
+    }
+
+    public double getZSpeed() {
+        return 0;
+    }
+
+    public double getZ() {
+        return 0;
+    }
+
+    /**
+     * Lo stato corrente nel formato dei messaggi del server SCR, numeri compresi
+     * (vedi number); alloca: non per ogni tick.
+     */
+    public String getMessage() {
+        StringBuilder sb = new StringBuilder(1024);
+        number(sb.append("(angle "), angle);
+        number(sb.append(")(curLapTime "), currentLapTime);
+        sb.append(")(damage 0)(distFromStart ");
+        number(sb, distanceFromStart);
+        number(sb.append(")(distRaced "), distanceRaced);
+        sb.append(")(fuel 94)(gear ").append(gear);
+        number(sb.append(")(lastLapTime "), lastLapTime);
+        sb.append(")(opponents");
+        for (double o : opponents)
+            number(sb.append(' '), o);
+        sb.append(")(racePos 1)(rpm ");
+        number(sb, rpm);
+        number(sb.append(")(speedX "), getSpeed());
+        number(sb.append(")(speedY "), getLateralSpeed());
+        sb.append(")(speedZ 0)(track");
+        for (double t : trackEdge)
+            number(sb.append(' '), t);
+        number(sb.append(")(trackPos "), getTrackPosition());
+        sb.append(")(wheelSpinVel");
+        for (double w : wheelSpin)
+            number(sb.append(' '), w);
+        sb.append(")(z 0)(focus -1 -1 -1 -1 -1)");
+        return sb.toString();
+    }
+
+    // Un numero come lo scrive il server SCR (ostream di C++ con la precisione di default):
+    // 6 cifre significative senza zeri finali, in notazione esponenziale sotto 1e-4 e da 1e6
+    private static void number(StringBuilder sb, double v) {
+        String s = String.format(Locale.ROOT, "%.6g", v);
+        int e = s.indexOf('e');
+        int end = e < 0 ? s.length() : e;
+        if (s.indexOf('.') >= 0) {
+            while (s.charAt(end - 1) == '0')
+                end--;
+            if (s.charAt(end - 1) == '.')
+                end--;
+        }
+        sb.append(s, 0, end);
+        if (e >= 0)
+            sb.append(s, e, s.length());
+    }
+
+    public static void main(String[] args) throws ReflectiveOperationException {
+        String driverClass = "scr.SimpleDriver";
+        String trackSpec = "circuit";
+        long ticks = 200000, seed = 1;
+        double noise = 0;
+        for (String arg : args) {
+            if (arg.indexOf(':') < 0) {
+                driverClass = arg;
+                continue;
+            }
+            StringTokenizer st = new StringTokenizer(arg, ":");
+            String entity = st.nextToken();
+            String value = arg.substring(entity.length() + 1);
+            if (entity.equals("track")) {
+                trackSpec = value;
+            } else if (entity.equals("ticks")) {
+                ticks = Long.parseLong(value);
+            } else if (entity.equals("seed")) {
+                seed = Long.parseLong(value);
+            } else if (entity.equals("noise")) {
+                noise = Double.parseDouble(value);
+            } else {
+                System.out.println("Opzione sconosciuta: " + arg);
+                System.exit(0);
+            }
+        }
+
+        // SimpleDriver senza registrazione (il simulatore non deve riempire il disco),
+        // con i parametri di -Dscr.simple.params se indicati
+        Controller driver = driverClass.equals(SimpleDriver.class.getName())
+                ? new SimpleDriver(null, SimpleDriverParams.fromProperties())
+                : (Controller) Class.forName(driverClass).getConstructor().newInstance();
+        driver.setStage(Controller.Stage.RACE);
+        driver.setTrackName("sim");
+        SimTrack track = SimTrack.parse(trackSpec);
+        KinematicSimulator sim = new KinematicSimulator(track, driver.initAngles(), seed, noise);
+        System.out.println("Pista: " + track + ", driver " + driver.getClass().getSimpleName() + ", seme " + seed);
+        // due passate: la prima scalda il JIT, la seconda misura
+        sim.run(driver, Math.min(ticks, 50000));
+        driver.reset();
+        Result result = sim.run(driver, ticks);
+        System.out.println(result);
+    }
+}
@@ -0,0 +1,121 @@
+package scr;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Benchmark di KnnIndex/KnnDriver: le dimostrazioni vengono replicate con un
+ * po' di rumore fino al numero di righe richiesto, poi si misurano costruzione,
+ * salvataggio e lettura dell'indice e il costo di KnnDriver.control() sui
+ * messaggi di sensor_messages.txt. Una parte delle ricerche viene confrontata
+ * con la ricerca esaustiva.
+ *
+ * Uso: java scr.KnnBenchmark dati.csv[,altri...] [righe] [k]
+ */
+public class KnnBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("Uso: java scr.KnnBenchmark dati.csv[,altri...] [righe] [k]");
+            return;
+        }
+        DemonstrationSet source = DemonstrationSet.load(args[0]);
+        int rows = args.length > 1 ? Integer.parseInt(args[1]) : 500000;
+        int k = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        DemonstrationSet set = replicate(source, rows);
+        System.out.println("Dimostrazioni: " + source.rows() + " righe, replicate a " + set.rows() + ", k = " + k
+                + ", core " + Runtime.getRuntime().availableProcessors());
+
+        long start = System.nanoTime();
+        KnnIndex index = KnnIndex.build(set);
+        long built = System.nanoTime();
+        Path file = Files.createTempFile("scr-knn", ".idx");
+        index.save(file);
+        long saved = System.nanoTime();
+        KnnIndex reloaded = KnnIndex.load(file);
+        long loaded = System.nanoTime();
+        System.out.println(String.format("costruzione %d ms, salvataggio %d ms, lettura %d ms (%d byte)",
+                (built - start) / 1000000, (saved - built) / 1000000, (loaded - saved) / 1000000, Files.size(file)));
+        Files.delete(file);
+
+        // confronto con la ricerca esaustiva sui primi messaggi
+        java.util.List<String> log = SensorMessageLog.load(null);
+        SensorFrame frame = new SensorFrame();
+        float[] features = new float[DemonstrationSet.FEATURES];
+        KnnIndex.Searcher searcher = reloaded.searcher(k);
+        int mismatches = 0, checks = Math.min(200, log.size());
+        for (int m = 0; m < checks; m++) {
+            DemonstrationSet.features(frame.parse(log.get(m)), features, 0);
+            int found = searcher.search(features);
+            float worst = 0;
+            for (int i = 0; i < found; i++)
+                worst = Math.max(worst, searcher.distance(i));
+            if (Math.abs(worst - bruteForceKth(set, index, features, k)) > 1e-3f * Math.max(1f, worst))
+                mismatches++;
+        }
+        System.out.println("Ricerche verificate con la ricerca esaustiva: " + checks + ", differenze " + mismatches);
+
+        int n = Integer.highestOneBit(log.size());
+        SensorFrame[] frames = new SensorFrame[n];
+        for (int i = 0; i < n; i++)
+            frames[i] = new SensorFrame().parse(log.get(i));
+        int mask = n - 1;
+        int[] next = new int[1];
+        KnnDriver driver = new KnnDriver(reloaded, k);
+        new MicroBenchmark(20000, 20000, 5).run("KnnDriver.control() " + set.rows() + " righe",
+                () -> driver.control(frames[next[0]++ & mask]).gear);
+    }
+
+    // copie delle dimostrazioni con rumore gaussiano relativo dell'1% sulle features
+    private static DemonstrationSet replicate(DemonstrationSet source, int rows) throws IOException {
+        Path tmp = Files.createTempFile("scr-knn", ".scrbin");
+        Random random = new Random(42);
+        double[] row = new double[DataWriter.COLUMNS];
+        float[] f = source.features();
+        int d = DemonstrationSet.FEATURES;
+        try (BinaryRecordingWriter writer = new BinaryRecordingWriter(tmp, DataWriter.COLUMN_NAMES)) {
+            for (int r = 0; r < rows; r++) {
+                int s = r % source.rows();
+                for (int j = 0; j < d; j++) {
+                    double v = f[s * d + j];
+                    row[j] = r < source.rows() ? v : v * (1 + 0.01 * random.nextGaussian());
+                }
+                row[d] = source.accel()[s];
+                row[d + 1] = source.brake()[s];
+                row[d + 2] = source.steering()[s];
+                row[d + 3] = source.gear()[s];
+                writer.writeRow(row, 0);
+            }
+        }
+        DemonstrationSet set = DemonstrationSet.load(tmp.toString());
+        Files.delete(tmp);
+        return set;
+    }
+
+    // distanza del k-esimo vicino con una scansione completa (spazio normalizzato dell'indice)
+    private static float bruteForceKth(DemonstrationSet set, KnnIndex index, float[] query, int k) {
+        float[] q = index.normalize(query, new float[query.length]);
+        float[] best = new float[k];
+        java.util.Arrays.fill(best, Float.MAX_VALUE);
+        int d = DemonstrationSet.FEATURES;
+        float[] tmp = new float[d];
+        for (int r = 0; r < set.rows(); r++) {
+            System.arraycopy(set.features(), r * d, tmp, 0, d);
+            index.normalize(tmp, tmp);
+            float dist = 0;
+            for (int j = 0; j < d; j++)
+                dist += (tmp[j] - q[j]) * (tmp[j] - q[j]);
+            if (dist < best[k - 1]) {
+                int i = k - 1;
+                while (i > 0 && best[i - 1] > dist) {
+                    best[i] = best[i - 1];
+                    i--;
+                }
+                best[i] = dist;
+            }
+        }
+        return (float) Math.sqrt(best[k - 1]);
+    }
+}
@@ -0,0 +1,173 @@
+package scr;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Driver per imitazione: ad ogni tick cerca nelle dimostrazioni registrate
+ * (HumanDriver/DataWriter) le k situazioni più simili e ne media le azioni,
+ * pesandole con l'inverso della distanza per il peso della riga (i tick che
+ * rappresenta, vedi AdaptiveSampler); la marcia è decisa a maggioranza
+ * pesata.
+ *
+ * Le dimostrazioni vengono indicizzate con un KnnIndex, salvato su file con
+ * un'impronta dei dati (percorso, dimensione e data di modifica di ogni file):
+ * agli avvii successivi l'indice viene riletto solo se l'impronta è la stessa,
+ * quindi un file aggiunto, tolto, cambiato o un scr.knn.data diverso lo fanno
+ * ricostruire. Configurazione con proprietà di sistema:
+ *   -Dscr.knn.data=file1.csv,dir/,...   dimostrazioni, CSV o .scrbin (default: directory corrente)
+ *   -Dscr.knn.index=knn.idx             file dell'indice (default knn.idx)
+ *   -Dscr.knn.k=5                       numero di vicini (default 5)
+ *   -Dscr.knn.rebuild=true              ricostruisce comunque l'indice
+ *
+ * Se le dimostrazioni non si possono caricare guida come SimpleDriver.
+ */
+public class KnnDriver extends Controller {
+
+    public static final String DATA_PROPERTY = "scr.knn.data";
+    public static final String INDEX_PROPERTY = "scr.knn.index";
+    public static final String K_PROPERTY = "scr.knn.k";
+    public static final String REBUILD_PROPERTY = "scr.knn.rebuild";
+
+    // marce da -1 (retromarcia) a 6
+    private static final int MIN_GEAR = -1, MAX_GEAR = 6;
+    // evita pesi infiniti per un vicino a distanza zero
+    private static final float DISTANCE_EPSILON = 1e-3f;
+
+    private final KnnIndex index;
+    private final int k;
+    private final KnnIndex.Searcher searcher;
+    private final SimpleDriver fallback;
+
+    private final float[] features = new float[DemonstrationSet.FEATURES];
+    private final float[] gearVotes = new float[MAX_GEAR - MIN_GEAR + 1];
+    private final Action action = new Action();
+
+    public KnnDriver() {
+        this(loadIndex(), Integer.getInteger(K_PROPERTY, 5));
+    }
+
+    // Usato da benchmark e strumenti offline: index null = guida come SimpleDriver
+    KnnDriver(KnnIndex index, int k) {
+        this.index = index;
+        this.k = k;
+        this.searcher = index != null ? index.searcher(k) : null;
+        this.fallback = index != null ? null : new SimpleDriver(null);
+    }
+
+    // Driver usa e getta che condivide l'indice (warm-up di ClientSession): nessun caricamento
+    KnnDriver sharingIndex() {
+        return new KnnDriver(index, k);
+    }
+
+    public Action control(SensorModel sensors) {
+        if (index == null)
+            return fallback.control(sensors);
+
+        DemonstrationSet.features(sensors, features, 0);
+        int found = searcher.search(features);
+
+        float accel = 0, brake = 0, steering = 0, totalWeight = 0;
+        java.util.Arrays.fill(gearVotes, 0f);
+        for (int i = 0; i < found; i++) {
+            int row = searcher.row(i);
+            float w = index.target(row, KnnIndex.WEIGHT) / (searcher.distance(i) + DISTANCE_EPSILON);
+            accel += w * index.target(row, KnnIndex.ACCEL);
+            brake += w * index.target(row, KnnIndex.BRAKE);
+            steering += w * index.target(row, KnnIndex.STEERING);
+            int gear = Math.max(MIN_GEAR, Math.min(MAX_GEAR, (int) index.target(row, KnnIndex.GEAR)));
+            gearVotes[gear - MIN_GEAR] += w;
+            totalWeight += w;
+        }
+
+        int bestGear = 0;
+        for (int g = 1; g < gearVotes.length; g++) {
+            if (gearVotes[g] > gearVotes[bestGear])
+                bestGear = g;
+        }
+
+        action.accelerate = accel / totalWeight;
+        action.brake = brake / totalWeight;
+        action.steering = steering / totalWeight;
+        action.gear = bestGear + MIN_GEAR;
+        action.clutch = 0;
+        action.restartRace = false;
+        return action;
+    }
+
+    public void reset() {
+        System.out.println("Restarting the race!");
+    }
+
+    public void shutdown() {
+        System.out.println("Bye bye!");
+    }
+
+    /**
+     * Rilegge l'indice salvato, oppure lo costruisce dalle dimostrazioni e lo salva.
+     * Restituisce null (con un messaggio) se non ci sono dati utilizzabili.
+     */
+    static KnnIndex loadIndex() {
+        String data = System.getProperty(DATA_PROPERTY, ".");
+        Path indexFile = Paths.get(System.getProperty(INDEX_PROPERTY, "knn.idx"));
+        try {
+            List<Path> files = DemonstrationSet.files(data);
+            long source = fingerprint(files);
+            if (!Boolean.getBoolean(REBUILD_PROPERTY) && cached(indexFile, source)) {
+                long start = System.nanoTime();
+                KnnIndex index = KnnIndex.load(indexFile);
+                System.out.println(String.format("KnnDriver: indice %s letto (%d righe) in %d ms", indexFile,
+                        index.size(), (System.nanoTime() - start) / 1000000));
+                return index;
+            }
+
+            long start = System.nanoTime();
+            DemonstrationSet set = DemonstrationSet.load(files);
+            long loaded = System.nanoTime();
+            if (set.rows() == 0) {
+                System.err.println("KnnDriver: nessuna dimostrazione in " + data + ", guido come SimpleDriver");
+                return null;
+            }
+            KnnIndex index = KnnIndex.build(set);
+            long built = System.nanoTime();
+            index.save(indexFile, source);
+            System.out.println(String.format("KnnDriver: %d righe da %s, caricamento %d ms, indice %d ms, salvato in %s",
+                    set.rows(), data, (loaded - start) / 1000000, (built - loaded) / 1000000, indexFile));
+            return index;
+        } catch (IOException e) {
+            System.err.println("KnnDriver: impossibile caricare le dimostrazioni: " + e.getMessage());
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    // true se l'indice salvato è stato costruito proprio da questi dati
+    private static boolean cached(Path indexFile, long source) {
+        if (!Files.exists(indexFile))
+            return false;
+        try {
+            return KnnIndex.source(indexFile) == source;
+        } catch (IOException e) {
+            System.err.println("KnnDriver: indice " + indexFile + " non utilizzabile (" + e.getMessage()
+                    + "), lo ricostruisco");
+            return false;
+        }
+    }
+
+    // FNV-1a a 64 bit di percorso assoluto, dimensione e data di modifica di ogni file, nell'ordine di lettura
+    private static long fingerprint(List<Path> files) throws IOException {
+        long h = 0xcbf29ce484222325L;
+        for (Path file : files) {
+            String key = file.toAbsolutePath().normalize() + "|" + Files.size(file) + "|"
+                    + Files.getLastModifiedTime(file).toMillis() + "\n";
+            for (int i = 0; i < key.length(); i++) {
+                h ^= key.charAt(i);
+                h *= 0x100000001b3L;
+            }
+        }
+        return h;
+    }
+}
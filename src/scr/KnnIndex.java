@@ -0,0 +1,467 @@
+package scr;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.IntStream;
+
+/**
+ * KD-tree su array piatti per la ricerca dei k vicini nelle dimostrazioni.
+ *
+ * Le features sono normalizzate (z-score) e l'albero è implicito: il nodo i ha
+ * figli 2i+1 e 2i+2, ogni nodo divide a metà l'intervallo di righe che copre
+ * (mediana sulla dimensione più estesa), quindi bastano la dimensione e il
+ * valore di taglio per nodo. Dopo la costruzione punti e target sono riordinati
+ * nell'ordine delle foglie, così una foglia è un tratto contiguo di memoria.
+ *
+ * La costruzione è parallela (ForkJoin, un task per sottoalbero) e l'indice
+ * può essere salvato e riletto con save/load.
+ *
+ * Formato del file (little-endian): "SCRK" | int16 versione | int16 target |
+ * int32 dimensioni | int32 righe | int32 livelli | int64 sorgente | mean[] |
+ * scale[] | splitDim[] | splitValue[] | punti[] | target[].
+ * La sorgente è un'impronta dei dati da cui è stato costruito l'indice
+ * (vedi KnnDriver): chi lo rilegge la confronta con quella dei dati attuali.
+ * Fra i target c'è il peso della riga (DemonstrationSet.weight()), che conta
+ * anche nella media e nella deviazione standard della normalizzazione.
+ */
+public class KnnIndex {
+
+    public static final byte[] MAGIC = { 'S', 'C', 'R', 'K' };
+    public static final short VERSION = 3;
+    /** Target per riga: accel, brake, steering, gear e il peso della riga */
+    public static final int TARGETS = 5;
+    public static final int ACCEL = 0, BRAKE = 1, STEERING = 2, GEAR = 3, WEIGHT = 4;
+
+    private static final int LEAF_SIZE = 16;
+    // sotto questa dimensione un sottoalbero viene costruito nel task corrente
+    private static final int PARALLEL_THRESHOLD = 8192;
+    private static final int HEADER_BYTES = 28;
+
+    private final int dims;
+    private final int size;
+    private final int levels;
+    private final float[] mean;
+    private final float[] scale; // 1 / deviazione standard
+    private final int[] splitDim;
+    private final float[] splitValue;
+    private final float[] points;
+    private final float[] targets;
+
+    private KnnIndex(int dims, int size, int levels, float[] mean, float[] scale, int[] splitDim,
+            float[] splitValue, float[] points, float[] targets) {
+        this.dims = dims;
+        this.size = size;
+        this.levels = levels;
+        this.mean = mean;
+        this.scale = scale;
+        this.splitDim = splitDim;
+        this.splitValue = splitValue;
+        this.points = points;
+        this.targets = targets;
+    }
+
+    /**
+     * Costruisce l'indice sulle dimostrazioni, in parallelo sul pool comune.
+     */
+    public static KnnIndex build(DemonstrationSet set) {
+        final int n = set.rows();
+        final int d = DemonstrationSet.FEATURES;
+        if (n == 0)
+            throw new IllegalArgumentException("nessuna riga nelle dimostrazioni");
+        final float[] raw = set.features();
+        final float[] weight = set.weight();
+        double totalWeight = 0;
+        for (int i = 0; i < n; i++)
+            totalWeight += weight[i];
+        final double total = totalWeight > 0 ? totalWeight : 1;
+
+        // normalizzazione z-score pesata, una dimensione per task
+        float[] mean = new float[d];
+        float[] scale = new float[d];
+        IntStream.range(0, d).parallel().forEach(j -> {
+            double sum = 0, sumSq = 0;
+            for (int i = 0; i < n; i++) {
+                double v = raw[i * d + j];
+                sum += weight[i] * v;
+                sumSq += weight[i] * v * v;
+            }
+            double m = sum / total;
+            double std = Math.sqrt(Math.max(0, sumSq / total - m * m));
+            mean[j] = (float) m;
+            scale[j] = std > 1e-9 ? (float) (1.0 / std) : 0f; // colonna costante: ignorata
+        });
+        float[] normalized = new float[n * d];
+        IntStream.range(0, n).parallel().forEach(i -> {
+            for (int j = 0; j < d; j++)
+                normalized[i * d + j] = (raw[i * d + j] - mean[j]) * scale[j];
+        });
+
+        int levels = 0;
+        while ((n >> levels) > LEAF_SIZE)
+            levels++;
+        int internal = (1 << levels) - 1;
+        int[] splitDim = new int[internal];
+        float[] splitValue = new float[internal];
+        int[] perm = new int[n];
+        for (int i = 0; i < n; i++)
+            perm[i] = i;
+
+        ForkJoinPool.commonPool().invoke(
+                new BuildTask(normalized, d, perm, splitDim, splitValue, levels, 0, 0, n, 0));
+
+        // riordino nell'ordine delle foglie
+        float[] points = new float[n * d];
+        float[] targets = new float[n * TARGETS];
+        IntStream.range(0, n).parallel().forEach(i -> {
+            int src = perm[i];
+            System.arraycopy(normalized, src * d, points, i * d, d);
+            targets[i * TARGETS + ACCEL] = set.accel()[src];
+            targets[i * TARGETS + BRAKE] = set.brake()[src];
+            targets[i * TARGETS + STEERING] = set.steering()[src];
+            targets[i * TARGETS + GEAR] = set.gear()[src];
+            targets[i * TARGETS + WEIGHT] = weight[src];
+        });
+        return new KnnIndex(d, n, levels, mean, scale, splitDim, splitValue, points, targets);
+    }
+
+    // Costruzione di un sottoalbero: divide [lo, hi) sulla mediana e si ripete sui figli
+    @SuppressWarnings("serial")
+    private static final class BuildTask extends RecursiveAction {
+        private final float[] pts;
+        private final int d;
+        private final int[] perm;
+        private final int[] splitDim;
+        private final float[] splitValue;
+        private final int levels;
+        private final int node, lo, hi, depth;
+
+        BuildTask(float[] pts, int d, int[] perm, int[] splitDim, float[] splitValue, int levels, int node, int lo,
+                int hi, int depth) {
+            this.pts = pts;
+            this.d = d;
+            this.perm = perm;
+            this.splitDim = splitDim;
+            this.splitValue = splitValue;
+            this.levels = levels;
+            this.node = node;
+            this.lo = lo;
+            this.hi = hi;
+            this.depth = depth;
+        }
+
+        @Override
+        protected void compute() {
+            build(node, lo, hi, depth);
+        }
+
+        private void build(int node, int lo, int hi, int depth) {
+            if (depth == levels)
+                return;
+            int dim = widestDimension(lo, hi);
+            int mid = (lo + hi) >>> 1;
+            select(lo, hi, mid, dim);
+            splitDim[node] = dim;
+            splitValue[node] = pts[perm[mid] * d + dim];
+            if (hi - lo > PARALLEL_THRESHOLD) {
+                invokeAll(new BuildTask(pts, d, perm, splitDim, splitValue, levels, 2 * node + 1, lo, mid, depth + 1),
+                        new BuildTask(pts, d, perm, splitDim, splitValue, levels, 2 * node + 2, mid, hi, depth + 1));
+            } else {
+                build(2 * node + 1, lo, mid, depth + 1);
+                build(2 * node + 2, mid, hi, depth + 1);
+            }
+        }
+
+        private int widestDimension(int lo, int hi) {
+            int best = 0;
+            float bestSpread = -1;
+            for (int j = 0; j < d; j++) {
+                float min = Float.MAX_VALUE, max = -Float.MAX_VALUE;
+                for (int i = lo; i < hi; i++) {
+                    float v = pts[perm[i] * d + j];
+                    if (v < min)
+                        min = v;
+                    if (v > max)
+                        max = v;
+                }
+                if (max - min > bestSpread) {
+                    bestSpread = max - min;
+                    best = j;
+                }
+            }
+            return best;
+        }
+
+        // quickselect: porta in perm[k] l'elemento k-esimo di [lo, hi) sulla dimensione dim
+        private void select(int lo, int hi, int k, int dim) {
+            int left = lo, right = hi - 1;
+            while (right > left) {
+                float pivot = pts[perm[(left + right) >>> 1] * d + dim];
+                int i = left, j = right;
+                while (i <= j) {
+                    while (pts[perm[i] * d + dim] < pivot)
+                        i++;
+                    while (pts[perm[j] * d + dim] > pivot)
+                        j--;
+                    if (i <= j) {
+                        int t = perm[i];
+                        perm[i] = perm[j];
+                        perm[j] = t;
+                        i++;
+                        j--;
+                    }
+                }
+                if (k <= j)
+                    right = j;
+                else if (k >= i)
+                    left = i;
+                else
+                    return;
+            }
+        }
+    }
+
+    public int dims() {
+        return dims;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /** Applica la normalizzazione dell'indice alle features (dst può essere src) */
+    public float[] normalize(float[] src, float[] dst) {
+        for (int j = 0; j < dims; j++)
+            dst[j] = (src[j] - mean[j]) * scale[j];
+        return dst;
+    }
+
+    /** Target t (ACCEL, BRAKE, STEERING, GEAR, WEIGHT) della riga i, nell'ordine dell'indice */
+    public float target(int row, int t) {
+        return targets[row * TARGETS + t];
+    }
+
+    /**
+     * Crea un oggetto di ricerca per k vicini, con i suoi buffer: ogni thread
+     * deve usare il proprio. Le ricerche non allocano.
+     */
+    public Searcher searcher(int k) {
+        return new Searcher(k);
+    }
+
+    public final class Searcher {
+        private final int k;
+        private final float[] query = new float[dims];
+        // max-heap dei k migliori (distanza al quadrato)
+        private final int[] heapRow;
+        private final float[] heapDist;
+        private int count;
+        // nodi ancora da visitare con il limite inferiore della loro distanza
+        private final int[] stackNode = new int[levels + 1];
+        private final int[] stackLo = new int[levels + 1];
+        private final int[] stackHi = new int[levels + 1];
+        private final float[] stackBound = new float[levels + 1];
+
+        private Searcher(int k) {
+            this.k = Math.max(1, Math.min(k, size));
+            this.heapRow = new int[this.k];
+            this.heapDist = new float[this.k];
+        }
+
+        /**
+         * Cerca i vicini delle features (non normalizzate, ordine di DemonstrationSet).
+         *
+         * @return il numero di vicini trovati
+         */
+        public int search(float[] features) {
+            normalize(features, query);
+            count = 0;
+
+            int internal = (1 << levels) - 1;
+            stackNode[0] = 0;
+            stackLo[0] = 0;
+            stackHi[0] = size;
+            stackBound[0] = 0;
+            int top = 1;
+            while (top > 0) {
+                top--;
+                if (count == k && stackBound[top] >= heapDist[0])
+                    continue;
+                int node = stackNode[top], lo = stackLo[top], hi = stackHi[top];
+                float bound = stackBound[top];
+                // discesa verso la foglia più vicina, lasciando sullo stack i fratelli lontani
+                while (node < internal) {
+                    int dim = splitDim[node];
+                    float diff = query[dim] - splitValue[node];
+                    int mid = (lo + hi) >>> 1;
+                    float farBound = Math.max(bound, diff * diff);
+                    if (diff < 0) {
+                        stackNode[top] = 2 * node + 2;
+                        stackLo[top] = mid;
+                        stackHi[top] = hi;
+                        node = 2 * node + 1;
+                        hi = mid;
+                    } else {
+                        stackNode[top] = 2 * node + 1;
+                        stackLo[top] = lo;
+                        stackHi[top] = mid;
+                        node = 2 * node + 2;
+                        lo = mid;
+                    }
+                    stackBound[top++] = farBound;
+                }
+                scanLeaf(lo, hi);
+            }
+            return count;
+        }
+
+        private void scanLeaf(int lo, int hi) {
+            final float[] q = query;
+            for (int i = lo; i < hi; i++) {
+                int base = i * dims;
+                float dist = 0;
+                for (int j = 0; j < dims; j++) {
+                    float diff = points[base + j] - q[j];
+                    dist += diff * diff;
+                }
+                if (count < k) {
+                    heapRow[count] = i;
+                    heapDist[count] = dist;
+                    siftUp(count++);
+                } else if (dist < heapDist[0]) {
+                    heapRow[0] = i;
+                    heapDist[0] = dist;
+                    siftDown();
+                }
+            }
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) >> 1;
+                if (heapDist[parent] >= heapDist[i])
+                    break;
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown() {
+            int i = 0;
+            while (true) {
+                int l = 2 * i + 1, r = l + 1, largest = i;
+                if (l < count && heapDist[l] > heapDist[largest])
+                    largest = l;
+                if (r < count && heapDist[r] > heapDist[largest])
+                    largest = r;
+                if (largest == i)
+                    return;
+                swap(i, largest);
+                i = largest;
+            }
+        }
+
+        private void swap(int a, int b) {
+            int row = heapRow[a];
+            heapRow[a] = heapRow[b];
+            heapRow[b] = row;
+            float dist = heapDist[a];
+            heapDist[a] = heapDist[b];
+            heapDist[b] = dist;
+        }
+
+        /** Riga dell'i-esimo vicino trovato (ordine qualsiasi), da usare con target() */
+        public int row(int i) {
+            return heapRow[i];
+        }
+
+        /** Distanza euclidea (nello spazio normalizzato) dell'i-esimo vicino */
+        public float distance(int i) {
+            return (float) Math.sqrt(heapDist[i]);
+        }
+    }
+
+    /** Salva l'indice, per non ricostruirlo all'avvio successivo */
+    public void save(Path file) throws IOException {
+        save(file, 0);
+    }
+
+    /** Salva l'indice con l'impronta dei dati da cui è stato costruito */
+    public void save(Path file, long source) throws IOException {
+        int internal = splitDim.length;
+        long length = HEADER_BYTES + 4L * (2 * dims + 2 * internal + (long) size * dims + (long) size * TARGETS);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+            map.order(ByteOrder.LITTLE_ENDIAN);
+            map.put(MAGIC).putShort(VERSION).putShort((short) TARGETS).putInt(dims).putInt(size).putInt(levels)
+                    .putLong(source);
+            map.asFloatBuffer().put(mean).put(scale);
+            map.position(map.position() + 8 * dims);
+            map.asIntBuffer().put(splitDim);
+            map.position(map.position() + 4 * internal);
+            map.asFloatBuffer().put(splitValue).put(points).put(targets);
+            map.force();
+        }
+    }
+
+    /** Impronta dei dati salvata con l'indice (0 se non indicata), senza leggere il resto del file */
+    public static long source(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining()) {
+                if (channel.read(header, header.position()) < 0)
+                    throw new IOException(file + " è troncato");
+            }
+            header.flip();
+            checkHeader(file, header);
+            return header.getLong(HEADER_BYTES - 8);
+        }
+    }
+
+    private static void checkHeader(Path file, ByteBuffer buf) throws IOException {
+        byte[] magic = new byte[4];
+        buf.get(magic);
+        if (!java.util.Arrays.equals(magic, MAGIC))
+            throw new IOException(file + " non è un indice k-NN");
+        short version = buf.getShort();
+        short targetCount = buf.getShort();
+        if (version != VERSION || targetCount != TARGETS)
+            throw new IOException(file + ": versione " + version + " non supportata");
+    }
+
+    /** Rilegge un indice salvato con save() */
+    public static KnnIndex load(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            ByteBuffer buf = map.order(ByteOrder.LITTLE_ENDIAN);
+            checkHeader(file, buf);
+            int dims = buf.getInt();
+            int size = buf.getInt();
+            int levels = buf.getInt();
+            buf.getLong(); // sorgente, vedi source()
+            int internal = (1 << levels) - 1;
+            long expected = HEADER_BYTES + 4L * (2 * dims + 2 * internal + (long) size * dims + (long) size * TARGETS);
+            if (channel.size() < expected)
+                throw new IOException(file + " è troncato");
+
+            float[] mean = new float[dims], scale = new float[dims];
+            int[] splitDim = new int[internal];
+            float[] splitValue = new float[internal];
+            float[] points = new float[size * dims];
+            float[] targets = new float[size * TARGETS];
+            buf.asFloatBuffer().get(mean).get(scale);
+            buf.position(buf.position() + 8 * dims);
+            buf.asIntBuffer().get(splitDim);
+            buf.position(buf.position() + 4 * internal);
+            buf.asFloatBuffer().get(splitValue).get(points).get(targets);
+            return new KnnIndex(dims, size, levels, mean, scale, splitDim, splitValue, points, targets);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package scr;
+
+/**
+ * Istogramma di latenze in nanosecondi a memoria fissa, con bucket
+ * log-lineari: i valori sotto 64 ns sono esatti, sopra ogni potenza di due è
+ * divisa in 32 sotto-bucket (errore relativo massimo ~3%). Registrare un valore
+ * costa un paio di operazioni sui bit e un incremento, senza allocazioni, quindi
+ * si può usare dentro il loop di controllo.
+ *
+ * Non è thread-safe: ogni istogramma va scritto da un solo thread.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    // valori esatti: 0 .. 2^(SUB_BITS+1) - 1
+    private static final int LINEAR_BUCKETS = SUB_BUCKETS << 1;
+    // valori oltre 2^MAX_EXP ns (~18 minuti) finiscono nell'ultimo bucket
+    private static final int MAX_EXP = 40;
+    private static final int BUCKETS = LINEAR_BUCKETS + (MAX_EXP - SUB_BITS - 1) * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKETS];
+    private long count = 0;
+    private long sum = 0;
+    private long min = Long.MAX_VALUE;
+    private long max = 0;
+
+    /** Registra un valore in nanosecondi (i valori negativi contano come 0) */
+    public void record(long nanos) {
+        if (nanos < 0)
+            nanos = 0;
+        counts[index(nanos)]++;
+        count++;
+        sum += nanos;
+        if (nanos < min)
+            min = nanos;
+        if (nanos > max)
+            max = nanos;
+    }
+
+    /** Somma i valori di other in questo istogramma */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++)
+            counts[i] += other.counts[i];
+        count += other.count;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    public void reset() {
+        java.util.Arrays.fill(counts, 0);
+        count = 0;
+        sum = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public long max() {
+        return max;
+    }
+
+    public long min() {
+        return count > 0 ? min : 0;
+    }
+
+    public double mean() {
+        return count > 0 ? (double) sum / count : 0.0;
+    }
+
+    /**
+     * Valore sotto il quale cade la frazione p (0..1) dei campioni: il limite
+     * superiore del bucket, mai oltre il massimo registrato.
+     */
+    public long percentile(double p) {
+        if (count == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(p * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank)
+                return Math.min(highestValue(i), max);
+        }
+        return max;
+    }
+
+    /** Quanti campioni superano la soglia, alla risoluzione dei bucket */
+    public long countAbove(long nanos) {
+        long above = 0;
+        for (int i = BUCKETS - 1; i >= 0 && lowestValue(i) > nanos; i--)
+            above += counts[i];
+        return above;
+    }
+
+    private static int index(long v) {
+        if (v < LINEAR_BUCKETS)
+            return (int) v;
+        int exp = 63 - Long.numberOfLeadingZeros(v);
+        if (exp >= MAX_EXP)
+            return BUCKETS - 1;
+        int shift = exp - SUB_BITS;
+        int top = (int) (v >>> shift); // SUB_BUCKETS .. 2*SUB_BUCKETS-1
+        return LINEAR_BUCKETS + (exp - SUB_BITS - 1) * SUB_BUCKETS + (top - SUB_BUCKETS);
+    }
+
+    private static long lowestValue(int i) {
+        if (i < LINEAR_BUCKETS)
+            return i;
+        int k = i - LINEAR_BUCKETS;
+        int shift = k / SUB_BUCKETS + 1;
+        long top = SUB_BUCKETS + k % SUB_BUCKETS;
+        return top << shift;
+    }
+
+    private static long highestValue(int i) {
+        if (i == BUCKETS - 1)
+            return Long.MAX_VALUE;
+        return lowestValue(i + 1) - 1;
+    }
+}
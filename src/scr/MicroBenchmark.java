@@ -0,0 +1,84 @@
+package scr;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Piccolo harness per misurare il costo di un'operazione del ciclo di guida:
+ * tempo medio per operazione e byte allocati per operazione, letti dai
+ * contatori di allocazione del thread. Non è JMH: niente fork della JVM né
+ * controllo del dead code oltre al campo volatile, quindi i numeri servono a
+ * confrontare varianti nello stesso processo, non come valori assoluti. Per
+ * quelli ci sono i benchmark JMH di src-jmh (mvn -Pjmh package).
+ *
+ * Il risultato di ogni operazione viene accumulato in un campo volatile per
+ * evitare che il JIT elimini il codice misurato.
+ */
+public class MicroBenchmark {
+
+    /** Operazione misurata: restituisce un valore qualsiasi derivato dal lavoro svolto */
+    public interface Op {
+        long run();
+    }
+
+    private static volatile long sink;
+
+    private static final com.sun.management.ThreadMXBean THREADS = threadBean();
+
+    private final int warmupIterations;
+    private final int iterations;
+    private final int rounds;
+
+    public MicroBenchmark(int warmupIterations, int iterations, int rounds) {
+        this.warmupIterations = warmupIterations;
+        this.iterations = iterations;
+        this.rounds = rounds;
+    }
+
+    /**
+     * Esegue op e stampa una riga con ns/op, operazioni al secondo e byte/op.
+     */
+    public void run(String name, Op op) {
+        long acc = 0;
+        for (int i = 0; i < warmupIterations; i++)
+            acc += op.run();
+
+        double bestNs = Double.MAX_VALUE;
+        double totalNs = 0;
+        long totalBytes = 0;
+        for (int r = 0; r < rounds; r++) {
+            long bytesBefore = allocatedBytes();
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++)
+                acc += op.run();
+            long elapsed = System.nanoTime() - start;
+            totalBytes += allocatedBytes() - bytesBefore;
+            double ns = (double) elapsed / iterations;
+            totalNs += ns;
+            bestNs = Math.min(bestNs, ns);
+        }
+        sink += acc;
+
+        double meanNs = totalNs / rounds;
+        double bytesPerOp = THREADS != null ? (double) totalBytes / ((long) rounds * iterations) : Double.NaN;
+        // tasso di allocazione in MB/s
+        double allocMBps = bytesPerOp * (1e9 / meanNs) / (1024 * 1024);
+        System.out.println(String.format("%-50s %10.1f ns/op (best %8.1f) %12.0f ops/s %10.1f B/op %9.1f MB/s",
+                name, meanNs, bestNs, 1e9 / meanNs, bytesPerOp, allocMBps));
+    }
+
+    private static long allocatedBytes() {
+        return THREADS != null ? THREADS.getCurrentThreadAllocatedBytes() : 0;
+    }
+
+    private static com.sun.management.ThreadMXBean threadBean() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+            if (threads.isThreadAllocatedMemorySupported()) {
+                threads.setThreadAllocatedMemoryEnabled(true);
+                return threads;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,29 @@
+package scr;
+
+/**
+ * Prodotto matrice-vettore di un layer denso: out = W * in + b, con W di
+ * outLen righe per inLen colonne, riga per riga in un array piatto.
+ *
+ * L'implementazione SIMD (VectorMlpKernel, jdk.incubator.vector) sta in
+ * src-vector e viene cercata per riflessione: se non è stata compilata o la
+ * JVM è avviata senza --add-modules jdk.incubator.vector si usa quella scalare.
+ */
+public interface MlpKernel {
+
+    void dense(float[] w, float[] b, float[] in, int inLen, float[] out, int outLen);
+
+    /**
+     * @param kind "scalar", "vector" oppure "auto" (vector se disponibile)
+     */
+    static MlpKernel create(String kind) {
+        if (!kind.equals("scalar")) {
+            try {
+                return (MlpKernel) Class.forName("scr.VectorMlpKernel").getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                if (kind.equals("vector"))
+                    System.err.println("Kernel vettoriale non disponibile (" + e + "), uso quello scalare");
+            }
+        }
+        return new ScalarMlpKernel();
+    }
+}
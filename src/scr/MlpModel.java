@@ -0,0 +1,224 @@
+package scr;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Piccola rete neurale feed-forward (MLP) con pesi in array piatti e layer
+ * preallocati: forward() non alloca, quindi si può chiamare ad ogni tick.
+ * I layer preallocati sono dell'istanza: più thread usano ognuno la propria
+ * copia di sharingWeights(), che condivide i pesi (di sola lettura).
+ *
+ * Gli input sono le features di DemonstrationSet, normalizzate con mean/scale
+ * salvati insieme ai pesi. Le uscite sono accel, brake, steering e, se la rete
+ * ne ha 3 + GEAR_CLASSES, i logit delle marce da -1 a 6.
+ *
+ * Formato del file (little-endian): "SCRN" | int16 versione | int16 layer |
+ * int32 input | mean[input] | scale[input] | per ogni layer: int32 uscite,
+ * int32 attivazione, W[uscite * ingressi] (riga per riga), b[uscite].
+ */
+public class MlpModel {
+
+    public static final byte[] MAGIC = { 'S', 'C', 'R', 'N' };
+    public static final short VERSION = 1;
+
+    public static final int LINEAR = 0, RELU = 1, TANH = 2;
+
+    public static final int OUT_ACCEL = 0, OUT_BRAKE = 1, OUT_STEERING = 2, OUT_GEAR = 3;
+    public static final int GEAR_CLASSES = 8; // marce da MIN_GEAR a 6
+    public static final int MIN_GEAR = -1;
+
+    private final float[] mean;
+    private final float[] scale;
+    private final int[] sizes; // sizes[0] = input, sizes[l + 1] = uscite del layer l
+    private final int[] activations;
+    private final float[][] weights;
+    private final float[][] biases;
+
+    // buffer di lavoro: input normalizzato e uscita di ogni layer
+    private final float[][] values;
+    private MlpKernel kernel = new ScalarMlpKernel();
+
+    public MlpModel(float[] mean, float[] scale, int[] sizes, int[] activations, float[][] weights,
+            float[][] biases) {
+        this.mean = mean;
+        this.scale = scale;
+        this.sizes = sizes;
+        this.activations = activations;
+        this.weights = weights;
+        this.biases = biases;
+        this.values = new float[sizes.length][];
+        for (int l = 0; l < sizes.length; l++)
+            values[l] = new float[sizes[l]];
+    }
+
+    /**
+     * Rete con pesi casuali (inizializzazione di He/Xavier) e normalizzazione
+     * identità: punto di partenza per l'addestramento e per i benchmark.
+     */
+    /**
+     * Copia che condivide pesi, normalizzazione e kernel ma ha i propri buffer
+     * di lavoro: forward() su copie diverse può girare in thread diversi.
+     */
+    public MlpModel sharingWeights() {
+        MlpModel copy = new MlpModel(mean, scale, sizes, activations, weights, biases);
+        copy.kernel = kernel;
+        return copy;
+    }
+
+    public static MlpModel random(int[] sizes, int hiddenActivation, long seed) {
+        Random random = new Random(seed);
+        int layers = sizes.length - 1;
+        int[] activations = new int[layers];
+        float[][] weights = new float[layers][];
+        float[][] biases = new float[layers][];
+        for (int l = 0; l < layers; l++) {
+            activations[l] = l == layers - 1 ? LINEAR : hiddenActivation;
+            double std = Math.sqrt((activations[l] == RELU ? 2.0 : 1.0) / sizes[l]);
+            weights[l] = new float[sizes[l + 1] * sizes[l]];
+            for (int i = 0; i < weights[l].length; i++)
+                weights[l][i] = (float) (random.nextGaussian() * std);
+            biases[l] = new float[sizes[l + 1]];
+        }
+        float[] mean = new float[sizes[0]];
+        float[] scale = new float[sizes[0]];
+        java.util.Arrays.fill(scale, 1f);
+        return new MlpModel(mean, scale, sizes, activations, weights, biases);
+    }
+
+    public void setKernel(MlpKernel kernel) {
+        this.kernel = kernel;
+    }
+
+    public MlpKernel getKernel() {
+        return kernel;
+    }
+
+    /**
+     * Calcola le uscite della rete. L'array restituito è interno e viene
+     * sovrascritto dalla chiamata successiva (anche di un altro thread: vedi
+     * sharingWeights).
+     */
+    public float[] forward(float[] input) {
+        float[] x = values[0];
+        for (int j = 0; j < sizes[0]; j++)
+            x[j] = (input[j] - mean[j]) * scale[j];
+        for (int l = 0; l < weights.length; l++) {
+            float[] out = values[l + 1];
+            kernel.dense(weights[l], biases[l], values[l], sizes[l], out, sizes[l + 1]);
+            activate(activations[l], out, sizes[l + 1]);
+        }
+        return values[weights.length];
+    }
+
+    static void activate(int activation, float[] v, int n) {
+        if (activation == RELU) {
+            for (int i = 0; i < n; i++)
+                v[i] = Math.max(0f, v[i]);
+        } else if (activation == TANH) {
+            for (int i = 0; i < n; i++)
+                v[i] = (float) Math.tanh(v[i]);
+        }
+    }
+
+    public int layerCount() {
+        return weights.length;
+    }
+
+    /** Numero di unità: size(0) è l'input, size(l + 1) l'uscita del layer l */
+    public int size(int l) {
+        return sizes[l];
+    }
+
+    public int inputs() {
+        return sizes[0];
+    }
+
+    public int outputs() {
+        return sizes[sizes.length - 1];
+    }
+
+    public int activation(int layer) {
+        return activations[layer];
+    }
+
+    public float[] weights(int layer) {
+        return weights[layer];
+    }
+
+    public float[] biases(int layer) {
+        return biases[layer];
+    }
+
+    public float[] mean() {
+        return mean;
+    }
+
+    public float[] scale() {
+        return scale;
+    }
+
+    /** true se la rete sceglie anche la marcia (logit in [OUT_GEAR, OUT_GEAR + GEAR_CLASSES)) */
+    public boolean hasGear() {
+        return outputs() >= OUT_GEAR + GEAR_CLASSES;
+    }
+
+    public void save(Path file) throws IOException {
+        int length = 12 + 8 * sizes[0];
+        for (int l = 0; l < weights.length; l++)
+            length += 8 + 4 * (weights[l].length + biases[l].length);
+        ByteBuffer buf = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        buf.put(MAGIC).putShort(VERSION).putShort((short) weights.length).putInt(sizes[0]);
+        for (float v : mean)
+            buf.putFloat(v);
+        for (float v : scale)
+            buf.putFloat(v);
+        for (int l = 0; l < weights.length; l++) {
+            buf.putInt(sizes[l + 1]).putInt(activations[l]);
+            for (float v : weights[l])
+                buf.putFloat(v);
+            for (float v : biases[l])
+                buf.putFloat(v);
+        }
+        Files.write(file, buf.array());
+    }
+
+    public static MlpModel load(Path file) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            byte[] magic = new byte[4];
+            buf.get(magic);
+            if (!java.util.Arrays.equals(magic, MAGIC))
+                throw new IOException(file + " non è un file di pesi SCRN");
+            short version = buf.getShort();
+            if (version != VERSION)
+                throw new IOException(file + ": versione " + version + " non supportata");
+            int layers = buf.getShort();
+            int[] sizes = new int[layers + 1];
+            sizes[0] = buf.getInt();
+            float[] mean = new float[sizes[0]];
+            float[] scale = new float[sizes[0]];
+            buf.asFloatBuffer().get(mean).get(scale);
+            buf.position(buf.position() + 8 * sizes[0]);
+
+            int[] activations = new int[layers];
+            float[][] weights = new float[layers][];
+            float[][] biases = new float[layers][];
+            for (int l = 0; l < layers; l++) {
+                sizes[l + 1] = buf.getInt();
+                activations[l] = buf.getInt();
+                weights[l] = new float[sizes[l + 1] * sizes[l]];
+                biases[l] = new float[sizes[l + 1]];
+                buf.asFloatBuffer().get(weights[l]).get(biases[l]);
+                buf.position(buf.position() + 4 * (weights[l].length + biases[l].length));
+            }
+            return new MlpModel(mean, scale, sizes, activations, weights, biases);
+        } catch (java.nio.BufferUnderflowException e) {
+            throw new IOException(file + " è troncato");
+        }
+    }
+}
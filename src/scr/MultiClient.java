@@ -0,0 +1,115 @@
+package scr;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Avvia più sessioni di guida nella stessa JVM: un'auto per porta, ognuna con il
+ * proprio trasporto, la propria istanza del driver e le proprie statistiche.
+ * Le auto condividono heap e codice già compilato dal JIT, invece di pagare una
+ * JVM (e il suo warm-up) per ciascuna.
+ *
+ * Uso: java scr.MultiClient scr.SimpleDriver cars:N [threads:virtual|platform] [opzioni di Client...]
+ *   cars:N       numero di auto; l'auto i usa la porta port + i (default 1)
+ *   threads:...  virtual (default) usa i virtual thread se la JVM li supporta (Java 21+),
+ *                altrimenti un thread di piattaforma per auto; platform li forza sempre.
+ * Le altre opzioni sono quelle di Client e valgono per tutte le auto; con più
+ * auto i file di stats: e capture: prendono la porta nel nome (gara_3001.cap).
+ * Con i virtual thread è meglio non usare busyPoll:on, che occuperebbe il carrier.
+ * Un'auto che si ferma per un errore viene segnalata senza fermare le altre.
+ */
+public class MultiClient {
+
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length == 0) {
+            System.out.println("Uso: java scr.MultiClient <driver> cars:N [threads:virtual|platform] [opzioni...]");
+            return;
+        }
+        int cars = 1;
+        boolean virtual = true;
+        List<String> options = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].startsWith("cars:")) {
+                cars = Integer.parseInt(args[i].substring(5));
+            } else if (args[i].startsWith("threads:")) {
+                virtual = !args[i].substring(8).equals("platform");
+            } else {
+                options.add(args[i]);
+            }
+        }
+
+        // tutte le sessioni vengono configurate prima di avviarne una: un'opzione non valida ferma il
+        // MultiClient prima che parta qualche auto
+        List<Thread> threads = new ArrayList<>();
+        AtomicInteger failed = new AtomicInteger();
+        for (int car = 0; car < cars; car++) {
+            ClientSession session = new ClientSession(args[0]);
+            try {
+                for (String option : options)
+                    session.setOption(option);
+            } catch (IllegalArgumentException e) {
+                System.out.println(e.getMessage());
+                System.exit(0);
+            }
+            session.setPort(session.getPort() + car);
+            if (cars > 1 && session.getStatsFile() != null)
+                session.setStatsFile(withPort(session.getStatsFile(), session.getPort()));
+            if (cars > 1 && session.getCaptureFile() != null)
+                session.setCaptureFile(withPort(session.getCaptureFile(), session.getPort()));
+            Thread thread = newThread(() -> drive(session, failed), "car-" + car + "-port-" + session.getPort(),
+                    virtual);
+            threads.add(thread);
+        }
+        System.out.println("MultiClient: " + cars + " auto su " + (isVirtual(threads.get(0)) ? "virtual" : "platform")
+                + " thread");
+        for (Thread thread : threads)
+            thread.start();
+        for (Thread thread : threads)
+            thread.join();
+        if (failed.get() > 0)
+            System.out.println("MultiClient: " + failed.get() + " auto su " + cars + " fermate da un errore");
+    }
+
+    // Un errore di una sessione (driver non caricabile, rete) ferma solo la sua auto: le altre continuano
+    private static void drive(ClientSession session, AtomicInteger failed) {
+        try {
+            session.run();
+        } catch (RuntimeException e) {
+            failed.incrementAndGet();
+            System.err.println("Auto porta " + session.getPort() + " fermata: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    // stats:tempi.csv -> tempi_3001.csv (e capture:gara.cap -> gara_3001.cap), un file per auto
+    private static String withPort(String file, int port) {
+        int dot = file.lastIndexOf('.');
+        return dot > 0 ? file.substring(0, dot) + "_" + port + file.substring(dot) : file + "_" + port;
+    }
+
+    // Thread.ofVirtual().name(name).unstarted(task) se disponibile, senza dipendere da Java 21 in compilazione
+    private static Thread newThread(Runnable task, String name, boolean virtual) {
+        if (virtual) {
+            try {
+                Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+                Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+                builder = builderType.getMethod("name", String.class).invoke(builder, name);
+                return (Thread) builderType.getMethod("unstarted", Runnable.class).invoke(builder, task);
+            } catch (ReflectiveOperationException e) {
+                // JVM senza virtual thread: si usa un thread normale
+            }
+        }
+        return new Thread(task, name);
+    }
+
+    private static boolean isVirtual(Thread thread) {
+        try {
+            Method isVirtual = Thread.class.getMethod("isVirtual");
+            return (Boolean) isVirtual.invoke(thread);
+        } catch (ReflectiveOperationException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package scr;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Costo per tick dell'inferenza di NeuralDriver confrontato con
+ * SimpleDriver.control(), sui messaggi di sensor_messages.txt.
+ *
+ * Senza file di pesi usa una rete casuale con i layer nascosti indicati.
+ * Il kernel vettoriale viene misurato solo se disponibile (vedi MlpKernel).
+ *
+ * Uso: java [--add-modules jdk.incubator.vector] scr.NeuralBenchmark [nascosti, es. 64,64] [pesi.bin]
+ */
+public class NeuralBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        String hidden = args.length > 0 ? args[0] : "64,64";
+        MlpModel scalarModel;
+        MlpModel vectorModel;
+        if (args.length > 1) {
+            scalarModel = MlpModel.load(Paths.get(args[1]));
+            vectorModel = MlpModel.load(Paths.get(args[1]));
+        } else {
+            String[] parts = hidden.split(",");
+            int[] sizes = new int[parts.length + 2];
+            sizes[0] = DemonstrationSet.FEATURES;
+            for (int i = 0; i < parts.length; i++)
+                sizes[i + 1] = Integer.parseInt(parts[i].trim());
+            sizes[sizes.length - 1] = MlpModel.OUT_GEAR + MlpModel.GEAR_CLASSES;
+            scalarModel = MlpModel.random(sizes, MlpModel.RELU, 42);
+            vectorModel = MlpModel.random(sizes, MlpModel.RELU, 42);
+        }
+        scalarModel.setKernel(MlpKernel.create("scalar"));
+        vectorModel.setKernel(MlpKernel.create("auto"));
+        boolean vector = !(vectorModel.getKernel() instanceof ScalarMlpKernel);
+
+        List<String> log = SensorMessageLog.load(null);
+        int n = Integer.highestOneBit(log.size());
+        SensorFrame[] frames = new SensorFrame[n];
+        for (int i = 0; i < n; i++)
+            frames[i] = new SensorFrame().parse(log.get(i));
+        int mask = n - 1;
+        int[] next = new int[1];
+
+        long params = 0;
+        StringBuilder shape = new StringBuilder().append(scalarModel.inputs());
+        for (int l = 0; l < scalarModel.layerCount(); l++) {
+            shape.append('-').append(scalarModel.size(l + 1));
+            params += scalarModel.weights(l).length + scalarModel.biases(l).length;
+        }
+        System.out.println("Rete " + shape + " (" + params + " parametri), kernel vettoriale "
+                + (vector ? "disponibile" : "non disponibile"));
+
+        if (vector) {
+            // le due implementazioni devono dare le stesse uscite, a meno dell'arrotondamento
+            float[] features = new float[DemonstrationSet.FEATURES];
+            double maxDiff = 0;
+            for (int i = 0; i < n; i++) {
+                DemonstrationSet.features(frames[i], features, 0);
+                float[] a = scalarModel.forward(features);
+                float[] b = vectorModel.forward(features);
+                for (int o = 0; o < scalarModel.outputs(); o++)
+                    maxDiff = Math.max(maxDiff, Math.abs(a[o] - b[o]));
+            }
+            System.out.println(String.format("Differenza massima scalare/vettoriale: %.2e", maxDiff));
+        }
+
+        MicroBenchmark bench = new MicroBenchmark(200000, 200000, 5);
+        SimpleDriver simple = new SimpleDriver(null);
+        bench.run("SimpleDriver.control()", () -> simple.control(frames[next[0]++ & mask]).gear);
+        float[] features = new float[DemonstrationSet.FEATURES];
+        bench.run("MlpModel.forward() scalare", () -> {
+            DemonstrationSet.features(frames[next[0]++ & mask], features, 0);
+            return (long) scalarModel.forward(features)[0];
+        });
+        NeuralDriver scalarDriver = new NeuralDriver(scalarModel, true, true);
+        bench.run("NeuralDriver.control() scalare", () -> scalarDriver.control(frames[next[0]++ & mask]).gear);
+        if (vector) {
+            bench.run("MlpModel.forward() vettoriale", () -> {
+                DemonstrationSet.features(frames[next[0]++ & mask], features, 0);
+                return (long) vectorModel.forward(features)[0];
+            });
+            NeuralDriver vectorDriver = new NeuralDriver(vectorModel, true, true);
+            bench.run("NeuralDriver.control() vettoriale", () -> vectorDriver.control(frames[next[0]++ & mask]).gear);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package scr;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+/**
+ * Driver guidato da una piccola rete neurale (MlpModel) addestrata sulle
+ * registrazioni di DataWriter. L'inferenza usa i buffer preallocati del
+ * modello e un MlpKernel (SIMD se disponibile): nessuna allocazione per tick.
+ *
+ * Come post-elaborazione facoltativa riusa la logica di SimpleDriver: il
+ * filtro ABS sul freno, la frizione in partenza e, se la rete non ha le uscite
+ * per la marcia, il cambio in base agli RPM.
+ *
+ * Configurazione con proprietà di sistema:
+ *   -Dscr.neural.weights=neural.bin   file dei pesi (default neural.bin)
+ *   -Dscr.neural.kernel=auto          auto, scalar o vector
+ *   -Dscr.neural.abs=false            disattiva il filtro ABS
+ *   -Dscr.neural.clutch=false         disattiva la frizione di SimpleDriver
+ *
+ * Se i pesi non si possono caricare guida come SimpleDriver.
+ */
+public class NeuralDriver extends Controller {
+
+    public static final String WEIGHTS_PROPERTY = "scr.neural.weights";
+    public static final String KERNEL_PROPERTY = "scr.neural.kernel";
+    public static final String ABS_PROPERTY = "scr.neural.abs";
+    public static final String CLUTCH_PROPERTY = "scr.neural.clutch";
+
+    private final MlpModel model;
+    private final boolean abs;
+    private final boolean useClutch;
+    // SimpleDriver senza registrazione: ABS, frizione, marce e guida di riserva
+    private final SimpleDriver helper = new SimpleDriver(null);
+
+    private final float[] features = new float[DemonstrationSet.FEATURES];
+    private final Action action = new Action();
+    private float clutch = 0;
+
+    public NeuralDriver() {
+        this(loadModel(), !"false".equals(System.getProperty(ABS_PROPERTY)),
+                !"false".equals(System.getProperty(CLUTCH_PROPERTY)));
+    }
+
+    // Usato da benchmark e strumenti offline: model null = guida come SimpleDriver
+    NeuralDriver(MlpModel model, boolean abs, boolean useClutch) {
+        this.model = model;
+        this.abs = abs;
+        this.useClutch = useClutch;
+    }
+
+    // Driver che condivide i pesi (warm-up di ClientSession, segmenti di BatchEvaluator): nessun
+    // caricamento, e buffer di lavoro propri, così i driver possono guidare in thread diversi
+    NeuralDriver sharingModel() {
+        return new NeuralDriver(model != null ? model.sharingWeights() : null, abs, useClutch);
+    }
+
+    public Action control(SensorModel sensors) {
+        if (model == null)
+            return helper.control(sensors);
+
+        DemonstrationSet.features(sensors, features, 0);
+        float[] out = model.forward(features);
+
+        float accel = clamp(out[MlpModel.OUT_ACCEL], 0, 1);
+        float brake = clamp(out[MlpModel.OUT_BRAKE], 0, 1);
+        if (abs && brake > 0)
+            brake = helper.filterABS(sensors, brake);
+
+        int gear;
+        if (model.hasGear()) {
+            int best = 0;
+            for (int g = 1; g < MlpModel.GEAR_CLASSES; g++) {
+                if (out[MlpModel.OUT_GEAR + g] > out[MlpModel.OUT_GEAR + best])
+                    best = g;
+            }
+            gear = best + MlpModel.MIN_GEAR;
+        } else {
+            gear = helper.getGear(sensors);
+        }
+
+        if (useClutch)
+            clutch = helper.clutching(sensors, clutch);
+
+        action.accelerate = accel;
+        action.brake = brake;
+        action.steering = clamp(out[MlpModel.OUT_STEERING], -1, 1);
+        action.gear = gear;
+        action.clutch = useClutch ? clutch : 0;
+        action.restartRace = false;
+        return action;
+    }
+
+    private static float clamp(float v, float min, float max) {
+        return v < min ? min : (v > max ? max : v);
+    }
+
+    @Override
+    public void setStage(Stage stage) {
+        super.setStage(stage);
+        helper.setStage(stage); // la frizione in partenza dipende dallo stadio
+    }
+
+    public void reset() {
+        System.out.println("Restarting the race!");
+        clutch = 0;
+    }
+
+    public void shutdown() {
+        System.out.println("Bye bye!");
+    }
+
+    // Legge i pesi indicati da scr.neural.weights; null (con un messaggio) se non è possibile
+    private static MlpModel loadModel() {
+        String file = System.getProperty(WEIGHTS_PROPERTY, "neural.bin");
+        try {
+            MlpModel model = MlpModel.load(Paths.get(file));
+            if (model.inputs() != DemonstrationSet.FEATURES || model.outputs() < MlpModel.OUT_STEERING + 1) {
+                System.err.println("NeuralDriver: " + file + " ha " + model.inputs() + " input e " + model.outputs()
+                        + " uscite, ne servono " + DemonstrationSet.FEATURES + " e almeno 3; guido come SimpleDriver");
+                return null;
+            }
+            model.setKernel(MlpKernel.create(System.getProperty(KERNEL_PROPERTY, "auto")));
+            StringBuilder shape = new StringBuilder().append(model.inputs());
+            for (int l = 0; l < model.layerCount(); l++)
+                shape.append('-').append(model.size(l + 1));
+            System.out.println("NeuralDriver: rete " + shape + " da " + file + ", kernel "
+                    + model.getKernel().getClass().getSimpleName());
+            return model;
+        } catch (IOException e) {
+            System.err.println("NeuralDriver: impossibile leggere i pesi: " + e.getMessage()
+                    + "; guido come SimpleDriver");
+            return null;
+        }
+    }
+}
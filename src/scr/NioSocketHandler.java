@@ -0,0 +1,159 @@
+package scr;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.PortUnreachableException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Trasporto alternativo a SocketHandler basato su un DatagramChannel connesso.
+ *
+ * I buffer diretti sono allocati una sola volta: ad ogni tick non si creano
+ * array, DatagramPacket o String. I timeout sono gestiti con un Selector invece
+ * di due setSoTimeout per tick.
+ *
+ * In modalità busyPoll il thread non si addormenta mai: legge il canale in un
+ * ciclo attivo fino all'arrivo del messaggio. Riduce il jitter in ricezione ma
+ * occupa un core intero, quindi ha senso solo su core dedicati.
+ */
+public class NioSocketHandler implements Transport {
+
+	private static final int BUFFER_SIZE = 4096;
+
+	private final DatagramChannel channel;
+	private final Selector selector;
+	private final ByteBuffer rxBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	private final ByteBuffer txBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	private final boolean verbose;
+	private final boolean busyPoll;
+
+	// usato solo da receive(int) per l'handshake
+	private final byte[] stringBuffer = new byte[BUFFER_SIZE];
+
+	public NioSocketHandler(String host, int port, boolean verbose, boolean busyPoll) throws IOException {
+		this.verbose = verbose;
+		this.busyPoll = busyPoll;
+		channel = DatagramChannel.open();
+		channel.connect(new InetSocketAddress(host, port));
+		channel.configureBlocking(false);
+		if (busyPoll) {
+			selector = null;
+		} else {
+			selector = Selector.open();
+			channel.register(selector, SelectionKey.OP_READ);
+		}
+	}
+
+	public void send(String msg) {
+		if (verbose)
+			System.out.println("Sending: " + msg);
+		txBuffer.clear();
+		int len = Math.min(msg.length(), txBuffer.capacity());
+		for (int i = 0; i < len; i++)
+			txBuffer.put((byte) msg.charAt(i));
+		write();
+	}
+
+	public void send(byte[] buf, int off, int len) {
+		if (verbose)
+			System.out.println("Sending: " + new String(buf, off, len, StandardCharsets.US_ASCII));
+		txBuffer.clear();
+		txBuffer.put(buf, off, len);
+		write();
+	}
+
+	private void write() {
+		txBuffer.flip();
+		try {
+			channel.write(txBuffer);
+		} catch (PortUnreachableException e) {
+			// il server non è ancora in ascolto: il messaggio è perso come con UDP
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	public String receive(int timeout) {
+		int len = receive(stringBuffer, timeout);
+		if (len < 0)
+			return null;
+		return new String(stringBuffer, 0, len, StandardCharsets.US_ASCII);
+	}
+
+	public int receive(byte[] dst, int timeout) {
+		try {
+			int len = busyPoll ? spin(timeout) : select(timeout);
+			if (len < 0) {
+				if (verbose)
+					System.out.println("Socket Timeout!");
+				return -1;
+			}
+			rxBuffer.flip();
+			len = Math.min(len, dst.length);
+			rxBuffer.get(dst, 0, len);
+			if (verbose)
+				System.out.println("Received: " + new String(dst, 0, len, StandardCharsets.US_ASCII));
+			return len;
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return -1;
+	}
+
+	// Lettura non bloccante: -1 se non c'è nessun datagramma in attesa
+	private int poll() throws IOException {
+		rxBuffer.clear();
+		try {
+			int len = channel.read(rxBuffer);
+			return len > 0 ? len : -1;
+		} catch (PortUnreachableException e) {
+			// errore ICMP di un invio precedente (server non ancora avviato)
+			return -1;
+		}
+	}
+
+	private int select(int timeout) throws IOException {
+		int len = poll();
+		if (len >= 0)
+			return len;
+		long deadline = timeout > 0 ? System.nanoTime() + timeout * 1000000L : Long.MAX_VALUE;
+		while (true) {
+			long remaining = timeout > 0 ? (deadline - System.nanoTime()) / 1000000L : 0;
+			if (timeout > 0 && remaining <= 0)
+				return poll();
+			// select(0) attende senza limite, come setSoTimeout(0)
+			selector.select(timeout > 0 ? remaining : 0);
+			selector.selectedKeys().clear();
+			len = poll();
+			if (len >= 0)
+				return len;
+		}
+	}
+
+	private int spin(int timeout) throws IOException {
+		long deadline = System.nanoTime() + timeout * 1000000L;
+		while (true) {
+			int len = poll();
+			if (len >= 0)
+				return len;
+			if (timeout > 0 && System.nanoTime() - deadline >= 0)
+				return -1;
+			Thread.onSpinWait();
+		}
+	}
+
+	public void close() {
+		try {
+			if (selector != null)
+				selector.close();
+			channel.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+}
@@ -0,0 +1,106 @@
+package scr;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Converte registrazioni CSV (formato DataWriter) nel formato binario .scrbin.
+ *
+ * Uso: java scr.RecordingConverter file1.csv [file2.csv ...]
+ * Ogni file viene scritto accanto all'originale con estensione .scrbin.
+ * Le colonne sono associate per nome; se il file non ha intestazione si assume
+ * l'ordine di DataWriter. Le righe incomplete (es. l'ultima di una sessione
+ * interrotta) vengono saltate.
+ */
+public class RecordingConverter {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("Uso: java scr.RecordingConverter file1.csv [file2.csv ...]");
+            return;
+        }
+        for (String arg : args) {
+            Path csv = Paths.get(arg);
+            String name = csv.getFileName().toString();
+            int dot = name.lastIndexOf('.');
+            Path out = csv.resolveSibling((dot > 0 ? name.substring(0, dot) : name) + ".scrbin");
+
+            long start = System.nanoTime();
+            long rows = convert(csv, out);
+            long csvMillis = (System.nanoTime() - start) / 1000000;
+
+            // confronto del tempo di caricamento: lettura di tutte le colonne dal file binario
+            start = System.nanoTime();
+            double checksum = 0;
+            try (BinaryRecordingReader reader = new BinaryRecordingReader(out)) {
+                float[] column = new float[(int) reader.rowCount()];
+                for (int c = 0; c < reader.columnCount(); c++) {
+                    reader.copyColumn(c, column);
+                    for (float v : column)
+                        checksum += v;
+                }
+            }
+            long binMillis = (System.nanoTime() - start) / 1000000;
+
+            System.out.println(String.format("%s -> %s: %d righe, %d -> %d byte, conversione %d ms, lettura %d ms"
+                    + " (checksum %.3f)", csv, out, rows, Files.size(csv), Files.size(out), csvMillis, binMillis,
+                    checksum));
+        }
+    }
+
+    /**
+     * Converte un CSV in .scrbin.
+     *
+     * @return il numero di righe scritte
+     */
+    public static long convert(Path csv, Path out) throws IOException {
+        String[] columns = DataWriter.COLUMN_NAMES;
+        int[] source = new int[columns.length];
+        for (int c = 0; c < columns.length; c++)
+            source[c] = c;
+
+        double[] row = new double[columns.length];
+        long rows = 0;
+        try (BufferedReader in = Files.newBufferedReader(csv, StandardCharsets.US_ASCII);
+                BinaryRecordingWriter writer = new BinaryRecordingWriter(out, columns)) {
+            String line;
+            boolean first = true;
+            int expectedFields = columns.length;
+            while ((line = in.readLine()) != null) {
+                if (line.isEmpty())
+                    continue;
+                String[] fields = line.split(",");
+                if (first) {
+                    first = false;
+                    if (!fields[0].isEmpty() && Character.isLetter(fields[0].charAt(0))) {
+                        // intestazione: associa le colonne per nome
+                        for (int c = 0; c < columns.length; c++) {
+                            source[c] = -1;
+                            for (int f = 0; f < fields.length; f++) {
+                                if (fields[f].trim().equals(columns[c]))
+                                    source[c] = f;
+                            }
+                        }
+                        expectedFields = fields.length;
+                        continue;
+                    }
+                }
+                if (fields.length != expectedFields)
+                    continue;
+                try {
+                    for (int c = 0; c < columns.length; c++)
+                        row[c] = source[c] >= 0 ? Double.parseDouble(fields[source[c]]) : 0;
+                } catch (NumberFormatException e) {
+                    continue; // riga troncata o corrotta
+                }
+                writer.writeRow(row, 0);
+                rows++;
+            }
+        }
+        return rows;
+    }
+}
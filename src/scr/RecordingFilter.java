@@ -0,0 +1,239 @@
+package scr;
+
+/**
+ * Filtro in linea davanti a DataWriter.writeLine: scarta i tick che non
+ * aggiungono informazione al dataset, a memoria costante.
+ *
+ * Ogni colonna della riga (vedi DataWriter.COLUMN_NAMES) ha un quanto: una
+ * riga viene scartata se
+ *   - la distanza dall'ultima riga tenuta, misurata in quanti, è sotto la
+ *     soglia (auto ferma sulla griglia, rettilineo a gas costante), oppure
+ *   - la riga quantizzata è già stata vista di recente: l'hash del vettore
+ *     quantizzato viene cercato in un insieme LRU di dimensione fissa.
+ * Con AdaptiveSampler attivo i tick scartati contano nel peso (colonna weight)
+ * della riga tenuta prima; senza, non ne resta traccia nel file.
+ *
+ * Configurazione con proprietà di sistema:
+ *   -Dscr.recording.filter=true              attiva il filtro (default spento)
+ *   -Dscr.recording.filter.threshold=1.0     distanza minima in quanti
+ *   -Dscr.recording.filter.quantum=1.0       moltiplicatore dei quanti
+ *   -Dscr.recording.filter.recent=4096       hash ricordati per i duplicati
+ */
+public class RecordingFilter {
+
+    public static final String FILTER_PROPERTY = "scr.recording.filter";
+    public static final String THRESHOLD_PROPERTY = "scr.recording.filter.threshold";
+    public static final String QUANTUM_PROPERTY = "scr.recording.filter.quantum";
+    public static final String RECENT_PROPERTY = "scr.recording.filter.recent";
+
+    // Quanti di default per colonna: angle, trackPos, speedX, speedY, rpm, 19 sensori, accel, brake, steering, gear
+    private static final double ANGLE_QUANTUM = 0.01;      // rad
+    private static final double TRACK_POS_QUANTUM = 0.01;
+    private static final double SPEED_QUANTUM = 0.5;       // km/h
+    private static final double RPM_QUANTUM = 50;
+    private static final double TRACK_EDGE_QUANTUM = 0.5;  // m
+    private static final double PEDAL_QUANTUM = 0.02;      // accel, brake, steering
+
+    private final double[] inverseQuantum = new double[DataWriter.COLUMNS];
+    private final double threshold2;
+    private final LongLruSet recent;
+
+    private final double[] lastKept = new double[DataWriter.COLUMNS];
+    private boolean hasLastKept = false;
+
+    private long kept = 0;
+    private long droppedIdle = 0;
+    private long droppedDuplicate = 0;
+
+    /**
+     * @param threshold distanza minima (euclidea, in quanti) dall'ultima riga tenuta
+     * @param quantumScale moltiplicatore dei quanti di default
+     * @param recentRows numero di hash ricordati per riconoscere i duplicati
+     */
+    public RecordingFilter(double threshold, double quantumScale, int recentRows) {
+        int c = 0;
+        inverseQuantum[c++] = 1 / (ANGLE_QUANTUM * quantumScale);
+        inverseQuantum[c++] = 1 / (TRACK_POS_QUANTUM * quantumScale);
+        inverseQuantum[c++] = 1 / (SPEED_QUANTUM * quantumScale);
+        inverseQuantum[c++] = 1 / (SPEED_QUANTUM * quantumScale);
+        inverseQuantum[c++] = 1 / (RPM_QUANTUM * quantumScale);
+        for (int k = 0; k < DataWriter.TRACK_SENSORS; k++)
+            inverseQuantum[c++] = 1 / (TRACK_EDGE_QUANTUM * quantumScale);
+        inverseQuantum[c++] = 1 / (PEDAL_QUANTUM * quantumScale);
+        inverseQuantum[c++] = 1 / (PEDAL_QUANTUM * quantumScale);
+        inverseQuantum[c++] = 1 / (PEDAL_QUANTUM * quantumScale);
+        inverseQuantum[c] = 1; // la marcia non si quantizza: un cambio vale sempre un quanto
+        this.threshold2 = threshold * threshold;
+        this.recent = new LongLruSet(recentRows);
+    }
+
+    /** Filtro configurato dalle proprietà di sistema, null se non attivo */
+    public static RecordingFilter fromProperties() {
+        if (!Boolean.getBoolean(FILTER_PROPERTY))
+            return null;
+        double threshold = Double.parseDouble(System.getProperty(THRESHOLD_PROPERTY, "1.0"));
+        double quantum = Double.parseDouble(System.getProperty(QUANTUM_PROPERTY, "1.0"));
+        int recentRows = Integer.getInteger(RECENT_PROPERTY, 4096);
+        System.out.println("RecordingFilter: soglia " + threshold + " quanti, quanti x" + quantum + ", "
+                + recentRows + " righe recenti");
+        return new RecordingFilter(threshold, quantum, recentRows);
+    }
+
+    /**
+     * Decide se tenere la riga row[off .. off + DataWriter.COLUMNS). Non alloca.
+     *
+     * @return true se la riga va scritta
+     */
+    public boolean accept(double[] row, int off) {
+        if (hasLastKept) {
+            double d2 = 0;
+            for (int i = 0; i < DataWriter.COLUMNS; i++) {
+                double d = (row[off + i] - lastKept[i]) * inverseQuantum[i];
+                d2 += d * d;
+            }
+            if (d2 < threshold2) {
+                droppedIdle++;
+                return false;
+            }
+        }
+
+        long h = 0x9E3779B97F4A7C15L;
+        for (int i = 0; i < DataWriter.COLUMNS; i++) {
+            h = (h ^ Math.round(row[off + i] * inverseQuantum[i])) * 0xBF58476D1CE4E5B9L;
+            h ^= h >>> 31;
+        }
+        if (recent.touch(h)) {
+            droppedDuplicate++;
+            return false;
+        }
+
+        System.arraycopy(row, off, lastKept, 0, DataWriter.COLUMNS);
+        hasLastKept = true;
+        kept++;
+        return true;
+    }
+
+    public long kept() {
+        return kept;
+    }
+
+    public long dropped() {
+        return droppedIdle + droppedDuplicate;
+    }
+
+    /** Riepilogo della sessione, stampato da DataWriter.close() */
+    public String report() {
+        long total = kept + dropped();
+        return String.format("RecordingFilter: righe tenute %d su %d (%.1f%%), scartate %d quasi ferme e %d duplicate",
+                kept, total, total == 0 ? 0.0 : 100.0 * kept / total, droppedIdle, droppedDuplicate);
+    }
+
+    /**
+     * Insieme di hash a 64 bit con capacità fissa ed espulsione del meno usato
+     * di recente. Tabella a indirizzamento aperto (sondaggio lineare) sugli
+     * indici delle voci, lista doppiamente concatenata in array per l'ordine LRU.
+     */
+    static final class LongLruSet {
+
+        private final long[] keys;
+        private final int[] prev;
+        private final int[] next;
+        private final int[] table; // indice della voce + 1, 0 = libero
+        private final int tableMask;
+        private int head = -1; // la più recente
+        private int tail = -1; // la meno recente
+        private int size = 0;
+
+        LongLruSet(int capacity) {
+            capacity = Math.max(1, capacity);
+            keys = new long[capacity];
+            prev = new int[capacity];
+            next = new int[capacity];
+            int tableSize = Integer.highestOneBit(capacity) << 2; // carico massimo 50%
+            table = new int[tableSize];
+            tableMask = tableSize - 1;
+        }
+
+        /**
+         * Segna key come usata ora.
+         *
+         * @return true se era già presente, false se è stata inserita
+         */
+        boolean touch(long key) {
+            int slot = home(key);
+            int entry;
+            while ((entry = table[slot]) != 0) {
+                if (keys[entry - 1] == key) {
+                    moveToHead(entry - 1);
+                    return true;
+                }
+                slot = (slot + 1) & tableMask;
+            }
+
+            if (size < keys.length) {
+                entry = size++;
+            } else {
+                entry = tail;
+                unlink(entry);
+                removeFromTable(entry);
+                slot = home(key); // la cancellazione può aver spostato le voci
+                while (table[slot] != 0)
+                    slot = (slot + 1) & tableMask;
+            }
+            keys[entry] = key;
+            table[slot] = entry + 1;
+            linkHead(entry);
+            return false;
+        }
+
+        private int home(long key) {
+            return (int) (key ^ (key >>> 32)) & tableMask;
+        }
+
+        private void moveToHead(int e) {
+            if (e != head) {
+                unlink(e);
+                linkHead(e);
+            }
+        }
+
+        private void linkHead(int e) {
+            prev[e] = -1;
+            next[e] = head;
+            if (head >= 0)
+                prev[head] = e;
+            head = e;
+            if (tail < 0)
+                tail = e;
+        }
+
+        private void unlink(int e) {
+            if (prev[e] >= 0)
+                next[prev[e]] = next[e];
+            else
+                head = next[e];
+            if (next[e] >= 0)
+                prev[next[e]] = prev[e];
+            else
+                tail = prev[e];
+        }
+
+        // Cancellazione con spostamento all'indietro: niente lapidi nella tabella
+        private void removeFromTable(int e) {
+            int i = home(keys[e]);
+            while (table[i] != e + 1)
+                i = (i + 1) & tableMask;
+            table[i] = 0;
+            for (int j = (i + 1) & tableMask; table[j] != 0; j = (j + 1) & tableMask) {
+                int k = home(keys[table[j] - 1]);
+                // la voce in j resta dov'è se la sua posizione naturale k è ciclicamente in (i, j]
+                boolean stays = i <= j ? (i < k && k <= j) : (i < k || k <= j);
+                if (!stays) {
+                    table[i] = table[j];
+                    table[j] = 0;
+                    i = j;
+                }
+            }
+        }
+    }
+}
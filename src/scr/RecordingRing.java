@@ -0,0 +1,90 @@
+package scr;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Buffer circolare lock-free a produttore singolo / consumatore singolo per
+ * righe di valori primitivi (una riga = columns double consecutivi).
+ *
+ * Il produttore (il thread di controllo) copia i valori e pubblica la riga;
+ * il consumatore (il thread di scrittura) legge le righe pubblicate e le
+ * rilascia. Tutta la memoria è allocata nel costruttore.
+ */
+public final class RecordingRing {
+
+    private final double[] data;
+    private final int columns;
+    private final int mask;
+
+    // prossima riga da scrivere (produttore) e prossima da leggere (consumatore)
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    // copie locali per evitare letture volatile inutili
+    private long cachedTail;
+    private long cachedHead;
+
+    /**
+     * @param capacityRows numero di righe, arrotondato alla potenza di 2 successiva
+     */
+    public RecordingRing(int capacityRows, int columns) {
+        int capacity = Integer.highestOneBit(Math.max(2, capacityRows - 1)) << 1;
+        this.columns = columns;
+        this.mask = capacity - 1;
+        this.data = new double[capacity * columns];
+    }
+
+    public int columns() {
+        return columns;
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    public double[] data() {
+        return data;
+    }
+
+    // ---- lato produttore ----
+
+    /**
+     * Riserva la prossima riga libera.
+     *
+     * @return l'offset della riga in data(), oppure -1 se il buffer è pieno
+     */
+    public int claim() {
+        long h = head.get();
+        if (h - cachedTail > mask) {
+            cachedTail = tail.get();
+            if (h - cachedTail > mask)
+                return -1;
+        }
+        return (int) (h & mask) * columns;
+    }
+
+    /** Rende visibile al consumatore la riga riservata con claim() */
+    public void publish() {
+        head.lazySet(head.get() + 1);
+    }
+
+    // ---- lato consumatore ----
+
+    /** @return il numero di righe pubblicate e non ancora lette */
+    public int available() {
+        long t = tail.get();
+        if (cachedHead - t <= 0)
+            cachedHead = head.get();
+        return (int) (cachedHead - t);
+    }
+
+    /** @return l'offset in data() della i-esima riga disponibile */
+    public int offset(int i) {
+        return (int) ((tail.get() + i) & mask) * columns;
+    }
+
+    /** Libera le prime n righe lette */
+    public void release(int n) {
+        tail.lazySet(tail.get() + n);
+    }
+}
@@ -0,0 +1,18 @@
+package scr;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Destinazione delle righe registrate da DataWriter (CSV, binario, ...).
+ * Le righe arrivano come valori double già nell'ordine delle colonne.
+ */
+public interface RecordingSink extends Closeable {
+
+	public void writeRow(double[] values, int off) throws IOException;
+
+	public void flush() throws IOException;
+
+	public void close() throws IOException;
+
+}
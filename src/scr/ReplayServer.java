@@ -0,0 +1,288 @@
+package scr;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.StringTokenizer;
+
+/**
+ * Server UDP che si comporta come il server SCR di TORCS, senza simulatore:
+ * risponde a "ID(init ...)" con ***identified***, poi invia i messaggi dei
+ * sensori di un log registrato alla frequenza richiesta e raccoglie le azioni
+ * del client. Con sim: i messaggi vengono invece da un KinematicSimulator
+ * guidato dalle azioni ricevute (anello chiuso, senza TORCS): con l'opzione
+ * capture: del Client se ne registra una sessione completa di tutti i campi.
+ *
+ * Per ogni tick misura il round trip (invio sensori -> ricezione azione) e conta
+ * le scadenze mancate (azione arrivata dopo il timeout) e i pacchetti persi
+ * (azione mai arrivata). Alla fine di ogni episodio invia ***restart***, e dopo
+ * l'ultimo ***shutdown***; un'azione con (meta 1) chiude subito l'episodio.
+ *
+ * Uso: java scr.ReplayServer [opzioni]
+ *   port:N        porta UDP (default 3001)
+ *   clients:N     avvia N server su porte consecutive (default 1)
+ *   log:FILE      messaggi dei sensori, uno per riga, o registrazione .cap
+ *                 (default il set incluso, SensorMessageLog.BUNDLED)
+ *   hz:N          tick al secondo, 0 = il più veloce possibile (default 50)
+ *   timeout:MS    attesa massima dell'azione, come nel server SCR (default 10)
+ *   sim:PISTA     simula la pista (oval, circuit o segmenti di SimTrack) invece di
+ *                 rileggere il log; i sensori usano gli angoli dell'init del client
+ *   ticks:N       tick per episodio, 0 = tutto il log o 3000 con sim: (default 0)
+ *   episodes:N    numero di episodi (default 1)
+ */
+public class ReplayServer implements Runnable {
+
+    private static final byte[] IDENTIFIED = "***identified***".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] RESTART = "***restart***".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] SHUTDOWN = "***shutdown***".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] INIT = "(init".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] META_RESTART = "(meta 1)".getBytes(StandardCharsets.US_ASCII);
+
+    private final int port;
+    private final byte[][] messages;
+    private final int hz;
+    private final int timeoutMillis;
+    private final int ticksPerEpisode;
+    private final int episodes;
+    private final SimTrack simTrack; // null = si rilegge il log
+    private KinematicSimulator sim;
+    private final byte[] reply = new byte[4096];
+    private Action action; // l'ultima ricevuta, decodificata senza allocare
+    private final ByteBuffer rxBuffer = ByteBuffer.allocateDirect(4096);
+    private final ByteBuffer txBuffer = ByteBuffer.allocateDirect(4096);
+
+    // statistiche (tutti gli episodi)
+    private final LatencyHistogram roundTrips = new LatencyHistogram();
+    private long ticks = 0;
+    private long missedDeadlines = 0;
+    private long lateReplies = 0;
+
+    public ReplayServer(int port, List<String> log, int hz, int timeoutMillis, int ticksPerEpisode, int episodes) {
+        this(port, log, null, hz, timeoutMillis, ticksPerEpisode, episodes);
+    }
+
+    /**
+     * @param log messaggi da rileggere (ignorati se simTrack non è null)
+     * @param simTrack pista da simulare, null per rileggere il log
+     */
+    public ReplayServer(int port, List<String> log, SimTrack simTrack, int hz, int timeoutMillis,
+            int ticksPerEpisode, int episodes) {
+        this.port = port;
+        this.simTrack = simTrack;
+        this.messages = new byte[simTrack != null ? 0 : log.size()][];
+        for (int i = 0; i < messages.length; i++)
+            messages[i] = log.get(i).getBytes(StandardCharsets.US_ASCII);
+        this.hz = hz;
+        this.timeoutMillis = timeoutMillis;
+        this.ticksPerEpisode = ticksPerEpisode > 0 ? ticksPerEpisode : simTrack != null ? 3000 : messages.length;
+        this.episodes = episodes;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = 3001, clients = 1, hz = 50, timeout = 10, ticks = 0, episodes = 1;
+        String log = null, simTrack = null;
+        for (String arg : args) {
+            StringTokenizer st = new StringTokenizer(arg, ":");
+            String entity = st.nextToken();
+            String value = st.hasMoreTokens() ? st.nextToken() : "";
+            if (entity.equals("port")) {
+                port = Integer.parseInt(value);
+            } else if (entity.equals("clients")) {
+                clients = Integer.parseInt(value);
+            } else if (entity.equals("log")) {
+                log = value;
+            } else if (entity.equals("sim")) {
+                simTrack = arg.substring(entity.length() + 1); // i segmenti contengono ':'
+            } else if (entity.equals("hz")) {
+                hz = Integer.parseInt(value);
+            } else if (entity.equals("timeout")) {
+                timeout = Integer.parseInt(value);
+            } else if (entity.equals("ticks")) {
+                ticks = Integer.parseInt(value);
+            } else if (entity.equals("episodes")) {
+                episodes = Integer.parseInt(value);
+            } else {
+                System.out.println("Opzione sconosciuta: " + arg);
+                System.exit(0);
+            }
+        }
+
+        SimTrack track = simTrack != null ? SimTrack.parse(simTrack) : null;
+        List<String> messages = track != null ? null : SensorMessageLog.load(log);
+        Thread[] threads = new Thread[clients];
+        for (int i = 0; i < clients; i++) {
+            ReplayServer server = new ReplayServer(port + i, messages, track, hz, timeout, ticks, episodes);
+            threads[i] = new Thread(server, "ReplayServer-" + (port + i));
+            threads[i].start();
+        }
+        for (Thread t : threads)
+            t.join();
+    }
+
+    public void run() {
+        try (DatagramChannel channel = DatagramChannel.open(); Selector selector = Selector.open()) {
+            channel.bind(new InetSocketAddress(port));
+            channel.configureBlocking(false);
+            channel.register(selector, SelectionKey.OP_READ);
+            System.out.println("ReplayServer in ascolto sulla porta " + port + " ("
+                    + (simTrack != null ? "simulazione " + simTrack : messages.length + " messaggi") + ", "
+                    + (hz > 0 ? hz + " Hz" : "massima velocità") + ")");
+            for (int episode = 0; episode < episodes; episode++) {
+                SocketAddress client = waitForInit(channel, selector);
+                boolean last = episode == episodes - 1;
+                runEpisode(channel, selector, client);
+                send(channel, last ? SHUTDOWN : RESTART, client);
+            }
+            printStats();
+        } catch (IOException e) {
+            System.err.println("ReplayServer " + port + ": " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    // Handshake: attende "ID(init ...)" e risponde ***identified***
+    private SocketAddress waitForInit(DatagramChannel channel, Selector selector) throws IOException {
+        while (true) {
+            SocketAddress client = receive(channel, selector, 0);
+            if (client != null && contains(INIT)) {
+                if (simTrack != null) {
+                    sim = new KinematicSimulator(simTrack, initAngles(), 1, 0);
+                    action = new Action();
+                }
+                send(channel, IDENTIFIED, client);
+                return client;
+            }
+        }
+    }
+
+    // Angoli dei sensori da "ID(init a1 a2 ...)": 19 numeri, come li invia ClientSession
+    private float[] initAngles() {
+        String init = StandardCharsets.US_ASCII.decode(rxBuffer.duplicate()).toString();
+        StringTokenizer st = new StringTokenizer(init.substring(init.indexOf("(init") + 5), " )");
+        float[] angles = new float[DataWriter.TRACK_SENSORS];
+        for (int i = 0; i < angles.length && st.hasMoreTokens(); i++)
+            angles[i] = Float.parseFloat(st.nextToken());
+        return angles;
+    }
+
+    private void runEpisode(DatagramChannel channel, Selector selector, SocketAddress client) throws IOException {
+        long period = hz > 0 ? 1000000000L / hz : 0;
+        long next = System.nanoTime();
+        for (int t = 0; t < ticksPerEpisode; t++) {
+            if (period > 0) {
+                // attesa del prossimo tick (sleep grossolano e poi attesa attiva)
+                long wait;
+                while ((wait = next - System.nanoTime()) > 0) {
+                    if (wait > 2000000)
+                        sleepNanos(wait - 1000000);
+                    else
+                        Thread.onSpinWait();
+                }
+                next += period;
+            }
+
+            // le azioni arrivate dopo la scadenza del tick precedente sono in ritardo
+            while (poll(channel) != null)
+                lateReplies++;
+
+            long sent = System.nanoTime();
+            send(channel, sim != null ? sim.getMessage().getBytes(StandardCharsets.US_ASCII)
+                    : messages[t % messages.length], client);
+            ticks++;
+
+            long deadline = sent + timeoutMillis * 1000000L;
+            boolean replied = false;
+            while (!replied) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0)
+                    break;
+                if (receive(channel, selector, Math.max(1, remaining / 1000000L)) == null)
+                    continue;
+                long now = System.nanoTime();
+                if (now - deadline > 0) {
+                    lateReplies++; // arrivata, ma troppo tardi
+                    break;
+                }
+                roundTrips.record(now - sent);
+                replied = true;
+                if (contains(META_RESTART))
+                    return; // il client chiede il riavvio della gara
+                if (sim != null) {
+                    int len = rxBuffer.remaining();
+                    rxBuffer.get(rxBuffer.position(), reply, 0, len);
+                    ActionEncoder.decode(reply, 0, len, action);
+                }
+            }
+            if (!replied)
+                missedDeadlines++;
+            // senza risposta in tempo la simulazione prosegue con l'ultima azione, come in TORCS
+            if (sim != null)
+                sim.step(action);
+        }
+    }
+
+    // Attende un datagramma per al massimo timeoutMillis (0 = senza limite)
+    private SocketAddress receive(DatagramChannel channel, Selector selector, long timeoutMillis)
+            throws IOException {
+        SocketAddress from = poll(channel);
+        if (from != null)
+            return from;
+        selector.select(timeoutMillis);
+        selector.selectedKeys().clear();
+        return poll(channel);
+    }
+
+    // Lettura non bloccante in rxBuffer: null se non c'è niente da leggere
+    private SocketAddress poll(DatagramChannel channel) throws IOException {
+        rxBuffer.clear();
+        SocketAddress from = channel.receive(rxBuffer);
+        rxBuffer.flip();
+        return from;
+    }
+
+    // Cerca i byte di text nel datagramma ricevuto, senza copiarlo: siamo nel ciclo misurato
+    private boolean contains(byte[] text) {
+        int start = rxBuffer.position(), end = rxBuffer.limit() - text.length;
+        for (int i = start; i <= end; i++) {
+            int j = 0;
+            while (j < text.length && rxBuffer.get(i + j) == text[j])
+                j++;
+            if (j == text.length)
+                return true;
+        }
+        return false;
+    }
+
+    private void send(DatagramChannel channel, byte[] msg, SocketAddress client) throws IOException {
+        txBuffer.clear();
+        txBuffer.put(msg).flip();
+        channel.send(txBuffer, client);
+    }
+
+    private static void sleepNanos(long nanos) {
+        try {
+            Thread.sleep(nanos / 1000000L, (int) (nanos % 1000000L));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void printStats() {
+        long lost = missedDeadlines - Math.min(missedDeadlines, lateReplies);
+        System.out.println(String.format(
+                "ReplayServer %d: tick %d, risposte in tempo %d, scadenze mancate %d (in ritardo %d, perse %d)",
+                port, ticks, roundTrips.count(), missedDeadlines, lateReplies, lost));
+        if (roundTrips.count() > 0) {
+            System.out.println(String.format(
+                    "ReplayServer %d: round trip us p50 %.1f  p99 %.1f  p99.9 %.1f  max %.1f", port,
+                    roundTrips.percentile(0.50) / 1000.0, roundTrips.percentile(0.99) / 1000.0,
+                    roundTrips.percentile(0.999) / 1000.0, roundTrips.max() / 1000.0));
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package scr;
+
+/**
+ * Layer denso in Java scalare, con quattro accumulatori indipendenti per riga
+ * (il JIT può sovrapporre le moltiplicazioni invece di aspettare ogni somma).
+ */
+public class ScalarMlpKernel implements MlpKernel {
+
+    public void dense(float[] w, float[] b, float[] in, int inLen, float[] out, int outLen) {
+        int upper = inLen & ~3;
+        for (int o = 0; o < outLen; o++) {
+            int row = o * inLen;
+            float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+            int i = 0;
+            for (; i < upper; i += 4) {
+                s0 += w[row + i] * in[i];
+                s1 += w[row + i + 1] * in[i + 1];
+                s2 += w[row + i + 2] * in[i + 2];
+                s3 += w[row + i + 3] * in[i + 3];
+            }
+            for (; i < inLen; i++)
+                s0 += w[row + i] * in[i];
+            out[o] = (s0 + s1) + (s2 + s3) + b[o];
+        }
+    }
+}
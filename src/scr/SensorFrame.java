@@ -0,0 +1,366 @@
+package scr;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * SensorModel riutilizzabile con campi primitivi.
+ *
+ * A differenza di MessageBasedSensorModel (un oggetto, un Hashtable e un Double
+ * per ogni lettura ad ogni tick) qui il messaggio del server viene scandito una
+ * sola volta byte per byte e i valori vengono scritti direttamente nei campi.
+ * Lo stesso oggetto viene riusato ad ogni tick: a regime non produce garbage.
+ *
+ * Attenzione: gli array restituiti dai getter sono quelli interni e vengono
+ * sovrascritti dal parse successivo. Le letture che mancano nel messaggio
+ * valgono 0 (anche le posizioni mancanti degli array, che hanno sempre la
+ * lunghezza standard), non il valore del messaggio precedente.
+ */
+public class SensorFrame implements SensorModel {
+
+    public static final int TRACK_SENSORS = 19;
+    public static final int FOCUS_SENSORS = 5;
+    public static final int OPPONENT_SENSORS = 36;
+    public static final int WHEELS = 4;
+
+    // Identificativi delle letture, nello stesso ordine di READING_NAMES
+    private static final int ANGLE = 0, CUR_LAP_TIME = 1, DAMAGE = 2, DIST_FROM_START = 3, DIST_RACED = 4,
+            FOCUS = 5, FUEL = 6, GEAR = 7, LAST_LAP_TIME = 8, OPPONENTS = 9, RACE_POS = 10, RPM = 11,
+            SPEED_X = 12, SPEED_Y = 13, SPEED_Z = 14, TRACK = 15, TRACK_POS = 16, WHEEL_SPIN_VEL = 17, Z = 18;
+
+    private static final byte[][] READING_NAMES = {
+            ascii("angle"), ascii("curLapTime"), ascii("damage"), ascii("distFromStart"), ascii("distRaced"),
+            ascii("focus"), ascii("fuel"), ascii("gear"), ascii("lastLapTime"), ascii("opponents"),
+            ascii("racePos"), ascii("rpm"), ascii("speedX"), ascii("speedY"), ascii("speedZ"), ascii("track"),
+            ascii("trackPos"), ascii("wheelSpinVel"), ascii("z") };
+
+    private double angle;
+    private double curLapTime;
+    private double damage;
+    private double distFromStart;
+    private double distRaced;
+    private double fuel;
+    private double gear;
+    private double lastLapTime;
+    private double racePos;
+    private double rpm;
+    private double speedX;
+    private double speedY;
+    private double speedZ;
+    private double trackPos;
+    private double z;
+
+    private final double[] track = new double[TRACK_SENSORS];
+    private final double[] focus = new double[FOCUS_SENSORS];
+    private final double[] opponents = new double[OPPONENT_SENSORS];
+    private final double[] wheelSpinVel = new double[WHEELS];
+
+    // Letture presenti nel messaggio corrente: bit delle scalari e valori degli array
+    private static final int ALL_READINGS = (1 << READING_NAMES.length) - 1 & ~(1 << TRACK | 1 << FOCUS
+            | 1 << OPPONENTS | 1 << WHEEL_SPIN_VEL);
+    private int seen;
+    private int trackCount, focusCount, opponentCount, wheelCount;
+
+    // Copia del messaggio grezzo (serve per getMessage e per i messaggi di errore)
+    private byte[] raw = new byte[1024];
+    private int rawLength;
+    private String message; // creata solo se qualcuno chiama getMessage()
+
+    /**
+     * Analizza un messaggio già ricevuto come String (percorso di SocketHandler).
+     * I caratteri vengono copiati nel buffer interno senza allocare.
+     */
+    public SensorFrame parse(String msg) {
+        int len = msg.length();
+        ensureCapacity(len);
+        for (int i = 0; i < len; i++)
+            raw[i] = (byte) msg.charAt(i);
+        rawLength = len;
+        message = msg;
+        scan();
+        return this;
+    }
+
+    /**
+     * Analizza i byte [off, off + len) così come arrivano dal socket.
+     */
+    public SensorFrame parse(byte[] buf, int off, int len) {
+        ensureCapacity(len);
+        System.arraycopy(buf, off, raw, 0, len);
+        rawLength = len;
+        message = null;
+        scan();
+        return this;
+    }
+
+    /**
+     * Copia le letture di un altro SensorModel, per passarle a un thread diverso
+     * mentre l'originale viene riusato. Da un altro SensorFrame copia i campi
+     * senza riscandire il messaggio.
+     */
+    public SensorFrame copyFrom(SensorModel other) {
+        if (!(other instanceof SensorFrame))
+            return parse(other.getMessage());
+        SensorFrame o = (SensorFrame) other;
+        angle = o.angle;
+        curLapTime = o.curLapTime;
+        damage = o.damage;
+        distFromStart = o.distFromStart;
+        distRaced = o.distRaced;
+        fuel = o.fuel;
+        gear = o.gear;
+        lastLapTime = o.lastLapTime;
+        racePos = o.racePos;
+        rpm = o.rpm;
+        speedX = o.speedX;
+        speedY = o.speedY;
+        speedZ = o.speedZ;
+        trackPos = o.trackPos;
+        z = o.z;
+        System.arraycopy(o.track, 0, track, 0, TRACK_SENSORS);
+        System.arraycopy(o.focus, 0, focus, 0, FOCUS_SENSORS);
+        System.arraycopy(o.opponents, 0, opponents, 0, OPPONENT_SENSORS);
+        System.arraycopy(o.wheelSpinVel, 0, wheelSpinVel, 0, WHEELS);
+        ensureCapacity(o.rawLength);
+        System.arraycopy(o.raw, 0, raw, 0, o.rawLength);
+        rawLength = o.rawLength;
+        message = o.message;
+        return this;
+    }
+
+    private void ensureCapacity(int len) {
+        if (raw.length < len)
+            raw = new byte[Math.max(len, raw.length * 2)];
+    }
+
+    // Scansione unica del messaggio: "(nome v1 v2 ...)(nome v1 ...)..."
+    private void scan() {
+        final byte[] b = raw;
+        final int end = rawLength;
+        seen = 0;
+        trackCount = focusCount = opponentCount = wheelCount = 0;
+        int i = 0;
+        while (i < end) {
+            // cerca l'inizio della lettura
+            while (i < end && b[i] != '(')
+                i++;
+            i++;
+            // nome della lettura
+            int nameStart = i;
+            while (i < end && b[i] != ' ' && b[i] != ')' && b[i] != '(')
+                i++;
+            int reading = lookup(b, nameStart, i);
+            // valori separati da spazi fino a ')'
+            int position = 0;
+            while (i < end && b[i] != ')' && b[i] != '(') {
+                while (i < end && b[i] == ' ')
+                    i++;
+                int valueStart = i;
+                while (i < end && b[i] != ' ' && b[i] != ')' && b[i] != '(')
+                    i++;
+                if (i > valueStart && reading >= 0) {
+                    store(reading, position, value(reading, b, valueStart, i));
+                    position++;
+                }
+            }
+        }
+        clearMissing();
+    }
+
+    /*
+     * Le letture assenti dal messaggio (o con meno valori del previsto) tornano
+     * a 0, come un valore illeggibile per MessageParser: nessun valore resta
+     * quello del tick precedente.
+     */
+    private void clearMissing() {
+        if (seen != ALL_READINGS) {
+            if ((seen & 1 << ANGLE) == 0) angle = 0;
+            if ((seen & 1 << CUR_LAP_TIME) == 0) curLapTime = 0;
+            if ((seen & 1 << DAMAGE) == 0) damage = 0;
+            if ((seen & 1 << DIST_FROM_START) == 0) distFromStart = 0;
+            if ((seen & 1 << DIST_RACED) == 0) distRaced = 0;
+            if ((seen & 1 << FUEL) == 0) fuel = 0;
+            if ((seen & 1 << GEAR) == 0) gear = 0;
+            if ((seen & 1 << LAST_LAP_TIME) == 0) lastLapTime = 0;
+            if ((seen & 1 << RACE_POS) == 0) racePos = 0;
+            if ((seen & 1 << RPM) == 0) rpm = 0;
+            if ((seen & 1 << SPEED_X) == 0) speedX = 0;
+            if ((seen & 1 << SPEED_Y) == 0) speedY = 0;
+            if ((seen & 1 << SPEED_Z) == 0) speedZ = 0;
+            if ((seen & 1 << TRACK_POS) == 0) trackPos = 0;
+            if ((seen & 1 << Z) == 0) z = 0;
+        }
+        if (trackCount < TRACK_SENSORS)
+            Arrays.fill(track, trackCount, TRACK_SENSORS, 0);
+        if (focusCount < FOCUS_SENSORS)
+            Arrays.fill(focus, focusCount, FOCUS_SENSORS, 0);
+        if (opponentCount < OPPONENT_SENSORS)
+            Arrays.fill(opponents, opponentCount, OPPONENT_SENSORS, 0);
+        if (wheelCount < WHEELS)
+            Arrays.fill(wheelSpinVel, wheelCount, WHEELS, 0);
+    }
+
+    private static int lookup(byte[] b, int from, int to) {
+        int len = to - from;
+        outer: for (int r = 0; r < READING_NAMES.length; r++) {
+            byte[] name = READING_NAMES[r];
+            if (name.length != len)
+                continue;
+            for (int k = 0; k < len; k++) {
+                if (name[k] != b[from + k])
+                    continue outer;
+            }
+            return r;
+        }
+        return -1;
+    }
+
+    private double value(int reading, byte[] b, int from, int to) {
+        try {
+            return AsciiNumbers.parseDouble(b, from, to);
+        } catch (NumberFormatException e) {
+            // stesso comportamento di MessageParser: si usa 0.0
+            System.out.println("Error parsing value '" + new String(b, from, to - from, StandardCharsets.US_ASCII)
+                    + "' for " + new String(READING_NAMES[reading], StandardCharsets.US_ASCII) + " using 0.0");
+            System.out.println("Message: " + getMessage());
+            return 0.0;
+        }
+    }
+
+    private void store(int reading, int position, double v) {
+        switch (reading) {
+        case TRACK:
+            if (position < TRACK_SENSORS) {
+                track[position] = v;
+                trackCount = position + 1;
+            }
+            return;
+        case FOCUS:
+            if (position < FOCUS_SENSORS) {
+                focus[position] = v;
+                focusCount = position + 1;
+            }
+            return;
+        case OPPONENTS:
+            if (position < OPPONENT_SENSORS) {
+                opponents[position] = v;
+                opponentCount = position + 1;
+            }
+            return;
+        case WHEEL_SPIN_VEL:
+            if (position < WHEELS) {
+                wheelSpinVel[position] = v;
+                wheelCount = position + 1;
+            }
+            return;
+        default:
+            // le letture scalari usano solo il primo valore
+            if (position > 0)
+                return;
+            seen |= 1 << reading;
+        }
+        switch (reading) {
+        case ANGLE: angle = v; break;
+        case CUR_LAP_TIME: curLapTime = v; break;
+        case DAMAGE: damage = v; break;
+        case DIST_FROM_START: distFromStart = v; break;
+        case DIST_RACED: distRaced = v; break;
+        case FUEL: fuel = v; break;
+        case GEAR: gear = v; break;
+        case LAST_LAP_TIME: lastLapTime = v; break;
+        case RACE_POS: racePos = v; break;
+        case RPM: rpm = v; break;
+        case SPEED_X: speedX = v; break;
+        case SPEED_Y: speedY = v; break;
+        case SPEED_Z: speedZ = v; break;
+        case TRACK_POS: trackPos = v; break;
+        case Z: z = v; break;
+        }
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    public double getSpeed() {
+        return speedX;
+    }
+
+    public double getAngleToTrackAxis() {
+        return angle;
+    }
+
+    public double[] getTrackEdgeSensors() {
+        return track;
+    }
+
+    public double[] getFocusSensors() {
+        return focus;
+    }
+
+    public double getTrackPosition() {
+        return trackPos;
+    }
+
+    public int getGear() {
+        return (int) gear;
+    }
+
+    public double[] getOpponentSensors() {
+        return opponents;
+    }
+
+    public int getRacePosition() {
+        return (int) racePos;
+    }
+
+    public double getLateralSpeed() {
+        return speedY;
+    }
+
+    public double getCurrentLapTime() {
+        return curLapTime;
+    }
+
+    public double getDamage() {
+        return damage;
+    }
+
+    public double getDistanceFromStartLine() {
+        return distFromStart;
+    }
+
+    public double getDistanceRaced() {
+        return distRaced;
+    }
+
+    public double getFuelLevel() {
+        return fuel;
+    }
+
+    public double getLastLapTime() {
+        return lastLapTime;
+    }
+
+    public double getRPM() {
+        return rpm;
+    }
+
+    public double[] getWheelSpinVelocity() {
+        return wheelSpinVel;
+    }
+
+    public double getZSpeed() {
+        return speedZ;
+    }
+
+    public double getZ() {
+        return z;
+    }
+
+    public String getMessage() {
+        if (message == null)
+            message = new String(raw, 0, rawLength, StandardCharsets.US_ASCII);
+        return message;
+    }
+}
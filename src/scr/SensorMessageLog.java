@@ -0,0 +1,90 @@
+package scr;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Elenco di messaggi dei sensori registrati, un messaggio del server per riga
+ * (le righe vuote e quelle che iniziano con # vengono ignorate).
+ *
+ * Il file sensor_messages.txt accanto a questa classe è il set di riferimento
+ * usato da benchmark e warm-up. Al posto di un file di testo si può passare
+ * una registrazione .cap di SessionCapture: se ne usano i messaggi dei sensori
+ * ricevuti dal server, così come sono arrivati.
+ *
+ * Uso: java scr.SensorMessageLog sessione.cap [messaggi] > sensor_messages.txt
+ * estrae i messaggi di una sessione registrata (tutti, o i primi N) nel
+ * formato di questo file.
+ */
+public class SensorMessageLog {
+
+    public static final String BUNDLED = "sensor_messages.txt";
+
+    private SensorMessageLog() {
+    }
+
+    /**
+     * Carica i messaggi da un file, oppure dal set incluso se path è null (o
+     * è BUNDLED e nella directory corrente non c'è un file con quel nome).
+     * Se il set incluso non è nel classpath (compilazione senza risorse) si
+     * cerca src/scr/sensor_messages.txt nella directory corrente.
+     */
+    public static List<String> load(String path) throws IOException {
+        if (path != null && path.equals(BUNDLED) && !Files.exists(Paths.get(path)))
+            path = null;
+        if (path != null && path.endsWith(SessionCapture.EXTENSION))
+            return readCapture(Paths.get(path), Integer.MAX_VALUE);
+        if (path != null)
+            return read(Files.newInputStream(Paths.get(path)));
+        InputStream in = SensorMessageLog.class.getResourceAsStream(BUNDLED);
+        if (in == null)
+            in = Files.newInputStream(Paths.get("src", "scr", BUNDLED));
+        return read(in);
+    }
+
+    private static List<String> read(InputStream in) throws IOException {
+        List<String> messages = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.US_ASCII))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#"))
+                    messages.add(line);
+            }
+        }
+        return messages;
+    }
+
+    // Messaggi dei sensori ricevuti in una registrazione (non quelli di controllo come ***restart***)
+    private static List<String> readCapture(Path file, int max) throws IOException {
+        List<String> messages = new ArrayList<>();
+        try (SessionCaptureReader reader = new SessionCaptureReader(file)) {
+            while (messages.size() < max && reader.next()) {
+                if (reader.direction() == SessionCapture.RECEIVED && reader.length() > 0 && reader.message()[0] == '(')
+                    messages.add(new String(reader.message(), 0, reader.length(), StandardCharsets.US_ASCII).trim());
+            }
+        }
+        return messages;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Uso: java scr.SensorMessageLog sessione.cap [messaggi] > " + BUNDLED);
+            return;
+        }
+        Path file = Paths.get(args[0]);
+        List<String> messages = readCapture(file, args.length > 1 ? Integer.parseInt(args[1]) : Integer.MAX_VALUE);
+        System.out.println("# Messaggi dei sensori nel formato del server SCR, uno per riga.");
+        System.out.println("# Estratti da " + file.getFileName() + " (" + messages.size() + " messaggi).");
+        for (String msg : messages)
+            System.out.println(msg);
+    }
+}
@@ -0,0 +1,113 @@
+package scr;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Registrazione grezza di una sessione: ogni datagramma ricevuto dal server e
+ * ogni messaggio inviato, byte per byte, con l'istante System.nanoTime().
+ * A differenza di DataWriter non si perde nulla (focus, avversari, ruote,
+ * carburante, danni, z, tempi sul giro, messaggi di controllo), quindi una
+ * sessione si può rigiocare offline con qualunque driver (SessionCaptureReader).
+ *
+ * Il file è mappato in memoria a segmenti preallocati: registrare un messaggio
+ * costa una copia nel segmento corrente, senza chiamate di sistema. Quando un
+ * segmento è pieno si mappa il successivo; alla chiusura il file viene
+ * accorciato alla parte usata.
+ *
+ * Formato (tutto little-endian):
+ * <pre>
+ * header:  "SCRC" | int16 versione | int16 riservato | int32 lunghezza header (16) | int32 MB per segmento
+ * record:  int32 lunghezza del messaggio + 1 | byte direzione (0 = ricevuto, 1 = inviato) | 3 byte riservati
+ *          | int64 nanoTime | messaggio | padding fino a un multiplo di 8 byte
+ * </pre>
+ * I segmenti iniziano a multipli della loro dimensione dall'inizio del file.
+ * Il primo campo di un record viene scritto per ultimo e il resto del segmento
+ * è a zero: uno 0 vuol dire "segmento finito" (si passa al successivo) e, se
+ * il processo muore, il lettore si ferma all'ultimo record completo.
+ */
+public class SessionCapture implements AutoCloseable {
+
+    public static final byte[] MAGIC = { 'S', 'C', 'R', 'C' };
+    public static final short VERSION = 1;
+    public static final int HEADER_BYTES = 16;
+    public static final int RECORD_HEADER_BYTES = 16;
+    public static final byte RECEIVED = 0;
+    public static final byte SENT = 1;
+    public static final String EXTENSION = ".cap";
+    public static final int DEFAULT_SEGMENT_MB = 64;
+
+    private final FileChannel channel;
+    private final long segmentBytes;
+    private MappedByteBuffer segment;
+    private long segmentStart;
+    private long position; // posizione nel file del prossimo record
+    private long records = 0;
+
+    /**
+     * @param segmentMB dimensione dei segmenti preallocati in MB
+     */
+    public SessionCapture(Path file, int segmentMB) throws IOException {
+        this.segmentBytes = (long) segmentMB << 20;
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        map(0);
+        segment.put(MAGIC).putShort(VERSION).putShort((short) 0).putInt(HEADER_BYTES).putInt(segmentMB);
+        position = HEADER_BYTES;
+    }
+
+    private void map(long start) throws IOException {
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, start, segmentBytes);
+        segment.order(ByteOrder.LITTLE_ENDIAN);
+        segmentStart = start;
+    }
+
+    /**
+     * Accoda un messaggio. Non alloca (salvo il passaggio a un nuovo segmento).
+     *
+     * @param direction RECEIVED o SENT
+     */
+    public void record(byte direction, byte[] buf, int off, int len, long nanoTime) throws IOException {
+        int size = RECORD_HEADER_BYTES + ((len + 7) & ~7);
+        if (position + size > segmentStart + segmentBytes) {
+            if (size > segmentBytes)
+                throw new IOException("messaggio di " + len + " byte più grande di un segmento");
+            // il resto del segmento è a zero: il lettore salta al segmento successivo
+            map(segmentStart + segmentBytes);
+            position = segmentStart;
+        }
+        int p = (int) (position - segmentStart);
+        segment.put(p + 4, direction);
+        segment.putLong(p + 8, nanoTime);
+        segment.position(p + RECORD_HEADER_BYTES);
+        segment.put(buf, off, len);
+        segment.putInt(p, len + 1); // per ultimo: il record è completo
+        position += size;
+        records++;
+    }
+
+    public long records() {
+        return records;
+    }
+
+    /** Byte usati del file */
+    public long size() {
+        return position;
+    }
+
+    public void close() throws IOException {
+        segment.force();
+        segment = null;
+        // la mappa resta valida fino al GC: su alcuni sistemi truncate fallisce finché è mappata
+        try {
+            channel.truncate(position);
+        } catch (IOException e) {
+            System.err.println("SessionCapture: impossibile accorciare il file: " + e.getMessage());
+        }
+        channel.close();
+    }
+}
@@ -0,0 +1,307 @@
+package scr;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Legge una registrazione di SessionCapture.
+ *
+ * Si può scorrere record per record (next(), con direzione, istante e byte del
+ * messaggio) oppure tick per tick (nextTick()): ogni messaggio dei sensori
+ * ricevuto, già analizzato in un SensorFrame, con l'azione inviata subito
+ * dopo, decodificata in un'Action. I messaggi di controllo (identificazione,
+ * restart, shutdown) non sono tick; restarted() dice se prima del tick c'è
+ * stato un restart. SensorFrame, Action e buffer sono riusati a ogni chiamata.
+ *
+ * Uso: java scr.SessionCaptureReader sessione.cap [driver]
+ * Senza driver stampa un riepilogo; con un driver (es. scr.SimpleDriver) lo
+ * fa guidare sui sensori registrati e conta i tick in cui invierebbe
+ * esattamente gli stessi byte.
+ */
+public class SessionCaptureReader implements AutoCloseable {
+
+    private final FileChannel channel;
+    private final long size;
+    private final long segmentBytes;
+    private MappedByteBuffer segment;
+    private long segmentStart = -1;
+    private long position = SessionCapture.HEADER_BYTES;
+    private long recordStart; // posizione del record corrente
+
+    // record corrente
+    private byte direction;
+    private long nanoTime;
+    private byte[] message = new byte[4096];
+    private int length;
+    private boolean pushedBack = false;
+
+    // tick corrente
+    private final SensorFrame sensors = new SensorFrame();
+    private final Action action = new Action();
+    private byte[] actionBytes = new byte[ActionEncoder.MAX_MESSAGE_LENGTH];
+    private int actionLength;
+    private boolean hasAction;
+    private long receivedNanos, sentNanos;
+    private boolean restarted;
+
+    public SessionCaptureReader(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        size = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(SessionCapture.HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) < 0)
+                throw new IOException(file + " non è una registrazione di sessione");
+        }
+        header.flip();
+        byte[] magic = new byte[4];
+        header.get(magic);
+        if (!Arrays.equals(magic, SessionCapture.MAGIC))
+            throw new IOException(file + " non è una registrazione di sessione");
+        short version = header.getShort();
+        if (version != SessionCapture.VERSION)
+            throw new IOException(file + ": versione " + version + " non supportata");
+        header.getShort();
+        header.getInt();
+        segmentBytes = (long) header.getInt() << 20;
+        if (segmentBytes <= 0)
+            throw new IOException(file + ": dimensione dei segmenti non valida");
+    }
+
+    /** Passa al record successivo; false a fine file (o al primo record incompleto) */
+    public boolean next() throws IOException {
+        if (pushedBack) {
+            pushedBack = false;
+            return true;
+        }
+        while (position + SessionCapture.RECORD_HEADER_BYTES <= size) {
+            long start = position - position % segmentBytes;
+            long end = start + segmentBytes;
+            if (position + SessionCapture.RECORD_HEADER_BYTES > end) {
+                position = end;
+                continue;
+            }
+            if (start != segmentStart) {
+                segment = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(segmentBytes, size - start));
+                segment.order(ByteOrder.LITTLE_ENDIAN);
+                segmentStart = start;
+            }
+            int p = (int) (position - start);
+            int stored = segment.getInt(p);
+            if (stored == 0) {
+                // fine del segmento: il messaggio successivo non ci stava
+                position = end;
+                continue;
+            }
+            int len = stored - 1;
+            long recordEnd = position + SessionCapture.RECORD_HEADER_BYTES + ((len + 7) & ~7);
+            if (len < 0 || recordEnd > Math.min(end, size))
+                return false; // record troncato
+            recordStart = position;
+            direction = segment.get(p + 4);
+            nanoTime = segment.getLong(p + 8);
+            if (message.length < len)
+                message = new byte[Math.max(len, message.length * 2)];
+            ByteBuffer src = segment.duplicate();
+            src.position(p + SessionCapture.RECORD_HEADER_BYTES);
+            src.get(message, 0, len);
+            length = len;
+            position = recordEnd;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Posizione nel file da cui riprende la lettura: salvata prima di
+     * nextTick(), con seek() si torna a rileggere da quel tick (anche da un
+     * altro lettore sullo stesso file).
+     */
+    public long position() {
+        return pushedBack ? recordStart : position;
+    }
+
+    public void seek(long position) {
+        this.position = position;
+        pushedBack = false;
+        restarted = false;
+    }
+
+    /** SessionCapture.RECEIVED o SessionCapture.SENT */
+    public byte direction() {
+        return direction;
+    }
+
+    public long nanoTime() {
+        return nanoTime;
+    }
+
+    /** Byte del messaggio corrente: validi i primi length() */
+    public byte[] message() {
+        return message;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Passa al prossimo messaggio dei sensori ricevuto e all'azione inviata in
+     * risposta (se c'è: hasAction()).
+     *
+     * @return false a fine registrazione
+     */
+    public boolean nextTick() throws IOException {
+        restarted = false;
+        while (next()) {
+            if (direction != SessionCapture.RECEIVED)
+                continue;
+            if (length == 0 || message[0] != '(') {
+                if (startsWith("***restart***"))
+                    restarted = true;
+                continue;
+            }
+            sensors.parse(message, 0, length);
+            receivedNanos = nanoTime;
+            hasAction = false;
+            if (next()) {
+                if (direction == SessionCapture.SENT) {
+                    resetAction();
+                    ActionEncoder.decode(message, 0, length, action);
+                    if (actionBytes.length < length)
+                        actionBytes = new byte[length];
+                    System.arraycopy(message, 0, actionBytes, 0, length);
+                    actionLength = length;
+                    sentNanos = nanoTime;
+                    hasAction = true;
+                } else {
+                    pushedBack = true; // due ricezioni di fila: il driver non ha risposto
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private boolean startsWith(String text) {
+        if (length < text.length())
+            return false;
+        for (int i = 0; i < text.length(); i++) {
+            if (message[i] != text.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    private void resetAction() {
+        action.accelerate = 0;
+        action.brake = 0;
+        action.clutch = 0;
+        action.gear = 0;
+        action.steering = 0;
+        action.restartRace = false;
+        action.focus = 360;
+    }
+
+    public SensorFrame sensors() {
+        return sensors;
+    }
+
+    public Action action() {
+        return action;
+    }
+
+    public boolean hasAction() {
+        return hasAction;
+    }
+
+    /** Byte dell'azione inviata nel tick corrente: validi i primi actionLength() */
+    public byte[] actionBytes() {
+        return actionBytes;
+    }
+
+    public int actionLength() {
+        return actionLength;
+    }
+
+    public long receivedNanos() {
+        return receivedNanos;
+    }
+
+    public long sentNanos() {
+        return sentNanos;
+    }
+
+    /** true se fra il tick precedente e questo il server ha riavviato la gara */
+    public boolean restarted() {
+        return restarted;
+    }
+
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Uso: java scr.SessionCaptureReader sessione.cap [driver]");
+            return;
+        }
+        Path file = Paths.get(args[0]);
+        long records = 0, received = 0, sent = 0, first = 0, last = 0;
+        try (SessionCaptureReader reader = new SessionCaptureReader(file)) {
+            while (reader.next()) {
+                if (records++ == 0)
+                    first = reader.nanoTime();
+                last = reader.nanoTime();
+                if (reader.direction() == SessionCapture.RECEIVED)
+                    received++;
+                else
+                    sent++;
+            }
+        }
+        System.out.println(String.format("%s: %d messaggi (%d ricevuti, %d inviati) in %.1f s", file, records,
+                received, sent, (last - first) / 1e9));
+
+        Controller driver = null;
+        if (args.length > 1) {
+            driver = args[1].equals(SimpleDriver.class.getName()) ? new SimpleDriver(null)
+                    : (Controller) Class.forName(args[1]).getConstructor().newInstance();
+        }
+        LatencyHistogram latency = new LatencyHistogram();
+        ActionEncoder encoder = new ActionEncoder();
+        byte[] out = new byte[ActionEncoder.MAX_MESSAGE_LENGTH];
+        long ticks = 0, identical = 0, restarts = 0;
+        long start = System.nanoTime();
+        try (SessionCaptureReader reader = new SessionCaptureReader(file)) {
+            while (reader.nextTick()) {
+                ticks++;
+                if (reader.hasAction())
+                    latency.record(reader.sentNanos() - reader.receivedNanos());
+                if (driver == null)
+                    continue;
+                if (reader.restarted()) {
+                    driver.reset();
+                    restarts++;
+                }
+                int len = encoder.encode(driver.control(reader.sensors()), out, 0);
+                if (reader.hasAction() && len == reader.actionLength()
+                        && Arrays.equals(out, 0, len, reader.actionBytes(), 0, len))
+                    identical++;
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.println(String.format("%d tick, ricezione -> invio us p50 %.1f  p99 %.1f  max %.1f", ticks,
+                latency.percentile(0.50) / 1000.0, latency.percentile(0.99) / 1000.0, latency.max() / 1000.0));
+        if (driver != null) {
+            System.out.println(String.format("%s: %d tick su %d con gli stessi byte inviati (%.2f%%), %d restart,"
+                    + " %.0f tick/s", driver.getClass().getSimpleName(), identical, ticks,
+                    ticks == 0 ? 0.0 : 100.0 * identical / ticks, restarts, ticks / (elapsed / 1e9)));
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package scr;
+
+/**
+ * Pista parametrica per KinematicSimulator: una sequenza chiusa di rettilinei
+ * e archi di cerchio con larghezza costante.
+ *
+ * La pista si descrive con una stringa di segmenti separati da spazi:
+ *   s400        rettilineo di 400 m
+ *   l100:90     curva a sinistra di raggio 100 m e 90 gradi
+ *   r50:45      curva a destra di raggio 50 m e 45 gradi
+ * Il primo segmento parte dalla linea di partenza, nell'origine, verso x
+ * positive. La pista dovrebbe chiudersi (ultimo punto = primo, direzione
+ * +360 gradi): se non si chiude viene stampato un avviso.
+ */
+public class SimTrack {
+
+    /** Piste predefinite, utilizzabili per nome in parse() */
+    public static final String OVAL = "s500 l100:180 s500 l100:180";
+    public static final String CIRCUIT =
+            "s361.4214 l100:90 s250 l60:90 s150 r50:45 l50:90 r50:45 s150 l60:90 s250 l100:90";
+
+    // per segmento: tipo (0 = rettilineo, +1 sinistra, -1 destra), geometria iniziale e lunghezza
+    final int[] turn;
+    final double[] startS;
+    final double[] length;
+    final double[] x0, y0, heading0;
+    final double[] radius;
+    final double[] cx, cy;       // centro degli archi
+    final double[] midAngle;     // angolo polare del punto medio dell'arco, rispetto al centro
+    final double width;
+    final double totalLength;
+    final String spec;
+
+    public SimTrack(String spec, double width) {
+        this.spec = spec;
+        this.width = width;
+        String[] tokens = spec.trim().split("\\s+");
+        int n = tokens.length;
+        turn = new int[n];
+        startS = new double[n];
+        length = new double[n];
+        x0 = new double[n];
+        y0 = new double[n];
+        heading0 = new double[n];
+        radius = new double[n];
+        cx = new double[n];
+        cy = new double[n];
+        midAngle = new double[n];
+
+        double x = 0, y = 0, h = 0, s = 0;
+        for (int i = 0; i < n; i++) {
+            String tok = tokens[i];
+            x0[i] = x;
+            y0[i] = y;
+            heading0[i] = h;
+            startS[i] = s;
+            char type = tok.charAt(0);
+            if (type == 's') {
+                length[i] = Double.parseDouble(tok.substring(1));
+                x += length[i] * Math.cos(h);
+                y += length[i] * Math.sin(h);
+            } else if (type == 'l' || type == 'r') {
+                int sign = type == 'l' ? 1 : -1;
+                String[] parts = tok.substring(1).split(":");
+                double r = Double.parseDouble(parts[0]);
+                double sweep = Math.toRadians(Double.parseDouble(parts[1]));
+                turn[i] = sign;
+                radius[i] = r;
+                length[i] = r * sweep;
+                cx[i] = x - sign * r * Math.sin(h);
+                cy[i] = y + sign * r * Math.cos(h);
+                double start = Math.atan2(y - cy[i], x - cx[i]);
+                midAngle[i] = start + sign * sweep / 2;
+                h += sign * sweep;
+                x = cx[i] + sign * r * Math.sin(h);
+                y = cy[i] - sign * r * Math.cos(h);
+            } else {
+                throw new IllegalArgumentException("Segmento non valido: " + tok);
+            }
+            s += length[i];
+        }
+        totalLength = s;
+        double turns = h / (2 * Math.PI);
+        if (Math.hypot(x, y) > 0.5 || Math.abs(turns - Math.rint(turns)) > 0.002 || Math.rint(turns) == 0)
+            System.err.println(String.format("SimTrack: la pista non si chiude (fine a %.1f, %.1f m, %.1f gradi)",
+                    x, y, Math.toDegrees(h)));
+    }
+
+    /** Pista per nome (oval, circuit) o descrizione a segmenti, larga 12 m */
+    public static SimTrack parse(String nameOrSpec) {
+        if (nameOrSpec.equals("oval"))
+            return new SimTrack(OVAL, 12);
+        if (nameOrSpec.equals("circuit"))
+            return new SimTrack(CIRCUIT, 12);
+        return new SimTrack(nameOrSpec, 12);
+    }
+
+    public int segments() {
+        return turn.length;
+    }
+
+    public double length() {
+        return totalLength;
+    }
+
+    public double width() {
+        return width;
+    }
+
+    /** Curvatura (1/m, positiva a sinistra) del segmento i */
+    public double curvature(int i) {
+        return turn[i] == 0 ? 0 : turn[i] / radius[i];
+    }
+
+    /** Indice del segmento che contiene la distanza s dalla partenza */
+    public int segmentAt(double s) {
+        s = wrap(s);
+        int i = 0;
+        while (i < turn.length - 1 && startS[i + 1] <= s)
+            i++;
+        return i;
+    }
+
+    double wrap(double s) {
+        s %= totalLength;
+        return s < 0 ? s + totalLength : s;
+    }
+
+    /**
+     * Curvatura per metro, nel formato di TrackMap: per confrontare la mappa
+     * costruita da un driver con la pista vera.
+     */
+    public float[] curvatureProfile() {
+        float[] k = new float[(int) Math.ceil(totalLength)];
+        for (int m = 0; m < k.length; m++)
+            k[m] = (float) curvature(segmentAt(m + 0.5));
+        return k;
+    }
+
+    /** Descrizione della pista per i messaggi */
+    @Override
+    public String toString() {
+        int curves = 0;
+        for (int t : turn)
+            if (t != 0)
+                curves++;
+        return String.format("%.0f m, %d segmenti, %d curve, larga %.0f m", totalLength, turn.length, curves, width);
+    }
+}
@@ -1,48 +1,47 @@
 package scr;
 
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.util.Arrays;
 
 public class SimpleDriver extends Controller {
 
 	/* Costanti di cambio marcia */
-	final int[] gearUp = { 5000, 6000, 6000, 6500, 7000, 0 };
-	final int[] gearDown = { 0, 2500, 3000, 3000, 3500, 3500 };
+	final int[] gearUp;
+	final int[] gearDown;
 
 	/* Constanti */
-	final int stuckTime = 25;
-	final float stuckAngle = (float) 0.523598775; // PI/6
+	final int stuckTime;
+	final float stuckAngle; // PI/6
 
 	/* Costanti di accelerazione e di frenata */
-	final float maxSpeedDist = 70;
-	final float maxSpeed = 150;
+	final float maxSpeedDist;
+	final float maxSpeed;
 	final float sin5 = (float) 0.08716;
 	final float cos5 = (float) 0.99619;
 
 	/* Costanti di sterzata */
-	final float steerLock = (float) 0.785398;
-	final float steerSensitivityOffset = (float) 80.0;
-	final float wheelSensitivityCoeff = 1;
+	final float steerLock;
+	final float steerSensitivityOffset;
+	final float wheelSensitivityCoeff;
 
 	/* Costanti del filtro ABS */
 	final float wheelRadius[] = { (float) 0.3179, (float) 0.3179, (float) 0.3276, (float) 0.3276 };
-	final float absSlip = (float) 2.0;
-	final float absRange = (float) 3.0;
-	final float absMinSpeed = (float) 3.0;
+	final float absSlip;
+	final float absRange;
+	final float absMinSpeed;
 
 	/* Costanti da stringere */
-	final float clutchMax = (float) 0.5;
-	final float clutchDelta = (float) 0.05;
-	final float clutchRange = (float) 0.82;
-	final float clutchDeltaTime = (float) 0.02;
-	final float clutchDeltaRaced = 10;
-	final float clutchDec = (float) 0.01;
-	final float clutchMaxModifier = (float) 1.3;
-	final float clutchMaxTime = (float) 1.5;
-
-
+	final float clutchMax;
+	final float clutchDelta;
+	final float clutchRange;
+	final float clutchDeltaTime;
+	final float clutchDeltaRaced;
+	final float clutchDec;
+	final float clutchMaxModifier;
+	final float clutchMaxTime;
+
+	// I valori delle costanti vengono da SimpleDriverParams (default = quelli originali)
+	private final SimpleDriverParams params;
 
 	private int stuck = 0;
 
@@ -50,26 +49,29 @@ public class SimpleDriver extends Controller {
 	private float clutch = 0;
 
 	// VARIABILI AGGIUNTE PER LA RACCOLTA DATI
-    private PrintWriter dataWriter;
+    private DataWriter dataWriter;
     private boolean collectingData = true; // fase raccolta
     private int dataCounter = 0; // contatore per il numero di righe scritte
 
+    // Mappa della pista (vedi TrackMap): con -Dscr.trackmap=true si carica o si costruisce nel primo giro.
+    // Se c'è anche il profilo di velocità (SpeedProfileOptimizer) la velocità obiettivo viene da lì.
+    public static final String TRACKMAP_PROPERTY = "scr.trackmap";
+    private boolean useTrackMap = false;
+    private TrackMap trackMap;
+    private SpeedProfile speedProfile;
+    private float[] sensorAngles;
+
 	 public SimpleDriver() {
+        this(SimpleDriverParams.fromProperties());
+        useTrackMap = Boolean.getBoolean(TRACKMAP_PROPERTY);
         if (collectingData) {
             try {
-                // Il file verrà salvato nella directory da cui viene eseguito TORCS
-                dataWriter = new PrintWriter(new FileWriter("torcs_dataset.csv"));
-                
-                // INTESTAZIONE DEL CSV:
-                // ABBIAMO SCELTO QUESTE 24 FEATURES:
-                // angle, trackPos, speedX, speedY, rpm
-                // e i 19 trackSensors (track0 a track18)
-                // Poi i 4 TARGET: accel, brake, steering, gear
-                dataWriter.println("angle,trackPos,speedX,speedY,rpm," +
-                                   "track0,track1,track2,track3,track4,track5,track6,track7,track8,track9," +
-                                   "track10,track11,track12,track13,track14,track15,track16,track17,track18," +
-                                   "accel,brake,steering,gear");
-                System.out.println("Inizializzato il data writer per torcs_dataset.csv");
+                // Il file verrà salvato nella directory da cui viene eseguito TORCS.
+                // Stesso formato di HumanDriver: 24 FEATURES (angle, trackPos, speedX, speedY, rpm,
+                // track0..track18) e 4 TARGET (accel, brake, steering, gear).
+                // Con -Dscr.recording.async=true la scrittura avviene fuori dal tick di controllo.
+                dataWriter = new DataWriter("torcs_dataset");
+                System.out.println("Inizializzato il data writer per torcs_dataset");
             } catch (IOException e) {
                 System.err.println("Errore nell'inizializzazione del data writer: " + e.getMessage());
                 e.printStackTrace();
@@ -78,6 +80,48 @@ public class SimpleDriver extends Controller {
         }
     }
 
+	// Usato da benchmark e strumenti offline: registra su recorder, oppure niente se è null
+	SimpleDriver(DataWriter recorder) {
+		this(recorder, SimpleDriverParams.defaults());
+	}
+
+	// Come sopra, con parametri dati (SimpleDriverTuner)
+	SimpleDriver(DataWriter recorder, SimpleDriverParams params) {
+		this(params);
+		dataWriter = recorder;
+		collectingData = recorder != null;
+	}
+
+	private SimpleDriver(SimpleDriverParams p) {
+		params = p;
+		gearUp = new int[] { (int) p.get("gearUp1"), (int) p.get("gearUp2"), (int) p.get("gearUp3"),
+				(int) p.get("gearUp4"), (int) p.get("gearUp5"), 0 };
+		gearDown = new int[] { 0, (int) p.get("gearDown2"), (int) p.get("gearDown3"), (int) p.get("gearDown4"),
+				(int) p.get("gearDown5"), (int) p.get("gearDown6") };
+		stuckTime = (int) p.get("stuckTime");
+		stuckAngle = (float) p.get("stuckAngle");
+		maxSpeedDist = (float) p.get("maxSpeedDist");
+		maxSpeed = (float) p.get("maxSpeed");
+		steerLock = (float) p.get("steerLock");
+		steerSensitivityOffset = (float) p.get("steerSensitivityOffset");
+		wheelSensitivityCoeff = (float) p.get("wheelSensitivityCoeff");
+		absSlip = (float) p.get("absSlip");
+		absRange = (float) p.get("absRange");
+		absMinSpeed = (float) p.get("absMinSpeed");
+		clutchMax = (float) p.get("clutchMax");
+		clutchDelta = (float) p.get("clutchDelta");
+		clutchRange = (float) p.get("clutchRange");
+		clutchDeltaTime = (float) p.get("clutchDeltaTime");
+		clutchDeltaRaced = (float) p.get("clutchDeltaRaced");
+		clutchDec = (float) p.get("clutchDec");
+		clutchMaxModifier = (float) p.get("clutchMaxModifier");
+		clutchMaxTime = (float) p.get("clutchMaxTime");
+	}
+
+	public SimpleDriverParams getParams() {
+		return params;
+	}
+
 	public void reset()  {
         System.out.println("Restarting the race!");
         stuck = 0; // Resetta il contatore "bloccato"
@@ -90,14 +134,35 @@ public class SimpleDriver extends Controller {
         if (dataWriter != null) {
             try {
                 dataWriter.close(); // CHIUDE IL FILE CSV E SALVA I DATI
-                System.out.println("Dataset salvato su torcs_dataset.csv");
+                System.out.println("Dataset salvato (" + dataCounter + " righe)");
             } catch (Exception e) {
                 System.err.println("Errore nella chiusura del data writer: " + e.getMessage());
             }
         }
     }
 
-	private int getGear(SensorModel sensors) {
+	// Salva la mappa appena completata, tranne che per la pista "unknown" (nome non indicato)
+	private void saveTrackMap() {
+		String name = getTrackName() != null ? getTrackName() : "unknown";
+		if (name.equals("unknown")) {
+			System.out.println("TrackMap: mappa completata (" + trackMap.length() + " m), non salvata senza trackName");
+			return;
+		}
+		try {
+			trackMap.save(TrackMap.file(name));
+			System.out.println("TrackMap: mappa di " + name + " salvata (" + trackMap.length() + " m)");
+		} catch (IOException e) {
+			System.err.println("TrackMap: impossibile salvare la mappa: " + e.getMessage());
+		}
+	}
+
+	// La mappa della pista, null se non usata; completa solo dopo il primo giro
+	TrackMap getTrackMap() {
+		return trackMap;
+	}
+
+	// package-private: riusato da NeuralDriver come post-elaborazione
+	int getGear(SensorModel sensors) {
 		int gear = sensors.getGear();
 		double rpm = sensors.getRPM();
 
@@ -136,6 +201,14 @@ public class SimpleDriver extends Controller {
 	private float getAccel(SensorModel sensors) {
 		// controlla se l'auto è fuori dalla carreggiata
 		if (sensors.getTrackPosition() > -1 && sensors.getTrackPosition() < 1) {
+			// Con il profilo di velocità basta una lettura, e il comando diventa lineare
+			// (la stessa pendenza della curva esponenziale intorno alla velocità obiettivo)
+			if (speedProfile != null) {
+				float delta = (float) (speedProfile.targetSpeed(sensors.getDistanceFromStartLine()) - sensors.getSpeed());
+				float accel = delta * 0.5f;
+				return accel > 1 ? 1 : (accel < -1 ? -1 : accel);
+			}
+
 			// lettura del sensore a +5 gradi rispetto all'asse dell'automobile
 			float rxSensor = (float) sensors.getTrackEdgeSensors()[10];
 			// lettura del sensore parallelo all'asse della vettura
@@ -183,6 +256,18 @@ public class SimpleDriver extends Controller {
 	}
 
 	public Action control(SensorModel sensors) {
+		// Mappa della pista: la pista è nota solo dopo setTrackName, quindi si apre al primo tick
+		if (useTrackMap) {
+			if (trackMap == null) {
+				String name = getTrackName() != null ? getTrackName() : "unknown";
+				trackMap = TrackMap.forTrack(name);
+				speedProfile = SpeedProfile.forTrack(name);
+				sensorAngles = initAngles();
+			}
+			if (!trackMap.isComplete() && trackMap.observe(sensors, sensorAngles))
+				saveTrackMap();
+		}
+
 		// Controlla se l'auto è attualmente bloccata
 		/**
 			Se l'auto ha un angolo, rispetto alla traccia, superiore a 30°
@@ -270,33 +355,16 @@ public class SimpleDriver extends Controller {
 		// Questa sezione deve accedere all'oggetto 'action' che contiene le decisioni di guida.
     // Assicurati che 'action' sia stato popolato correttamente dai blocchi if/else sopra.
     if (collectingData && dataWriter != null) {
-        StringBuilder sb = new StringBuilder();
-        // Aggiungi le features (input dei sensori)
-        sb.append(sensors.getAngleToTrackAxis()).append(",");
-        sb.append(sensors.getTrackPosition()).append(",");
-        sb.append(sensors.getSpeed()).append(","); //per la velocità complessiva
-        sb.append(sensors.getLateralSpeed()).append(","); //per la velocità laterale
-        sb.append(sensors.getRPM()).append(",");
-        
-        // Aggiungi tutti i 19 sensori della pista
-        for (double sensorValue : sensors.getTrackEdgeSensors()) {
-            sb.append(sensorValue).append(",");
-        }
-        
-        // Aggiungi i target (le azioni decise dal driver in questo istante)
-        sb.append(action.accelerate).append(",");
-        sb.append(action.brake).append(",");
-        sb.append(action.steering).append(",");
-        sb.append(action.gear); // L'ultima colonna non ha la virgola finale
-
-        dataWriter.println(sb.toString()); // Scrivi la riga nel CSV
+        // Features (input dei sensori) e target (le azioni decise dal driver in questo istante)
+        dataWriter.writeLine(sensors, action);
         dataCounter++; 
     }
 
     return action; // Questo deve essere l'UNICA istruzione return del metodo control.
 }
 
-	private float filterABS(SensorModel sensors, float brake) {
+	// package-private: riusato da NeuralDriver come post-elaborazione
+	float filterABS(SensorModel sensors, float brake) {
 		// Converte la velocità in m/s
 		float speed = (float) (sensors.getSpeed() / 3.6);
 
@@ -0,0 +1,185 @@
+package scr;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * Le costanti di SimpleDriver (cambio, velocità, sterzo, ABS, frizione e
+ * recupero) come insieme di parametri iniettabile: SimpleDriver le legge nel
+ * costruttore, SimpleDriverTuner le ottimizza.
+ *
+ * Ogni parametro ha un nome, un valore di default (quelli originali di
+ * SimpleDriver) e un intervallo ammesso, usato dal tuner. Su disco è un file
+ * di proprietà nome=valore; i parametri mancanti prendono il default.
+ *
+ * Con -Dscr.simple.params=file.properties il costruttore pubblico di
+ * SimpleDriver usa i parametri del file.
+ */
+public final class SimpleDriverParams {
+
+    public static final String PARAMS_PROPERTY = "scr.simple.params";
+
+    private static final String[] NAMES = {
+            "gearUp1", "gearUp2", "gearUp3", "gearUp4", "gearUp5",
+            "gearDown2", "gearDown3", "gearDown4", "gearDown5", "gearDown6",
+            "stuckTime", "stuckAngle",
+            "maxSpeedDist", "maxSpeed",
+            "steerLock", "steerSensitivityOffset", "wheelSensitivityCoeff",
+            "absSlip", "absRange", "absMinSpeed",
+            "clutchMax", "clutchDelta", "clutchRange", "clutchDeltaTime", "clutchDeltaRaced", "clutchDec",
+            "clutchMaxModifier", "clutchMaxTime" };
+    private static final double[] DEFAULTS = {
+            5000, 6000, 6000, 6500, 7000,
+            2500, 3000, 3000, 3500, 3500,
+            25, 0.523598775,
+            70, 150,
+            0.785398, 80.0, 1,
+            2.0, 3.0, 3.0,
+            0.5, 0.05, 0.82, 0.02, 10, 0.01,
+            1.3, 1.5 };
+    private static final double[] MIN = {
+            3000, 3000, 3000, 3000, 3000,
+            1000, 1000, 1000, 1000, 1000,
+            5, 0.2,
+            20, 50,
+            0.2, 20, 0.2,
+            0.5, 0.5, 0,
+            0, 0.001, 0.1, 0.001, 1, 0.001,
+            1, 0.2 };
+    private static final double[] MAX = {
+            9500, 9500, 9500, 9500, 9500,
+            6000, 6000, 6000, 6000, 6000,
+            100, 1.2,
+            200, 300,
+            1.5, 250, 3,
+            6, 10, 20,
+            1, 0.2, 1, 0.2, 50, 0.1,
+            2, 5 };
+
+    private final double[] values;
+
+    private SimpleDriverParams(double[] values) {
+        this.values = values;
+    }
+
+    /** I valori originali di SimpleDriver */
+    public static SimpleDriverParams defaults() {
+        return new SimpleDriverParams(DEFAULTS.clone());
+    }
+
+    /** Parametri dai valori dati (nell'ordine di name(i)), riportati nell'intervallo ammesso */
+    public static SimpleDriverParams of(double[] values) {
+        double[] v = new double[NAMES.length];
+        for (int i = 0; i < v.length; i++)
+            v[i] = Math.max(MIN[i], Math.min(MAX[i], values[i]));
+        return new SimpleDriverParams(v);
+    }
+
+    /** Parametri dal file indicato da -Dscr.simple.params, o i default */
+    public static SimpleDriverParams fromProperties() {
+        String file = System.getProperty(PARAMS_PROPERTY);
+        if (file == null)
+            return defaults();
+        try {
+            SimpleDriverParams params = load(Paths.get(file));
+            System.out.println("SimpleDriver: parametri da " + file);
+            return params;
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("SimpleDriver: impossibile leggere i parametri " + file + ": " + e.getMessage()
+                    + "; uso i default");
+            return defaults();
+        }
+    }
+
+    public static int size() {
+        return NAMES.length;
+    }
+
+    public static String name(int i) {
+        return NAMES[i];
+    }
+
+    public static double min(int i) {
+        return MIN[i];
+    }
+
+    public static double max(int i) {
+        return MAX[i];
+    }
+
+    public double get(int i) {
+        return values[i];
+    }
+
+    /** Valore del parametro con questo nome */
+    public double get(String name) {
+        for (int i = 0; i < NAMES.length; i++) {
+            if (NAMES[i].equals(name))
+                return values[i];
+        }
+        throw new IllegalArgumentException("Parametro sconosciuto: " + name);
+    }
+
+    public double[] toArray() {
+        return values.clone();
+    }
+
+    public static SimpleDriverParams load(Path file) throws IOException {
+        Properties props = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            props.load(in);
+        }
+        return fromProperties(props, "");
+    }
+
+    /** Legge i parametri dalle chiavi prefix + nome; le chiavi mancanti prendono il default */
+    static SimpleDriverParams fromProperties(Properties props, String prefix) {
+        double[] v = DEFAULTS.clone();
+        for (int i = 0; i < NAMES.length; i++) {
+            String value = props.getProperty(prefix + NAMES[i]);
+            if (value != null)
+                v[i] = Double.parseDouble(value.trim());
+        }
+        return of(v);
+    }
+
+    /** Scrive i parametri nelle chiavi prefix + nome */
+    void toProperties(Properties props, String prefix) {
+        for (int i = 0; i < NAMES.length; i++)
+            props.setProperty(prefix + NAMES[i], Double.toString(values[i]));
+    }
+
+    /** Salva i parametri; il file viene sostituito in un colpo solo (niente file a metà se il processo muore) */
+    public void save(Path file, String comment) throws IOException {
+        Properties props = new Properties();
+        toProperties(props, "");
+        store(props, file, comment);
+    }
+
+    static void store(Properties props, Path file, String comment) throws IOException {
+        Path dir = file.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+        try (OutputStream out = Files.newOutputStream(tmp)) {
+            props.store(out, comment);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < NAMES.length; i++) {
+            if (i > 0)
+                sb.append(", ");
+            sb.append(NAMES[i]).append('=').append(String.format("%.4g", values[i]));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,295 @@
+package scr;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.Random;
+import java.util.StringTokenizer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Algoritmo genetico per le costanti di SimpleDriver (SimpleDriverParams),
+ * valutate su KinematicSimulator invece che su TORCS.
+ *
+ * Ogni generazione valuta tutta la popolazione in parallelo su un
+ * ForkJoinPool (work stealing): ogni candidato guida un SimpleDriver nuovo
+ * su ogni pista e seme, senza stato condiviso, quindi il throughput cresce
+ * linearmente con i core. Il punteggio è la distanza percorsa in ticks tick
+ * meno una penalità per ogni tick fuori pista, in media sugli scenari.
+ *
+ * I geni sono normalizzati in [0, 1] sull'intervallo di ogni parametro. La
+ * generazione successiva tiene i migliori (élite), poi sceglie i genitori a
+ * torneo, li incrocia (BLX-alfa) e muta ogni gene con probabilità MUTATION
+ * (rumore gaussiano che si restringe con le generazioni).
+ *
+ * Dopo ogni generazione vengono salvati il checkpoint (popolazione e
+ * punteggi) e i parametri migliori; rilanciando con lo stesso checkpoint la
+ * ricerca riprende da dove si era fermata. Il generatore casuale di ogni
+ * generazione dipende solo da seme e numero di generazione, quindi una
+ * ricerca interrotta e ripresa dà lo stesso risultato di una senza
+ * interruzioni, con qualunque numero di core.
+ *
+ * Uso: java scr.SimpleDriverTuner migliori.properties [opzioni]
+ *   checkpoint:file   checkpoint (default migliori.properties.ckpt)
+ *   generations:N     generazioni da eseguire in totale (default 50)
+ *   population:N      candidati per generazione (default 32)
+ *   threads:N         core da usare (default tutti)
+ *   ticks:N           tick per scenario (default 6000, 2 minuti simulati)
+ *   tracks:a,b        piste di SimTrack (default circuit,oval)
+ *   seeds:N           semi per pista (default 2)
+ *   seed:N            seme dell'algoritmo genetico (default 42)
+ * I parametri migliori si usano con -Dscr.simple.params=migliori.properties.
+ */
+public class SimpleDriverTuner {
+
+    private static final int ELITE = 2;
+    private static final int TOURNAMENT = 3;
+    private static final double BLX_ALPHA = 0.3;
+    private static final double MUTATION = 0.15;
+    private static final double OFF_TRACK_PENALTY = 2; // metri per tick fuori pista
+
+    private final SimTrack[] tracks;
+    private final int seeds;
+    private final int ticks;
+
+    public SimpleDriverTuner(SimTrack[] tracks, int seeds, int ticks) {
+        this.tracks = tracks;
+        this.seeds = seeds;
+        this.ticks = ticks;
+    }
+
+    /** Punteggio di un insieme di parametri (più alto è meglio); deterministico */
+    public double evaluate(SimpleDriverParams params) {
+        double total = 0;
+        for (SimTrack track : tracks) {
+            for (int s = 1; s <= seeds; s++) {
+                SimpleDriver driver = new SimpleDriver(null, params);
+                driver.setStage(Controller.Stage.RACE);
+                KinematicSimulator sim = new KinematicSimulator(track, driver.initAngles(), s, 0);
+                KinematicSimulator.Result r = sim.run(driver, ticks);
+                total += r.distance - OFF_TRACK_PENALTY * r.offTrackTicks;
+            }
+        }
+        return total / (tracks.length * seeds);
+    }
+
+    /** Tick simulati per ogni valutazione */
+    public long ticksPerEvaluation() {
+        return (long) tracks.length * seeds * ticks;
+    }
+
+    // ---- geni normalizzati ----
+
+    static double[] genes(SimpleDriverParams params) {
+        double[] g = new double[SimpleDriverParams.size()];
+        for (int i = 0; i < g.length; i++)
+            g[i] = (params.get(i) - SimpleDriverParams.min(i)) / (SimpleDriverParams.max(i) - SimpleDriverParams.min(i));
+        return g;
+    }
+
+    static SimpleDriverParams params(double[] genes) {
+        double[] v = new double[genes.length];
+        for (int i = 0; i < v.length; i++) {
+            double g = Math.max(0, Math.min(1, genes[i]));
+            v[i] = SimpleDriverParams.min(i) + g * (SimpleDriverParams.max(i) - SimpleDriverParams.min(i));
+        }
+        return SimpleDriverParams.of(v);
+    }
+
+    // Popolazione iniziale: i default e loro varianti, più qualche candidato casuale
+    static double[][] initialPopulation(int size, Random random) {
+        double[] base = genes(SimpleDriverParams.defaults());
+        double[][] pop = new double[size][];
+        pop[0] = base;
+        for (int p = 1; p < size; p++) {
+            pop[p] = new double[base.length];
+            boolean uniform = p >= size * 3 / 4;
+            for (int i = 0; i < base.length; i++)
+                pop[p][i] = uniform ? random.nextDouble() : clamp01(base[i] + random.nextGaussian() * 0.15);
+        }
+        return pop;
+    }
+
+    // Generazione successiva: élite, poi torneo + BLX-alfa + mutazione gaussiana
+    static double[][] nextGeneration(double[][] pop, double[] fitness, int generation, Random random) {
+        Integer[] order = new Integer[pop.length];
+        for (int i = 0; i < order.length; i++)
+            order[i] = i;
+        Arrays.sort(order, (a, b) -> Double.compare(fitness[b], fitness[a]));
+        double sigma = Math.max(0.02, 0.1 * Math.pow(0.97, generation));
+
+        double[][] next = new double[pop.length][];
+        for (int e = 0; e < ELITE && e < pop.length; e++)
+            next[e] = pop[order[e]].clone();
+        for (int p = Math.min(ELITE, pop.length); p < pop.length; p++) {
+            double[] a = pop[tournament(fitness, random)];
+            double[] b = pop[tournament(fitness, random)];
+            double[] child = new double[a.length];
+            for (int i = 0; i < a.length; i++) {
+                double lo = Math.min(a[i], b[i]), hi = Math.max(a[i], b[i]);
+                double span = hi - lo;
+                double g = lo - BLX_ALPHA * span + random.nextDouble() * (1 + 2 * BLX_ALPHA) * span;
+                if (random.nextDouble() < MUTATION)
+                    g += random.nextGaussian() * sigma;
+                child[i] = clamp01(g);
+            }
+            next[p] = child;
+        }
+        return next;
+    }
+
+    private static int tournament(double[] fitness, Random random) {
+        int best = random.nextInt(fitness.length);
+        for (int t = 1; t < TOURNAMENT; t++) {
+            int c = random.nextInt(fitness.length);
+            if (fitness[c] > fitness[best])
+                best = c;
+        }
+        return best;
+    }
+
+    private static double clamp01(double v) {
+        return v < 0 ? 0 : (v > 1 ? 1 : v);
+    }
+
+    /** Valuta tutta la popolazione in parallelo sul pool */
+    double[] evaluateAll(double[][] pop, ForkJoinPool pool) throws InterruptedException, ExecutionException {
+        double[] fitness = new double[pop.length];
+        pool.submit(() -> IntStream.range(0, pop.length).parallel()
+                .forEach(p -> fitness[p] = evaluate(params(pop[p])))).get();
+        return fitness;
+    }
+
+    // ---- checkpoint ----
+
+    static void saveCheckpoint(Path file, int generation, long seed, double[][] pop, double[] fitness)
+            throws IOException {
+        Properties props = new Properties();
+        props.setProperty("generation", Integer.toString(generation));
+        props.setProperty("seed", Long.toString(seed));
+        props.setProperty("population", Integer.toString(pop.length));
+        // i geni in testo con tutte le cifre: la ripresa riparte dagli stessi valori esatti
+        for (int p = 0; p < pop.length; p++) {
+            StringBuilder genes = new StringBuilder();
+            for (int i = 0; i < pop[p].length; i++)
+                genes.append(i > 0 ? "," : "").append(pop[p][i]);
+            props.setProperty("genes." + p, genes.toString());
+            props.setProperty("fitness." + p, Double.toString(fitness[p]));
+        }
+        SimpleDriverParams.store(props, file, "SimpleDriverTuner, generazione " + generation);
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Uso: java scr.SimpleDriverTuner migliori.properties [checkpoint:file] [generations:N]"
+                    + " [population:N] [threads:N] [ticks:N] [tracks:a,b] [seeds:N] [seed:N]");
+            return;
+        }
+        Path out = Paths.get(args[0]);
+        Path checkpoint = Paths.get(args[0] + ".ckpt");
+        int generations = 50, population = 32, threads = Runtime.getRuntime().availableProcessors();
+        int ticks = 6000, seeds = 2;
+        String trackList = "circuit,oval";
+        long seed = 42;
+        for (int i = 1; i < args.length; i++) {
+            StringTokenizer st = new StringTokenizer(args[i], ":");
+            String entity = st.nextToken();
+            String value = args[i].substring(Math.min(args[i].length(), entity.length() + 1));
+            if (entity.equals("checkpoint")) {
+                checkpoint = Paths.get(value);
+            } else if (entity.equals("generations")) {
+                generations = Integer.parseInt(value);
+            } else if (entity.equals("population")) {
+                population = Integer.parseInt(value);
+            } else if (entity.equals("threads")) {
+                threads = Integer.parseInt(value);
+            } else if (entity.equals("ticks")) {
+                ticks = Integer.parseInt(value);
+            } else if (entity.equals("tracks")) {
+                trackList = value;
+            } else if (entity.equals("seeds")) {
+                seeds = Integer.parseInt(value);
+            } else if (entity.equals("seed")) {
+                seed = Long.parseLong(value);
+            } else {
+                System.out.println("Opzione sconosciuta: " + args[i]);
+                System.exit(0);
+            }
+        }
+
+        String[] names = trackList.split(",");
+        SimTrack[] tracks = new SimTrack[names.length];
+        for (int t = 0; t < names.length; t++)
+            tracks[t] = SimTrack.parse(names[t].trim());
+        SimpleDriverTuner tuner = new SimpleDriverTuner(tracks, seeds, ticks);
+
+        // Ripresa dal checkpoint, se c'è
+        int generation = 0;
+        double[][] pop;
+        double[] fitness;
+        if (Files.exists(checkpoint)) {
+            Properties props = new Properties();
+            try (InputStream in = Files.newInputStream(checkpoint)) {
+                props.load(in);
+            }
+            generation = Integer.parseInt(props.getProperty("generation")) + 1;
+            seed = Long.parseLong(props.getProperty("seed"));
+            int size = Integer.parseInt(props.getProperty("population"));
+            double[][] saved = new double[size][];
+            double[] savedFitness = new double[size];
+            for (int p = 0; p < size; p++) {
+                String[] genes = props.getProperty("genes." + p).split(",");
+                saved[p] = new double[genes.length];
+                for (int i = 0; i < genes.length; i++)
+                    saved[p][i] = Double.parseDouble(genes[i]);
+                savedFitness[p] = Double.parseDouble(props.getProperty("fitness." + p));
+            }
+            pop = nextGeneration(saved, savedFitness, generation, new Random(seed * 1000003L + generation));
+            System.out.println("Ripresa da " + checkpoint + " alla generazione " + generation + " (" + size
+                    + " candidati)");
+        } else {
+            pop = initialPopulation(population, new Random(seed));
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            double defaultScore = tuner.evaluate(SimpleDriverParams.defaults());
+            System.out.println(String.format("Piste %s, %d semi, %d tick per scenario; punteggio dei default %.1f",
+                    trackList, seeds, ticks, defaultScore));
+            for (; generation < generations; generation++) {
+                long start = System.nanoTime();
+                fitness = tuner.evaluateAll(pop, pool);
+                long elapsed = System.nanoTime() - start;
+
+                int best = 0;
+                double mean = 0;
+                for (int p = 0; p < pop.length; p++) {
+                    mean += fitness[p] / pop.length;
+                    if (fitness[p] > fitness[best])
+                        best = p;
+                }
+                double seconds = elapsed / 1e9;
+                System.out.println(String.format(
+                        "Generazione %d: migliore %.1f, media %.1f; %d candidati in %.2f s su %d core"
+                                + " (%.1f candidati/s, %.0f tick/s)",
+                        generation, fitness[best], mean, pop.length, seconds, threads, pop.length / seconds,
+                        pop.length * tuner.ticksPerEvaluation() / seconds));
+
+                saveCheckpoint(checkpoint, generation, seed, pop, fitness);
+                params(pop[best]).save(out, String.format("SimpleDriverTuner: punteggio %.1f (default %.1f)",
+                        fitness[best], defaultScore));
+                pop = nextGeneration(pop, fitness, generation + 1, new Random(seed * 1000003L + generation + 1));
+            }
+        } finally {
+            pool.shutdown();
+        }
+        System.out.println("Parametri migliori in " + out + " (usare -D" + SimpleDriverParams.PARAMS_PROPERTY + "="
+                + out + ")");
+    }
+}
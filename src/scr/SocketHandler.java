@@ -15,13 +15,18 @@ import java.net.UnknownHostException;
  * @author Daniele Loiacono
  * 
  */
-public class SocketHandler {
+public class SocketHandler implements Transport {
 
 	private InetAddress address;
 	private int port;
 	private DatagramSocket socket;
 	private boolean verbose;
 
+	// pacchetto riutilizzato dai metodi a byte e timeout attualmente impostato
+	private DatagramPacket rxPacket = new DatagramPacket(new byte[0], 0);
+	private DatagramPacket txPacket = new DatagramPacket(new byte[0], 0);
+	private int currentTimeout = 0;
+
 	public SocketHandler(String host, int port, boolean verbose) {
 
 		// set remote address
@@ -52,6 +57,41 @@ public class SocketHandler {
 		}
 	}
 
+	public void send(byte[] buf, int off, int len) {
+
+		if (verbose)
+			System.out.println("Sending: " + new String(buf, off, len));
+		try {
+			txPacket.setData(buf, off, len);
+			txPacket.setAddress(address);
+			txPacket.setPort(port);
+			socket.send(txPacket);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	public int receive(byte[] dst, int timeout) {
+		try {
+			// setSoTimeout solo quando il valore cambia, non due volte per tick
+			if (timeout != currentTimeout) {
+				socket.setSoTimeout(timeout);
+				currentTimeout = timeout;
+			}
+			rxPacket.setData(dst);
+			socket.receive(rxPacket);
+			if (verbose)
+				System.out.println("Received: " + new String(dst, 0, rxPacket.getLength()));
+			return rxPacket.getLength();
+		} catch (SocketTimeoutException se) {
+			if (verbose)
+				System.out.println("Socket Timeout!");
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		return -1;
+	}
+
 	public String receive() {
 		try {
 			byte[] buffer = new byte[1024];
@@ -75,6 +115,7 @@ public class SocketHandler {
 			socket.setSoTimeout(timeout);
 			String received = receive();
 			socket.setSoTimeout(0);
+			currentTimeout = 0;
 			return received;
 		} catch (SocketException e) {
 			// TODO Auto-generated catch block
@@ -0,0 +1,108 @@
+package scr;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Velocità obiettivo (km/h) per ogni metro dalla linea di partenza, calcolata
+ * da SpeedProfileOptimizer sulla TrackMap della pista. A runtime la scelta
+ * della velocità è una lettura da array.
+ *
+ * I profili stanno accanto alle mappe: trackmaps/nomepista.spd (vedi
+ * TrackMap.DIR_PROPERTY).
+ *
+ * Formato del file (little-endian): "SCRP" | int16 versione | int16 riservato |
+ * int32 lunghezza in metri | velocità[lunghezza].
+ */
+public class SpeedProfile {
+
+    public static final byte[] MAGIC = { 'S', 'C', 'R', 'P' };
+    public static final short VERSION = 1;
+    public static final String EXTENSION = ".spd";
+
+    private static final int HEADER_BYTES = 12;
+
+    private final float[] speed;
+
+    public SpeedProfile(float[] speed) {
+        this.speed = speed;
+    }
+
+    /** File del profilo di una pista */
+    public static Path file(String trackName) {
+        return Paths.get(System.getProperty(TrackMap.DIR_PROPERTY, "trackmaps"), trackName + EXTENSION);
+    }
+
+    /** Il profilo salvato della pista, null se non esiste o non si può leggere */
+    public static SpeedProfile forTrack(String trackName) {
+        Path file = file(trackName);
+        if (!Files.exists(file))
+            return null;
+        try {
+            SpeedProfile profile = load(file);
+            System.out.println("SpeedProfile: " + file + " (" + profile.length() + " m)");
+            return profile;
+        } catch (IOException e) {
+            System.err.println("SpeedProfile: impossibile leggere " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    public int length() {
+        return speed.length;
+    }
+
+    /** Velocità obiettivo (km/h) al metro m, 0 <= m < length() */
+    public float speed(int m) {
+        return speed[m];
+    }
+
+    /** Velocità obiettivo (km/h) a distanceFromStart metri dalla linea di partenza */
+    public float targetSpeed(double distanceFromStart) {
+        int m = (int) distanceFromStart % speed.length;
+        return speed[m < 0 ? m + speed.length : m];
+    }
+
+    public void save(Path file) throws IOException {
+        File dir = file.toAbsolutePath().getParent().toFile();
+        if (!dir.isDirectory() && !dir.mkdirs())
+            throw new IOException("impossibile creare " + dir);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + 4L * speed.length);
+            map.order(ByteOrder.LITTLE_ENDIAN);
+            map.put(MAGIC).putShort(VERSION).putShort((short) 0).putInt(speed.length);
+            map.asFloatBuffer().put(speed);
+            map.force();
+        }
+    }
+
+    public static SpeedProfile load(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            ByteBuffer buf = map.order(ByteOrder.LITTLE_ENDIAN);
+            byte[] magic = new byte[4];
+            buf.get(magic);
+            if (!java.util.Arrays.equals(magic, MAGIC))
+                throw new IOException(file + " non è un profilo di velocità");
+            short version = buf.getShort();
+            buf.getShort();
+            if (version != VERSION)
+                throw new IOException(file + ": versione " + version + " non supportata");
+            int length = buf.getInt();
+            if (length <= 0 || channel.size() < HEADER_BYTES + 4L * length)
+                throw new IOException(file + " è troncato");
+            float[] speed = new float[length];
+            buf.asFloatBuffer().get(speed);
+            return new SpeedProfile(speed);
+        }
+    }
+}
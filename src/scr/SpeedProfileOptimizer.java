@@ -0,0 +1,206 @@
+package scr;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.StringTokenizer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Calcola il profilo di velocità (SpeedProfile) di una pista dalla sua
+ * TrackMap, per un modello a punto materiale:
+ *   1. limite in curva: v = sqrt(aLat / |curvatura|), al massimo vmax
+ *   2. passata in avanti: v[m+1] <= sqrt(v[m]^2 + 2 aAccel)
+ *   3. passata all'indietro: v[m] <= sqrt(v[m+1]^2 + 2 aBrake)
+ * (la pista è un anello: ogni passata fa due giri).
+ *
+ * Il profilo migliore non è quello con i limiti dell'auto: il driver insegue
+ * la velocità obiettivo con un ritardo, quindi arriva in curva un po' più
+ * veloce del previsto. La ricerca prova in parallelo una griglia di limiti
+ * laterali e di frenata per il profilo, simula l'inseguimento (ritardo del
+ * primo ordine, limiti reali dell'auto) e sceglie il profilo con il giro più
+ * veloce che non supera mai l'aderenza laterale dell'auto.
+ *
+ * Uso: java scr.SpeedProfileOptimizer pista.trk [profilo.spd] [opzioni]
+ *   grip:X      aderenza laterale dell'auto in m/s^2 (default 12)
+ *   brake:X     decelerazione massima in m/s^2 (default 10)
+ *   accel:X     accelerazione massima in m/s^2 (default 5)
+ *   lag:X       costante di tempo dell'inseguimento della velocità in s (default 0.5)
+ *   vmax:X      velocità massima in km/h (default 300)
+ *   steps:N     valori provati per ciascun limite (default 40)
+ *   threads:N   core da usare (default tutti)
+ * Senza profilo.spd il risultato va accanto alla mappa, con estensione .spd.
+ */
+public class SpeedProfileOptimizer {
+
+    private final float[] curvature;
+    private final double grip;
+    private final double brake;
+    private final double accel;
+    private final double lag;
+    private final double vMax; // m/s
+
+    public SpeedProfileOptimizer(TrackMap map, double grip, double brake, double accel, double lag, double vMaxKmh) {
+        this.curvature = new float[map.length()];
+        for (int m = 0; m < curvature.length; m++)
+            curvature[m] = map.curvature(m);
+        this.grip = grip;
+        this.brake = brake;
+        this.accel = accel;
+        this.lag = lag;
+        this.vMax = vMaxKmh / 3.6;
+    }
+
+    /** Risultato della ricerca: limiti del profilo, profilo e tempo sul giro simulato */
+    public static final class Result {
+        public final double lateral;
+        public final double braking;
+        public final float[] speed; // km/h
+        public final double lapTime; // s, POSITIVE_INFINITY se il driver esce di strada
+
+        Result(double lateral, double braking, float[] speed, double lapTime) {
+            this.lateral = lateral;
+            this.braking = braking;
+            this.speed = speed;
+            this.lapTime = lapTime;
+        }
+    }
+
+    /**
+     * Profilo (km/h per metro) per i limiti dati, con le tre passate.
+     */
+    public float[] profile(double lateral, double braking, double accelLimit) {
+        int n = curvature.length;
+        double[] v = new double[n];
+        for (int m = 0; m < n; m++)
+            v[m] = Math.min(vMax, Math.sqrt(lateral / Math.max(Math.abs(curvature[m]), 1e-9)));
+        for (int lap = 0; lap < 2; lap++) {
+            for (int m = 0; m < n; m++) {
+                double prev = v[m == 0 ? n - 1 : m - 1];
+                v[m] = Math.min(v[m], Math.sqrt(prev * prev + 2 * accelLimit));
+            }
+        }
+        for (int lap = 0; lap < 2; lap++) {
+            for (int m = n - 1; m >= 0; m--) {
+                double next = v[m == n - 1 ? 0 : m + 1];
+                v[m] = Math.min(v[m], Math.sqrt(next * next + 2 * braking));
+            }
+        }
+        float[] kmh = new float[n];
+        for (int m = 0; m < n; m++)
+            kmh[m] = (float) (v[m] * 3.6);
+        return kmh;
+    }
+
+    /**
+     * Tempo sul giro di un driver che insegue il profilo con il ritardo lag e i
+     * limiti dell'auto. Il primo giro serve ad arrivare a regime, si misura il
+     * secondo; POSITIVE_INFINITY se in qualche metro si supera l'aderenza.
+     */
+    public double simulate(float[] profileKmh) {
+        int n = curvature.length;
+        double v = profileKmh[0] / 3.6;
+        double time = 0;
+        for (int lap = 0; lap < 2; lap++) {
+            for (int m = 0; m < n; m++) {
+                double a = (profileKmh[m] / 3.6 - v) / lag;
+                a = Math.max(-brake, Math.min(accel, a));
+                v = Math.sqrt(Math.max(v * v + 2 * a, 1.0));
+                if (v * v * Math.abs(curvature[m]) > grip * (1 + 1e-6))
+                    return Double.POSITIVE_INFINITY;
+                if (lap == 1)
+                    time += 1 / v;
+            }
+        }
+        return time;
+    }
+
+    /**
+     * Prova steps x steps combinazioni di limite laterale e di frenata del
+     * profilo (dal 30% al 100% di quelli dell'auto) su threads core.
+     */
+    public Result search(int steps, int threads) throws InterruptedException, ExecutionException {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            return pool.submit(() -> IntStream.range(0, steps * steps).parallel().mapToObj(i -> {
+                double lateral = grip * (0.3 + 0.7 * (i / steps) / Math.max(1, steps - 1));
+                double braking = brake * (0.3 + 0.7 * (i % steps) / Math.max(1, steps - 1));
+                float[] speed = profile(lateral, braking, accel);
+                return new Result(lateral, braking, speed, simulate(speed));
+            }).reduce((a, b) -> b.lapTime < a.lapTime ? b : a).get()).get();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Uso: java scr.SpeedProfileOptimizer pista.trk [profilo.spd] [grip:X] [brake:X]"
+                    + " [accel:X] [lag:X] [vmax:X] [steps:N] [threads:N]");
+            return;
+        }
+        Path mapFile = Paths.get(args[0]);
+        String name = mapFile.getFileName().toString();
+        Path out = mapFile.resolveSibling(
+                (name.endsWith(TrackMap.EXTENSION) ? name.substring(0, name.length() - TrackMap.EXTENSION.length())
+                        : name) + SpeedProfile.EXTENSION);
+        double grip = 12, brake = 10, accel = 5, lag = 0.5, vmax = 300;
+        int steps = 40, threads = Runtime.getRuntime().availableProcessors();
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].indexOf(':') < 0) {
+                out = Paths.get(args[i]);
+                continue;
+            }
+            StringTokenizer st = new StringTokenizer(args[i], ":");
+            String entity = st.nextToken();
+            String value = st.hasMoreTokens() ? st.nextToken() : "";
+            if (entity.equals("grip")) {
+                grip = Double.parseDouble(value);
+            } else if (entity.equals("brake")) {
+                brake = Double.parseDouble(value);
+            } else if (entity.equals("accel")) {
+                accel = Double.parseDouble(value);
+            } else if (entity.equals("lag")) {
+                lag = Double.parseDouble(value);
+            } else if (entity.equals("vmax")) {
+                vmax = Double.parseDouble(value);
+            } else if (entity.equals("steps")) {
+                steps = Integer.parseInt(value);
+            } else if (entity.equals("threads")) {
+                threads = Integer.parseInt(value);
+            } else {
+                System.out.println("Opzione sconosciuta: " + args[i]);
+                System.exit(0);
+            }
+        }
+
+        TrackMap map = TrackMap.load(mapFile);
+        SpeedProfileOptimizer optimizer = new SpeedProfileOptimizer(map, grip, brake, accel, lag, vmax);
+        // riferimento: profilo con i limiti dell'auto, che ignora il ritardo del driver
+        float[] ideal = optimizer.profile(grip, brake, accel);
+        double idealTime = optimizer.simulate(ideal);
+
+        long start = System.nanoTime();
+        Result best = optimizer.search(steps, threads);
+        long elapsed = System.nanoTime() - start;
+        System.out.println(String.format("%d profili su %d core in %d ms (%d m di pista)", steps * steps, threads,
+                elapsed / 1000000, map.length()));
+        System.out.println(String.format("Limiti dell'auto: giro %s", Double.isInfinite(idealTime)
+                ? "fuori strada" : String.format("%.2f s", idealTime)));
+        if (Double.isInfinite(best.lapTime)) {
+            System.err.println("Nessun profilo tiene la strada: ridurre lag o aumentare grip");
+            return;
+        }
+        float min = Float.MAX_VALUE, max = 0;
+        for (float v : best.speed) {
+            min = Math.min(min, v);
+            max = Math.max(max, v);
+        }
+        System.out.println(String.format(
+                "Profilo scelto: laterale %.2f m/s^2, frenata %.2f m/s^2, giro %.2f s, velocità %.0f-%.0f km/h",
+                best.lateral, best.braking, best.lapTime, min, max));
+        new SpeedProfile(best.speed).save(out);
+        System.out.println("Profilo salvato in " + out);
+    }
+}
@@ -0,0 +1,154 @@
+package scr;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Benchmark dell'intero percorso di un tick di controllo, sui messaggi
+ * registrati in sensor_messages.txt: parsing, getter dei sensori, driver,
+ * codifica dell'azione e registrazione dei dati.
+ *
+ * Per ogni operazione stampa ns/op, operazioni al secondo, byte allocati per
+ * operazione e tasso di allocazione, così le regressioni nel loop del Client
+ * sono visibili anche quando non cambiano i tempi.
+ *
+ * I messaggi di sensor_messages.txt vengono da una sessione registrata con
+ * l'opzione capture: di Client contro ReplayServer sim: (tutti i campi, con
+ * la fisica di KinematicSimulator). Per misurare su una gara in TORCS si
+ * passa la sua registrazione .cap o un file estratto con SensorMessageLog.
+ *
+ * Le stesse operazioni sono anche benchmark JMH in src-jmh, con fork, warm-up
+ * e profiler gc: mvn -Pjmh package, poi java -jar target/benchmarks.jar.
+ * Questa versione non ha dipendenze e gira con il solo javac.
+ *
+ * Uso: java scr.TickBenchmark [iterazioni] [messaggi.txt | sessione.cap]
+ */
+public class TickBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        List<String> log = SensorMessageLog.load(args.length > 1 ? args[1] : null);
+        int n = Integer.highestOneBit(log.size());
+        String[] messages = log.subList(0, n).toArray(new String[0]);
+        byte[][] bytes = new byte[n][];
+        MessageBasedSensorModel[] models = new MessageBasedSensorModel[n];
+        for (int i = 0; i < n; i++) {
+            bytes[i] = messages[i].getBytes(StandardCharsets.US_ASCII);
+            models[i] = new MessageBasedSensorModel(messages[i]);
+        }
+        final int mask = n - 1;
+        int[] index = new int[1];
+
+        // i file registrati durante il benchmark vanno in una directory temporanea
+        Path dir = Files.createTempDirectory("scr-bench");
+        String prefix = dir.resolve("bench").toString();
+
+        System.out.println("Messaggi: " + n + " da " + (args.length > 1 ? args[1] : SensorMessageLog.BUNDLED
+                + " (sessione simulata)") + ", iterazioni per round: " + iterations);
+        MicroBenchmark bench = new MicroBenchmark(iterations, iterations, 5);
+
+        // --- parsing ---
+        bench.run("new MessageParser(String)", () -> {
+            MessageParser parser = new MessageParser(messages[index[0]++ & mask]);
+            return parser.getMessage().length();
+        });
+        SensorFrame frame = new SensorFrame();
+        bench.run("SensorFrame.parse(byte[])", () -> {
+            byte[] msg = bytes[index[0]++ & mask];
+            return frame.parse(msg, 0, msg.length).getGear();
+        });
+
+        // --- getter di MessageBasedSensorModel ---
+        runGetter(bench, "getSpeed", models, mask, index, SensorModel::getSpeed);
+        runGetter(bench, "getAngleToTrackAxis", models, mask, index, SensorModel::getAngleToTrackAxis);
+        runGetter(bench, "getTrackEdgeSensors", models, mask, index, s -> s.getTrackEdgeSensors()[9]);
+        runGetter(bench, "getFocusSensors", models, mask, index, s -> s.getFocusSensors()[0]);
+        runGetter(bench, "getTrackPosition", models, mask, index, SensorModel::getTrackPosition);
+        runGetter(bench, "getGear", models, mask, index, SensorModel::getGear);
+        runGetter(bench, "getOpponentSensors", models, mask, index, s -> s.getOpponentSensors()[0]);
+        runGetter(bench, "getRacePosition", models, mask, index, SensorModel::getRacePosition);
+        runGetter(bench, "getLateralSpeed", models, mask, index, SensorModel::getLateralSpeed);
+        runGetter(bench, "getCurrentLapTime", models, mask, index, SensorModel::getCurrentLapTime);
+        runGetter(bench, "getDamage", models, mask, index, SensorModel::getDamage);
+        runGetter(bench, "getDistanceFromStartLine", models, mask, index, SensorModel::getDistanceFromStartLine);
+        runGetter(bench, "getDistanceRaced", models, mask, index, SensorModel::getDistanceRaced);
+        runGetter(bench, "getFuelLevel", models, mask, index, SensorModel::getFuelLevel);
+        runGetter(bench, "getLastLapTime", models, mask, index, SensorModel::getLastLapTime);
+        runGetter(bench, "getRPM", models, mask, index, SensorModel::getRPM);
+        runGetter(bench, "getWheelSpinVelocity", models, mask, index, s -> s.getWheelSpinVelocity()[0]);
+        runGetter(bench, "getZ", models, mask, index, SensorModel::getZ);
+        runGetter(bench, "getZSpeed", models, mask, index, SensorModel::getZSpeed);
+
+        // --- codifica dell'azione ---
+        Action[] actions = new Action[n];
+        SimpleDriver reference = new SimpleDriver(null);
+        for (int i = 0; i < n; i++)
+            actions[i] = reference.control(models[i]);
+        bench.run("Action.toString()", () -> actions[index[0]++ & mask].toString().length());
+        ActionEncoder encoder = new ActionEncoder();
+        byte[] out = new byte[ActionEncoder.MAX_MESSAGE_LENGTH];
+        bench.run("ActionEncoder.encode()", () -> encoder.encode(actions[index[0]++ & mask], out, 0));
+
+        // --- driver ---
+        SimpleDriver simple = new SimpleDriver(null);
+        bench.run("SimpleDriver.control() registrazione off", () -> simple.control(models[index[0]++ & mask]).gear);
+        DataWriter simpleRecorder = new DataWriter(prefix + "_simple");
+        SimpleDriver simpleRecording = new SimpleDriver(simpleRecorder);
+        bench.run("SimpleDriver.control() registrazione on",
+                () -> simpleRecording.control(models[index[0]++ & mask]).gear);
+        simpleRecorder.close();
+
+        HumanDriver human = new HumanDriver(null, false);
+        bench.run("HumanDriver.control() registrazione off", () -> human.control(models[index[0]++ & mask]).gear);
+        DataWriter humanRecorder = new DataWriter(prefix + "_human");
+        HumanDriver humanRecording = new HumanDriver(humanRecorder, false);
+        bench.run("HumanDriver.control() registrazione on",
+                () -> humanRecording.control(models[index[0]++ & mask]).gear);
+        humanRecorder.close();
+
+        // --- registrazione ---
+        DataWriter syncWriter = new DataWriter(prefix + "_sync", false, DataWriter.OverflowPolicy.DROP, 4096);
+        bench.run("DataWriter.writeLine() sincrono", () -> {
+            int i = index[0]++ & mask;
+            syncWriter.writeLine(models[i], actions[i]);
+            return i;
+        });
+        syncWriter.close();
+        DataWriter asyncWriter = new DataWriter(prefix + "_async", true, DataWriter.OverflowPolicy.DROP, 4096);
+        bench.run("DataWriter.writeLine() asincrono", () -> {
+            int i = index[0]++ & mask;
+            asyncWriter.writeLine(models[i], actions[i]);
+            return i;
+        });
+        asyncWriter.close();
+
+        // --- tick completo: vecchio percorso contro nuovo percorso ---
+        SimpleDriver legacyDriver = new SimpleDriver(null);
+        bench.run("tick String->MessageBasedSensorModel->toString", () -> {
+            Action a = legacyDriver.control(new MessageBasedSensorModel(messages[index[0]++ & mask]));
+            return a.toString().getBytes().length;
+        });
+        SimpleDriver frameDriver = new SimpleDriver(null);
+        bench.run("tick byte[]->SensorFrame->ActionEncoder", () -> {
+            byte[] msg = bytes[index[0]++ & mask];
+            Action a = frameDriver.control(frame.parse(msg, 0, msg.length));
+            return encoder.encode(a, out, 0);
+        });
+
+        try (java.util.stream.Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator)
+                Files.delete(file);
+        }
+        Files.delete(dir);
+    }
+
+    private static void runGetter(MicroBenchmark bench, String getter, SensorModel[] models, int mask, int[] index,
+            ToDoubleFunction<SensorModel> f) {
+        bench.run("MessageBasedSensorModel." + getter + "()",
+                () -> (long) f.applyAsDouble(models[index[0]++ & mask]));
+    }
+}
@@ -0,0 +1,133 @@
+package scr;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tempi delle fasi di un tick del Client: attesa in ricezione, parsing dei
+ * sensori, control() del driver, codifica dell'azione e invio. Ogni fase ha un
+ * LatencyHistogram per l'episodio corrente e uno per l'intera sessione; il
+ * tick (dalla ricezione all'invio completato) è confrontato con la scadenza
+ * per contare le scadenze mancate.
+ *
+ * record() non alloca: i riepiloghi vengono costruiti solo a fine episodio.
+ */
+public class TickStats {
+
+    public static final String[] STAGES = { "receive", "parse", "control", "encode", "send", "tick" };
+    private static final int RECEIVE = 0, PARSE = 1, CONTROL = 2, ENCODE = 3, SEND = 4, TICK = 5;
+
+    private static final String CSV_HEADER = "episode,stage,count,mean_us,p50_us,p99_us,p999_us,max_us,deadline_misses";
+
+    private final long deadlineNanos;
+    private final LatencyHistogram[] episode = new LatencyHistogram[STAGES.length];
+    private final LatencyHistogram[] total = new LatencyHistogram[STAGES.length];
+    private long episodeMisses = 0;
+    private long totalMisses = 0;
+    private int episodes = 0;
+
+    // riepiloghi degli episodi chiusi, in testo e in CSV
+    private final List<String> report = new ArrayList<>();
+    private final List<String> csv = new ArrayList<>();
+
+    public TickStats(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+        for (int i = 0; i < STAGES.length; i++) {
+            episode[i] = new LatencyHistogram();
+            total[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Registra un tick dai suoi istanti (System.nanoTime): inizio dell'attesa,
+     * messaggio ricevuto, sensori letti, azione calcolata, azione codificata,
+     * azione inviata.
+     */
+    public void record(long waitStart, long received, long parsed, long controlled, long encoded, long sent) {
+        episode[RECEIVE].record(received - waitStart);
+        episode[PARSE].record(parsed - received);
+        episode[CONTROL].record(controlled - parsed);
+        episode[ENCODE].record(encoded - controlled);
+        episode[SEND].record(sent - encoded);
+        long tick = sent - received;
+        episode[TICK].record(tick);
+        if (tick > deadlineNanos)
+            episodeMisses++;
+    }
+
+    /** Chiude l'episodio corrente: ne salva il riepilogo e lo somma al totale */
+    public void endEpisode() {
+        if (episode[TICK].count() == 0)
+            return;
+        episodes++;
+        summarize("episodio " + episodes, String.valueOf(episodes), episode, episodeMisses);
+        for (int i = 0; i < STAGES.length; i++) {
+            total[i].add(episode[i]);
+            episode[i].reset();
+        }
+        totalMisses += episodeMisses;
+        episodeMisses = 0;
+    }
+
+    /**
+     * Stampa i riepiloghi degli episodi e il totale della sessione, in un'unica
+     * scrittura per non mescolarli con quelli delle altre auto (MultiClient).
+     */
+    public void print(String label) {
+        endEpisode();
+        List<String> lines = new ArrayList<>(report);
+        if (episodes > 1)
+            lines.addAll(format("totale", total, totalMisses));
+        StringBuilder sb = new StringBuilder();
+        sb.append(label).append(": tempi delle fasi in us (scadenza ").append(deadlineNanos / 1000).append(" us)");
+        for (String line : lines)
+            sb.append(System.lineSeparator()).append(line);
+        System.out.println(sb);
+    }
+
+    /** Scrive i riepiloghi in CSV, una riga per episodio e fase (episode = all per il totale) */
+    public void write(String path) throws IOException {
+        endEpisode();
+        try (PrintWriter out = new PrintWriter(new FileWriter(path))) {
+            out.println(CSV_HEADER);
+            for (String line : csv)
+                out.println(line);
+            for (int i = 0; i < STAGES.length; i++)
+                out.println(csvRow("all", i, total[i], totalMisses));
+        }
+    }
+
+    public long getDeadlineMisses() {
+        return totalMisses + episodeMisses;
+    }
+
+    private void summarize(String name, String id, LatencyHistogram[] h, long misses) {
+        report.addAll(format(name, h, misses));
+        for (int i = 0; i < STAGES.length; i++)
+            csv.add(csvRow(id, i, h[i], misses));
+    }
+
+    private static List<String> format(String name, LatencyHistogram[] h, long misses) {
+        List<String> lines = new ArrayList<>();
+        lines.add(String.format("  %s: %d tick, scadenze mancate %d", name, h[TICK].count(), misses));
+        for (int i = 0; i < STAGES.length; i++) {
+            lines.add(String.format("    %-8s p50 %9.1f  p99 %9.1f  p99.9 %9.1f  max %9.1f  media %9.1f", STAGES[i],
+                    us(h[i].percentile(0.50)), us(h[i].percentile(0.99)), us(h[i].percentile(0.999)),
+                    us(h[i].max()), h[i].mean() / 1000.0));
+        }
+        return lines;
+    }
+
+    private static String csvRow(String id, int stage, LatencyHistogram h, long misses) {
+        return String.format(java.util.Locale.ROOT, "%s,%s,%d,%.3f,%.3f,%.3f,%.3f,%.3f,%d", id, STAGES[stage],
+                h.count(), h.mean() / 1000.0, us(h.percentile(0.50)), us(h.percentile(0.99)),
+                us(h.percentile(0.999)), us(h.max()), stage == TICK ? misses : 0);
+    }
+
+    private static double us(long nanos) {
+        return nanos / 1000.0;
+    }
+}
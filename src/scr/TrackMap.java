@@ -0,0 +1,349 @@
+package scr;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Mappa della pista campionata ogni metro dalla linea di partenza: curvatura
+ * (1/m, positiva nelle curve a sinistra) e larghezza (m). Una volta completa,
+ * la curvatura N metri più avanti è una sola lettura da array.
+ *
+ * La mappa si costruisce durante il primo giro con observe(): ad ogni tick i
+ * punti colpiti dai sensori di bordo pista su ciascun lato danno la curvatura
+ * del bordo (cerchio per tre punti), assegnata al metro davanti all'auto dove
+ * cadono i punti; i sensori a ±90° danno la larghezza. Al passaggio sulla
+ * linea di partenza, se il giro è coperto, i buchi vengono interpolati, la
+ * curvatura viene smussata e la mappa salvata.
+ *
+ * Le mappe sono salvate per nome della pista (Controller.getTrackName()) nella
+ * cartella indicata da -Dscr.trackmap.dir (default trackmaps) e rilette con un
+ * file mappato in memoria.
+ *
+ * Formato del file (little-endian): "SCRT" | int16 versione | int16 riservato |
+ * int32 lunghezza in metri | curvatura[lunghezza] | larghezza[lunghezza].
+ */
+public class TrackMap {
+
+    public static final byte[] MAGIC = { 'S', 'C', 'R', 'T' };
+    public static final short VERSION = 1;
+    public static final String DIR_PROPERTY = "scr.trackmap.dir";
+    public static final String EXTENSION = ".trk";
+
+    // lunghezza massima di una pista (le piste TORCS stanno sotto i 10 km)
+    private static final int MAX_LENGTH = 16384;
+    private static final int HEADER_BYTES = 12;
+    // frazione di metri con almeno un campione per considerare il giro completo
+    private static final double MIN_COVERAGE = 0.9;
+    private static final int SMOOTH_RADIUS = 5; // metri
+    private static final float MAX_RANGE = 200;  // i sensori valgono 200 se non vedono il bordo
+
+    private float[] curvature;
+    private float[] width;
+    private int length;
+    private boolean complete;
+
+    // Costruzione: somme e conteggi per metro, un solo giro
+    private double[] curvatureSum;
+    private double[] widthSum;
+    private int[] curvatureCount;
+    private int[] widthCount;
+    private double prevDistance = -1;
+    private double maxDistance = 0;
+    private int[] sensorIndex; // per lato: sensori più vicini a 90°, 50° e 20°
+
+    private TrackMap(float[] curvature, float[] width) {
+        this.curvature = curvature;
+        this.width = width;
+        this.length = curvature.length;
+        this.complete = true;
+    }
+
+    /** Mappa vuota, da costruire con observe() */
+    public TrackMap() {
+        curvatureSum = new double[MAX_LENGTH];
+        widthSum = new double[MAX_LENGTH];
+        curvatureCount = new int[MAX_LENGTH];
+        widthCount = new int[MAX_LENGTH];
+    }
+
+    /** File della mappa di una pista */
+    public static Path file(String trackName) {
+        return Paths.get(System.getProperty(DIR_PROPERTY, "trackmaps"), trackName + EXTENSION);
+    }
+
+    /**
+     * La mappa salvata della pista, oppure una mappa vuota da costruire se non
+     * esiste o non si può leggere.
+     */
+    public static TrackMap forTrack(String trackName) {
+        Path file = file(trackName);
+        if (Files.exists(file)) {
+            try {
+                TrackMap map = load(file);
+                System.out.println("TrackMap: " + file + " (" + map.length() + " m)");
+                return map;
+            } catch (IOException e) {
+                System.err.println("TrackMap: impossibile leggere " + file + ": " + e.getMessage()
+                        + "; la ricostruisco");
+            }
+        }
+        return new TrackMap();
+    }
+
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /** Lunghezza della pista in metri (0 finché la mappa non è completa) */
+    public int length() {
+        return complete ? length : 0;
+    }
+
+    /** Curvatura (1/m) al metro m dalla linea di partenza, 0 <= m < length() */
+    public float curvature(int m) {
+        return curvature[m];
+    }
+
+    /** Larghezza (m) al metro m dalla linea di partenza, 0 <= m < length() */
+    public float width(int m) {
+        return width[m];
+    }
+
+    /** Curvatura ahead metri dopo distanceFromStart, 0 se la mappa non è completa */
+    public float curvatureAhead(double distanceFromStart, double ahead) {
+        if (!complete)
+            return 0;
+        return curvature[wrap(distanceFromStart + ahead)];
+    }
+
+    /** Larghezza ahead metri dopo distanceFromStart, 0 se la mappa non è completa */
+    public float widthAhead(double distanceFromStart, double ahead) {
+        if (!complete)
+            return 0;
+        return width[wrap(distanceFromStart + ahead)];
+    }
+
+    private int wrap(double distance) {
+        int m = (int) distance % length;
+        return m < 0 ? m + length : m;
+    }
+
+    /**
+     * Aggiunge i campioni di un tick. Non fa niente se la mappa è già completa.
+     *
+     * @param angles gli angoli dei sensori di bordo pista (Controller.initAngles())
+     * @return true se con questo tick la mappa è stata completata
+     */
+    public boolean observe(SensorModel sensors, float[] angles) {
+        if (complete)
+            return false;
+        double distance = sensors.getDistanceFromStartLine();
+        if (distance < 0 || distance >= MAX_LENGTH)
+            return false;
+
+        // passaggio sulla linea di partenza: il giro è finito se l'abbiamo coperto quasi tutto
+        if (prevDistance - distance > MAX_LENGTH / 64.0 && finish((int) maxDistance + 1))
+            return true;
+        prevDistance = distance;
+        maxDistance = Math.max(maxDistance, distance);
+
+        double[] track = sensors.getTrackEdgeSensors();
+        double position = sensors.getTrackPosition();
+        if (position <= -1 || position >= 1 || track[0] < 0)
+            return false; // fuori pista i sensori non valgono
+
+        if (sensorIndex == null)
+            sensorIndex = pickSensors(angles);
+
+        // curvatura: cerchio per tre punti su ciascun bordo, nel riferimento dell'auto
+        for (int side = 0; side < 2; side++) {
+            double ax = 0, ay = 0, bx = 0, by = 0, cx = 0, cy = 0;
+            boolean valid = true;
+            for (int p = 0; p < 3 && valid; p++) {
+                int s = sensorIndex[side * 3 + p];
+                double r = track[s];
+                valid = r > 0 && r < MAX_RANGE;
+                double a = Math.toRadians(angles[s]);
+                double x = r * Math.cos(a);
+                double y = -r * Math.sin(a); // angoli positivi a destra, y positiva a sinistra
+                if (p == 0) { ax = x; ay = y; } else if (p == 1) { bx = x; by = y; } else { cx = x; cy = y; }
+            }
+            if (!valid)
+                continue;
+            double cross = (bx - ax) * (cy - ay) - (by - ay) * (cx - ax);
+            double ab = Math.hypot(bx - ax, by - ay);
+            double bc = Math.hypot(cx - bx, cy - by);
+            double ca = Math.hypot(ax - cx, ay - cy);
+            double den = ab * bc * ca;
+            if (den < 1e-6)
+                continue;
+            // su entrambi i bordi i punti vanno dall'auto in avanti: il segno è il verso della curva
+            double k = 2 * cross / den;
+            int m = (int) (distance + bx);
+            if (m < MAX_LENGTH) {
+                curvatureSum[m] += k;
+                curvatureCount[m]++;
+            }
+        }
+
+        // larghezza: sensori a -90° e +90°, corretti per l'angolo dell'auto
+        double angle = sensors.getAngleToTrackAxis();
+        double left = track[sensorIndex[0]];
+        double right = track[sensorIndex[3]];
+        if (Math.abs(angle) < 0.5 && left < MAX_RANGE && right < MAX_RANGE) {
+            int m = (int) distance;
+            widthSum[m] += (left + right) * Math.cos(angle);
+            widthCount[m]++;
+        }
+        return false;
+    }
+
+    // Indici dei sensori più vicini a -90, -50, -20 (bordo sinistro) e +90, +50, +20 (bordo destro)
+    private static int[] pickSensors(float[] angles) {
+        float[] wanted = { -90, -50, -20, 90, 50, 20 };
+        int[] index = new int[wanted.length];
+        for (int w = 0; w < wanted.length; w++) {
+            for (int i = 1; i < angles.length; i++) {
+                if (Math.abs(angles[i] - wanted[w]) < Math.abs(angles[index[w]] - wanted[w]))
+                    index[w] = i;
+            }
+        }
+        return index;
+    }
+
+    // Chiude il giro se è coperto: media dei campioni, interpolazione dei buchi e smussatura
+    private boolean finish(int trackLength) {
+        // i campioni oltre la fine della pista appartengono all'inizio del giro
+        for (int m = trackLength; m < MAX_LENGTH && m < 2 * trackLength; m++) {
+            curvatureSum[m - trackLength] += curvatureSum[m];
+            curvatureCount[m - trackLength] += curvatureCount[m];
+        }
+        int covered = 0;
+        for (int m = 0; m < trackLength; m++) {
+            if (curvatureCount[m] > 0)
+                covered++;
+        }
+        if (covered < MIN_COVERAGE * trackLength) {
+            // partenza da dietro la linea o giro interrotto: si riparte da qui
+            java.util.Arrays.fill(curvatureSum, 0);
+            java.util.Arrays.fill(curvatureCount, 0);
+            java.util.Arrays.fill(widthSum, 0);
+            java.util.Arrays.fill(widthCount, 0);
+            maxDistance = 0;
+            prevDistance = -1;
+            return false;
+        }
+
+        float[] k = average(curvatureSum, curvatureCount, trackLength);
+        float[] w = average(widthSum, widthCount, trackLength);
+        // media mobile circolare sulla curvatura: il cerchio per tre punti è rumoroso
+        curvature = new float[trackLength];
+        double sum = 0;
+        for (int i = -SMOOTH_RADIUS; i <= SMOOTH_RADIUS; i++)
+            sum += k[Math.floorMod(i, trackLength)];
+        for (int m = 0; m < trackLength; m++) {
+            curvature[m] = (float) (sum / (2 * SMOOTH_RADIUS + 1));
+            sum += k[Math.floorMod(m + SMOOTH_RADIUS + 1, trackLength)] - k[Math.floorMod(m - SMOOTH_RADIUS, trackLength)];
+        }
+        width = w;
+        length = trackLength;
+        complete = true;
+        curvatureSum = widthSum = null;
+        curvatureCount = widthCount = null;
+        return true;
+    }
+
+    // Media per metro, con i metri senza campioni interpolati linearmente (in modo circolare)
+    private static float[] average(double[] sum, int[] count, int n) {
+        float[] out = new float[n];
+        int first = -1;
+        for (int m = 0; m < n; m++) {
+            if (count[m] > 0) {
+                out[m] = (float) (sum[m] / count[m]);
+                if (first < 0)
+                    first = m;
+            }
+        }
+        if (first < 0)
+            return out;
+        int prev = first;
+        for (int step = 1; step <= n; step++) {
+            int m = (first + step) % n;
+            if (count[m] == 0)
+                continue;
+            int gap = Math.floorMod(m - prev, n);
+            for (int g = 1; g < gap; g++)
+                out[(prev + g) % n] = out[prev] + (out[m] - out[prev]) * g / gap;
+            prev = m;
+        }
+        return out;
+    }
+
+    /** Salva la mappa completa, creando la cartella se serve */
+    public void save(Path file) throws IOException {
+        if (!complete)
+            throw new IllegalStateException("la mappa non è completa");
+        File dir = file.toAbsolutePath().getParent().toFile();
+        if (!dir.isDirectory() && !dir.mkdirs())
+            throw new IOException("impossibile creare " + dir);
+        long bytes = HEADER_BYTES + 8L * length;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+            map.order(ByteOrder.LITTLE_ENDIAN);
+            map.put(MAGIC).putShort(VERSION).putShort((short) 0).putInt(length);
+            map.asFloatBuffer().put(curvature).put(width);
+            map.force();
+        }
+    }
+
+    /** Rilegge una mappa salvata con save() */
+    public static TrackMap load(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            ByteBuffer buf = map.order(ByteOrder.LITTLE_ENDIAN);
+            byte[] magic = new byte[4];
+            buf.get(magic);
+            if (!java.util.Arrays.equals(magic, MAGIC))
+                throw new IOException(file + " non è una mappa della pista");
+            short version = buf.getShort();
+            buf.getShort();
+            if (version != VERSION)
+                throw new IOException(file + ": versione " + version + " non supportata");
+            int length = buf.getInt();
+            if (length <= 0 || channel.size() < HEADER_BYTES + 8L * length)
+                throw new IOException(file + " è troncato");
+            float[] curvature = new float[length];
+            float[] width = new float[length];
+            buf.asFloatBuffer().get(curvature).get(width);
+            return new TrackMap(curvature, width);
+        }
+    }
+
+    /**
+     * Riepilogo di una mappa salvata.
+     *
+     * Uso: java scr.TrackMap pista.trk
+     */
+    public static void main(String[] args) throws IOException {
+        TrackMap map = load(Paths.get(args[0]));
+        double maxK = 0, meanW = 0;
+        int curves = 0;
+        for (int m = 0; m < map.length; m++) {
+            maxK = Math.max(maxK, Math.abs(map.curvature[m]));
+            meanW += map.width[m];
+            if (Math.abs(map.curvature[m]) > 0.005) // raggio sotto i 200 m
+                curves++;
+        }
+        System.out.println(String.format("%s: %d m, larghezza media %.1f m, raggio minimo %.0f m, %d m in curva",
+                args[0], map.length, meanW / map.length, maxK > 0 ? 1 / maxK : Double.POSITIVE_INFINITY, curves));
+    }
+}
@@ -0,0 +1,29 @@
+package scr;
+
+/**
+ * Canale di comunicazione UDP con il server TORCS.
+ *
+ * I metodi con String sono comodi per l'identificazione iniziale; nel loop
+ * di guida si usano quelli a byte, che non allocano.
+ */
+public interface Transport {
+
+	public void send(String msg);
+
+	public void send(byte[] buf, int off, int len);
+
+	/**
+	 * @return il messaggio ricevuto, oppure null se scade il timeout
+	 */
+	public String receive(int timeout);
+
+	/**
+	 * Copia il datagramma ricevuto in dst.
+	 *
+	 * @return il numero di byte ricevuti, oppure -1 se scade il timeout
+	 */
+	public int receive(byte[] dst, int timeout);
+
+	public void close();
+
+}
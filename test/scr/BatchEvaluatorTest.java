@@ -0,0 +1,93 @@
+package scr;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+
+/**
+ * Verifica che BatchEvaluator dia con più thread gli stessi risultati che con
+ * uno solo per NeuralDriver: i driver dei segmenti condividono i pesi della
+ * rete ma non i buffer di lavoro di MlpModel.forward().
+ *
+ * Uso (dalla radice del repository):
+ *   javac -d out src/scr/*.java test/scr/*.java
+ *   java -cp out scr.BatchEvaluatorTest
+ */
+public class BatchEvaluatorTest {
+
+    private static final Path SESSION = Paths.get("classes", "manual_driving_data_20250611_134929.csv");
+
+    private static int checks = 0;
+
+    public static void main(String[] args) throws Exception {
+        Path weights = Files.createTempFile("neural", ".bin");
+        try {
+            randomModel().save(weights);
+            System.setProperty(NeuralDriver.WEIGHTS_PROPERTY, weights.toString());
+            System.setProperty(NeuralDriver.KERNEL_PROPERTY, "scalar");
+            sameResultsOnAnyThreadCount();
+        } finally {
+            Files.deleteIfExists(weights);
+        }
+        System.out.println("BatchEvaluatorTest: " + checks + " controlli superati");
+    }
+
+    // Rete casuale con marce, normalizzata sulle features della sessione: uscite non saturate,
+    // così un buffer condiviso fra thread cambierebbe le metriche
+    private static MlpModel randomModel() throws Exception {
+        int[] sizes = { DemonstrationSet.FEATURES, 64, 64, MlpModel.OUT_GEAR + MlpModel.GEAR_CLASSES };
+        MlpModel model = MlpModel.random(sizes, MlpModel.RELU, 7);
+        DemonstrationSet set = DemonstrationSet.load(Collections.singletonList(SESSION));
+        int F = DemonstrationSet.FEATURES;
+        for (int j = 0; j < F; j++) {
+            double sum = 0, sq = 0;
+            for (int r = 0; r < set.rows(); r++) {
+                double v = set.features()[r * F + j];
+                sum += v;
+                sq += v * v;
+            }
+            double mean = sum / set.rows();
+            double std = Math.sqrt(Math.max(0, sq / set.rows() - mean * mean));
+            model.mean()[j] = (float) mean;
+            model.scale()[j] = std > 1e-6 ? (float) (1 / std) : 1f;
+        }
+        return model;
+    }
+
+    private static void sameResultsOnAnyThreadCount() throws Exception {
+        BatchEvaluator evaluator = new BatchEvaluator(BatchEvaluator.factory(NeuralDriver.class.getName()), 50);
+        evaluator.add(SESSION);
+        BatchEvaluator.Metrics single = evaluator.run(1);
+        check(single.ticks() > 0, "tick valutati");
+        for (int threads : new int[] { 2, 4, 8 }) {
+            for (int round = 0; round < 5; round++) {
+                BatchEvaluator.Metrics parallel = evaluator.run(threads);
+                String what = threads + " thread, giro " + round;
+                check(parallel.ticks() == single.ticks(), what + ": tick");
+                check(parallel.segments == single.segments, what + ": segmenti");
+                check(parallel.accelAgree == single.accelAgree, what + ": accordo acceleratore");
+                check(parallel.brakeAgree == single.brakeAgree, what + ": accordo freno");
+                for (int r = 0; r < single.gears.length; r++) {
+                    for (int d = 0; d < single.gears[r].length; d++)
+                        check(parallel.gears[r][d] == single.gears[r][d], what + ": marce [" + r + "][" + d + "]");
+                }
+                // le somme dei segmenti si fondono in un ordine che dipende dai thread: stessi
+                // valori a meno dell'arrotondamento
+                check(same(parallel.steerError, single.steerError), what + ": errore steering");
+                check(same(parallel.accelError, single.accelError), what + ": errore accel");
+                check(same(parallel.brakeError, single.brakeError), what + ": errore brake");
+            }
+        }
+    }
+
+    private static boolean same(double a, double b) {
+        return Math.abs(a - b) <= 1e-9 * Math.max(1, Math.abs(b));
+    }
+
+    private static void check(boolean ok, String what) {
+        checks++;
+        if (!ok)
+            throw new AssertionError(what);
+    }
+}
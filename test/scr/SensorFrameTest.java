@@ -0,0 +1,121 @@
+package scr;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Verifica che SensorFrame dia, messaggio per messaggio, gli stessi valori di
+ * MessageBasedSensorModel (il parser originale), e che le letture mancanti in
+ * un messaggio non restino quelle del messaggio precedente.
+ *
+ * Uso (dalla radice del repository):
+ *   javac -d out src/scr/*.java test/scr/*.java
+ *   java -cp out scr.SensorFrameTest
+ */
+public class SensorFrameTest {
+
+    private static int checks = 0;
+
+    public static void main(String[] args) throws Exception {
+        List<String> messages = SensorMessageLog.load(null);
+        sameAsMessageParser(messages);
+        missingReadingsAreCleared(messages.get(0));
+        System.out.println("SensorFrameTest: " + checks + " controlli superati");
+    }
+
+    // Stessi getter del parser originale su ogni messaggio del set di riferimento,
+    // sia da byte[] sia da String, con lo stesso SensorFrame riusato
+    private static void sameAsMessageParser(List<String> messages) {
+        SensorFrame fromBytes = new SensorFrame();
+        SensorFrame fromString = new SensorFrame();
+        for (String msg : messages) {
+            byte[] bytes = msg.getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+            MessageBasedSensorModel expected = new MessageBasedSensorModel(msg);
+            assertSame(expected, fromBytes.parse(bytes, 0, bytes.length), msg);
+            assertSame(expected, fromString.parse(msg), msg);
+            assertSame(expected, new SensorFrame().copyFrom(fromBytes), msg);
+        }
+    }
+
+    private static void missingReadingsAreCleared(String full) {
+        SensorFrame frame = new SensorFrame();
+        frame.parse(full);
+        String partial = "(angle 0.25)(gear 3)(speedX 120.5)(track 1 2 3)(trackPos -0.5)(wheelSpinVel 7 8)";
+        frame.parse(partial);
+        MessageBasedSensorModel expected = new MessageBasedSensorModel(partial);
+
+        check(frame.getAngleToTrackAxis() == expected.getAngleToTrackAxis(), "angle");
+        check(frame.getGear() == expected.getGear(), "gear");
+        check(frame.getSpeed() == expected.getSpeed(), "speedX");
+        check(frame.getTrackPosition() == expected.getTrackPosition(), "trackPos");
+        check(Arrays.equals(Arrays.copyOf(frame.getTrackEdgeSensors(), 3), expected.getTrackEdgeSensors()), "track");
+        check(Arrays.equals(Arrays.copyOf(frame.getWheelSpinVelocity(), 2), expected.getWheelSpinVelocity()),
+                "wheelSpinVel");
+
+        // le letture assenti valgono 0, non il valore del messaggio precedente
+        check(frame.getTrackEdgeSensors().length == SensorFrame.TRACK_SENSORS, "lunghezza di track");
+        for (int i = 3; i < SensorFrame.TRACK_SENSORS; i++)
+            check(frame.getTrackEdgeSensors()[i] == 0, "track[" + i + "] mancante");
+        for (int i = 2; i < SensorFrame.WHEELS; i++)
+            check(frame.getWheelSpinVelocity()[i] == 0, "wheelSpinVel[" + i + "] mancante");
+        check(allZero(frame.getFocusSensors()), "focus mancante");
+        check(allZero(frame.getOpponentSensors()), "opponents mancante");
+        check(frame.getLateralSpeed() == 0, "speedY mancante");
+        check(frame.getZSpeed() == 0, "speedZ mancante");
+        check(frame.getRPM() == 0, "rpm mancante");
+        check(frame.getCurrentLapTime() == 0, "curLapTime mancante");
+        check(frame.getLastLapTime() == 0, "lastLapTime mancante");
+        check(frame.getDamage() == 0, "damage mancante");
+        check(frame.getDistanceFromStartLine() == 0, "distFromStart mancante");
+        check(frame.getDistanceRaced() == 0, "distRaced mancante");
+        check(frame.getFuelLevel() == 0, "fuel mancante");
+        check(frame.getRacePosition() == 0, "racePos mancante");
+        check(frame.getZ() == 0, "z mancante");
+        check(frame.getMessage().equals(partial), "getMessage");
+
+        // e con il messaggio completo tornano tutte
+        frame.parse(full);
+        assertSame(new MessageBasedSensorModel(full), frame, full);
+    }
+
+    private static void assertSame(SensorModel expected, SensorModel actual, String msg) {
+        check(expected.getAngleToTrackAxis() == actual.getAngleToTrackAxis(), "angle", msg);
+        check(expected.getCurrentLapTime() == actual.getCurrentLapTime(), "curLapTime", msg);
+        check(expected.getDamage() == actual.getDamage(), "damage", msg);
+        check(expected.getDistanceFromStartLine() == actual.getDistanceFromStartLine(), "distFromStart", msg);
+        check(expected.getDistanceRaced() == actual.getDistanceRaced(), "distRaced", msg);
+        check(Arrays.equals(expected.getFocusSensors(), actual.getFocusSensors()), "focus", msg);
+        check(expected.getFuelLevel() == actual.getFuelLevel(), "fuel", msg);
+        check(expected.getGear() == actual.getGear(), "gear", msg);
+        check(expected.getLastLapTime() == actual.getLastLapTime(), "lastLapTime", msg);
+        check(Arrays.equals(expected.getOpponentSensors(), actual.getOpponentSensors()), "opponents", msg);
+        check(expected.getRacePosition() == actual.getRacePosition(), "racePos", msg);
+        check(expected.getRPM() == actual.getRPM(), "rpm", msg);
+        check(expected.getSpeed() == actual.getSpeed(), "speedX", msg);
+        check(expected.getLateralSpeed() == actual.getLateralSpeed(), "speedY", msg);
+        check(expected.getZSpeed() == actual.getZSpeed(), "speedZ", msg);
+        check(Arrays.equals(expected.getTrackEdgeSensors(), actual.getTrackEdgeSensors()), "track", msg);
+        check(expected.getTrackPosition() == actual.getTrackPosition(), "trackPos", msg);
+        check(Arrays.equals(expected.getWheelSpinVelocity(), actual.getWheelSpinVelocity()), "wheelSpinVel", msg);
+        check(expected.getZ() == actual.getZ(), "z", msg);
+        check(expected.getMessage().equals(actual.getMessage()), "getMessage", msg);
+    }
+
+    private static boolean allZero(double[] values) {
+        for (double v : values) {
+            if (v != 0)
+                return false;
+        }
+        return true;
+    }
+
+    private static void check(boolean ok, String what) {
+        check(ok, what, null);
+    }
+
+    private static void check(boolean ok, String what, String msg) {
+        checks++;
+        if (!ok)
+            throw new AssertionError(what + (msg != null ? " diverso per il messaggio: " + msg : ""));
+    }
+}